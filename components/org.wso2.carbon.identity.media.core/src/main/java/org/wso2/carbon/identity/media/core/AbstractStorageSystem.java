@@ -0,0 +1,341 @@
+/*
+ * Copyright (c) 2020, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wso2.carbon.identity.media.core;
+
+import org.apache.commons.lang.StringUtils;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.wso2.carbon.identity.core.util.IdentityTenantUtil;
+import org.wso2.carbon.identity.media.core.cache.MediaMetadataCache;
+import org.wso2.carbon.identity.media.core.cache.MediaMetadataCacheKey;
+import org.wso2.carbon.identity.media.core.exception.StorageSystemClientException;
+import org.wso2.carbon.identity.media.core.exception.StorageSystemException;
+import org.wso2.carbon.identity.media.core.exception.StorageSystemServerException;
+import org.wso2.carbon.identity.media.core.internal.MediaServiceDataHolder;
+import org.wso2.carbon.identity.media.core.model.FileSecurity;
+import org.wso2.carbon.identity.media.core.model.MediaInformation;
+import org.wso2.carbon.identity.media.core.model.MediaMetadata;
+import org.wso2.carbon.identity.media.core.model.MediaRepresentation;
+import org.wso2.carbon.identity.media.core.model.ResolvedMedia;
+import org.wso2.carbon.identity.media.core.model.StoredMediaMetadata;
+import org.wso2.carbon.identity.media.core.util.StorageSystemUtil;
+
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+import static org.wso2.carbon.identity.media.core.util.StorageSystemConstants.CONTENT_HASH_ALGORITHM;
+import static org.wso2.carbon.identity.media.core.util.StorageSystemConstants.MEDIA_CONTENT_HASH;
+import static org.wso2.carbon.identity.media.core.util.StorageSystemConstants.MEDIA_CONTENT_TYPE;
+import static org.wso2.carbon.identity.media.core.util.StorageSystemConstants.MEDIA_FILES;
+import static org.wso2.carbon.identity.media.core.util.StorageSystemConstants.MEDIA_IDENTIFIER;
+import static org.wso2.carbon.identity.media.core.util.StorageSystemConstants.MEDIA_LAST_MODIFIED;
+import static org.wso2.carbon.identity.media.core.util.StorageSystemConstants.MEDIA_NAME;
+import static org.wso2.carbon.identity.media.core.util.StorageSystemConstants.MEDIA_RESOURCE_OWNER_ID;
+import static org.wso2.carbon.identity.media.core.util.StorageSystemConstants.MEDIA_SECURITY;
+import static org.wso2.carbon.identity.media.core.util.StorageSystemConstants.MEDIA_SECURITY_ALLOWED_ALL;
+import static org.wso2.carbon.identity.media.core.util.StorageSystemConstants.MEDIA_SECURITY_ALLOWED_GROUPS;
+import static org.wso2.carbon.identity.media.core.util.StorageSystemConstants.MEDIA_SECURITY_ALLOWED_ROLES;
+import static org.wso2.carbon.identity.media.core.util.StorageSystemConstants.MEDIA_SECURITY_ALLOWED_USER_IDS;
+import static org.wso2.carbon.identity.media.core.util.StorageSystemConstants.MEDIA_SIZE;
+import static org.wso2.carbon.identity.media.core.util.StorageSystemConstants.MEDIA_TAG;
+import static org.wso2.carbon.identity.media.core.util.StorageSystemConstants.PROTECTED_DOWNLOAD_ACCESS;
+import static org.wso2.carbon.identity.media.core.util.StorageSystemConstants.PUBLIC_DOWNLOAD_ACCESS;
+
+/**
+ * Base class of the storage systems, which resolves media from their metadata and caches the metadata in the media
+ * metadata cache. Storage systems read the metadata of a media in their own format and inherit the resolution, the
+ * metadata based security evaluations and the media information, overriding them where they can do better.
+ */
+public abstract class AbstractStorageSystem implements StorageSystem {
+
+    // Approximate fixed footprint of a cached metadata entry, i.e. the key, the model object and the map entry.
+    protected static final long METADATA_ENTRY_OVERHEAD = 256;
+
+    @Override
+    public DataContent getFile(String id, String tenantDomain, String type) throws StorageSystemException {
+
+        ResolvedMedia resolvedMedia = resolveMedia(id, type, tenantDomain);
+        if (resolvedMedia == null) {
+            throw new StorageSystemClientException(String.format("Requested media of type: %s with id: %s in" +
+                    " tenant domain: %s does not exist in the storage system.", type, id, tenantDomain));
+        }
+        return getFile(resolvedMedia);
+    }
+
+    @Override
+    public ResolvedMedia resolveMedia(String id, String type, String tenantDomain) throws StorageSystemException {
+
+        StoredMediaMetadata metadata = getStoredMediaMetadata(id, type, tenantDomain);
+        if (metadata == null) {
+            return null;
+        }
+        return new ResolvedMedia(id, type, tenantDomain, null, metadata.getLastModified(), metadata.getSize(),
+                metadata.getContentHash(), metadata);
+    }
+
+    @Override
+    public ResolvedMedia resolveMedia(String id, String type, String tenantDomain, String identifier)
+            throws StorageSystemException {
+
+        if (!StorageSystemUtil.isValidFileIdentifier(identifier)) {
+            return null;
+        }
+        StoredMediaMetadata metadata = getStoredMediaMetadata(id, type, tenantDomain);
+        if (metadata == null) {
+            return null;
+        }
+        MediaRepresentation representation = metadata.getRepresentation(identifier);
+        if (representation == null) {
+            return null;
+        }
+        return new ResolvedMedia(id, type, tenantDomain, identifier, null, metadata.getLastModified(),
+                representation.getSize(), representation.getContentHash(), representation.getContentType(), metadata);
+    }
+
+    @Override
+    public boolean isDownloadAllowedForPublicMedia(String id, String type, String tenantDomain) throws
+            StorageSystemServerException {
+
+        StoredMediaMetadata metadata = getStoredMediaMetadata(id, type, tenantDomain);
+        return metadata != null && metadata.isPubliclyAccessible();
+    }
+
+    @Override
+    public boolean isDownloadAllowedForProtectedMedia(String mediaId, String type, String tenantDomain, String userId)
+            throws StorageSystemServerException {
+
+        StoredMediaMetadata metadata = getStoredMediaMetadata(mediaId, type, tenantDomain);
+        return metadata != null && metadata.isAccessAllowed(userId);
+    }
+
+    @Override
+    public boolean isMediaManagementAllowedForEndUser(String mediaId, String type, String tenantDomain, String userId)
+            throws StorageSystemServerException {
+
+        StoredMediaMetadata metadata = getStoredMediaMetadata(mediaId, type, tenantDomain);
+        return metadata != null && metadata.isOwnedBy(userId);
+    }
+
+    @Override
+    public MediaInformation getMediaInformation(String id, String type, String tenantDomain) throws
+            StorageSystemException {
+
+        StoredMediaMetadata metadata = getStoredMediaMetadata(id, type, tenantDomain);
+        if (metadata == null) {
+            throw new StorageSystemClientException(String.format("Media information retrieval request can't be" +
+                    " performed as media with id: %s of type: %s in tenant domain: %s does not exist.", id, type,
+                    tenantDomain));
+        }
+        MediaInformation mediaInformation = new MediaInformation();
+        List<String> links = new ArrayList<>();
+        String access = metadata.isPubliclyAccessible() ? PUBLIC_DOWNLOAD_ACCESS : PROTECTED_DOWNLOAD_ACCESS;
+        links.add(String.format("/%s/%s/%s", access, type, id));
+        mediaInformation.setLinks(links);
+        mediaInformation.setStoredMediaMetadata(metadata);
+        return mediaInformation;
+    }
+
+    @Override
+    public InputStream transform(String id, String type, String tenantDomain, InputStream inputStream)
+            throws StorageSystemException {
+
+        return inputStream;
+    }
+
+    /**
+     * Media are served as uploaded unless the storage system generates resized derivatives.
+     *
+     * @param resolvedMedia The resolved media.
+     * @param width         The requested width.
+     * @return the resolved media.
+     */
+    @Override
+    public ResolvedMedia transform(ResolvedMedia resolvedMedia, int width) throws StorageSystemException {
+
+        return resolvedMedia;
+    }
+
+    /**
+     * Retrieve the metadata of a stored media. The metadata cache is consulted first and the metadata is read from
+     * the storage only on a cache miss.
+     *
+     * @param uuid         The unique id of the media.
+     * @param mediaType    The high level content-type of the media.
+     * @param tenantDomain The tenant domain of the media.
+     * @return the metadata or null if the media does not exist.
+     * @throws StorageSystemServerException If the metadata can't be read.
+     */
+    protected StoredMediaMetadata getStoredMediaMetadata(String uuid, String mediaType, String tenantDomain)
+            throws StorageSystemServerException {
+
+        int tenantId = IdentityTenantUtil.getTenantId(tenantDomain);
+        MediaMetadataCache mediaMetadataCache = MediaServiceDataHolder.getInstance().getMediaMetadataCache();
+        MediaMetadataCacheKey cacheKey = new MediaMetadataCacheKey(tenantId, mediaType, uuid);
+        long generation = 0;
+        if (mediaMetadataCache != null) {
+            StoredMediaMetadata cachedMetadata = mediaMetadataCache.get(cacheKey);
+            if (cachedMetadata != null) {
+                return cachedMetadata;
+            }
+            // Captured before the read, so that metadata read concurrently with a delete is not cached after it.
+            generation = mediaMetadataCache.getGeneration(cacheKey);
+        }
+
+        StoredMediaMetadata metadata = readStoredMediaMetadata(cacheKey, tenantDomain);
+        if (metadata != null && mediaMetadataCache != null) {
+            mediaMetadataCache.put(cacheKey, metadata, generation);
+        }
+        return metadata;
+    }
+
+    /**
+     * Read the metadata of a stored media from the storage, bypassing the metadata cache.
+     *
+     * @param mediaKey     The tenant id, the high level content-type and the unique id of the media.
+     * @param tenantDomain The tenant domain of the media.
+     * @return the metadata or null if the media does not exist.
+     * @throws StorageSystemServerException If the metadata can't be read.
+     */
+    protected abstract StoredMediaMetadata readStoredMediaMetadata(MediaMetadataCacheKey mediaKey,
+                                                                   String tenantDomain)
+            throws StorageSystemServerException;
+
+    /**
+     * Remove the metadata of a media from the metadata cache. Storage systems invalidate the metadata both before and
+     * after a media is changed, so that metadata read while it is changed is not served afterwards.
+     */
+    protected void invalidateCachedMetadata(int tenantId, String mediaType, String uuid) {
+
+        MediaMetadataCache mediaMetadataCache = MediaServiceDataHolder.getInstance().getMediaMetadataCache();
+        if (mediaMetadataCache != null) {
+            mediaMetadataCache.invalidate(new MediaMetadataCacheKey(tenantId, mediaType, uuid));
+        }
+    }
+
+    /**
+     * Returns the index of the file holding a resolved media or representation, in the order the files were
+     * uploaded.
+     */
+    protected int getFileIndex(ResolvedMedia resolvedMedia) {
+
+        if (resolvedMedia.getIdentifier() == null) {
+            return 0;
+        }
+        StoredMediaMetadata metadata = resolvedMedia.getMetadata();
+        return metadata.getRepresentations().indexOf(metadata.getRepresentation(resolvedMedia.getIdentifier()));
+    }
+
+    /**
+     * Build the metadata of an uploaded media in the form written to the metadata file, from the content attributes
+     * of its files computed while they were stored.
+     *
+     * @param mediaMetadata   The metadata given with the upload.
+     * @param fileIdentifiers The identifiers of the files, or null if the files have no identifiers.
+     * @param contentHashes   The content hashes of the files.
+     * @param sizes           The sizes of the files.
+     * @param lastModified    The time the media is stored at.
+     * @return the metadata.
+     */
+    protected JSONObject buildMetadata(MediaMetadata mediaMetadata, List<String> fileIdentifiers,
+                                       List<String> contentHashes, List<Long> sizes, long lastModified) {
+
+        JSONObject metadata = new JSONObject();
+        String fileName = mediaMetadata.getFileName();
+        String fileContentType = mediaMetadata.getFileContentType();
+        putIfNotBlank(metadata, MEDIA_NAME, fileName);
+        putIfNotBlank(metadata, MEDIA_CONTENT_TYPE, fileContentType);
+        putIfNotBlank(metadata, MEDIA_TAG, mediaMetadata.getFileTag());
+        putIfNotBlank(metadata, MEDIA_RESOURCE_OWNER_ID, mediaMetadata.getResourceOwnerId());
+
+        JSONObject security = new JSONObject();
+        FileSecurity fileSecurity = mediaMetadata.getFileSecurity();
+        boolean allowedAll = fileSecurity != null && fileSecurity.isAllowedAll();
+        security.put(MEDIA_SECURITY_ALLOWED_ALL, allowedAll);
+        if (fileSecurity != null && !allowedAll) {
+            putIfNotEmpty(security, MEDIA_SECURITY_ALLOWED_USER_IDS, fileSecurity.getAllowedUserIds());
+            putIfNotEmpty(security, MEDIA_SECURITY_ALLOWED_GROUPS, fileSecurity.getAllowedGroups());
+            putIfNotEmpty(security, MEDIA_SECURITY_ALLOWED_ROLES, fileSecurity.getAllowedRoles());
+        }
+        metadata.put(MEDIA_SECURITY, security);
+
+        // The content attributes of the default representation of the media.
+        metadata.put(MEDIA_CONTENT_HASH, contentHashes.get(0));
+        metadata.put(MEDIA_SIZE, sizes.get(0));
+        metadata.put(MEDIA_LAST_MODIFIED, lastModified);
+
+        if (fileIdentifiers != null) {
+            JSONArray files = new JSONArray();
+            for (int i = 0; i < contentHashes.size(); i++) {
+                JSONObject file = new JSONObject();
+                file.put(MEDIA_IDENTIFIER, fileIdentifiers.get(i));
+                putIfNotBlank(file, MEDIA_NAME, getListItem(mediaMetadata.getFileNames(), i,
+                        i == 0 ? fileName : null));
+                putIfNotBlank(file, MEDIA_CONTENT_TYPE, getListItem(mediaMetadata.getFileContentTypes(), i,
+                        i == 0 ? fileContentType : null));
+                file.put(MEDIA_CONTENT_HASH, contentHashes.get(i));
+                file.put(MEDIA_SIZE, sizes.get(i));
+                files.add(file);
+            }
+            metadata.put(MEDIA_FILES, files);
+        }
+        return metadata;
+    }
+
+    protected MessageDigest getContentDigest() throws StorageSystemServerException {
+
+        try {
+            return MessageDigest.getInstance(CONTENT_HASH_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new StorageSystemServerException("Unable to compute the content hash of the media.", e);
+        }
+    }
+
+    protected String getListItem(List<String> list, int index, String defaultValue) {
+
+        if (list != null && index < list.size() && list.get(index) != null) {
+            return list.get(index);
+        }
+        return defaultValue;
+    }
+
+    protected void putIfNotBlank(JSONObject jsonObject, String key, String value) {
+
+        if (StringUtils.isNotBlank(value)) {
+            jsonObject.put(key, value);
+        }
+    }
+
+    protected void putIfNotNull(JSONObject jsonObject, String key, Object value) {
+
+        if (value != null) {
+            jsonObject.put(key, value);
+        }
+    }
+
+    protected void putIfNotEmpty(JSONObject jsonObject, String key, List<String> values) {
+
+        if (values != null && !values.isEmpty()) {
+            JSONArray array = new JSONArray();
+            // A value given more than once, e.g. a user allowed twice, is stored once.
+            array.addAll(new LinkedHashSet<>(values));
+            jsonObject.put(key, array);
+        }
+    }
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright (c) 2020, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.media.core;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+
+/**
+ * Interface describing file content which can be transferred directly from a file channel. Transferring the content
+ * with {@link FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)} lets the operating system
+ * move the bytes without copying them through heap buffers.
+ */
+public interface ChannelContent extends FileContent {
+
+    /**
+     * Opens a new read-only channel to the file containing the data. The caller is responsible for closing the
+     * channel.
+     *
+     * @return file channel.
+     * @throws IOException If the file can't be opened.
+     */
+    FileChannel openChannel() throws IOException;
+
+    /**
+     * Returns the size of the file in bytes.
+     *
+     * @return size of the file.
+     */
+    long getSize();
+}
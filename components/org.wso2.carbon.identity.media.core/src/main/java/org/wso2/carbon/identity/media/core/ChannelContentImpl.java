@@ -0,0 +1,50 @@
+/*
+ * Copyright (c) 2020, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.media.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Implementation of ChannelContent, which encapsulates a file served through a file channel.
+ */
+public class ChannelContentImpl extends FileContentImpl implements ChannelContent {
+
+    private final long size;
+
+    public ChannelContentImpl(File file, long size, String responseContentType, String eTag) {
+
+        super(file, responseContentType, eTag);
+        this.size = size;
+    }
+
+    @Override
+    public FileChannel openChannel() throws IOException {
+
+        return FileChannel.open(getFile().toPath(), StandardOpenOption.READ);
+    }
+
+    @Override
+    public long getSize() {
+
+        return size;
+    }
+}
@@ -19,6 +19,7 @@ import org.wso2.carbon.identity.media.core.exception.StorageSystemException;
 import org.wso2.carbon.identity.media.core.exception.StorageSystemServerException;
 import org.wso2.carbon.identity.media.core.model.MediaInformation;
 import org.wso2.carbon.identity.media.core.model.MediaMetadata;
+import org.wso2.carbon.identity.media.core.model.ResolvedMedia;
 
 import java.io.InputStream;
 import java.util.List;
@@ -29,10 +30,36 @@ import java.util.List;
 public interface StorageSystem {
 
     String addMedia(List<InputStream> inputStreams, MediaMetadata mediaMetadata, String uuid, String tenantDomain)
-            throws StorageSystemServerException;
+            throws StorageSystemException;
 
     DataContent getFile(String id, String tenantDomain, String type) throws StorageSystemException;
 
+    /**
+     * Locate a stored media and read its metadata.
+     *
+     * @param id           The unique id of the media.
+     * @param type         The high level content-type of the media.
+     * @param tenantDomain The tenant domain of the media.
+     * @return the resolved media or null if the media is not existing.
+     * @throws StorageSystemException Exception related to resolving the media.
+     */
+    ResolvedMedia resolveMedia(String id, String type, String tenantDomain) throws StorageSystemException;
+
+    /**
+     * Locate a representation of a stored media uploaded with multiple files and read the metadata of the media.
+     *
+     * @param id           The unique id of the media.
+     * @param type         The high level content-type of the media.
+     * @param tenantDomain The tenant domain of the media.
+     * @param identifier   The identifier of the representation.
+     * @return the resolved representation or null if the media or the representation is not existing.
+     * @throws StorageSystemException Exception related to resolving the media.
+     */
+    ResolvedMedia resolveMedia(String id, String type, String tenantDomain, String identifier)
+            throws StorageSystemException;
+
+    DataContent getFile(ResolvedMedia resolvedMedia) throws StorageSystemException;
+
     boolean isDownloadAllowedForPublicMedia(String id, String type, String tenantDomain) throws
             StorageSystemServerException;
 
@@ -49,4 +76,14 @@ public interface StorageSystem {
     InputStream transform(String id, String type, String tenantDomain, InputStream inputStream)
             throws StorageSystemException;
 
+    /**
+     * Transform a resolved media to a variant which is at most of the given width, e.g. a resized image.
+     *
+     * @param resolvedMedia The resolved media.
+     * @param width         The requested width of the media in pixels.
+     * @return the resolved variant, or the given resolved media if no variant is applicable.
+     * @throws StorageSystemException Exception related to transforming the media.
+     */
+    ResolvedMedia transform(ResolvedMedia resolvedMedia, int width) throws StorageSystemException;
+
 }
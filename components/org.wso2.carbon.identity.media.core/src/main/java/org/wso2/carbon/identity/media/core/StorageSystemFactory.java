@@ -22,6 +22,12 @@ package org.wso2.carbon.identity.media.core;
  */
 public abstract class StorageSystemFactory {
 
+    /**
+     * Returns the storage system produced by this factory. The same instance is returned for every call, hence
+     * storage system implementations must be safe for use by concurrent requests.
+     *
+     * @return StorageSystem
+     */
     public abstract StorageSystem getStorageSystem();
 
     public abstract String getStorageType();
@@ -17,20 +17,29 @@
  */
 package org.wso2.carbon.identity.media.core;
 
-import org.apache.commons.collections.CollectionUtils;
-import org.apache.commons.collections.MapUtils;
-import org.apache.commons.io.IOUtils;
-import org.apache.commons.lang.StringUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.wso2.carbon.context.PrivilegedCarbonContext;
+import org.wso2.carbon.identity.core.util.IdentityTenantUtil;
+import org.wso2.carbon.identity.media.core.cache.AuthorizationDecisionCache;
+import org.wso2.carbon.identity.media.core.cache.CacheStatistics;
+import org.wso2.carbon.identity.media.core.cache.MediaMetadataCache;
+import org.wso2.carbon.identity.media.core.cache.UserIdCache;
+import org.wso2.carbon.identity.media.core.cache.UserMembershipCache;
+import org.wso2.carbon.identity.media.core.exception.MediaSizeLimitExceededException;
 import org.wso2.carbon.identity.media.core.exception.StorageSystemClientException;
 import org.wso2.carbon.identity.media.core.exception.StorageSystemException;
 import org.wso2.carbon.identity.media.core.exception.StorageSystemServerException;
 import org.wso2.carbon.identity.media.core.internal.MediaServiceDataHolder;
 import org.wso2.carbon.identity.media.core.model.MediaInformation;
 import org.wso2.carbon.identity.media.core.model.MediaMetadata;
+import org.wso2.carbon.identity.media.core.model.ResolvedMedia;
+import org.wso2.carbon.identity.media.core.model.StoredMediaMetadata;
+import org.wso2.carbon.identity.media.core.util.ContentTypeMatcher;
+import org.wso2.carbon.identity.media.core.util.MembershipNames;
+import org.wso2.carbon.identity.media.core.util.SizeLimitedInputStream;
 import org.wso2.carbon.identity.media.core.util.StorageSystemUtil;
+import org.wso2.carbon.user.api.AuthorizationManager;
 import org.wso2.carbon.user.api.UserRealm;
 import org.wso2.carbon.user.api.UserStoreException;
 import org.wso2.carbon.user.core.UserStoreManager;
@@ -41,16 +50,17 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
-import java.util.Arrays;
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Locale;
+import java.util.Map;
 import java.util.Set;
 
-import static org.wso2.carbon.identity.media.core.util.StorageSystemConstants.CONFIGURABLE_MAXIMUM_MEDIA_SIZE_IN_BYTES;
-import static org.wso2.carbon.identity.media.core.util.StorageSystemConstants.CONFIGURABLE_MEDIA_CONTENT_TYPES;
-import static org.wso2.carbon.identity.media.core.util.StorageSystemConstants.CONFIGURABLE_MEDIA_STORE_TYPE;
+import static org.wso2.carbon.identity.media.core.util.StorageSystemConstants.AUTHORIZATION_CACHE;
+import static org.wso2.carbon.identity.media.core.util.StorageSystemConstants.MEMBERSHIP_CACHE;
+import static org.wso2.carbon.identity.media.core.util.StorageSystemConstants.METADATA_CACHE;
+import static org.wso2.carbon.identity.media.core.util.StorageSystemConstants.USER_ID_CACHE;
 
 /**
  * Controller class which invokes specific type of storage type implementation classes using factory pattern.
@@ -66,10 +76,11 @@ public class StorageSystemManager {
      * @param mediaMetadata The metadata object associated with the uploaded file.
      * @param tenantDomain  The tenant domain of the service call.
      * @return unique id related to the uploaded resource.
-     * @throws StorageSystemServerException The server exception related to file upload.
+     * @throws StorageSystemException Exception related to file upload. A StorageSystemClientException is thrown if
+     *                                the uploaded file exceeds the maximum allowed file size.
      */
     public String addFile(List<InputStream> inputStream, MediaMetadata mediaMetadata, String tenantDomain)
-            throws StorageSystemServerException {
+            throws StorageSystemException {
 
         StorageSystem storageSystem = getStorageSystem(getMediaStoreType());
 
@@ -99,6 +110,66 @@ public class StorageSystemManager {
         return storageSystem.getFile(id, tenantDomain, type);
     }
 
+    /**
+     * Locate a stored media and read its metadata, so that the media can be used for security evaluation and for
+     * reading its content without consulting the storage system again.
+     *
+     * @param id           The unique id related to the requesting resource.
+     * @param type         The high level content-type of the resource (if media content-type is image/png then
+     *                     type would be image).
+     * @param tenantDomain The tenant domain of the service call.
+     * @return the resolved media or null if the media is not existing.
+     * @throws StorageSystemException Exception related to resolving the media.
+     */
+    public ResolvedMedia resolveMedia(String id, String type, String tenantDomain) throws StorageSystemException {
+
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug(String.format("Resolve media of type: %s, unique id: %s and tenant domain %s.", type, id,
+                    tenantDomain));
+        }
+        StorageSystem storageSystem = getStorageSystem(getMediaStoreType());
+        return storageSystem.resolveMedia(id, type, tenantDomain);
+    }
+
+    /**
+     * Method which locates a representation of a stored media uploaded with multiple files and reads the metadata of
+     * the media.
+     *
+     * @param id           The unique id of the media.
+     * @param type         The high level content-type of the media.
+     * @param tenantDomain The tenant domain of the media.
+     * @param identifier   The identifier of the representation.
+     * @return the resolved representation or null if the media or the representation is not existing.
+     * @throws StorageSystemException Exception related to resolving the media.
+     */
+    public ResolvedMedia resolveMedia(String id, String type, String tenantDomain, String identifier)
+            throws StorageSystemException {
+
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug(String.format("Resolve representation: %s of media of type: %s, unique id: %s and tenant " +
+                    "domain %s.", identifier, type, id, tenantDomain));
+        }
+        StorageSystem storageSystem = getStorageSystem(getMediaStoreType());
+        return storageSystem.resolveMedia(id, type, tenantDomain, identifier);
+    }
+
+    /**
+     * Method which retrieves the contents of a resolved media.
+     *
+     * @param resolvedMedia The resolved media.
+     * @return requested file.
+     * @throws StorageSystemException Exception related to retrieving the media.
+     */
+    public DataContent readContent(ResolvedMedia resolvedMedia) throws StorageSystemException {
+
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug(String.format("Download resolved media for tenant domain %s.",
+                    resolvedMedia.getTenantDomain()));
+        }
+        StorageSystem storageSystem = getStorageSystem(getMediaStoreType());
+        return storageSystem.getFile(resolvedMedia);
+    }
+
     /**
      * Security evaluation for downloading public resource.
      *
@@ -121,7 +192,9 @@ public class StorageSystemManager {
     }
 
     /**
-     * Security evaluation for downloading protected resource.
+     * Security evaluation for downloading protected resource. The users allowed to access the media are evaluated by
+     * the storage system, while the groups and roles allowed to access the media are evaluated from its metadata
+     * against the memberships of the user, as for a resolved media.
      *
      * @param mediaId      The unique id related to the requesting resource.
      * @param type         The high level content-type of the resource (if media content-type is image/png then
@@ -140,7 +213,25 @@ public class StorageSystemManager {
         }
         StorageSystem storageSystem = getStorageSystem(getMediaStoreType());
         String userId = getUserIdFromUserName(username);
-        return storageSystem.isDownloadAllowedForProtectedMedia(mediaId, type, tenantDomain, userId);
+        if (storageSystem.isDownloadAllowedForProtectedMedia(mediaId, type, tenantDomain, userId)) {
+            return true;
+        }
+        ResolvedMedia resolvedMedia;
+        try {
+            resolvedMedia = storageSystem.resolveMedia(mediaId, type, tenantDomain);
+        } catch (StorageSystemServerException e) {
+            throw e;
+        } catch (StorageSystemException e) {
+            throw new StorageSystemServerException(String.format("Error while resolving media of type: %s with " +
+                    "unique id: %s in tenant domain: %s to evaluate its download security.", type, mediaId,
+                    tenantDomain), e);
+        }
+        if (resolvedMedia == null || resolvedMedia.getMetadata() == null) {
+            return false;
+        }
+        // The memberships of the user are only loaded for media shared with groups or roles.
+        StoredMediaMetadata metadata = resolvedMedia.getMetadata();
+        return metadata.hasMembershipGrants() && metadata.isAccessAllowedForMemberships(getUserMemberships(username));
     }
 
     /**
@@ -166,6 +257,61 @@ public class StorageSystemManager {
         return storageSystem.isMediaManagementAllowedForEndUser(mediaId, type, tenantDomain, userId);
     }
 
+    /**
+     * Security evaluation for downloading a resolved public resource.
+     *
+     * @param resolvedMedia The resolved media, or null if the media is not existing.
+     * @return true if access to the resource is permitted.
+     */
+    public boolean isDownloadAllowedForPublicMedia(ResolvedMedia resolvedMedia) {
+
+        return resolvedMedia != null && resolvedMedia.getMetadata() != null &&
+                resolvedMedia.getMetadata().isPubliclyAccessible();
+    }
+
+    /**
+     * Security evaluation for downloading a resolved protected resource.
+     *
+     * @param resolvedMedia The resolved media, or null if the media is not existing.
+     * @param username      The username of the user.
+     * @return true if access to the resource is permitted.
+     * @throws StorageSystemServerException The server exception related to security evaluation during file download.
+     */
+    public boolean isDownloadAllowedForProtectedMedia(ResolvedMedia resolvedMedia, String username)
+            throws StorageSystemServerException {
+
+        if (resolvedMedia == null || resolvedMedia.getMetadata() == null) {
+            return false;
+        }
+        StoredMediaMetadata metadata = resolvedMedia.getMetadata();
+        // Public media doesn't require the user id of the requester to be resolved.
+        if (metadata.isPubliclyAccessible()) {
+            return true;
+        }
+        if (metadata.isAccessAllowed(getUserIdFromUserName(username))) {
+            return true;
+        }
+        // The memberships of the user are only loaded for media shared with groups or roles.
+        return metadata.hasMembershipGrants() && metadata.isAccessAllowedForMemberships(getUserMemberships(username));
+    }
+
+    /**
+     * Security evaluation for management of a resolved media by an end-user.
+     *
+     * @param resolvedMedia The resolved media, or null if the media is not existing.
+     * @param username      The username of the user.
+     * @return true if media management is permitted.
+     * @throws StorageSystemServerException The server exception related to security evaluation.
+     */
+    public boolean isMediaManagementAllowedForEndUser(ResolvedMedia resolvedMedia, String username)
+            throws StorageSystemServerException {
+
+        if (resolvedMedia == null || resolvedMedia.getMetadata() == null) {
+            return false;
+        }
+        return resolvedMedia.getMetadata().isOwnedBy(getUserIdFromUserName(username));
+    }
+
     /**
      * Retrieve media information for the requested media.
      *
@@ -228,6 +374,25 @@ public class StorageSystemManager {
 
     }
 
+    /**
+     * Method which transforms a resolved media to a variant which is at most of the given width, e.g. a resized
+     * image.
+     *
+     * @param resolvedMedia The resolved media.
+     * @param width         The requested width of the media in pixels.
+     * @return the resolved variant, or the given resolved media if no variant is applicable.
+     * @throws StorageSystemException Exception related to transforming the media.
+     */
+    public ResolvedMedia transform(ResolvedMedia resolvedMedia, int width) throws StorageSystemException {
+
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug(String.format("Transform media of type: %s and unique id: %s to width: %d.",
+                    resolvedMedia.getType(), resolvedMedia.getId(), width));
+        }
+        StorageSystem storageSystem = getStorageSystem(getMediaStoreType());
+        return storageSystem.transform(resolvedMedia, width);
+    }
+
     /**
      * Validate if the uploaded media content type is a supported media type.
      *
@@ -244,30 +409,8 @@ public class StorageSystemManager {
             LOGGER.debug("Started content type validation for media to be uploaded.");
         }
 
-        String envForAllowedContentTypes = System.getenv(CONFIGURABLE_MEDIA_CONTENT_TYPES);
-        HashMap<String, List<String>> allowedContentTypes = new HashMap<>();
-        if (StringUtils.isNotBlank(envForAllowedContentTypes)) {
-            String[] contentTypes = envForAllowedContentTypes.split(",");
-            for (String contentType : contentTypes) {
-                String envForAllowedContentSubTypes = System.getenv(String.format("MEDIA_%s_CONTENT_SUB_TYPES",
-                                contentType.toUpperCase(Locale.ENGLISH)));
-                if (StringUtils.isNotBlank(envForAllowedContentSubTypes)) {
-                    allowedContentTypes.put(contentType, Arrays.asList(envForAllowedContentSubTypes.split(",")));
-                } else {
-                    allowedContentTypes.put(contentType, null);
-                }
-            }
-        } else {
-            allowedContentTypes = StorageSystemUtil.getContentTypes();
-        }
-
-        if (MapUtils.isEmpty(allowedContentTypes) || !allowedContentTypes.keySet().contains(mediaTypePathParam)) {
-            throw new StorageSystemClientException(String.format("Uploading media of content-type: %s/%s is not " +
-                    "allowed.", mediaTypePathParam, contentSubType));
-        }
-
-        List<String> allowedContentSubTypes = allowedContentTypes.get(mediaTypePathParam);
-        if (CollectionUtils.isEmpty(allowedContentSubTypes) || !allowedContentSubTypes.contains(contentSubType)) {
+        ContentTypeMatcher contentTypeMatcher = StorageSystemUtil.getContentTypeMatcher();
+        if (contentTypeMatcher == null || !contentTypeMatcher.isAllowed(mediaTypePathParam, contentSubType)) {
             throw new StorageSystemClientException(String.format("Uploading media of content-type: %s/%s is not " +
                     "allowed.", mediaTypePathParam, contentSubType));
         }
@@ -286,24 +429,65 @@ public class StorageSystemManager {
                     "supported content type.");
         }
 
-        String envForAllowedContentTypes = System.getenv(CONFIGURABLE_MEDIA_CONTENT_TYPES);
-        Set<String> allowedContentTypes;
-        if (StringUtils.isNotBlank(envForAllowedContentTypes)) {
-            String[] contentTypes = envForAllowedContentTypes.split(",");
-            allowedContentTypes = new HashSet<>(Arrays.asList(contentTypes));
+        ContentTypeMatcher contentTypeMatcher = StorageSystemUtil.getContentTypeMatcher();
+        if (contentTypeMatcher == null || !contentTypeMatcher.isTypeAllowed(mediaTypePathParam)) {
+            throw new StorageSystemClientException(String.format("Unsupported file content type: %s available as a " +
+                    "path parameter in the request.", mediaTypePathParam));
+        }
+    }
 
-        } else {
-            allowedContentTypes = StorageSystemUtil.getContentTypes().keySet();
+    /**
+     * Evaluate whether a user has a permission. The decisions are cached for a short time when the authorization
+     * decision cache is enabled.
+     *
+     * @param username     The username qualified with the user store domain.
+     * @param permission   The permission.
+     * @param action       The action on the permission.
+     * @param tenantDomain The tenant domain of the user.
+     * @return true if the user has the permission.
+     * @throws StorageSystemServerException The server exception related to evaluating the permission.
+     */
+    public boolean isUserAuthorized(String username, String permission, String action, String tenantDomain)
+            throws StorageSystemServerException {
+
+        final int tenantId = IdentityTenantUtil.getTenantId(tenantDomain);
+        AuthorizationDecisionCache authorizationDecisionCache =
+                MediaServiceDataHolder.getInstance().getAuthorizationDecisionCache();
+        if (authorizationDecisionCache == null || username == null || permission == null) {
+            return evaluateUserAuthorization(username, permission, action, tenantId);
         }
+        return authorizationDecisionCache.isAuthorized(tenantId, username, permission, action,
+                new AuthorizationDecisionCache.Loader() {
+                    @Override
+                    public boolean isAuthorized(String username, String permission, String action)
+                            throws StorageSystemServerException {
+
+                        return evaluateUserAuthorization(username, permission, action, tenantId);
+                    }
+                });
+    }
 
-        if (CollectionUtils.isEmpty(allowedContentTypes) || !allowedContentTypes.contains(mediaTypePathParam)) {
-            throw new StorageSystemClientException(String.format("Unsupported file content type: %s available as a " +
-                    "path parameter in the request.", mediaTypePathParam));
+    private boolean evaluateUserAuthorization(String username, String permission, String action, int tenantId)
+            throws StorageSystemServerException {
+
+        try {
+            RealmService realmService = MediaServiceDataHolder.getInstance().getRealmService();
+            UserRealm userRealm = realmService.getTenantUserRealm(tenantId);
+            if (userRealm == null) {
+                return false;
+            }
+            AuthorizationManager authorizationManager = userRealm.getAuthorizationManager();
+            return authorizationManager != null && authorizationManager.isUserAuthorized(username, permission,
+                    action);
+        } catch (UserStoreException e) {
+            throw new StorageSystemServerException("Error occurred while evaluating the permission: " + permission +
+                    " of the user: " + username, e);
         }
     }
 
     /**
-     * Retrieve the username of the user who is making the request to the media service.
+     * Retrieve the username of the user who is making the request to the media service. The user ids resolved for
+     * usernames are cached when the user id cache is enabled.
      *
      * @param username The username.
      * @return user id.
@@ -311,10 +495,111 @@ public class StorageSystemManager {
      */
     public String getUserIdFromUserName(String username) throws StorageSystemServerException {
 
+        final int tenantId = PrivilegedCarbonContext.getThreadLocalCarbonContext().getTenantId();
+        UserIdCache userIdCache = MediaServiceDataHolder.getInstance().getUserIdCache();
+        if (userIdCache == null || username == null) {
+            return loadUserIdFromUserName(username, tenantId);
+        }
+        return userIdCache.get(tenantId, username, new UserIdCache.Loader() {
+            @Override
+            public String load(String username) throws StorageSystemServerException {
+
+                return loadUserIdFromUserName(username, tenantId);
+            }
+        });
+    }
+
+    /**
+     * Retrieve the normalized names of the groups and roles of the user who is making the request to the media
+     * service. The memberships of users are cached when the membership cache is enabled.
+     *
+     * @param username The username.
+     * @return the normalized group and role names of the user.
+     * @throws StorageSystemServerException The server exception related to retrieving the roles of the user.
+     */
+    public Set<String> getUserMemberships(String username) throws StorageSystemServerException {
+
+        if (username == null) {
+            return Collections.emptySet();
+        }
+        final int tenantId = PrivilegedCarbonContext.getThreadLocalCarbonContext().getTenantId();
+        UserMembershipCache userMembershipCache = MediaServiceDataHolder.getInstance().getUserMembershipCache();
+        if (userMembershipCache == null) {
+            return loadUserMemberships(username, tenantId);
+        }
+        return userMembershipCache.get(tenantId, username, new UserMembershipCache.Loader() {
+            @Override
+            public Set<String> load(String username) throws StorageSystemServerException {
+
+                return loadUserMemberships(username, tenantId);
+            }
+        });
+    }
+
+    /**
+     * Returns a snapshot of the statistics of the in-memory caches of the media service, e.g. to monitor their hit
+     * ratios and size them. The statistics are keyed by the name of the cache in media.properties file, and caches
+     * which are disabled are left out.
+     *
+     * @return the statistics of the enabled caches.
+     */
+    public Map<String, CacheStatistics> getCacheStatistics() {
+
+        MediaServiceDataHolder dataHolder = MediaServiceDataHolder.getInstance();
+        Map<String, CacheStatistics> cacheStatistics = new LinkedHashMap<>();
+        MediaMetadataCache mediaMetadataCache = dataHolder.getMediaMetadataCache();
+        if (mediaMetadataCache != null) {
+            cacheStatistics.put(METADATA_CACHE, mediaMetadataCache.getStatistics());
+        }
+        UserIdCache userIdCache = dataHolder.getUserIdCache();
+        if (userIdCache != null) {
+            cacheStatistics.put(USER_ID_CACHE, userIdCache.getStatistics());
+        }
+        AuthorizationDecisionCache authorizationDecisionCache = dataHolder.getAuthorizationDecisionCache();
+        if (authorizationDecisionCache != null) {
+            cacheStatistics.put(AUTHORIZATION_CACHE, authorizationDecisionCache.getStatistics());
+        }
+        UserMembershipCache userMembershipCache = dataHolder.getUserMembershipCache();
+        if (userMembershipCache != null) {
+            cacheStatistics.put(MEMBERSHIP_CACHE, userMembershipCache.getStatistics());
+        }
+        return cacheStatistics;
+    }
+
+    private Set<String> loadUserMemberships(String username, int tenantId) throws StorageSystemServerException {
+
+        try {
+            RealmService realmService = MediaServiceDataHolder.getInstance().getRealmService();
+            UserRealm userRealm = realmService.getTenantUserRealm(tenantId);
+            if (userRealm == null) {
+                return Collections.emptySet();
+            }
+            // The role list of a user holds both the groups of the user store, qualified with their domain unless
+            // they belong to the primary user store, and the internal roles qualified with the internal domain.
+            String[] roles = userRealm.getUserStoreManager().getRoleListOfUser(username);
+            if (roles == null || roles.length == 0) {
+                return Collections.emptySet();
+            }
+            Set<String> memberships = new HashSet<>();
+            for (String role : roles) {
+                memberships.add(MembershipNames.ofGroup(role));
+            }
+            if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug(String.format("Retrieved %d groups and roles of the user: %s.", memberships.size(),
+                        username));
+            }
+            return Collections.unmodifiableSet(memberships);
+        } catch (UserStoreException e) {
+            throw new StorageSystemServerException("Error occurred while retrieving the roles of the user: " +
+                    username, e);
+        }
+    }
+
+    private String loadUserIdFromUserName(String username, int tenantId) throws StorageSystemServerException {
+
         try {
             RealmService realmService = MediaServiceDataHolder.getInstance().getRealmService();
-            int tenantID = PrivilegedCarbonContext.getThreadLocalCarbonContext().getTenantId();
-            UserRealm userRealm = realmService.getTenantUserRealm(tenantID);
+            UserRealm userRealm = realmService.getTenantUserRealm(tenantId);
             if (userRealm != null) {
                 UserStoreManager userStoreManager = (UserStoreManager) userRealm.getUserStoreManager();
                 String userIdFromUserName = ((AbstractUserStoreManager) userStoreManager)
@@ -332,34 +617,40 @@ public class StorageSystemManager {
     }
 
     /**
-     * Validates if the file size of the media to be uploaded doesn't exceed the maximum allowed file size.
+     * Validates if the file size of the media to be uploaded doesn't exceed the maximum allowed file size. The input
+     * stream is read, up to one byte more than the maximum allowed file size, to measure the media and is reset
+     * afterwards, hence it must support mark and reset.
      *
      * @param inputStream The media as an input.
      * @throws StorageSystemException Exception related to validating media size.
+     * @deprecated The maximum allowed file size is enforced by the storage system while the media is being stored,
+     * which throws a StorageSystemClientException from {@link #addFile(List, MediaMetadata, String)} if the media
+     * exceeds the maximum allowed file size.
      */
+    @Deprecated
     public void validateMediaSize(InputStream inputStream) throws StorageSystemException {
 
-        String envForMediaSize = System.getenv(CONFIGURABLE_MAXIMUM_MEDIA_SIZE_IN_BYTES);
-        int allowedMaximumMediaSize;
-        if (StringUtils.isNotBlank(envForMediaSize)) {
-            allowedMaximumMediaSize = Integer.parseInt(envForMediaSize);
-        } else {
-            allowedMaximumMediaSize = StorageSystemUtil.getMediaMaximumSize();
-        }
+        long allowedMaximumMediaSize = StorageSystemUtil.getAllowedMaximumMediaSize();
 
+        if (inputStream.markSupported()) {
+            inputStream.mark((int) Math.min(allowedMaximumMediaSize + 1, Integer.MAX_VALUE));
+        }
+        SizeLimitedInputStream sizeLimitedInputStream = new SizeLimitedInputStream(inputStream,
+                allowedMaximumMediaSize);
         try {
-            byte[] mediaByteArray = IOUtils.toByteArray(inputStream);
-            if (mediaByteArray.length > allowedMaximumMediaSize) {
-                throw new StorageSystemClientException(String.format("The uploaded media size: %skb exceeds the " +
-                                "maximum allowed file size: %skb", mediaByteArray.length / 1000.0,
-                        allowedMaximumMediaSize / 1000.0));
+            byte[] buffer = new byte[8192];
+            while (sizeLimitedInputStream.read(buffer) != -1) {
+                // Only the number of bytes read is of interest.
             }
             inputStream.reset();
             if (LOGGER.isDebugEnabled()) {
                 LOGGER.debug(String.format("The file size: %skb of the media to be uploaded doesn't exceed the " +
                                 "maximum allowed file size: %skb. Hence proceeding with the upload.",
-                        mediaByteArray.length / 1000.0, allowedMaximumMediaSize / 1000.0));
+                        sizeLimitedInputStream.getCount() / 1000.0, allowedMaximumMediaSize / 1000.0));
             }
+        } catch (MediaSizeLimitExceededException e) {
+            throw new StorageSystemClientException(String.format("The uploaded media size exceeds the maximum " +
+                    "allowed file size: %skb", allowedMaximumMediaSize / 1000.0), e);
         } catch (IOException e) {
             throw new StorageSystemServerException("Error occurred while calculating media size.", e);
         }
@@ -367,18 +658,13 @@ public class StorageSystemManager {
 
     private String getMediaStoreType() {
 
-        String envForMediaStoreType = System.getenv(CONFIGURABLE_MEDIA_STORE_TYPE);
-        if (StringUtils.isNotBlank(envForMediaStoreType)) {
-            return envForMediaStoreType;
-        } else {
-            return StorageSystemUtil.getMediaStoreType();
-        }
+        return StorageSystemUtil.getMediaStoreType();
     }
 
     private StorageSystem getStorageSystem(String storageType) throws StorageSystemServerException {
 
-        StorageSystemFactory storageSystemFactory =
-                MediaServiceDataHolder.getInstance().getStorageSystemFactories().get(storageType);
+        StorageSystemFactory storageSystemFactory = storageType != null ?
+                MediaServiceDataHolder.getInstance().getStorageSystemFactories().get(storageType) : null;
         if (storageSystemFactory == null) {
             throw new StorageSystemServerException(String.format("Unable to obtain StorageSystemFactory for " +
                     "configured media store type: %s", storageType));
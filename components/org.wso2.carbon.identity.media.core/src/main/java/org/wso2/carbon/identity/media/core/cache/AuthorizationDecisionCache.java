@@ -0,0 +1,138 @@
+/*
+ * Copyright (c) 2020, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.media.core.cache;
+
+import org.wso2.carbon.identity.media.core.exception.StorageSystemServerException;
+
+/**
+ * In-memory cache of the permission checks of users, kept per tenant. Decisions expire after a short time to live,
+ * which bounds how long a change to the permissions of a user may take to be honoured. The number of expired
+ * decisions found by lookups is reported in the cache statistics along with the hit ratio.
+ */
+public class AuthorizationDecisionCache {
+
+    private static final char ACTION_SEPARATOR = '#';
+
+    private final ExpiringCache<TenantScopedKey, Boolean> cache;
+
+    /**
+     * Evaluates whether a user has a permission.
+     */
+    public interface Loader {
+
+        /**
+         * Evaluate whether the given user is allowed to perform the action on the permission.
+         *
+         * @param username   The username.
+         * @param permission The permission.
+         * @param action     The action on the permission.
+         * @return true if the user has the permission.
+         * @throws StorageSystemServerException If an error occurs while evaluating the permission.
+         */
+        boolean isAuthorized(String username, String permission, String action) throws StorageSystemServerException;
+    }
+
+    /**
+     * Creates an authorization decision cache.
+     *
+     * @param timeToLiveSeconds The time in seconds for which a decision is cached.
+     * @param maximumEntries    The maximum number of cached decisions.
+     */
+    public AuthorizationDecisionCache(long timeToLiveSeconds, int maximumEntries) {
+
+        cache = new ExpiringCache<>("authorization decision cache", timeToLiveSeconds, timeToLiveSeconds,
+                maximumEntries);
+    }
+
+    /**
+     * Retrieve whether a user has a permission, evaluating it with the given loader if the decision is not cached.
+     *
+     * @param tenantId   The id of the tenant of the user.
+     * @param username   The username.
+     * @param permission The permission.
+     * @param action     The action on the permission.
+     * @param loader     The loader used if the decision is not cached.
+     * @return true if the user has the permission.
+     * @throws StorageSystemServerException If an error occurs while evaluating the permission.
+     */
+    public boolean isAuthorized(int tenantId, final String username, final String permission, final String action,
+                                final Loader loader) throws StorageSystemServerException {
+
+        Boolean authorized = cache.get(new TenantScopedKey(tenantId, username, permission + ACTION_SEPARATOR + action),
+                new ExpiringCache.Loader<TenantScopedKey, Boolean>() {
+                    @Override
+                    public Boolean load(TenantScopedKey key) throws StorageSystemServerException {
+
+                        return loader.isAuthorized(username, permission, action);
+                    }
+                });
+        return Boolean.TRUE.equals(authorized);
+    }
+
+    /**
+     * Remove all the cached decisions of a user.
+     *
+     * @param tenantId The id of the tenant of the user.
+     * @param username The username.
+     */
+    public void invalidateUser(final int tenantId, final String username) {
+
+        cache.invalidate(new ExpiringCache.EntryFilter<TenantScopedKey, Boolean>() {
+            @Override
+            public boolean matches(TenantScopedKey key, Boolean value) {
+
+                return key.getTenantId() == tenantId && key.getName().equals(username);
+            }
+        });
+    }
+
+    /**
+     * Remove all the cached decisions of a tenant.
+     *
+     * @param tenantId The id of the tenant.
+     */
+    public void invalidateTenant(final int tenantId) {
+
+        cache.invalidate(new ExpiringCache.EntryFilter<TenantScopedKey, Boolean>() {
+            @Override
+            public boolean matches(TenantScopedKey key, Boolean value) {
+
+                return key.getTenantId() == tenantId;
+            }
+        });
+    }
+
+    /**
+     * Remove all the entries from the cache.
+     */
+    public void invalidateAll() {
+
+        cache.invalidateAll();
+    }
+
+    /**
+     * Returns a snapshot of the cache statistics. Each entry has a weight of one.
+     *
+     * @return cache statistics.
+     */
+    public CacheStatistics getStatistics() {
+
+        return cache.getStatistics();
+    }
+}
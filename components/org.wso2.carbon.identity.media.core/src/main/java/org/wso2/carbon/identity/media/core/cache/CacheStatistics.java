@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2020, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.media.core.cache;
+
+/**
+ * Immutable snapshot of the statistics of a cache.
+ */
+public class CacheStatistics {
+
+    private final long hitCount;
+    private final long missCount;
+    private final long evictionCount;
+    private final long size;
+    private final long weight;
+    private final long expirationCount;
+
+    public CacheStatistics(long hitCount, long missCount, long evictionCount, long size, long weight) {
+
+        this(hitCount, missCount, evictionCount, size, weight, 0);
+    }
+
+    public CacheStatistics(long hitCount, long missCount, long evictionCount, long size, long weight,
+                           long expirationCount) {
+
+        this.hitCount = hitCount;
+        this.missCount = missCount;
+        this.evictionCount = evictionCount;
+        this.size = size;
+        this.weight = weight;
+        this.expirationCount = expirationCount;
+    }
+
+    public long getHitCount() {
+
+        return hitCount;
+    }
+
+    public long getMissCount() {
+
+        return missCount;
+    }
+
+    public long getEvictionCount() {
+
+        return evictionCount;
+    }
+
+    /**
+     * Returns the number of entries in the cache at the time the snapshot was taken.
+     *
+     * @return number of entries.
+     */
+    public long getSize() {
+
+        return size;
+    }
+
+    /**
+     * Returns the total weight of the entries in the cache at the time the snapshot was taken.
+     *
+     * @return total weight.
+     */
+    public long getWeight() {
+
+        return weight;
+    }
+
+    /**
+     * Returns the number of lookups which found an expired entry, i.e. an entry that was too stale to be served.
+     *
+     * @return number of expired lookups.
+     */
+    public long getExpirationCount() {
+
+        return expirationCount;
+    }
+
+    /**
+     * Returns the ratio of lookups which were served from the cache.
+     *
+     * @return hit ratio between 0 and 1, or 0 if there were no lookups.
+     */
+    public double getHitRatio() {
+
+        long requestCount = hitCount + missCount;
+        if (requestCount == 0) {
+            return 0;
+        }
+        return (double) hitCount / requestCount;
+    }
+
+    @Override
+    public String toString() {
+
+        return String.format("hits: %d, misses: %d, evictions: %d, expirations: %d, size: %d, weight: %d, " +
+                "hit ratio: %.2f", hitCount, missCount, evictionCount, expirationCount, size, weight, getHitRatio());
+    }
+}
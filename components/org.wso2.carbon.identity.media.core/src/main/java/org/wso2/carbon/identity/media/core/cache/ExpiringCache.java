@@ -0,0 +1,290 @@
+/*
+ * Copyright (c) 2020, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.media.core.cache;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.identity.media.core.exception.StorageSystemServerException;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-memory cache whose entries expire after a time to live. Null values are cached as well, with a separate time to
+ * live. The number of entries is bounded, and concurrent lookups of an uncached key share a single load.
+ *
+ * @param <K> The type of the keys.
+ * @param <V> The type of the values.
+ */
+public class ExpiringCache<K, V> {
+
+    private static final Log LOGGER = LogFactory.getLog(ExpiringCache.class);
+    // Eviction removes entries until the cache is filled to this percentage, so that the entries are not scanned on
+    // each put once the cache is full.
+    private static final int EVICTION_TARGET_PERCENTAGE = 90;
+
+    private final String name;
+    private final long timeToLiveNanos;
+    private final long nullTimeToLiveNanos;
+    private final int maximumEntries;
+    private final int evictionTargetEntries;
+    private final ConcurrentMap<K, Entry<V>> entries = new ConcurrentHashMap<>();
+    private final ConcurrentMap<K, FutureTask<V>> pendingLoads = new ConcurrentHashMap<>();
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong evictionCount = new AtomicLong();
+    private final AtomicLong expirationCount = new AtomicLong();
+    private final AtomicBoolean evicting = new AtomicBoolean();
+
+    /**
+     * Loads the value of a key which is not cached.
+     *
+     * @param <K> The type of the keys.
+     * @param <V> The type of the values.
+     */
+    public interface Loader<K, V> {
+
+        /**
+         * Load the value of the given key.
+         *
+         * @param key The key.
+         * @return the value, which may be null.
+         * @throws StorageSystemServerException If an error occurs while loading the value.
+         */
+        V load(K key) throws StorageSystemServerException;
+    }
+
+    /**
+     * Selects the entries to be removed from the cache.
+     *
+     * @param <K> The type of the keys.
+     * @param <V> The type of the values.
+     */
+    public interface EntryFilter<K, V> {
+
+        boolean matches(K key, V value);
+    }
+
+    /**
+     * Creates an expiring cache.
+     *
+     * @param name                  The name of the cache used in logs.
+     * @param timeToLiveSeconds     The time in seconds for which a value is cached.
+     * @param nullTimeToLiveSeconds The time in seconds for which a null value is cached.
+     * @param maximumEntries        The maximum number of cached entries.
+     */
+    public ExpiringCache(String name, long timeToLiveSeconds, long nullTimeToLiveSeconds, int maximumEntries) {
+
+        this.name = name;
+        this.timeToLiveNanos = TimeUnit.SECONDS.toNanos(timeToLiveSeconds);
+        this.nullTimeToLiveNanos = TimeUnit.SECONDS.toNanos(nullTimeToLiveSeconds);
+        this.maximumEntries = Math.max(1, maximumEntries);
+        this.evictionTargetEntries = (int) ((long) this.maximumEntries * EVICTION_TARGET_PERCENTAGE / 100);
+    }
+
+    /**
+     * Retrieve the value of a key, loading it with the given loader if it is not cached or has expired. Failed loads
+     * are not cached.
+     *
+     * @param key    The key.
+     * @param loader The loader used if the value is not cached.
+     * @return the value, which may be null.
+     * @throws StorageSystemServerException If an error occurs while loading the value.
+     */
+    public V get(final K key, final Loader<K, V> loader) throws StorageSystemServerException {
+
+        Entry<V> entry = entries.get(key);
+        if (entry != null) {
+            if (!entry.isExpired(System.nanoTime())) {
+                hitCount.incrementAndGet();
+                return entry.value;
+            }
+            expirationCount.incrementAndGet();
+        }
+        missCount.incrementAndGet();
+
+        FutureTask<V> load = new FutureTask<>(new Callable<V>() {
+            @Override
+            public V call() throws Exception {
+
+                return loader.load(key);
+            }
+        });
+        FutureTask<V> pendingLoad = pendingLoads.putIfAbsent(key, load);
+        if (pendingLoad != null) {
+            return await(pendingLoad);
+        }
+        try {
+            load.run();
+            V value = await(load);
+            // A load that was invalidated while in progress may have read a stale value, so it is not cached.
+            if (pendingLoads.remove(key, load)) {
+                put(key, value);
+            }
+            return value;
+        } finally {
+            pendingLoads.remove(key, load);
+        }
+    }
+
+    /**
+     * Remove the entry of a key from the cache.
+     *
+     * @param key The key.
+     */
+    public void invalidate(K key) {
+
+        pendingLoads.remove(key);
+        entries.remove(key);
+    }
+
+    /**
+     * Remove the entries matching the given filter from the cache. Loads in progress for keys matching the filter
+     * are not cached.
+     *
+     * @param filter The filter selecting the entries to be removed. The value is null for loads in progress.
+     */
+    public void invalidate(EntryFilter<K, V> filter) {
+
+        for (Iterator<K> iterator = pendingLoads.keySet().iterator(); iterator.hasNext(); ) {
+            if (filter.matches(iterator.next(), null)) {
+                iterator.remove();
+            }
+        }
+        for (Iterator<Map.Entry<K, Entry<V>>> iterator = entries.entrySet().iterator(); iterator.hasNext(); ) {
+            Map.Entry<K, Entry<V>> cached = iterator.next();
+            if (filter.matches(cached.getKey(), cached.getValue().value)) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Remove all the entries from the cache.
+     */
+    public void invalidateAll() {
+
+        pendingLoads.clear();
+        entries.clear();
+    }
+
+    /**
+     * Returns a snapshot of the cache statistics. Each entry has a weight of one.
+     *
+     * @return cache statistics.
+     */
+    public CacheStatistics getStatistics() {
+
+        long size = entries.size();
+        return new CacheStatistics(hitCount.get(), missCount.get(), evictionCount.get(), size, size,
+                expirationCount.get());
+    }
+
+    private void put(K key, V value) {
+
+        long timeToLive = value != null ? timeToLiveNanos : nullTimeToLiveNanos;
+        if (timeToLive <= 0) {
+            return;
+        }
+        entries.put(key, new Entry<>(value, System.nanoTime() + timeToLive));
+        // Only one thread scans the entries at a time. Others may briefly exceed the maximum until the eviction ends.
+        if (entries.size() > maximumEntries && evicting.compareAndSet(false, true)) {
+            int evicted;
+            try {
+                evicted = evict();
+            } finally {
+                evicting.set(false);
+            }
+            if (evicted > 0) {
+                evictionCount.addAndGet(evicted);
+                if (LOGGER.isDebugEnabled()) {
+                    LOGGER.debug(String.format("Evicted %d entries from the %s. Cache statistics: %s", evicted,
+                            name, getStatistics()));
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes the expired entries, followed by arbitrary entries until the cache holds no more than the eviction
+     * target number of entries.
+     */
+    private int evict() {
+
+        int evicted = 0;
+        long now = System.nanoTime();
+        for (Iterator<Entry<V>> iterator = entries.values().iterator(); iterator.hasNext(); ) {
+            if (iterator.next().isExpired(now)) {
+                iterator.remove();
+                evicted++;
+            }
+        }
+        for (Iterator<K> iterator = entries.keySet().iterator();
+             entries.size() > evictionTargetEntries && iterator.hasNext(); ) {
+            iterator.next();
+            iterator.remove();
+            evicted++;
+        }
+        return evicted;
+    }
+
+    private V await(FutureTask<V> load) throws StorageSystemServerException {
+
+        try {
+            return load.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new StorageSystemServerException("Interrupted while loading an entry of the " + name + ".", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof StorageSystemServerException) {
+                throw (StorageSystemServerException) e.getCause();
+            }
+            throw new StorageSystemServerException("Error occurred while loading an entry of the " + name + ".",
+                    e.getCause());
+        }
+    }
+
+    /**
+     * A cached value with its expiry time.
+     */
+    private static class Entry<V> {
+
+        private final V value;
+        private final long expiryTime;
+
+        Entry(V value, long expiryTime) {
+
+            this.value = value;
+            this.expiryTime = expiryTime;
+        }
+
+        boolean isExpired(long now) {
+
+            return now - expiryTime >= 0;
+        }
+    }
+}
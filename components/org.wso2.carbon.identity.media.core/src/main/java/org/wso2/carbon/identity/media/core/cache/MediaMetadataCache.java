@@ -0,0 +1,241 @@
+/*
+ * Copyright (c) 2020, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.media.core.cache;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.identity.media.core.model.StoredMediaMetadata;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded in-memory cache for parsed media metadata. The cache is bounded by the total weight of the cached
+ * metadata and evicts the least recently used entries once the bound is exceeded. Entries are spread over a fixed
+ * number of independently locked segments so that concurrent lookups for different media do not contend on a single
+ * lock.
+ * <p>
+ * Metadata read on a cache miss is cached with the generation of its key captured before the read, so that metadata
+ * read before the key is invalidated, e.g. by a concurrent delete, is not cached after the invalidation.
+ */
+public class MediaMetadataCache {
+
+    private static final Log LOGGER = LogFactory.getLog(MediaMetadataCache.class);
+    private static final int SEGMENT_COUNT = 16;
+
+    private final Segment[] segments;
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong evictionCount = new AtomicLong();
+
+    /**
+     * Creates a metadata cache.
+     *
+     * @param maximumWeight The maximum total weight (approximate size in bytes) of the cached metadata.
+     */
+    public MediaMetadataCache(long maximumWeight) {
+
+        segments = new Segment[SEGMENT_COUNT];
+        long segmentMaximumWeight = Math.max(1, maximumWeight / SEGMENT_COUNT);
+        for (int i = 0; i < SEGMENT_COUNT; i++) {
+            segments[i] = new Segment(segmentMaximumWeight);
+        }
+    }
+
+    /**
+     * Retrieve the cached metadata for the given key.
+     *
+     * @param key The cache key.
+     * @return cached metadata or null if the metadata is not cached.
+     */
+    public StoredMediaMetadata get(MediaMetadataCacheKey key) {
+
+        StoredMediaMetadata metadata = segmentFor(key).get(key);
+        if (metadata == null) {
+            missCount.incrementAndGet();
+        } else {
+            hitCount.incrementAndGet();
+        }
+        return metadata;
+    }
+
+    /**
+     * Returns the generation of the given key, which is captured before the metadata of the key is read on a cache
+     * miss and passed to {@link #put(MediaMetadataCacheKey, StoredMediaMetadata, long)}. The generation is tracked
+     * per segment, hence an invalidation of another key of the segment only causes a concurrent read not to be cached.
+     *
+     * @param key The cache key.
+     * @return the generation of the key.
+     */
+    public long getGeneration(MediaMetadataCacheKey key) {
+
+        return segmentFor(key).getGeneration();
+    }
+
+    /**
+     * Add metadata read on a cache miss to the cache, unless the key was invalidated since the given generation was
+     * captured, in which case the metadata may be stale. Metadata heavier than a cache segment is not cached.
+     *
+     * @param key        The cache key.
+     * @param metadata   The metadata to be cached.
+     * @param generation The generation of the key captured before the metadata was read.
+     */
+    public void put(MediaMetadataCacheKey key, StoredMediaMetadata metadata, long generation) {
+
+        Segment segment = segmentFor(key);
+        int evicted;
+        synchronized (segment) {
+            if (segment.getGeneration() != generation) {
+                return;
+            }
+            evicted = segment.put(key, metadata);
+        }
+        recordEvictions(evicted);
+    }
+
+    private void recordEvictions(int evicted) {
+
+        if (evicted > 0) {
+            evictionCount.addAndGet(evicted);
+            if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug(String.format("Evicted %d entries from the media metadata cache. Cache statistics: %s",
+                        evicted, getStatistics()));
+            }
+        }
+    }
+
+    /**
+     * Remove the metadata for the given key from the cache.
+     *
+     * @param key The cache key.
+     */
+    public void invalidate(MediaMetadataCacheKey key) {
+
+        segmentFor(key).invalidate(key);
+    }
+
+    /**
+     * Remove all the entries from the cache.
+     */
+    public void invalidateAll() {
+
+        for (Segment segment : segments) {
+            segment.clear();
+        }
+    }
+
+    /**
+     * Returns a snapshot of the cache statistics.
+     *
+     * @return cache statistics.
+     */
+    public CacheStatistics getStatistics() {
+
+        long size = 0;
+        long weight = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.entries.size();
+                weight += segment.weight;
+            }
+        }
+        return new CacheStatistics(hitCount.get(), missCount.get(), evictionCount.get(), size, weight);
+    }
+
+    private Segment segmentFor(MediaMetadataCacheKey key) {
+
+        int hash = key.hashCode();
+        hash ^= (hash >>> 16);
+        return segments[(hash & Integer.MAX_VALUE) % SEGMENT_COUNT];
+    }
+
+    /**
+     * An access ordered, weight bounded partition of the cache.
+     */
+    private static class Segment {
+
+        private final long maximumWeight;
+        private final LinkedHashMap<MediaMetadataCacheKey, StoredMediaMetadata> entries =
+                new LinkedHashMap<>(16, 0.75f, true);
+        private long weight;
+        // Incremented whenever an entry is invalidated, so that reads which started before are not cached.
+        private long generation;
+
+        Segment(long maximumWeight) {
+
+            this.maximumWeight = maximumWeight;
+        }
+
+        synchronized StoredMediaMetadata get(MediaMetadataCacheKey key) {
+
+            return entries.get(key);
+        }
+
+        synchronized int put(MediaMetadataCacheKey key, StoredMediaMetadata metadata) {
+
+            if (metadata.getWeight() > maximumWeight) {
+                remove(key);
+                return 0;
+            }
+            StoredMediaMetadata previous = entries.put(key, metadata);
+            if (previous != null) {
+                weight -= previous.getWeight();
+            }
+            weight += metadata.getWeight();
+
+            int evicted = 0;
+            Iterator<Map.Entry<MediaMetadataCacheKey, StoredMediaMetadata>> iterator = entries.entrySet().iterator();
+            while (weight > maximumWeight && iterator.hasNext()) {
+                Map.Entry<MediaMetadataCacheKey, StoredMediaMetadata> eldest = iterator.next();
+                weight -= eldest.getValue().getWeight();
+                iterator.remove();
+                evicted++;
+            }
+            return evicted;
+        }
+
+        synchronized long getGeneration() {
+
+            return generation;
+        }
+
+        synchronized void invalidate(MediaMetadataCacheKey key) {
+
+            generation++;
+            remove(key);
+        }
+
+        synchronized void remove(MediaMetadataCacheKey key) {
+
+            StoredMediaMetadata removed = entries.remove(key);
+            if (removed != null) {
+                weight -= removed.getWeight();
+            }
+        }
+
+        synchronized void clear() {
+
+            generation++;
+            entries.clear();
+            weight = 0;
+        }
+    }
+}
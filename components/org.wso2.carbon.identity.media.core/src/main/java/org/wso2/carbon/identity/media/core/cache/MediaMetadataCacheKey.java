@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) 2020, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.media.core.cache;
+
+/**
+ * Key identifying the metadata of a stored media by tenant, media type and media id.
+ */
+public final class MediaMetadataCacheKey {
+
+    private final int tenantId;
+    private final String type;
+    private final String id;
+
+    public MediaMetadataCacheKey(int tenantId, String type, String id) {
+
+        this.tenantId = tenantId;
+        this.type = type;
+        this.id = id;
+    }
+
+    public int getTenantId() {
+
+        return tenantId;
+    }
+
+    public String getType() {
+
+        return type;
+    }
+
+    public String getId() {
+
+        return id;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        MediaMetadataCacheKey that = (MediaMetadataCacheKey) o;
+        return tenantId == that.tenantId && type.equals(that.type) && id.equals(that.id);
+    }
+
+    @Override
+    public int hashCode() {
+
+        int result = tenantId;
+        result = 31 * result + type.hashCode();
+        result = 31 * result + id.hashCode();
+        return result;
+    }
+
+    @Override
+    public String toString() {
+
+        return tenantId + "/" + type + "/" + id;
+    }
+}
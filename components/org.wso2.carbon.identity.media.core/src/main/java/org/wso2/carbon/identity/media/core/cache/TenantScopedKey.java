@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2020, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.media.core.cache;
+
+/**
+ * Key identifying a name, optionally qualified by a second name, within a tenant.
+ */
+public final class TenantScopedKey {
+
+    private final int tenantId;
+    private final String name;
+    private final String qualifier;
+
+    public TenantScopedKey(int tenantId, String name) {
+
+        this(tenantId, name, null);
+    }
+
+    public TenantScopedKey(int tenantId, String name, String qualifier) {
+
+        this.tenantId = tenantId;
+        this.name = name;
+        this.qualifier = qualifier;
+    }
+
+    public int getTenantId() {
+
+        return tenantId;
+    }
+
+    public String getName() {
+
+        return name;
+    }
+
+    public String getQualifier() {
+
+        return qualifier;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        TenantScopedKey that = (TenantScopedKey) o;
+        return tenantId == that.tenantId && name.equals(that.name) &&
+                (qualifier == null ? that.qualifier == null : qualifier.equals(that.qualifier));
+    }
+
+    @Override
+    public int hashCode() {
+
+        int result = tenantId;
+        result = 31 * result + name.hashCode();
+        result = 31 * result + (qualifier != null ? qualifier.hashCode() : 0);
+        return result;
+    }
+
+    @Override
+    public String toString() {
+
+        return qualifier != null ? tenantId + "/" + name + "/" + qualifier : tenantId + "/" + name;
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright (c) 2020, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.media.core.cache;
+
+import org.wso2.carbon.identity.media.core.exception.StorageSystemServerException;
+
+/**
+ * In-memory cache of the user ids resolved for usernames, kept per tenant. Entries expire after a configured time to
+ * live. Usernames which can't be resolved to a user id are cached as well, with a separate and usually shorter time
+ * to live. Concurrent lookups of an uncached username share a single lookup from the user store.
+ */
+public class UserIdCache {
+
+    private final ExpiringCache<TenantScopedKey, String> cache;
+
+    /**
+     * Loads the user id of a username from the user store.
+     */
+    public interface Loader {
+
+        /**
+         * Load the user id of the given username.
+         *
+         * @param username The username.
+         * @return the user id, or null if there is no user with the given username.
+         * @throws StorageSystemServerException If an error occurs while loading the user id.
+         */
+        String load(String username) throws StorageSystemServerException;
+    }
+
+    /**
+     * Creates a user id cache.
+     *
+     * @param timeToLiveSeconds         The time in seconds for which a resolved user id is cached.
+     * @param negativeTimeToLiveSeconds The time in seconds for which a username without a user id is cached.
+     * @param maximumEntries            The maximum number of cached usernames.
+     */
+    public UserIdCache(long timeToLiveSeconds, long negativeTimeToLiveSeconds, int maximumEntries) {
+
+        cache = new ExpiringCache<>("user id cache", timeToLiveSeconds, negativeTimeToLiveSeconds, maximumEntries);
+    }
+
+    /**
+     * Retrieve the user id of a username, loading it with the given loader if it is not cached. Failed loads are not
+     * cached.
+     *
+     * @param tenantId The id of the tenant of the user.
+     * @param username The username.
+     * @param loader   The loader used if the user id is not cached.
+     * @return the user id, or null if there is no user with the given username.
+     * @throws StorageSystemServerException If an error occurs while loading the user id.
+     */
+    public String get(int tenantId, String username, final Loader loader) throws StorageSystemServerException {
+
+        return cache.get(new TenantScopedKey(tenantId, username),
+                new ExpiringCache.Loader<TenantScopedKey, String>() {
+                    @Override
+                    public String load(TenantScopedKey key) throws StorageSystemServerException {
+
+                        return loader.load(key.getName());
+                    }
+                });
+    }
+
+    /**
+     * Remove the cached user id of a username.
+     *
+     * @param tenantId The id of the tenant of the user.
+     * @param username The username.
+     */
+    public void invalidate(int tenantId, String username) {
+
+        cache.invalidate(new TenantScopedKey(tenantId, username));
+    }
+
+    /**
+     * Remove all the cached usernames resolved to the given user id.
+     *
+     * @param tenantId The id of the tenant of the user.
+     * @param userId   The user id.
+     */
+    public void invalidateUserId(final int tenantId, final String userId) {
+
+        cache.invalidate(new ExpiringCache.EntryFilter<TenantScopedKey, String>() {
+            @Override
+            public boolean matches(TenantScopedKey key, String value) {
+
+                return key.getTenantId() == tenantId && userId.equals(value);
+            }
+        });
+    }
+
+    /**
+     * Remove all the cached user ids of a tenant.
+     *
+     * @param tenantId The id of the tenant.
+     */
+    public void invalidateTenant(final int tenantId) {
+
+        cache.invalidate(new ExpiringCache.EntryFilter<TenantScopedKey, String>() {
+            @Override
+            public boolean matches(TenantScopedKey key, String value) {
+
+                return key.getTenantId() == tenantId;
+            }
+        });
+    }
+
+    /**
+     * Remove all the entries from the cache.
+     */
+    public void invalidateAll() {
+
+        cache.invalidateAll();
+    }
+
+    /**
+     * Returns a snapshot of the cache statistics. Each entry has a weight of one.
+     *
+     * @return cache statistics.
+     */
+    public CacheStatistics getStatistics() {
+
+        return cache.getStatistics();
+    }
+}
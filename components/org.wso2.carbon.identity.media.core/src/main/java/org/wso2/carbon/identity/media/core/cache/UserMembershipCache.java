@@ -0,0 +1,128 @@
+/*
+ * Copyright (c) 2020, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.media.core.cache;
+
+import org.wso2.carbon.identity.media.core.exception.StorageSystemServerException;
+
+import java.util.Set;
+
+/**
+ * In-memory cache of the groups and roles of users, kept per tenant. The memberships of a user are cached as a set
+ * of normalized names, which is matched against the groups and roles granted access to a media. Entries expire after
+ * a configured time to live, which bounds how long a membership change not made through this node may take to be
+ * honoured.
+ */
+public class UserMembershipCache {
+
+    private final ExpiringCache<TenantScopedKey, Set<String>> cache;
+
+    /**
+     * Loads the groups and roles of a user from the user store.
+     */
+    public interface Loader {
+
+        /**
+         * Load the normalized names of the groups and roles of the given user.
+         *
+         * @param username The username.
+         * @return the normalized group and role names of the user.
+         * @throws StorageSystemServerException If an error occurs while loading the memberships.
+         */
+        Set<String> load(String username) throws StorageSystemServerException;
+    }
+
+    /**
+     * Creates a user membership cache.
+     *
+     * @param timeToLiveSeconds The time in seconds for which the memberships of a user are cached.
+     * @param maximumEntries    The maximum number of cached users.
+     */
+    public UserMembershipCache(long timeToLiveSeconds, int maximumEntries) {
+
+        cache = new ExpiringCache<>("user membership cache", timeToLiveSeconds, 0, maximumEntries);
+    }
+
+    /**
+     * Retrieve the memberships of a user, loading them with the given loader if they are not cached. Failed loads
+     * are not cached.
+     *
+     * @param tenantId The id of the tenant of the user.
+     * @param username The username.
+     * @param loader   The loader used if the memberships are not cached.
+     * @return the normalized group and role names of the user.
+     * @throws StorageSystemServerException If an error occurs while loading the memberships.
+     */
+    public Set<String> get(int tenantId, String username, final Loader loader) throws StorageSystemServerException {
+
+        return cache.get(new TenantScopedKey(tenantId, username),
+                new ExpiringCache.Loader<TenantScopedKey, Set<String>>() {
+                    @Override
+                    public Set<String> load(TenantScopedKey key) throws StorageSystemServerException {
+
+                        return loader.load(key.getName());
+                    }
+                });
+    }
+
+    /**
+     * Remove the cached memberships of a user.
+     *
+     * @param tenantId The id of the tenant of the user.
+     * @param username The username.
+     */
+    public void invalidate(int tenantId, String username) {
+
+        cache.invalidate(new TenantScopedKey(tenantId, username));
+    }
+
+    /**
+     * Remove the cached memberships of all the users of a tenant. Used when a change can't be attributed to
+     * usernames, e.g. when a role is renamed or deleted.
+     *
+     * @param tenantId The id of the tenant.
+     */
+    public void invalidateTenant(final int tenantId) {
+
+        cache.invalidate(new ExpiringCache.EntryFilter<TenantScopedKey, Set<String>>() {
+            @Override
+            public boolean matches(TenantScopedKey key, Set<String> value) {
+
+                return key.getTenantId() == tenantId;
+            }
+        });
+    }
+
+    /**
+     * Remove all the entries from the cache.
+     */
+    public void invalidateAll() {
+
+        cache.invalidateAll();
+    }
+
+    /**
+     * Returns a snapshot of the cache statistics. Each entry has a weight of one.
+     *
+     * @return cache statistics.
+     */
+    public CacheStatistics getStatistics() {
+
+        return cache.getStatistics();
+    }
+}
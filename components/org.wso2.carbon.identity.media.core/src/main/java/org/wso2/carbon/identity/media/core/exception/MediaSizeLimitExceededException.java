@@ -0,0 +1,44 @@
+/*
+ * Copyright (c) 2020, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wso2.carbon.identity.media.core.exception;
+
+import java.io.IOException;
+
+/**
+ * Exception thrown while reading an uploaded media when the media exceeds the maximum allowed size.
+ */
+public class MediaSizeLimitExceededException extends IOException {
+
+    private final long maximumSize;
+
+    /**
+     * Constructs a new exception with the specified message.
+     *
+     * @param message     Detailed message.
+     * @param maximumSize The maximum allowed size in bytes.
+     */
+    public MediaSizeLimitExceededException(String message, long maximumSize) {
+
+        super(message);
+        this.maximumSize = maximumSize;
+    }
+
+    public long getMaximumSize() {
+
+        return maximumSize;
+    }
+}
@@ -0,0 +1,539 @@
+/*
+ * Copyright (c) 2020, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wso2.carbon.identity.media.core.file;
+
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.wso2.carbon.identity.media.core.model.MediaRepresentation;
+import org.wso2.carbon.identity.media.core.model.StoredMediaMetadata;
+import org.wso2.carbon.identity.media.core.util.BloomFilter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+import static org.wso2.carbon.identity.media.core.util.StorageSystemConstants.MEDIA_CONTENT_HASH;
+import static org.wso2.carbon.identity.media.core.util.StorageSystemConstants.MEDIA_CONTENT_TYPE;
+import static org.wso2.carbon.identity.media.core.util.StorageSystemConstants.MEDIA_FILES;
+import static org.wso2.carbon.identity.media.core.util.StorageSystemConstants.MEDIA_IDENTIFIER;
+import static org.wso2.carbon.identity.media.core.util.StorageSystemConstants.MEDIA_LAST_MODIFIED;
+import static org.wso2.carbon.identity.media.core.util.StorageSystemConstants.MEDIA_NAME;
+import static org.wso2.carbon.identity.media.core.util.StorageSystemConstants.MEDIA_RESOURCE_OWNER_ID;
+import static org.wso2.carbon.identity.media.core.util.StorageSystemConstants.MEDIA_SECURITY;
+import static org.wso2.carbon.identity.media.core.util.StorageSystemConstants.MEDIA_SECURITY_ALLOWED_ALL;
+import static org.wso2.carbon.identity.media.core.util.StorageSystemConstants.MEDIA_SECURITY_ALLOWED_GROUPS;
+import static org.wso2.carbon.identity.media.core.util.StorageSystemConstants.MEDIA_SECURITY_ALLOWED_ROLES;
+import static org.wso2.carbon.identity.media.core.util.StorageSystemConstants.MEDIA_SECURITY_ALLOWED_USER_IDS;
+import static org.wso2.carbon.identity.media.core.util.StorageSystemConstants.MEDIA_SIZE;
+import static org.wso2.carbon.identity.media.core.util.StorageSystemConstants.MEDIA_TAG;
+
+/**
+ * Encodes the metadata of a media into a compact binary form and decodes it back. The binary form carries the same
+ * information as the JSON metadata file, laid out as follows (all integers are big endian):
+ * <pre>
+ * magic (4 bytes) | version (1 byte) | record length (int) | flags (1 byte) | last modified (long) | size (long)
+ * | resource owner id | content type | content hash | name | tag
+ * | representation count (int) | representations (identifier, name, content type, content hash, size (long))
+ * | allowed user count (int) | allowed user offsets (int each) | allowed user ids
+ * | allowed group count (int) | allowed groups | allowed role count (int) | allowed roles
+ * </pre>
+ * Strings are written as their UTF-8 length (int, -1 for null) followed by their UTF-8 bytes. The allowed user ids
+ * are sorted by their UTF-8 bytes and indexed by their offsets in the record, so that the access of a user can be
+ * evaluated with a binary search over the encoded record without decoding it. The allowed groups and roles were
+ * added in version 2, and are absent from records of version 1.
+ */
+public final class BinaryMetadataCodec {
+
+    static final int MAGIC = 0x4D4D4442;
+    static final byte VERSION = 2;
+    static final byte MINIMUM_SUPPORTED_VERSION = 1;
+    static final int FLAG_SECURITY = 1;
+    static final int FLAG_ALLOWED_ALL = 1 << 1;
+
+    // Offsets of the fixed size header fields.
+    static final int FLAGS_OFFSET = 9;
+    static final int RESOURCE_OWNER_ID_OFFSET = 26;
+
+    // Allowed user lists of at least this size are pre-filtered with a Bloom filter built when decoded.
+    static final int ALLOWED_USER_FILTER_THRESHOLD = 1024;
+    static final double ALLOWED_USER_FILTER_FALSE_POSITIVE_PROBABILITY = 0.01;
+
+    private static final int NULL_LENGTH = -1;
+
+    private static final Comparator<byte[]> UNSIGNED_BYTES_COMPARATOR = new Comparator<byte[]>() {
+        @Override
+        public int compare(byte[] bytes1, byte[] bytes2) {
+
+            int length = Math.min(bytes1.length, bytes2.length);
+            for (int i = 0; i < length; i++) {
+                int difference = (bytes1[i] & 0xFF) - (bytes2[i] & 0xFF);
+                if (difference != 0) {
+                    return difference;
+                }
+            }
+            return bytes1.length - bytes2.length;
+        }
+    };
+
+    private BinaryMetadataCodec() {
+
+    }
+
+    /**
+     * Encode metadata in the form written to the JSON metadata file.
+     *
+     * @param metadata The metadata as a JSON object.
+     * @return the encoded metadata.
+     * @throws IOException If the metadata can't be encoded.
+     */
+    public static byte[] encode(Map metadata) throws IOException {
+
+        ByteArrayOutputStream byteStream = new ByteArrayOutputStream(256);
+        DataOutputStream output = new DataOutputStream(byteStream);
+        output.writeInt(MAGIC);
+        output.writeByte(VERSION);
+        // The record length is filled once the record is written.
+        output.writeInt(0);
+
+        Map security = metadata.get(MEDIA_SECURITY) instanceof Map ? (Map) metadata.get(MEDIA_SECURITY) : null;
+        int flags = 0;
+        if (security != null) {
+            flags |= FLAG_SECURITY;
+            if (Boolean.TRUE.equals(security.get(MEDIA_SECURITY_ALLOWED_ALL))) {
+                flags |= FLAG_ALLOWED_ALL;
+            }
+        }
+        output.writeByte(flags);
+        output.writeLong(getLongValue(metadata.get(MEDIA_LAST_MODIFIED)));
+        output.writeLong(getLongValue(metadata.get(MEDIA_SIZE)));
+        writeString(output, metadata.get(MEDIA_RESOURCE_OWNER_ID));
+        writeString(output, metadata.get(MEDIA_CONTENT_TYPE));
+        writeString(output, metadata.get(MEDIA_CONTENT_HASH));
+        writeString(output, metadata.get(MEDIA_NAME));
+        writeString(output, metadata.get(MEDIA_TAG));
+
+        List<Map> files = new ArrayList<>();
+        if (metadata.get(MEDIA_FILES) instanceof List) {
+            for (Object file : (List) metadata.get(MEDIA_FILES)) {
+                if (file instanceof Map && ((Map) file).get(MEDIA_IDENTIFIER) instanceof String) {
+                    files.add((Map) file);
+                }
+            }
+        }
+        output.writeInt(files.size());
+        for (Map file : files) {
+            writeString(output, file.get(MEDIA_IDENTIFIER));
+            writeString(output, file.get(MEDIA_NAME));
+            writeString(output, file.get(MEDIA_CONTENT_TYPE));
+            writeString(output, file.get(MEDIA_CONTENT_HASH));
+            output.writeLong(getLongValue(file.get(MEDIA_SIZE)));
+        }
+
+        TreeSet<byte[]> allowedUserIds = new TreeSet<>(UNSIGNED_BYTES_COMPARATOR);
+        if (security != null && security.get(MEDIA_SECURITY_ALLOWED_USER_IDS) instanceof List) {
+            for (Object allowedUserId : (List) security.get(MEDIA_SECURITY_ALLOWED_USER_IDS)) {
+                if (allowedUserId instanceof String) {
+                    allowedUserIds.add(((String) allowedUserId).getBytes(StandardCharsets.UTF_8));
+                }
+            }
+        }
+        output.writeInt(allowedUserIds.size());
+        int entryOffset = output.size() + 4 * allowedUserIds.size();
+        for (byte[] allowedUserId : allowedUserIds) {
+            output.writeInt(entryOffset);
+            entryOffset += 4 + allowedUserId.length;
+        }
+        for (byte[] allowedUserId : allowedUserIds) {
+            output.writeInt(allowedUserId.length);
+            output.write(allowedUserId);
+        }
+        writeStrings(output, security != null ? security.get(MEDIA_SECURITY_ALLOWED_GROUPS) : null);
+        writeStrings(output, security != null ? security.get(MEDIA_SECURITY_ALLOWED_ROLES) : null);
+        output.flush();
+
+        byte[] record = byteStream.toByteArray();
+        // The record length follows the magic and the version.
+        record[5] = (byte) (record.length >>> 24);
+        record[6] = (byte) (record.length >>> 16);
+        record[7] = (byte) (record.length >>> 8);
+        record[8] = (byte) record.length;
+        return record;
+    }
+
+    /**
+     * Decode an encoded metadata record. The fields needed to serve the media are decoded, while the resource owner
+     * and the allowed users are evaluated on the encoded record.
+     *
+     * @param record The encoded metadata.
+     * @param weight The approximate memory footprint of the decoded metadata in bytes, excluding the record.
+     * @return the decoded metadata.
+     * @throws IOException If the record is not valid binary metadata.
+     */
+    public static StoredMediaMetadata decode(byte[] record, long weight) throws IOException {
+
+        try {
+            RecordReader reader = new RecordReader(record, 0);
+            if (record.length < RESOURCE_OWNER_ID_OFFSET || reader.readInt() != MAGIC) {
+                throw new IOException("The metadata is not in the binary metadata format.");
+            }
+            byte version = reader.readByte();
+            if (version < MINIMUM_SUPPORTED_VERSION || version > VERSION) {
+                throw new IOException("Unsupported binary metadata version: " + version);
+            }
+            if (reader.readInt() != record.length) {
+                throw new IOException("The length of the binary metadata doesn't match the recorded length.");
+            }
+            int flags = reader.readByte();
+            long lastModified = reader.readLong();
+            long size = reader.readLong();
+            reader.skipString();
+            String contentType = reader.readString();
+            String contentHash = reader.readString();
+            reader.skipString();
+            reader.skipString();
+
+            int representationCount = reader.readInt();
+            List<MediaRepresentation> representations = new ArrayList<>(representationCount);
+            for (int i = 0; i < representationCount; i++) {
+                String identifier = reader.readString();
+                reader.skipString();
+                representations.add(new MediaRepresentation(identifier, reader.readString(), reader.readString(),
+                        reader.readLong()));
+            }
+            int allowedUserCount = reader.readInt();
+            int allowedUserOffsetsOffset = reader.position();
+            if (allowedUserCount < 0 || allowedUserOffsetsOffset + 4L * allowedUserCount > record.length) {
+                throw new IOException("Invalid allowed user count in binary metadata: " + allowedUserCount);
+            }
+            // Validated once here, so that the security evaluations on the record can't read past its end.
+            for (int i = 0; i < allowedUserCount; i++) {
+                int entryOffset = reader.readInt();
+                if (entryOffset < 0 || entryOffset > record.length - 4 ||
+                        readInt(record, entryOffset) < 0 ||
+                        readInt(record, entryOffset) > record.length - entryOffset - 4) {
+                    throw new IOException("Invalid allowed user offset in binary metadata: " + entryOffset);
+                }
+            }
+            List<String> allowedGroups = null;
+            List<String> allowedRoles = null;
+            if (version >= 2) {
+                for (int i = 0; i < allowedUserCount; i++) {
+                    reader.skipString();
+                }
+                allowedGroups = Collections.unmodifiableList(readStrings(reader));
+                allowedRoles = Collections.unmodifiableList(readStrings(reader));
+            }
+            BloomFilter allowedUserFilter = null;
+            if ((flags & FLAG_ALLOWED_ALL) == 0 && allowedUserCount >= ALLOWED_USER_FILTER_THRESHOLD) {
+                allowedUserFilter = new BloomFilter(allowedUserCount, ALLOWED_USER_FILTER_FALSE_POSITIVE_PROBABILITY);
+                for (int i = 0; i < allowedUserCount; i++) {
+                    allowedUserFilter.add(readString(record, readInt(record, allowedUserOffsetsOffset + 4 * i)));
+                }
+                weight += allowedUserFilter.getSizeInBytes();
+            }
+            return new BinaryStoredMediaMetadata(record, flags, contentType, contentHash, size, lastModified,
+                    representations.isEmpty() ? Collections.<MediaRepresentation>emptyList() :
+                            Collections.unmodifiableList(representations), allowedUserCount,
+                    allowedUserOffsetsOffset, allowedUserFilter, allowedGroups, allowedRoles, weight + record.length);
+        } catch (RuntimeException e) {
+            // Buffer underflows and invalid lengths of a truncated or corrupted record.
+            throw new IOException("Invalid binary metadata.", e);
+        }
+    }
+
+    /**
+     * Render an encoded metadata record in the form written to the JSON metadata file.
+     *
+     * @param record The encoded metadata.
+     * @return the metadata as a JSON object.
+     */
+    static JSONObject render(byte[] record) {
+
+        byte version = record[4];
+        RecordReader reader = new RecordReader(record, FLAGS_OFFSET);
+        int flags = reader.readByte();
+        long lastModified = reader.readLong();
+        long size = reader.readLong();
+
+        JSONObject metadata = new JSONObject();
+        putIfNotNull(metadata, MEDIA_RESOURCE_OWNER_ID, reader.readString());
+        putIfNotNull(metadata, MEDIA_CONTENT_TYPE, reader.readString());
+        putIfNotNull(metadata, MEDIA_CONTENT_HASH, reader.readString());
+        putIfNotNull(metadata, MEDIA_NAME, reader.readString());
+        putIfNotNull(metadata, MEDIA_TAG, reader.readString());
+        if (size >= 0) {
+            metadata.put(MEDIA_SIZE, size);
+        }
+        if (lastModified >= 0) {
+            metadata.put(MEDIA_LAST_MODIFIED, lastModified);
+        }
+
+        int representationCount = reader.readInt();
+        if (representationCount > 0) {
+            JSONArray files = new JSONArray();
+            for (int i = 0; i < representationCount; i++) {
+                JSONObject file = new JSONObject();
+                putIfNotNull(file, MEDIA_IDENTIFIER, reader.readString());
+                putIfNotNull(file, MEDIA_NAME, reader.readString());
+                putIfNotNull(file, MEDIA_CONTENT_TYPE, reader.readString());
+                putIfNotNull(file, MEDIA_CONTENT_HASH, reader.readString());
+                long fileSize = reader.readLong();
+                if (fileSize >= 0) {
+                    file.put(MEDIA_SIZE, fileSize);
+                }
+                files.add(file);
+            }
+            metadata.put(MEDIA_FILES, files);
+        }
+
+        if ((flags & FLAG_SECURITY) != 0) {
+            JSONObject security = new JSONObject();
+            boolean allowedAll = (flags & FLAG_ALLOWED_ALL) != 0;
+            security.put(MEDIA_SECURITY_ALLOWED_ALL, allowedAll);
+            List<String> allowedUserIds = readAllowedUserIds(reader);
+            List<String> allowedGroups = version >= 2 ? readStrings(reader) : null;
+            List<String> allowedRoles = version >= 2 ? readStrings(reader) : null;
+            if (!allowedAll) {
+                putIfNotEmpty(security, MEDIA_SECURITY_ALLOWED_USER_IDS, allowedUserIds);
+                putIfNotEmpty(security, MEDIA_SECURITY_ALLOWED_GROUPS, allowedGroups);
+                putIfNotEmpty(security, MEDIA_SECURITY_ALLOWED_ROLES, allowedRoles);
+            }
+            metadata.put(MEDIA_SECURITY, security);
+        }
+        return metadata;
+    }
+
+    /**
+     * Read the allowed user ids, with the reader positioned at the allowed user count.
+     */
+    static List<String> readAllowedUserIds(RecordReader reader) {
+
+        int allowedUserCount = reader.readInt();
+        reader.skip(4 * allowedUserCount);
+        List<String> allowedUserIds = new ArrayList<>(allowedUserCount);
+        for (int i = 0; i < allowedUserCount; i++) {
+            allowedUserIds.add(reader.readString());
+        }
+        return allowedUserIds;
+    }
+
+    /**
+     * Read the string at the given offset of a record.
+     */
+    static String readString(byte[] record, int offset) {
+
+        return new RecordReader(record, offset).readString();
+    }
+
+    /**
+     * Compare the string encoded at the given offset of a record with a string, by code points. The comparison
+     * doesn't allocate, so that it can be used on every security evaluation.
+     *
+     * @param record The encoded metadata.
+     * @param offset The offset of the encoded string, i.e. of its length.
+     * @param value  The string to compare with.
+     * @return a negative value, zero or a positive value as the encoded string is less than, equal to or greater
+     * than the given string. A null encoded string is less than any string.
+     */
+    static int compareString(byte[] record, int offset, String value) {
+
+        int length = readInt(record, offset);
+        if (length == NULL_LENGTH) {
+            return -1;
+        }
+        int position = offset + 4;
+        int end = position + length;
+        int index = 0;
+        while (position < end && index < value.length()) {
+            int codePoint;
+            int lead = record[position] & 0xFF;
+            if (lead < 0x80) {
+                codePoint = lead;
+                position += 1;
+            } else if (lead < 0xE0 && position + 1 < end) {
+                codePoint = ((lead & 0x1F) << 6) | (record[position + 1] & 0x3F);
+                position += 2;
+            } else if (lead < 0xF0 && position + 2 < end) {
+                codePoint = ((lead & 0x0F) << 12) | ((record[position + 1] & 0x3F) << 6) |
+                        (record[position + 2] & 0x3F);
+                position += 3;
+            } else if (position + 3 < end) {
+                codePoint = ((lead & 0x07) << 18) | ((record[position + 1] & 0x3F) << 12) |
+                        ((record[position + 2] & 0x3F) << 6) | (record[position + 3] & 0x3F);
+                position += 4;
+            } else {
+                codePoint = lead;
+                position += 1;
+            }
+            int valueCodePoint = value.codePointAt(index);
+            if (codePoint != valueCodePoint) {
+                return codePoint < valueCodePoint ? -1 : 1;
+            }
+            index += Character.charCount(valueCodePoint);
+        }
+        if (position < end) {
+            return 1;
+        }
+        return index < value.length() ? -1 : 0;
+    }
+
+    static int readInt(byte[] record, int offset) {
+
+        return ((record[offset] & 0xFF) << 24) | ((record[offset + 1] & 0xFF) << 16) |
+                ((record[offset + 2] & 0xFF) << 8) | (record[offset + 3] & 0xFF);
+    }
+
+    private static void writeString(DataOutputStream output, Object value) throws IOException {
+
+        if (!(value instanceof String)) {
+            output.writeInt(NULL_LENGTH);
+            return;
+        }
+        byte[] bytes = ((String) value).getBytes(StandardCharsets.UTF_8);
+        output.writeInt(bytes.length);
+        output.write(bytes);
+    }
+
+    private static void writeStrings(DataOutputStream output, Object values) throws IOException {
+
+        List<String> strings = new ArrayList<>();
+        if (values instanceof List) {
+            for (Object value : (List) values) {
+                if (value instanceof String) {
+                    strings.add((String) value);
+                }
+            }
+        }
+        output.writeInt(strings.size());
+        for (String string : strings) {
+            writeString(output, string);
+        }
+    }
+
+    private static List<String> readStrings(RecordReader reader) {
+
+        int count = reader.readInt();
+        if (count < 0) {
+            throw new IndexOutOfBoundsException("Invalid string count " + count);
+        }
+        List<String> strings = new ArrayList<>(Math.min(count, 16));
+        for (int i = 0; i < count; i++) {
+            strings.add(reader.readString());
+        }
+        return strings;
+    }
+
+    private static void putIfNotEmpty(JSONObject jsonObject, String key, List<String> values) {
+
+        if (values != null && !values.isEmpty()) {
+            JSONArray jsonArray = new JSONArray();
+            jsonArray.addAll(values);
+            jsonObject.put(key, jsonArray);
+        }
+    }
+
+    private static void putIfNotNull(JSONObject jsonObject, String key, String value) {
+
+        if (value != null) {
+            jsonObject.put(key, value);
+        }
+    }
+
+    private static long getLongValue(Object value) {
+
+        if (value instanceof Number) {
+            return ((Number) value).longValue();
+        }
+        return -1;
+    }
+
+    /**
+     * Reads the fields of a record sequentially.
+     */
+    static final class RecordReader {
+
+        private final byte[] record;
+        private int position;
+
+        RecordReader(byte[] record, int position) {
+
+            this.record = record;
+            this.position = position;
+        }
+
+        int position() {
+
+            return position;
+        }
+
+        byte readByte() {
+
+            return record[position++];
+        }
+
+        int readInt() {
+
+            int value = BinaryMetadataCodec.readInt(record, position);
+            position += 4;
+            return value;
+        }
+
+        long readLong() {
+
+            return ((long) readInt() << 32) | (readInt() & 0xFFFFFFFFL);
+        }
+
+        String readString() {
+
+            int length = readInt();
+            if (length == NULL_LENGTH) {
+                return null;
+            }
+            checkLength(length);
+            String value = new String(record, position, length, StandardCharsets.UTF_8);
+            position += length;
+            return value;
+        }
+
+        void skipString() {
+
+            int length = readInt();
+            if (length != NULL_LENGTH) {
+                skip(length);
+            }
+        }
+
+        void skip(int length) {
+
+            checkLength(length);
+            position += length;
+        }
+
+        private void checkLength(int length) {
+
+            if (length < 0 || length > record.length - position) {
+                throw new IndexOutOfBoundsException("Invalid length " + length + " at offset " + position);
+            }
+        }
+    }
+}
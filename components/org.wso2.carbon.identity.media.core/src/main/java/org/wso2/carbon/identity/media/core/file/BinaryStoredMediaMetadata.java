@@ -0,0 +1,154 @@
+/*
+ * Copyright (c) 2020, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wso2.carbon.identity.media.core.file;
+
+import org.wso2.carbon.identity.media.core.model.FileSecurity;
+import org.wso2.carbon.identity.media.core.model.MediaRepresentation;
+import org.wso2.carbon.identity.media.core.model.StoredMediaMetadata;
+import org.wso2.carbon.identity.media.core.util.BloomFilter;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import static org.wso2.carbon.identity.media.core.file.BinaryMetadataCodec.FLAG_ALLOWED_ALL;
+import static org.wso2.carbon.identity.media.core.file.BinaryMetadataCodec.FLAG_SECURITY;
+import static org.wso2.carbon.identity.media.core.file.BinaryMetadataCodec.RESOURCE_OWNER_ID_OFFSET;
+
+/**
+ * Metadata of a stored media backed by its binary metadata record. The resource owner and the allowed users are
+ * evaluated on the record without decoding them, and the JSON form of the metadata is only rendered when requested.
+ * The allowed users are sorted in the record and searched with a binary search, preceded by a Bloom filter for large
+ * lists so that most users who are not allowed are rejected without searching the record.
+ */
+final class BinaryStoredMediaMetadata extends StoredMediaMetadata {
+
+    private final byte[] record;
+    private final int flags;
+    private final int allowedUserCount;
+    private final int allowedUserOffsetsOffset;
+    private final BloomFilter allowedUserFilter;
+    private final List<String> allowedGroups;
+    private final List<String> allowedRoles;
+    private final Set<String> allowedMemberships;
+
+    BinaryStoredMediaMetadata(byte[] record, int flags, String contentType, String contentHash, long size,
+                              long lastModified, List<MediaRepresentation> representations, int allowedUserCount,
+                              int allowedUserOffsetsOffset, BloomFilter allowedUserFilter, List<String> allowedGroups,
+                              List<String> allowedRoles, long weight) {
+
+        super(null, contentType, null, null, contentHash, size, lastModified, representations, weight);
+        this.record = record;
+        this.flags = flags;
+        this.allowedUserCount = allowedUserCount;
+        this.allowedUserOffsetsOffset = allowedUserOffsetsOffset;
+        this.allowedUserFilter = allowedUserFilter;
+        this.allowedGroups = allowedGroups;
+        this.allowedRoles = allowedRoles;
+        this.allowedMemberships = (flags & FLAG_ALLOWED_ALL) == 0 ? getMembershipSet(allowedGroups, allowedRoles) :
+                Collections.<String>emptySet();
+    }
+
+    /**
+     * Renders the metadata in the form written to the JSON metadata file. A new JSON object is rendered on each
+     * call.
+     *
+     * @return raw metadata object.
+     */
+    @Override
+    public Object getRawMetadata() {
+
+        return BinaryMetadataCodec.render(record);
+    }
+
+    @Override
+    public String getResourceOwnerId() {
+
+        return BinaryMetadataCodec.readString(record, RESOURCE_OWNER_ID_OFFSET);
+    }
+
+    @Override
+    public FileSecurity getFileSecurity() {
+
+        if (!hasSecurity()) {
+            return null;
+        }
+        if (isAllowedAll()) {
+            return new FileSecurity(true, Collections.<String>emptyList());
+        }
+        BinaryMetadataCodec.RecordReader reader = new BinaryMetadataCodec.RecordReader(record,
+                allowedUserOffsetsOffset - 4);
+        return new FileSecurity(false, Collections.unmodifiableList(BinaryMetadataCodec.readAllowedUserIds(reader)),
+                allowedGroups, allowedRoles);
+    }
+
+    @Override
+    public boolean isPubliclyAccessible() {
+
+        return hasSecurity() && isAllowedAll();
+    }
+
+    @Override
+    public boolean isAccessAllowed(String userId) {
+
+        if (!hasSecurity()) {
+            return false;
+        }
+        if (isAllowedAll()) {
+            return true;
+        }
+        if (userId == null || (allowedUserFilter != null && !allowedUserFilter.mightContain(userId))) {
+            return false;
+        }
+        int low = 0;
+        int high = allowedUserCount - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int entryOffset = BinaryMetadataCodec.readInt(record, allowedUserOffsetsOffset + 4 * middle);
+            int comparison = BinaryMetadataCodec.compareString(record, entryOffset, userId);
+            if (comparison < 0) {
+                low = middle + 1;
+            } else if (comparison > 0) {
+                high = middle - 1;
+            } else {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public boolean isOwnedBy(String userId) {
+
+        return userId != null && BinaryMetadataCodec.compareString(record, RESOURCE_OWNER_ID_OFFSET, userId) == 0;
+    }
+
+    @Override
+    protected Set<String> getAllowedMemberships() {
+
+        return allowedMemberships;
+    }
+
+    private boolean hasSecurity() {
+
+        return (flags & FLAG_SECURITY) != 0;
+    }
+
+    private boolean isAllowedAll() {
+
+        return (flags & FLAG_ALLOWED_ALL) != 0;
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright (c) 2020, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wso2.carbon.identity.media.core.file;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.regex.Pattern;
+
+/**
+ * Stores the content of media files once per tenant, keyed by the content hash computed while the files are uploaded.
+ * The file of a media is a hard link to the blob of its content, so media with the same content share the storage
+ * and the page cache, while the media files are read as before. The content hashes recorded in the metadata of a
+ * media reference its blobs.
+ * <p>
+ * The blobs are kept in the blob folder within the media folder, i.e. {@code media/.blobs/<tenantId>/<hh>/<hash>}.
+ * The link count of a blob counts its references: once the files of the media sharing a blob are deleted, the blob is
+ * the only link left and is released by the media reaper. A blob which is released while it is shared by an upload
+ * leaves the uploaded file intact, as the file holds its own link to the content.
+ */
+final class ContentAddressedBlobStore {
+
+    /**
+     * Name of the folder within the media folder which holds the blobs.
+     */
+    static final String BLOB_FOLDER = ".blobs";
+
+    private static final Log LOGGER = LogFactory.getLog(ContentAddressedBlobStore.class);
+    private static final Pattern CONTENT_HASH_PATTERN = Pattern.compile("^[0-9a-f]{64}$");
+    private static final String LINK_FILE_EXTENSION = ".link";
+    private static final String LINK_COUNT_ATTRIBUTE = "unix:nlink";
+    // Attempts to share a blob which is released concurrently.
+    private static final int MAXIMUM_SHARE_ATTEMPTS = 3;
+
+    private final Path tenantBlobFolder;
+
+    ContentAddressedBlobStore(Path mediaFolder, int tenantId) {
+
+        this.tenantBlobFolder = mediaFolder.resolve(BLOB_FOLDER).resolve(String.valueOf(tenantId));
+    }
+
+    /**
+     * Returns the location of the blob of the given content.
+     *
+     * @param contentHash The hex encoded SHA-256 hash of the content.
+     * @return the blob location or null if the content hash is not a SHA-256 hash.
+     */
+    Path getBlobLocation(String contentHash) {
+
+        if (contentHash == null || !CONTENT_HASH_PATTERN.matcher(contentHash).matches()) {
+            return null;
+        }
+        return tenantBlobFolder.resolve(contentHash.substring(0, 2)).resolve(contentHash);
+    }
+
+    /**
+     * Share the content of a staged file with the media of the same content. The staged file is stored as the blob of
+     * its content if there is none yet, and is replaced with a link to the existing blob otherwise. The staged file is
+     * left as is if the file system doesn't support hard links.
+     *
+     * @param stagedFile  The staged file.
+     * @param contentHash The hex encoded SHA-256 hash of the content of the staged file.
+     * @param size        The size of the staged file.
+     * @return the blob the staged file is linked to, or null if the content isn't shared.
+     * @throws IOException If the staged file can't be replaced.
+     */
+    Path share(Path stagedFile, String contentHash, long size) throws IOException {
+
+        Path blob = getBlobLocation(contentHash);
+        if (blob == null) {
+            return null;
+        }
+        Path linkFile = stagedFile.resolveSibling(stagedFile.getFileName() + LINK_FILE_EXTENSION);
+        try {
+            Files.createDirectories(blob.getParent());
+            for (int attempt = 0; attempt < MAXIMUM_SHARE_ATTEMPTS; attempt++) {
+                try {
+                    Files.createLink(blob, stagedFile);
+                    return blob;
+                } catch (FileAlreadyExistsException e) {
+                    // The content is already stored.
+                }
+                try {
+                    if (Files.size(blob) != size) {
+                        LOGGER.warn("The size of blob: " + blob + " doesn't match the size of its content.");
+                        return null;
+                    }
+                    Files.createLink(linkFile, blob);
+                } catch (NoSuchFileException e) {
+                    // The blob was released meanwhile.
+                    continue;
+                }
+                Files.move(linkFile, stagedFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                return blob;
+            }
+            return null;
+        } catch (UnsupportedOperationException e) {
+            logLinksUnsupported(e);
+            return null;
+        } catch (FileSystemException e) {
+            if (e instanceof NoSuchFileException || e instanceof FileAlreadyExistsException) {
+                throw e;
+            }
+            // Hard links are not permitted on some file systems.
+            logLinksUnsupported(e);
+            return null;
+        } finally {
+            Files.deleteIfExists(linkFile);
+        }
+    }
+
+    /**
+     * Release a blob if no media file links to it anymore.
+     *
+     * @param blob The blob.
+     * @return true if the blob was released.
+     * @throws IOException If the link count of the blob can't be read or the blob can't be deleted.
+     */
+    static boolean release(Path blob) throws IOException {
+
+        int linkCount;
+        try {
+            linkCount = ((Number) Files.getAttribute(blob, LINK_COUNT_ATTRIBUTE)).intValue();
+        } catch (NoSuchFileException e) {
+            return false;
+        } catch (UnsupportedOperationException | IllegalArgumentException e) {
+            // The link counts are not available to decide whether the blob is still referenced.
+            return false;
+        }
+        return linkCount <= 1 && Files.deleteIfExists(blob);
+    }
+
+    private static void logLinksUnsupported(Exception e) {
+
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("Unable to share the content of an uploaded media file through a hard link.", e);
+        }
+    }
+}
@@ -0,0 +1,259 @@
+/*
+ * Copyright (c) 2020, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wso2.carbon.identity.media.core.file;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.IOException;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileSystemException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.wso2.carbon.identity.media.core.util.StorageSystemConstants.MEDIA_FILE_IDENTIFIER_SEPARATOR;
+
+/**
+ * Moves the media in a media folder to a directory layout, e.g. from the nested layout to the hashed layout. The
+ * files of each media are hard linked into the directory of the target layout, the default file of the media last,
+ * before they are removed from the directory of the previous layout, so that each media is readable throughout the
+ * migration. The migration can be run while the server is serving the media folder with the target layout configured,
+ * and can be re-run if interrupted. Once all the media are moved, the layout is recorded in the media folder, so that
+ * the server no longer looks up media in the previous layout.
+ * <p>
+ * Usage: {@code java -cp <classpath> org.wso2.carbon.identity.media.core.file.DirectoryLayoutMigrator <media folder>
+ * [hashed|nested]}
+ */
+public final class DirectoryLayoutMigrator {
+
+    private static final Log LOGGER = LogFactory.getLog(DirectoryLayoutMigrator.class);
+    private static final String TEMPORARY_FILE_EXTENSION = ".tmp";
+
+    private final MediaDirectoryLayout targetLayout;
+    private int migratedCount;
+    private int failedCount;
+
+    private DirectoryLayoutMigrator(MediaDirectoryLayout targetLayout) {
+
+        this.targetLayout = targetLayout;
+    }
+
+    public static void main(String[] args) throws IOException {
+
+        MediaDirectoryLayout targetLayout = args.length == 2 ? MediaDirectoryLayout.fromName(args[1]) :
+                MediaDirectoryLayout.HASHED;
+        if (args.length < 1 || args.length > 2 || targetLayout == null) {
+            System.err.println("Usage: DirectoryLayoutMigrator <media folder> [hashed|nested]");
+            System.exit(1);
+        }
+        DirectoryLayoutMigrator migrator = migrate(Paths.get(args[0]), targetLayout);
+        System.out.println(String.format("Moved %d media to the %s layout. Failed to move %d media.",
+                migrator.getMigratedCount(), targetLayout.getName(), migrator.getFailedCount()));
+        if (migrator.getFailedCount() > 0) {
+            System.exit(2);
+        }
+    }
+
+    /**
+     * Move all the media in the given media folder to the given directory layout. Media which can't be moved are
+     * logged and left in place, in which case the layout is not recorded in the media folder.
+     *
+     * @param mediaFolder  The media folder, i.e. {@code <MediaMountLocation>/media}.
+     * @param targetLayout The layout to move the media to.
+     * @return the migrator holding the outcome of the migration.
+     * @throws IOException If an error occurs while listing the media folder or recording the layout.
+     */
+    public static DirectoryLayoutMigrator migrate(Path mediaFolder, MediaDirectoryLayout targetLayout)
+            throws IOException {
+
+        DirectoryLayoutMigrator migrator = new DirectoryLayoutMigrator(targetLayout);
+        Path normalizedMediaFolder = mediaFolder.toAbsolutePath().normalize();
+        for (Path typeFolder : listDirectories(normalizedMediaFolder)) {
+            if (!MediaDirectoryLayout.isTypeFolder(typeFolder)) {
+                continue;
+            }
+            for (Path tenantFolder : listDirectories(typeFolder)) {
+                migrator.migrateTenantFolder(tenantFolder);
+            }
+        }
+        if (migrator.failedCount == 0) {
+            MediaDirectoryLayout.recordCompletedLayout(normalizedMediaFolder, targetLayout);
+        }
+        return migrator;
+    }
+
+    /**
+     * Returns the number of media moved to the target layout.
+     *
+     * @return migrated media count.
+     */
+    public int getMigratedCount() {
+
+        return migratedCount;
+    }
+
+    /**
+     * Returns the number of media which couldn't be moved.
+     *
+     * @return failed media count.
+     */
+    public int getFailedCount() {
+
+        return failedCount;
+    }
+
+    private void migrateTenantFolder(final Path tenantFolder) throws IOException {
+
+        final MediaDirectoryLayout sourceLayout = targetLayout.getOther();
+        final List<Path> mediaFiles = new ArrayList<>();
+        Files.walkFileTree(tenantFolder, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+
+                // Media ids don't contain the separator, which precedes the suffix of all the other files of a media.
+                String fileName = file.getFileName().toString();
+                if (attributes.isRegularFile() && !fileName.contains(MEDIA_FILE_IDENTIFIER_SEPARATOR) &&
+                        !fileName.startsWith(".") &&
+                        file.getParent().equals(sourceLayout.getMediaDirectory(tenantFolder, fileName))) {
+                    mediaFiles.add(file);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException e) {
+
+                LOGGER.error("Error occurred while reading " + file + " during the directory layout migration.", e);
+                failedCount++;
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        for (Path mediaFile : mediaFiles) {
+            migrateMedia(tenantFolder, mediaFile);
+        }
+    }
+
+    private void migrateMedia(Path tenantFolder, Path mediaFile) {
+
+        String id = mediaFile.getFileName().toString();
+        Path sourceDirectory = mediaFile.getParent();
+        Path targetDirectory = targetLayout.getMediaDirectory(tenantFolder, id);
+        List<Path> sourceFiles = new ArrayList<>();
+        List<Path> targetFiles = new ArrayList<>();
+        try {
+            Files.createDirectories(targetDirectory);
+            try (DirectoryStream<Path> siblings = Files.newDirectoryStream(sourceDirectory,
+                    id + MEDIA_FILE_IDENTIFIER_SEPARATOR + "*")) {
+                for (Path sibling : siblings) {
+                    sourceFiles.add(sibling);
+                }
+            }
+            // The default file is linked last, as the server locates a media by its default file.
+            sourceFiles.add(mediaFile);
+            for (Path sourceFile : sourceFiles) {
+                Path targetFile = targetDirectory.resolve(sourceFile.getFileName().toString());
+                linkFile(sourceFile, targetFile);
+                targetFiles.add(targetFile);
+            }
+            for (Path sourceFile : sourceFiles) {
+                Files.deleteIfExists(sourceFile);
+            }
+            deleteEmptyDirectories(sourceDirectory, tenantFolder);
+            migratedCount++;
+            if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug("Moved media " + mediaFile + " to " + targetDirectory);
+            }
+        } catch (NoSuchFileException e) {
+            // The media was deleted by the server while it was being moved.
+            deleteFiles(targetFiles);
+        } catch (IOException e) {
+            LOGGER.error("Error occurred while moving media " + mediaFile + " to " + targetDirectory, e);
+            failedCount++;
+        }
+    }
+
+    /**
+     * Link a file of a media into the target directory. The file is copied if the file system doesn't support hard
+     * links. A file which is already in the target directory was moved by an interrupted migration.
+     */
+    private void linkFile(Path sourceFile, Path targetFile) throws IOException {
+
+        try {
+            Files.createLink(targetFile, sourceFile);
+        } catch (FileAlreadyExistsException e) {
+            if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug("File " + targetFile + " was moved by a previous migration.");
+            }
+        } catch (NoSuchFileException e) {
+            throw e;
+        } catch (UnsupportedOperationException | FileSystemException e) {
+            Path temporaryFile = targetFile.resolveSibling(targetFile.getFileName() + TEMPORARY_FILE_EXTENSION);
+            try {
+                Files.copy(sourceFile, temporaryFile, StandardCopyOption.REPLACE_EXISTING);
+                Files.move(temporaryFile, targetFile, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(temporaryFile);
+            }
+        }
+    }
+
+    private static void deleteEmptyDirectories(Path directory, Path tenantFolder) throws IOException {
+
+        Path emptyDirectory = directory;
+        try {
+            while (!emptyDirectory.equals(tenantFolder) && emptyDirectory.startsWith(tenantFolder)) {
+                Files.deleteIfExists(emptyDirectory);
+                emptyDirectory = emptyDirectory.getParent();
+            }
+        } catch (DirectoryNotEmptyException e) {
+            // The directory holds other media.
+        }
+    }
+
+    private static void deleteFiles(List<Path> files) {
+
+        for (Path file : files) {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                LOGGER.error("Error occurred while deleting " + file, e);
+            }
+        }
+    }
+
+    private static List<Path> listDirectories(Path folder) throws IOException {
+
+        List<Path> directories = new ArrayList<>();
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(folder)) {
+            for (Path entry : entries) {
+                if (Files.isDirectory(entry)) {
+                    directories.add(entry);
+                }
+            }
+        }
+        return directories;
+    }
+}
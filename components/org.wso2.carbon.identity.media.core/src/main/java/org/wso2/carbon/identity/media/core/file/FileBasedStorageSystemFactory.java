@@ -25,10 +25,12 @@ public class FileBasedStorageSystemFactory extends StorageSystemFactory {
 
     private static final String FILE = "org.wso2.carbon.identity.media.file.FileBasedStorageSystemImpl";
 
+    // A single instance serves all the operations, so that state held by the storage system outlives a request.
+    private final StorageSystem fileBasedStorageSystemImpl = new FileBasedStorageSystemImpl();
+
     @Override
     public StorageSystem getStorageSystem() {
 
-        StorageSystem fileBasedStorageSystemImpl = new FileBasedStorageSystemImpl();
         return fileBasedStorageSystemImpl;
     }
 
@@ -15,8 +15,8 @@
  */
 package org.wso2.carbon.identity.media.core.file;
 
+import org.apache.commons.codec.binary.Hex;
 import org.apache.commons.codec.digest.DigestUtils;
-import org.apache.commons.collections.CollectionUtils;
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -24,62 +24,107 @@ import org.json.simple.JSONObject;
 import org.json.simple.parser.JSONParser;
 import org.json.simple.parser.ParseException;
 import org.wso2.carbon.identity.core.util.IdentityTenantUtil;
+import org.wso2.carbon.identity.media.core.AbstractStorageSystem;
+import org.wso2.carbon.identity.media.core.ChannelContentImpl;
 import org.wso2.carbon.identity.media.core.DataContent;
+import org.wso2.carbon.identity.media.core.FileContent;
 import org.wso2.carbon.identity.media.core.FileContentImpl;
-import org.wso2.carbon.identity.media.core.StorageSystem;
+import org.wso2.carbon.identity.media.core.cache.MediaMetadataCacheKey;
+import org.wso2.carbon.identity.media.core.exception.MediaSizeLimitExceededException;
 import org.wso2.carbon.identity.media.core.exception.StorageSystemClientException;
 import org.wso2.carbon.identity.media.core.exception.StorageSystemException;
 import org.wso2.carbon.identity.media.core.exception.StorageSystemServerException;
+import org.wso2.carbon.identity.media.core.internal.MediaServiceDataHolder;
 import org.wso2.carbon.identity.media.core.model.FileSecurity;
-import org.wso2.carbon.identity.media.core.model.MediaFileDownloadData;
-import org.wso2.carbon.identity.media.core.model.MediaInformation;
 import org.wso2.carbon.identity.media.core.model.MediaMetadata;
+import org.wso2.carbon.identity.media.core.model.MediaRepresentation;
+import org.wso2.carbon.identity.media.core.model.ResolvedMedia;
+import org.wso2.carbon.identity.media.core.model.StoredMediaMetadata;
+import org.wso2.carbon.identity.media.core.transform.DerivativeCache;
+import org.wso2.carbon.identity.media.core.transform.ImageResizer;
+import org.wso2.carbon.identity.media.core.util.SizeLimitedInputStream;
 import org.wso2.carbon.identity.media.core.util.StorageSystemUtil;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
 import java.io.OutputStreamWriter;
 import java.io.Writer;
+import java.nio.ByteBuffer;
 import java.nio.channels.Channels;
 import java.nio.channels.FileChannel;
 import java.nio.channels.ReadableByteChannel;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
-
-import static org.wso2.carbon.identity.media.core.util.StorageSystemConstants.CONFIGURABLE_MEDIA_MOUNT_LOCATION;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.wso2.carbon.identity.media.core.util.StorageSystemConstants.BINARY_METADATA_FILE_EXTENSION;
+import static org.wso2.carbon.identity.media.core.util.StorageSystemConstants.MEDIA_CONTENT_HASH;
 import static org.wso2.carbon.identity.media.core.util.StorageSystemConstants.MEDIA_CONTENT_TYPE;
-import static org.wso2.carbon.identity.media.core.util.StorageSystemConstants.MEDIA_NAME;
+import static org.wso2.carbon.identity.media.core.util.StorageSystemConstants.MEDIA_FILES;
+import static org.wso2.carbon.identity.media.core.util.StorageSystemConstants.MEDIA_FILE_IDENTIFIER_SEPARATOR;
+import static org.wso2.carbon.identity.media.core.util.StorageSystemConstants.MEDIA_IDENTIFIER;
+import static org.wso2.carbon.identity.media.core.util.StorageSystemConstants.MEDIA_LAST_MODIFIED;
 import static org.wso2.carbon.identity.media.core.util.StorageSystemConstants.MEDIA_RESOURCE_OWNER_ID;
 import static org.wso2.carbon.identity.media.core.util.StorageSystemConstants.MEDIA_SECURITY;
 import static org.wso2.carbon.identity.media.core.util.StorageSystemConstants.MEDIA_SECURITY_ALLOWED_ALL;
+import static org.wso2.carbon.identity.media.core.util.StorageSystemConstants.MEDIA_SECURITY_ALLOWED_GROUPS;
+import static org.wso2.carbon.identity.media.core.util.StorageSystemConstants.MEDIA_SECURITY_ALLOWED_ROLES;
 import static org.wso2.carbon.identity.media.core.util.StorageSystemConstants.MEDIA_SECURITY_ALLOWED_USER_IDS;
-import static org.wso2.carbon.identity.media.core.util.StorageSystemConstants.MEDIA_TAG;
+import static org.wso2.carbon.identity.media.core.util.StorageSystemConstants.MEDIA_SIZE;
 import static org.wso2.carbon.identity.media.core.util.StorageSystemConstants.METADATA_FILE_EXTENSION;
 import static org.wso2.carbon.identity.media.core.util.StorageSystemConstants.METADATA_FILE_SUFFIX;
 import static org.wso2.carbon.identity.media.core.util.StorageSystemConstants.PRE_CREATED_MEDIA_FOLDER;
-import static org.wso2.carbon.identity.media.core.util.StorageSystemConstants.PROTECTED_DOWNLOAD_ACCESS;
-import static org.wso2.carbon.identity.media.core.util.StorageSystemConstants.PUBLIC_DOWNLOAD_ACCESS;
-import static org.wso2.carbon.identity.media.core.util.StorageSystemConstants.SYSTEM_PROPERTY_CARBON_HOME;
+import static org.wso2.carbon.identity.media.core.util.StorageSystemConstants.VARIANT_WIDTH_SEPARATOR;
 
 /**
  * This is the implementation class to store, retrieve and delete media in the local file system.
  */
-public class FileBasedStorageSystemImpl implements StorageSystem {
+public class FileBasedStorageSystemImpl extends AbstractStorageSystem {
 
     private static final Log LOGGER = LogFactory.getLog(FileBasedStorageSystemImpl.class);
+    private static final String DEFAULT_REPRESENTATION_DERIVATIVE_PREFIX = "default";
+    // Approximate footprint of an entry of the indexes of the allowed users, groups and roles of cached metadata.
+    private static final long ALLOWED_USER_ENTRY_OVERHEAD = 48;
+    // Attempts to rename an uploaded media into its storage directory, which the media reaper may prune meanwhile.
+    private static final int MAXIMUM_COMMIT_ATTEMPTS = 3;
+    private static final int COPY_BUFFER_SIZE = 8192;
+
+    private final MediaDirectoryLayout completedLayout;
+
+    /**
+     * Creates a file based storage system. The directory layout recorded in the media folder by a completed directory
+     * layout migration is read once, when the storage system is created on activation.
+     */
+    public FileBasedStorageSystemImpl() {
+
+        this.completedLayout = readCompletedLayout(getDirectoryLayout());
+    }
 
     @Override
     public String addMedia(List<InputStream> inputStreams, MediaMetadata mediaMetadata, String uuid,
-                           String tenantDomain) throws StorageSystemServerException {
+                           String tenantDomain) throws StorageSystemException {
 
         try {
             if (LOGGER.isDebugEnabled()) {
@@ -87,99 +132,37 @@ public class FileBasedStorageSystemImpl implements StorageSystem {
                         tenantDomain));
             }
             return uploadMediaUsingChannels(inputStreams, mediaMetadata, uuid, tenantDomain);
+        } catch (MediaSizeLimitExceededException e) {
+            throw new StorageSystemClientException(String.format("The uploaded media with unique id: %s exceeds the " +
+                    "maximum allowed file size: %skb", uuid, e.getMaximumSize() / 1000.0), e);
         } catch (IOException e) {
             throw new StorageSystemServerException("Error while uploading media to file system.", e);
         }
     }
 
     @Override
-    public DataContent getFile(String id, String tenantDomain, String type) throws StorageSystemException {
-
-        FileContentImpl fileContent = null;
-        try {
-            MediaFileDownloadData mediaFileDownloadData = getMediaFile(id, tenantDomain, type);
-            if (mediaFileDownloadData != null && mediaFileDownloadData.getMediaFile() != null) {
-                fileContent = new FileContentImpl(mediaFileDownloadData.getMediaFile(),
-                        mediaFileDownloadData.getResponseContentType(), mediaFileDownloadData.getETag());
-            }
-            if (fileContent == null) {
-                throw new StorageSystemClientException(String.format("Requested media of type: %s with id: %s in" +
-                        " tenant domain: %s is not exiting in the storage system.", type, id, tenantDomain));
-            }
-            return fileContent;
-        } catch (IOException e) {
-            throw new StorageSystemServerException("Error while retrieving the stored file", e);
-        } catch (ParseException e) {
-            String errorMsg = String.format("Unable to parse metadata in JSON format for stored file with id : %s " +
-                    "and of type %s in tenant domain: %s", id, type, tenantDomain);
-            throw new StorageSystemServerException(errorMsg, e);
-        }
-    }
-
-    @Override
-    public boolean isDownloadAllowedForPublicMedia(String id, String type, String tenantDomain) throws
-            StorageSystemServerException {
+    public ResolvedMedia resolveMedia(String id, String type, String tenantDomain) throws StorageSystemException {
 
-        File file;
         try {
-            file = getMediaMetadataFile(id, type, tenantDomain);
-            if (file != null && file.exists()) {
-                return isFileAccessPublic(file);
-            }
-            return false;
+            return resolveMediaFile(id, type, tenantDomain);
         } catch (IOException e) {
-            String errorMsg = String.format("Error while retrieving metadata for stored file with id: %s and of type " +
-                    "%s in tenant domain: %s", id, type, tenantDomain);
-            throw new StorageSystemServerException(errorMsg, e);
-        } catch (ParseException e) {
-            String errorMsg = String.format("Unable to parse metadata in JSON format for stored file with id : %s " +
-                    "and of type %s in tenant domain: %s", id, type, tenantDomain);
+            String errorMsg = String.format("Error while resolving stored file with id: %s and of type %s in tenant " +
+                    "domain: %s", id, type, tenantDomain);
             throw new StorageSystemServerException(errorMsg, e);
         }
     }
 
     @Override
-    public boolean isDownloadAllowedForProtectedMedia(String mediaId, String type, String tenantDomain, String userId)
-            throws StorageSystemServerException {
+    public ResolvedMedia resolveMedia(String id, String type, String tenantDomain, String identifier)
+            throws StorageSystemException {
 
-        File file;
-        try {
-            file = getMediaMetadataFile(mediaId, type, tenantDomain);
-            if (file != null && file.exists()) {
-                return isFileAccessAllowed(file, userId);
-            }
-            return false;
-        } catch (IOException e) {
-            String errorMsg = String.format("Error while retrieving metadata for stored file with id: %s and of type " +
-                    "%s in tenant domain: %s", mediaId, type, tenantDomain);
-            throw new StorageSystemServerException(errorMsg, e);
-        } catch (ParseException e) {
-            String errorMsg = String.format("Unable to parse metadata in JSON format for stored file with id : %s " +
-                    "and of type %s in tenant domain: %s", mediaId, type, tenantDomain);
-            throw new StorageSystemServerException(errorMsg, e);
-        }
+        return resolveMediaRepresentation(id, type, tenantDomain, identifier);
     }
 
     @Override
-    public boolean isMediaManagementAllowedForEndUser(String mediaId, String type, String tenantDomain, String userId)
-            throws StorageSystemServerException {
+    public DataContent getFile(ResolvedMedia resolvedMedia) throws StorageSystemException {
 
-        File file;
-        try {
-            file = getMediaMetadataFile(mediaId, type, tenantDomain);
-            if (file != null && file.exists()) {
-                return isMediaManagementAllowed(file, userId);
-            }
-            return false;
-        } catch (IOException e) {
-            String errorMsg = String.format("Error while retrieving metadata for stored file with id: %s and of type " +
-                    "%s in tenant domain: %s", mediaId, type, tenantDomain);
-            throw new StorageSystemServerException(errorMsg, e);
-        } catch (ParseException e) {
-            String errorMsg = String.format("Unable to parse metadata in JSON format for stored file with id : %s " +
-                    "and of type %s in tenant domain: %s", mediaId, type, tenantDomain);
-            throw new StorageSystemServerException(errorMsg, e);
-        }
+        return getFileContent(resolvedMedia);
     }
 
     @Override
@@ -194,276 +177,563 @@ public class FileBasedStorageSystemImpl implements StorageSystem {
     }
 
     @Override
-    public MediaInformation getMediaInformation(String id, String type, String tenantDomain) throws
-            StorageSystemServerException, StorageSystemClientException {
+    public ResolvedMedia transform(final ResolvedMedia resolvedMedia, int width) throws StorageSystemException {
 
-        File file;
+        DerivativeCache derivativeCache = MediaServiceDataHolder.getInstance().getDerivativeCache();
+        final String contentType = resolvedMedia.getContentType();
+        if (derivativeCache == null || !ImageResizer.isResizable(contentType)) {
+            return resolvedMedia;
+        }
+        final int variantWidth = StorageSystemUtil.getImageResizeWidth(width);
+        if (variantWidth <= 0) {
+            return resolvedMedia;
+        }
+
+        int tenantId = IdentityTenantUtil.getTenantId(resolvedMedia.getTenantDomain());
+        String identifier = resolvedMedia.getIdentifier() != null ? resolvedMedia.getIdentifier() :
+                DEFAULT_REPRESENTATION_DERIVATIVE_PREFIX;
+        String derivativeKey = getDerivativeKeyPrefix(tenantId, resolvedMedia.getType(), resolvedMedia.getId()) +
+                identifier + VARIANT_WIDTH_SEPARATOR + variantWidth;
         try {
-            file = getMediaMetadataFile(id, type, tenantDomain);
-            if (file == null || !file.exists()) {
-                throw new StorageSystemClientException(String.format("Media information retrieval request can't be" +
-                        " performed as media with id: %s of type: %s in tenant domain: %s is not existing.", id, type,
-                        tenantDomain));
+            Path derivative = derivativeCache.get(derivativeKey, new DerivativeCache.Generator() {
+                @Override
+                public boolean generate(Path target) throws IOException {
+
+                    return ImageResizer.resize(resolvedMedia.getMediaFile().toPath(), target, variantWidth,
+                            contentType);
+                }
+            });
+            if (derivative == null) {
+                // The image is not wider than the requested width, or can't be decoded.
+                return resolvedMedia;
             }
-            return getMediaInformation(file, type, id);
+            return new ResolvedMedia(resolvedMedia.getId(), resolvedMedia.getType(), resolvedMedia.getTenantDomain(),
+                    resolvedMedia.getIdentifier(), derivative.toFile(), resolvedMedia.getLastModified(),
+                    Files.size(derivative), StorageSystemUtil.getVariantETag(resolvedMedia.getETag(), width),
+                    contentType, resolvedMedia.getMetadata());
         } catch (IOException e) {
-            String errorMsg = String.format("Error while retrieving metadata for stored file with id: %s and of type " +
-                    "%s in tenant domain: %s", id, type, tenantDomain);
-            throw new StorageSystemServerException(errorMsg, e);
-        } catch (ParseException e) {
-            String errorMsg = String.format("Unable to parse metadata in JSON format for stored file with id : %s " +
-                    "and of type %s in tenant domain: %s", id, type, tenantDomain);
+            String errorMsg = String.format("Error while resizing stored file with id: %s and of type %s in tenant " +
+                    "domain: %s to width: %d", resolvedMedia.getId(), resolvedMedia.getType(),
+                    resolvedMedia.getTenantDomain(), variantWidth);
             throw new StorageSystemServerException(errorMsg, e);
         }
     }
 
-    @Override
-    public InputStream transform(String id, String type, String tenantDomain, InputStream inputStream)
-            throws StorageSystemException {
-        return inputStream;
-    }
-
     private String uploadMediaUsingChannels(List<InputStream> fileInputStreams, MediaMetadata mediaMetadata,
                                             String uuid, String tenantDomain) throws IOException,
-            StorageSystemServerException {
+            StorageSystemException {
 
         int tenantId = IdentityTenantUtil.getTenantId(tenantDomain);
         String fileContentType = mediaMetadata.getFileContentType();
         String fileType = fileContentType.split("/")[0];
-        String fileTag = mediaMetadata.getFileTag();
-        String fileName = mediaMetadata.getFileName();
-        String resourceOwner = mediaMetadata.getResourceOwnerId();
-        FileSecurity fileSecurity = mediaMetadata.getFileSecurity();
-
-        Path mediaStoragePath = createStorageDirectory(fileType, tenantId, uuid);
-
-        if (mediaStoragePath != null) {
-            Path targetLocation = mediaStoragePath.resolve(uuid);
-            File file = targetLocation.toFile();
-            // Currently, only single file upload is allowed.
-            try (FileOutputStream fileOutputStream = new FileOutputStream(file);
-                 FileChannel fileChannel = fileOutputStream.getChannel();
-                 ReadableByteChannel readableByteChannel = Channels.newChannel(fileInputStreams.get(0))) {
-                fileChannel.transferFrom(readableByteChannel, 0, Long.MAX_VALUE);
-                if (LOGGER.isDebugEnabled()) {
-                    LOGGER.debug(String.format("Uploaded media file: %s to directory: %s, for tenant id: %d and type:" +
-                                    " %s successfully.", uuid, mediaStoragePath.toString(), tenantId, fileType));
+        List<String> fileIdentifiers = StorageSystemUtil.getFileIdentifiers(fileInputStreams.size(),
+                mediaMetadata);
+
+        Path mediaFolder = getMediaFolderPreCreatedLocation();
+        if (mediaFolder == null) {
+            throw new StorageSystemServerException("Unable to upload media as the media mount location is not " +
+                    "configured.");
+        }
+        Path mediaStoragePath = getDirectoryLayout().getMediaDirectory(mediaFolder.resolve(Paths.get(fileType,
+                String.valueOf(tenantId))), uuid);
+        if (mediaStoragePath == null) {
+            throw new StorageSystemServerException(String.format("Unable to resolve the storage directory of media " +
+                    "with unique id: %s.", uuid));
+        }
+
+        // The first file is the default representation of the media and the rest are stored next to it.
+        List<Path> targetLocations = new ArrayList<>(fileInputStreams.size());
+        targetLocations.add(mediaStoragePath.resolve(uuid));
+        for (int i = 1; i < fileInputStreams.size(); i++) {
+            targetLocations.add(mediaStoragePath.resolve(uuid + MEDIA_FILE_IDENTIFIER_SEPARATOR +
+                    fileIdentifiers.get(i)));
+        }
+        boolean binaryMetadata = StorageSystemUtil.isBinaryMetadataEnabled();
+        Path metadataTargetLocation = mediaStoragePath.resolve(uuid + METADATA_FILE_SUFFIX +
+                (binaryMetadata ? BINARY_METADATA_FILE_EXTENSION : METADATA_FILE_EXTENSION));
+
+        // The files and the metadata are written to a stage and only made visible once all of them are written, so
+        // that a failed upload, e.g. on a full disk, or a crash leaves no partially uploaded media behind.
+        MediaUploadStage stage = MediaUploadStage.create(mediaFolder, uuid);
+        List<Path> sharedBlobs = new ArrayList<>();
+        boolean committed = false;
+        try {
+            List<Path> stagedLocations = new ArrayList<>(targetLocations.size());
+            for (Path targetLocation : targetLocations) {
+                stagedLocations.add(stage.getStagedLocation(targetLocation));
+            }
+            List<StoredMediaFile> storedMediaFiles = writeMediaFiles(fileInputStreams, stagedLocations);
+            if (StorageSystemUtil.isContentAddressedStorageEnabled()) {
+                ContentAddressedBlobStore blobStore = new ContentAddressedBlobStore(mediaFolder, tenantId);
+                for (int i = 0; i < stagedLocations.size(); i++) {
+                    Path blob = blobStore.share(stagedLocations.get(i), storedMediaFiles.get(i).getContentHash(),
+                            storedMediaFiles.get(i).getSize());
+                    if (blob != null) {
+                        sharedBlobs.add(blob);
+                    }
                 }
             }
-
-            storeMediaMetadata(targetLocation, fileName, fileContentType, fileTag, resourceOwner, fileSecurity);
-
-            return uuid;
+            storeMediaMetadata(stage.getStagedLocation(metadataTargetLocation), binaryMetadata, mediaMetadata,
+                    fileIdentifiers, storedMediaFiles, System.currentTimeMillis());
+
+            // The other representations are made visible before the default representation, which locates the
+            // media, and the metadata last.
+            List<Path> commitOrder = new ArrayList<>(targetLocations.subList(1, targetLocations.size()));
+            commitOrder.add(targetLocations.get(0));
+            commitOrder.add(metadataTargetLocation);
+            commitStage(stage, commitOrder, mediaStoragePath);
+            committed = true;
+            if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug(String.format("Uploaded %d media file(s) with unique id: %s to directory: %s, for " +
+                        "tenant id: %d and type: %s successfully.", storedMediaFiles.size(), uuid,
+                        mediaStoragePath.toString(), tenantId, fileType));
+            }
+        } finally {
+            stage.discard();
+            if (!committed) {
+                // The blobs stored by a failed upload are released unless other media share them.
+                releaseBlobs(sharedBlobs);
+            }
         }
-        // TODO: 11/29/19 Add proper warnings for e.g Disk Full /File permission scenarios.
+        invalidateCachedMetadata(tenantId, fileType, uuid);
 
-        return "";
+        return uuid;
     }
 
-    private Path createStorageDirectory(String fileType, int tenantId, String uuid) throws IOException,
-            StorageSystemServerException {
-
-        Path fileStorageLocation = getMediaFolderPreCreatedLocation();
-        Path mediaPath = null;
-
-        if (fileStorageLocation != null) {
-            mediaPath = Files.createDirectories(fileStorageLocation.resolve(Paths.get(fileType,
-                    String.valueOf(tenantId))));
+    /**
+     * Write the uploaded files to their target locations. When multiple files are uploaded, all but the first file
+     * are written through the upload executor while the first file is written by the calling thread.
+     */
+    private List<StoredMediaFile> writeMediaFiles(List<InputStream> fileInputStreams, List<Path> targetLocations)
+            throws IOException, StorageSystemServerException {
+
+        int fileCount = fileInputStreams.size();
+        ExecutorService uploadExecutorService = MediaServiceDataHolder.getInstance().getUploadExecutorService();
+        List<StoredMediaFile> storedMediaFiles = new ArrayList<>(fileCount);
+        if (fileCount == 1 || uploadExecutorService == null) {
+            for (int i = 0; i < fileCount; i++) {
+                storedMediaFiles.add(writeMediaFile(fileInputStreams.get(i), targetLocations.get(i),
+                        getContentDigest()));
+            }
+            return storedMediaFiles;
         }
 
-        return createUniqueDirectoryStructure(mediaPath, uuid);
-    }
-
-    private Path createUniqueDirectoryStructure(Path path, String uuid) throws IOException {
-
-        String[] uuidSplit = uuid.split("-");
-        Path uniquePath;
-        if (path != null) {
-            uniquePath = path;
-            for (String pathComponent : uuidSplit) {
-                uniquePath = uniquePath.resolve(pathComponent);
+        List<Future<StoredMediaFile>> futures = new ArrayList<>(fileCount - 1);
+        int submittedCount = 1;
+        try {
+            for (; submittedCount < fileCount; submittedCount++) {
+                futures.add(uploadExecutorService.submit(new MediaFileWriter(fileInputStreams.get(submittedCount),
+                        targetLocations.get(submittedCount), getContentDigest())));
+            }
+        } catch (RejectedExecutionException e) {
+            // The executor was shut down, e.g. replaced when the media configuration was reloaded, hence the
+            // remaining files are written by the calling thread.
+            if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug("The upload executor is shut down. Writing the remaining media files sequentially.");
             }
-            return Files.createDirectories(uniquePath);
         }
-        return null;
-    }
 
-    private MediaFileDownloadData getMediaFile(String uuid, String tenantDomain, String type) throws IOException,
-            ParseException {
-
-        int tenantId = IdentityTenantUtil.getTenantId(tenantDomain);
-        MediaFileDownloadData mediaFileDownloadData = new MediaFileDownloadData();
-
-        Path fileStorageLocation = getStorageDirectory(type, tenantId, uuid);
-        if (fileStorageLocation != null) {
-            Path filePath = fileStorageLocation.resolve(uuid).normalize();
-            File media = filePath.toFile();
-            if (media.exists()) {
-                mediaFileDownloadData.setMediaFile(media);
-
-                long lastModifiedTime = media.lastModified();
-                mediaFileDownloadData.setETag(DigestUtils.sha256Hex(uuid + lastModifiedTime));
-
-                String metadataFileName = uuid + METADATA_FILE_SUFFIX + METADATA_FILE_EXTENSION;
-                Path metadataFilePath = fileStorageLocation.resolve(metadataFileName).normalize();
-                if (metadataFilePath.toFile().exists()) {
-                    File metadataFile = metadataFilePath.toFile();
-                    mediaFileDownloadData.setResponseContentType(getResponseContentTypeFromMetadata(metadataFile));
+        IOException writeError = null;
+        try {
+            storedMediaFiles.add(writeMediaFile(fileInputStreams.get(0), targetLocations.get(0),
+                    getContentDigest()));
+        } catch (IOException e) {
+            writeError = e;
+        }
+        // All the writers are awaited even on a failure, so that no file is being written while it is cleaned up.
+        for (Future<StoredMediaFile> future : futures) {
+            try {
+                StoredMediaFile storedMediaFile = future.get();
+                storedMediaFiles.add(storedMediaFile);
+            } catch (ExecutionException e) {
+                if (writeError == null) {
+                    writeError = e.getCause() instanceof IOException ? (IOException) e.getCause() :
+                            new IOException("Error while writing the media file.", e.getCause());
                 }
-                return mediaFileDownloadData;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                cancelMediaFileWriters(futures);
+                throw new InterruptedIOException("Interrupted while writing the media files.");
             }
         }
-        return null;
+        for (int i = submittedCount; i < fileCount && writeError == null; i++) {
+            try {
+                storedMediaFiles.add(writeMediaFile(fileInputStreams.get(i), targetLocations.get(i),
+                        getContentDigest()));
+            } catch (IOException e) {
+                writeError = e;
+            }
+        }
+        if (writeError != null) {
+            throw writeError;
+        }
+        return storedMediaFiles;
     }
 
-    private String getResponseContentTypeFromMetadata(File metadataFile) throws IOException, ParseException {
+    private void cancelMediaFileWriters(List<Future<StoredMediaFile>> futures) {
 
-        try (InputStreamReader reader = new InputStreamReader(new FileInputStream(metadataFile),
-                StandardCharsets.UTF_8)) {
-            JSONParser parser = new JSONParser();
-            JSONObject metadata = (JSONObject) parser.parse(reader);
-            return (String) metadata.get(MEDIA_CONTENT_TYPE);
+        for (Future<StoredMediaFile> future : futures) {
+            future.cancel(true);
         }
     }
 
-    private File getMediaMetadataFile(String uuid, String mediaType, String tenantDomain) throws IOException {
-
-        int tenantId = IdentityTenantUtil.getTenantId(tenantDomain);
-        Path fileStorageLocation = getStorageDirectory(mediaType, tenantId, uuid);
-        if (fileStorageLocation != null) {
-            String metadataFileName = uuid + METADATA_FILE_SUFFIX + METADATA_FILE_EXTENSION;
-            Path filePath = fileStorageLocation.resolve(metadataFileName).normalize();
-            return filePath.toFile();
+    private static StoredMediaFile writeMediaFile(InputStream inputStream, Path targetLocation,
+                                                  MessageDigest contentDigest) throws IOException {
+
+        // The size of the media is enforced while it is written, so the media is never buffered in memory.
+        SizeLimitedInputStream sizeLimitedInputStream = new SizeLimitedInputStream(inputStream,
+                StorageSystemUtil.getAllowedMaximumMediaSize());
+        // The content hash is computed while the media is written, so that it is never read back for the ETag.
+        InputStream digestInputStream = new DigestInputStream(sizeLimitedInputStream, contentDigest);
+        try (FileOutputStream fileOutputStream = new FileOutputStream(targetLocation.toFile());
+             FileChannel fileChannel = fileOutputStream.getChannel();
+             ReadableByteChannel readableByteChannel = Channels.newChannel(digestInputStream)) {
+            // The files are not written with FileChannel#transferFrom, which ends the transfer without an error when
+            // reading fails after some bytes were transferred, e.g. once the maximum size is exceeded.
+            ByteBuffer buffer = ByteBuffer.allocate(COPY_BUFFER_SIZE);
+            while (readableByteChannel.read(buffer) != -1) {
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    fileChannel.write(buffer);
+                }
+                buffer.clear();
+            }
         }
-        return null;
+        return new StoredMediaFile(new String(Hex.encodeHex(contentDigest.digest())),
+                sizeLimitedInputStream.getCount());
     }
 
-    private boolean isFileAccessPublic(File file) throws IOException, ParseException {
-
-        try (InputStreamReader reader = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)) {
-            JSONParser jsonParser = new JSONParser();
-            Object metadata = jsonParser.parse(reader);
-            HashMap fileSecurity = (HashMap) ((JSONObject) metadata).get(MEDIA_SECURITY);
-            if (fileSecurity != null) {
-                return (Boolean) fileSecurity.get(MEDIA_SECURITY_ALLOWED_ALL);
+    /**
+     * Make the staged files of a media visible in its storage directory. The media reaper prunes the directories of
+     * deleted media once they are empty, which may remove the storage directory or one of its ancestors while it is
+     * created, in which case the storage directory is created again.
+     */
+    private void commitStage(MediaUploadStage stage, List<Path> commitOrder, Path mediaStoragePath)
+            throws IOException {
+
+        for (int attempt = 1; ; attempt++) {
+            try {
+                Files.createDirectories(mediaStoragePath);
+                stage.commit(commitOrder, getSyncPolicy());
+                return;
+            } catch (NoSuchFileException e) {
+                if (attempt >= MAXIMUM_COMMIT_ATTEMPTS || Files.exists(mediaStoragePath)) {
+                    deleteEmptyMediaDirectory(mediaStoragePath);
+                    throw e;
+                }
+            } catch (IOException e) {
+                deleteEmptyMediaDirectory(mediaStoragePath);
+                throw e;
             }
         }
-        return false;
     }
 
-    private boolean isFileAccessAllowed(File file, String userId) throws IOException, ParseException {
+    private void releaseBlobs(List<Path> blobs) {
 
-        try (InputStreamReader reader = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)) {
-            JSONParser jsonParser = new JSONParser();
-            Object metadata = jsonParser.parse(reader);
-            HashMap fileSecurity = (HashMap) ((JSONObject) metadata).get(MEDIA_SECURITY);
-            if (fileSecurity != null) {
-                if ((Boolean) fileSecurity.get(MEDIA_SECURITY_ALLOWED_ALL)) {
-                    return true;
-                }
-                return isUserAllowed(fileSecurity, userId);
+        for (Path blob : blobs) {
+            try {
+                ContentAddressedBlobStore.release(blob);
+            } catch (IOException e) {
+                LOGGER.warn(String.format("Unable to release the blob of partially uploaded media: %s", blob), e);
             }
-            return false;
         }
     }
 
-    private boolean isMediaManagementAllowed(File file, String userId) throws IOException, ParseException {
+    private void deleteEmptyMediaDirectory(Path mediaStoragePath) {
 
-        try (InputStreamReader reader = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)) {
-            JSONParser jsonParser = new JSONParser();
-            Object metadata = jsonParser.parse(reader);
-            String resourceOwner = (String) ((JSONObject) metadata).get(MEDIA_RESOURCE_OWNER_ID);
-            return StringUtils.equals(resourceOwner, userId);
+        // The directory of the media is unique to the media in the nested layout, hence it is removed as well.
+        if (!getDirectoryLayout().hasDirectoryPerMedia()) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(mediaStoragePath);
+        } catch (IOException e) {
+            LOGGER.warn(String.format("Unable to delete the directory of partially uploaded media: %s",
+                    mediaStoragePath), e);
         }
     }
 
-    private boolean isUserAllowed(HashMap fileSecurity, String userId) {
+    private FileSyncPolicy getSyncPolicy() {
 
-        ArrayList allowedUserIds = (ArrayList) fileSecurity.get(MEDIA_SECURITY_ALLOWED_USER_IDS);
-        if (allowedUserIds != null) {
-            for (Object allowedUserId : allowedUserIds) {
-                if (allowedUserId instanceof String) {
-                    String user = (String) allowedUserId;
-                    if (user.equals(userId)) {
-                        return true;
-                    }
-                }
-            }
+        FileSyncPolicy syncPolicy = FileSyncPolicy.fromName(StorageSystemUtil.getUploadSyncPolicy());
+        return syncPolicy != null ? syncPolicy : FileSyncPolicy.NONE;
+    }
+
+    private FileContent getFileContent(ResolvedMedia resolvedMedia) {
+
+        String responseContentType = resolvedMedia.getContentType();
+        if (StorageSystemUtil.isZeroCopyDownloadEnabled()) {
+            return new ChannelContentImpl(resolvedMedia.getMediaFile(), resolvedMedia.getSize(), responseContentType,
+                    resolvedMedia.getETag());
         }
-        return false;
+        return new FileContentImpl(resolvedMedia.getMediaFile(), responseContentType, resolvedMedia.getETag());
     }
 
-    private MediaInformation getMediaInformation(File file, String type, String id) throws IOException, ParseException {
+    /**
+     * Locate a stored media and retrieve its metadata. If the content attributes of the media were recorded in its
+     * metadata at upload, the media is resolved from the metadata alone, i.e. from the metadata cache without any
+     * file system access once cached. Otherwise the media is located with a single file attribute read. A media
+     * without metadata is treated as missing, as the metadata is the last file put in place when the media is stored.
+     *
+     * @param uuid         The unique id of the media.
+     * @param type         The high level content-type of the media.
+     * @param tenantDomain The tenant domain of the media.
+     * @return the resolved media or null if the media does not exist.
+     * @throws IOException                  If an error occurs while reading the media attributes.
+     * @throws StorageSystemServerException If the metadata can't be read.
+     */
+    private ResolvedMedia resolveMediaFile(String uuid, String type, String tenantDomain) throws IOException,
+            StorageSystemServerException {
 
-        MediaInformation mediaInformation = new MediaInformation();
-        try (InputStreamReader reader = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)) {
-            JSONParser jsonParser = new JSONParser();
-            Object metadata = jsonParser.parse(reader);
+        StoredMediaMetadata metadata = getStoredMediaMetadata(uuid, type, tenantDomain);
+        if (metadata == null) {
+            // The upload of the media was interrupted before it was committed.
+            return null;
+        }
+        Path fileStorageLocation = getMediaDirectory(type, IdentityTenantUtil.getTenantId(tenantDomain), uuid);
+        if (fileStorageLocation == null) {
+            return null;
+        }
 
-            HashMap fileSecurityMap = (HashMap) ((JSONObject) metadata).get(MEDIA_SECURITY);
-            boolean allowedAll = (Boolean) fileSecurityMap.get(MEDIA_SECURITY_ALLOWED_ALL);
+        Path filePath = fileStorageLocation.resolve(uuid);
+        if (metadata.hasContentAttributes()) {
+            // The metadata is written only after the media is completely stored and is removed with the media.
+            return new ResolvedMedia(uuid, type, tenantDomain, filePath.toFile(), metadata.getLastModified(),
+                    metadata.getSize(), metadata.getContentHash(), metadata);
+        }
 
-            ArrayList<String> links = new ArrayList<>();
-            String access;
-            if (allowedAll) {
-                access = PUBLIC_DOWNLOAD_ACCESS;
-            } else {
-                access = PROTECTED_DOWNLOAD_ACCESS;
-            }
-            links.add(String.format("/%s/%s/%s", access, type, id));
-            mediaInformation.setLinks(links);
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(filePath, BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+        if (!attributes.isRegularFile()) {
+            return null;
+        }
 
-            mediaInformation.setMediaMetadata(metadata);
+        long lastModifiedTime = attributes.lastModifiedTime().toMillis();
+        String eTag;
+        if (StringUtils.isNotBlank(metadata.getContentHash())) {
+            eTag = metadata.getContentHash();
+        } else {
+            // Media uploaded before content hashes were recorded fall back to an ETag derived from the modified time.
+            eTag = DigestUtils.sha256Hex(uuid + lastModifiedTime);
         }
-        return mediaInformation;
+        return new ResolvedMedia(uuid, type, tenantDomain, filePath.toFile(), lastModifiedTime, attributes.size(),
+                eTag, metadata);
     }
 
-    private void storeMediaMetadata(Path targetLocation, String fileName, String fileContentType, String fileTag,
-                                    String resourceOwner, FileSecurity fileSecurity) throws IOException {
+    /**
+     * Locate a representation of a media uploaded with multiple files. The representation is resolved from the
+     * metadata of the media, which records the content type and the content attributes of each file, so that no file
+     * system access is needed once the metadata is cached. The first representation is stored as the media file
+     * itself and the others as siblings of the media file suffixed with their identifiers.
+     *
+     * @param uuid         The unique id of the media.
+     * @param type         The high level content-type of the media.
+     * @param tenantDomain The tenant domain of the media.
+     * @param identifier   The identifier of the representation.
+     * @return the resolved representation or null if the media or the representation does not exist.
+     * @throws StorageSystemServerException If the metadata can't be read.
+     */
+    private ResolvedMedia resolveMediaRepresentation(String uuid, String type, String tenantDomain,
+                                                     String identifier) throws StorageSystemServerException {
+
+        if (!StorageSystemUtil.isValidFileIdentifier(identifier)) {
+            return null;
+        }
+        StoredMediaMetadata metadata = getStoredMediaMetadata(uuid, type, tenantDomain);
+        if (metadata == null) {
+            return null;
+        }
+        MediaRepresentation representation = metadata.getRepresentation(identifier);
+        if (representation == null || representation.getContentHash() == null || representation.getSize() < 0) {
+            return null;
+        }
+        Path fileStorageLocation = getMediaDirectory(type, IdentityTenantUtil.getTenantId(tenantDomain), uuid);
+        if (fileStorageLocation == null) {
+            return null;
+        }
 
-        Path metadataTargetLocation = targetLocation.resolveSibling(targetLocation.getFileName() + METADATA_FILE_SUFFIX
-                + METADATA_FILE_EXTENSION);
+        String fileName = uuid;
+        if (metadata.getRepresentations().indexOf(representation) > 0) {
+            fileName = uuid + MEDIA_FILE_IDENTIFIER_SEPARATOR + identifier;
+        }
+        return new ResolvedMedia(uuid, type, tenantDomain, identifier, fileStorageLocation.resolve(fileName).toFile(),
+                metadata.getLastModified(), representation.getSize(), representation.getContentHash(),
+                representation.getContentType(), metadata);
+    }
 
-        JSONObject metadata = new JSONObject();
+    /**
+     * Read the metadata file of a stored media, in the binary or the JSON format.
+     */
+    @Override
+    protected StoredMediaMetadata readStoredMediaMetadata(MediaMetadataCacheKey mediaKey, String tenantDomain)
+            throws StorageSystemServerException {
 
-        if (StringUtils.isNotBlank(fileName)) {
-            metadata.put(MEDIA_NAME, fileName);
-        }
-        if (StringUtils.isNotBlank(fileContentType)) {
-            metadata.put(MEDIA_CONTENT_TYPE, fileContentType);
+        Path metadataFilePath = findMetadataFile(mediaKey.getType(), mediaKey.getTenantId(), mediaKey.getId());
+        if (metadataFilePath == null) {
+            return null;
         }
-        if (StringUtils.isNotBlank(fileTag)) {
-            metadata.put(MEDIA_TAG, fileTag);
+        try {
+            return readMediaMetadata(metadataFilePath);
+        } catch (IOException e) {
+            String errorMsg = String.format("Error while retrieving metadata for stored file with id: %s and of type " +
+                    "%s in tenant domain: %s", mediaKey.getId(), mediaKey.getType(), tenantDomain);
+            throw new StorageSystemServerException(errorMsg, e);
+        } catch (ParseException e) {
+            String errorMsg = String.format("Unable to parse metadata in JSON format for stored file with id : %s " +
+                    "and of type %s in tenant domain: %s", mediaKey.getId(), mediaKey.getType(), tenantDomain);
+            throw new StorageSystemServerException(errorMsg, e);
         }
-        if (StringUtils.isNotBlank(resourceOwner)) {
-            metadata.put(MEDIA_RESOURCE_OWNER_ID, resourceOwner);
+    }
+
+    /**
+     * Find the metadata file of a media in the configured directory layout. Only if the metadata is missing there,
+     * and the media may still be stored in the other layout until a migration is completed, is the media looked up in
+     * the other layout.
+     *
+     * @param fileType The high level content-type of the media.
+     * @param tenantId The tenant id of the media.
+     * @param id       The unique id of the media.
+     * @return the metadata file or null if no metadata is stored for the media.
+     */
+    private Path findMetadataFile(String fileType, int tenantId, String id) {
+
+        Path tenantPath = getTenantPath(fileType, tenantId);
+        if (tenantPath == null) {
+            return null;
+        }
+        MediaDirectoryLayout layout = getDirectoryLayout();
+        Path mediaPath = layout.getMediaDirectory(tenantPath, id);
+        if (mediaPath == null) {
+            return null;
+        }
+        Path metadataFilePath = getMetadataFile(mediaPath, id);
+        if (metadataFilePath == null && isOtherLayoutLookupNeeded(layout)) {
+            Path otherMediaPath = layout.getOther().getMediaDirectory(tenantPath, id);
+            if (otherMediaPath != null) {
+                metadataFilePath = getMetadataFile(otherMediaPath, id);
+            }
         }
-        storeFileSecurityMetadata(fileSecurity, metadata);
+        return metadataFilePath;
+    }
 
-        try (FileOutputStream fileStream = new FileOutputStream(metadataTargetLocation.toFile());
-             Writer writer = new OutputStreamWriter(fileStream, StandardCharsets.UTF_8)) {
-            writer.write(metadata.toJSONString());
+    /**
+     * Resolve the metadata file of a media. The metadata file in the format written by this node is looked up first,
+     * falling back to the other format for media uploaded before the format was changed.
+     *
+     * @param fileStorageLocation The directory of the media.
+     * @param uuid                The unique id of the media.
+     * @return the metadata file or null if no metadata is stored for the media.
+     */
+    private Path getMetadataFile(Path fileStorageLocation, String uuid) {
+
+        Path jsonMetadataFilePath = fileStorageLocation.resolve(uuid + METADATA_FILE_SUFFIX + METADATA_FILE_EXTENSION)
+                .normalize();
+        Path binaryMetadataFilePath = fileStorageLocation.resolve(uuid + METADATA_FILE_SUFFIX +
+                BINARY_METADATA_FILE_EXTENSION).normalize();
+        boolean binaryMetadataEnabled = StorageSystemUtil.isBinaryMetadataEnabled();
+        Path metadataFilePath = binaryMetadataEnabled ? binaryMetadataFilePath : jsonMetadataFilePath;
+        if (Files.exists(metadataFilePath)) {
+            return metadataFilePath;
+        }
+        metadataFilePath = binaryMetadataEnabled ? jsonMetadataFilePath : binaryMetadataFilePath;
+        if (Files.exists(metadataFilePath)) {
+            return metadataFilePath;
         }
+        return null;
     }
 
-    private void storeFileSecurityMetadata(FileSecurity fileSecurity, JSONObject metadata) {
+    private StoredMediaMetadata readMediaMetadata(Path metadataFilePath) throws IOException, ParseException {
+
+        byte[] metadataBytes = Files.readAllBytes(metadataFilePath);
+        if (metadataFilePath.getFileName().toString().endsWith(BINARY_METADATA_FILE_EXTENSION)) {
+            // The record itself is retained, only the content type and the representations are decoded.
+            return BinaryMetadataCodec.decode(metadataBytes, METADATA_ENTRY_OVERHEAD);
+        }
+        JSONParser jsonParser = new JSONParser();
+        JSONObject metadata = (JSONObject) jsonParser.parse(new String(metadataBytes, StandardCharsets.UTF_8));
+
+        FileSecurity fileSecurity = null;
+        Map fileSecurityMap = (Map) metadata.get(MEDIA_SECURITY);
+        if (fileSecurityMap != null) {
+            boolean allowedAll = Boolean.TRUE.equals(fileSecurityMap.get(MEDIA_SECURITY_ALLOWED_ALL));
+            fileSecurity = new FileSecurity(allowedAll, getStringList(fileSecurityMap, MEDIA_SECURITY_ALLOWED_USER_IDS),
+                    getStringList(fileSecurityMap, MEDIA_SECURITY_ALLOWED_GROUPS),
+                    getStringList(fileSecurityMap, MEDIA_SECURITY_ALLOWED_ROLES));
+        }
+
+        List<MediaRepresentation> representations = new ArrayList<>();
+        List files = (List) metadata.get(MEDIA_FILES);
+        if (files != null) {
+            for (Object file : files) {
+                if (file instanceof Map && ((Map) file).get(MEDIA_IDENTIFIER) instanceof String) {
+                    Map fileMap = (Map) file;
+                    representations.add(new MediaRepresentation((String) fileMap.get(MEDIA_IDENTIFIER),
+                            (String) fileMap.get(MEDIA_CONTENT_TYPE), (String) fileMap.get(MEDIA_CONTENT_HASH),
+                            getLongValue(fileMap.get(MEDIA_SIZE))));
+                }
+            }
+        }
 
-        JSONObject fileSecurityJSON = new JSONObject();
+        // A parsed JSON tree takes roughly twice the space of its UTF-8 form, plus the fixed per-entry overhead.
+        long weight = METADATA_ENTRY_OVERHEAD + 2L * metadataBytes.length;
+        if (fileSecurity != null && !fileSecurity.isAllowedAll()) {
+            weight += ALLOWED_USER_ENTRY_OVERHEAD * (fileSecurity.getAllowedUserIds().size() +
+                    fileSecurity.getAllowedGroups().size() + fileSecurity.getAllowedRoles().size());
+        }
+        return new StoredMediaMetadata(metadata, (String) metadata.get(MEDIA_CONTENT_TYPE),
+                (String) metadata.get(MEDIA_RESOURCE_OWNER_ID), fileSecurity, (String) metadata.get(MEDIA_CONTENT_HASH),
+                getLongValue(metadata.get(MEDIA_SIZE)), getLongValue(metadata.get(MEDIA_LAST_MODIFIED)),
+                Collections.unmodifiableList(representations), weight);
+    }
 
-        boolean allowedAll = fileSecurity.isAllowedAll();
-        fileSecurityJSON.put(MEDIA_SECURITY_ALLOWED_ALL, allowedAll);
+    private List<String> getStringList(Map map, String key) {
 
-        if (!allowedAll) {
-            List<String> allowedUserIds = fileSecurity.getAllowedUserIds();
-            if (CollectionUtils.isNotEmpty(allowedUserIds)) {
-                fileSecurityJSON.put(MEDIA_SECURITY_ALLOWED_USER_IDS, allowedUserIds);
+        List<String> strings = new ArrayList<>();
+        if (map.get(key) instanceof List) {
+            for (Object item : (List) map.get(key)) {
+                if (item instanceof String) {
+                    strings.add((String) item);
+                }
             }
         }
-        metadata.put(MEDIA_SECURITY, fileSecurityJSON);
+        return Collections.unmodifiableList(strings);
+    }
+
+    private long getLongValue(Object value) {
+
+        if (value instanceof Number) {
+            return ((Number) value).longValue();
+        }
+        return -1;
+    }
+
+    private void storeMediaMetadata(Path metadataLocation, boolean binaryMetadata, MediaMetadata mediaMetadata,
+                                    List<String> fileIdentifiers, List<StoredMediaFile> storedMediaFiles,
+                                    long lastModified) throws IOException {
+
+        List<String> contentHashes = new ArrayList<>(storedMediaFiles.size());
+        List<Long> sizes = new ArrayList<>(storedMediaFiles.size());
+        for (StoredMediaFile storedMediaFile : storedMediaFiles) {
+            contentHashes.add(storedMediaFile.getContentHash());
+            sizes.add(storedMediaFile.getSize());
+        }
+        JSONObject metadata = buildMetadata(mediaMetadata, fileIdentifiers, contentHashes, sizes, lastModified);
+        if (binaryMetadata) {
+            Files.write(metadataLocation, BinaryMetadataCodec.encode(metadata));
+            return;
+        }
+        try (FileOutputStream fileStream = new FileOutputStream(metadataLocation.toFile());
+             Writer writer = new OutputStreamWriter(fileStream, StandardCharsets.UTF_8)) {
+            writer.write(metadata.toJSONString());
+        }
     }
 
     private void deleteFile(String id, String type, String tenantDomain) throws IOException,
-            StorageSystemClientException {
+            StorageSystemException {
 
         int tenantId = IdentityTenantUtil.getTenantId(tenantDomain);
 
@@ -474,37 +744,205 @@ public class FileBasedStorageSystemImpl implements StorageSystem {
         }
 
         Path filePath = fileStorageLocation.resolve(id).normalize();
-        String metadataFileName = id + METADATA_FILE_SUFFIX + METADATA_FILE_EXTENSION;
-        Path metadataFilePath = fileStorageLocation.resolve(metadataFileName).normalize();
         if (Files.notExists(filePath)) {
             throw new StorageSystemClientException(String.format("Delete request cannot be performed as media with " +
                     "id: %s of type: %s in tenant domain: %s not found.", id, type, tenantDomain));
         }
 
-        Files.delete(filePath);
-        Files.delete(metadataFilePath);
+        // The metadata is moved first so that the media is missing to readers from then on, followed by the media
+        // file and the other representations of the media uploaded in a multiple file upload.
+        List<Path> mediaFiles = new ArrayList<>();
+        List<Path> representationFiles = new ArrayList<>();
+        Set<String> metadataFileNames = new HashSet<>(Arrays.asList(
+                id + METADATA_FILE_SUFFIX + METADATA_FILE_EXTENSION,
+                id + METADATA_FILE_SUFFIX + BINARY_METADATA_FILE_EXTENSION));
+        try (DirectoryStream<Path> siblingFiles = Files.newDirectoryStream(fileStorageLocation,
+                id + MEDIA_FILE_IDENTIFIER_SEPARATOR + "*")) {
+            for (Path siblingFile : siblingFiles) {
+                if (metadataFileNames.contains(siblingFile.getFileName().toString())) {
+                    mediaFiles.add(siblingFile);
+                } else {
+                    representationFiles.add(siblingFile);
+                }
+            }
+        }
+        mediaFiles.add(filePath);
+        mediaFiles.addAll(representationFiles);
+        // The files are removed from the trash, the directories of the media are pruned and the blobs shared by the
+        // media are released by the media reaper.
+        Path mediaFolder = StorageSystemUtil.getMediaMountBaseDirectory().resolve(PRE_CREATED_MEDIA_FOLDER);
+        List<Path> blobs = getBlobLocations(mediaFolder, tenantId, type, id, tenantDomain);
+        // The cached metadata is invalidated both before and after the files are moved, also when the move fails
+        // part way, so that the cache serves neither the metadata read above nor metadata read during the move.
+        invalidateCachedMetadata(tenantId, type, id);
+        try {
+            MediaReaper.moveToTrash(mediaFolder, fileStorageLocation, filePath, mediaFiles, blobs);
+        } catch (NoSuchFileException e) {
+            throw new StorageSystemClientException(String.format("Delete request cannot be performed as media with " +
+                    "id: %s of type: %s in tenant domain: %s not found.", id, type, tenantDomain), e);
+        } finally {
+            invalidateCachedMetadata(tenantId, type, id);
+            DerivativeCache derivativeCache = MediaServiceDataHolder.getInstance().getDerivativeCache();
+            if (derivativeCache != null) {
+                derivativeCache.invalidate(getDerivativeKeyPrefix(tenantId, type, id));
+            }
+        }
+    }
+
+    /**
+     * Resolve the blobs to which the files of a media are linked in the content addressed mode, from the content
+     * hashes recorded in the metadata of the media.
+     */
+    private List<Path> getBlobLocations(Path mediaFolder, int tenantId, String type, String id, String tenantDomain)
+            throws StorageSystemServerException {
+
+        StoredMediaMetadata metadata;
+        try {
+            metadata = getStoredMediaMetadata(id, type, tenantDomain);
+        } catch (StorageSystemServerException e) {
+            if (!(e.getCause() instanceof ParseException)) {
+                throw e;
+            }
+            LOGGER.warn(String.format("Unable to parse the metadata of media with id: %s of type: %s to release its " +
+                    "blobs.", id, type), e);
+            return Collections.emptyList();
+        }
+        if (metadata == null) {
+            return Collections.emptyList();
+        }
+        Set<String> contentHashes = new LinkedHashSet<>();
+        if (metadata.getContentHash() != null) {
+            contentHashes.add(metadata.getContentHash());
+        }
+        for (MediaRepresentation representation : metadata.getRepresentations()) {
+            if (representation.getContentHash() != null) {
+                contentHashes.add(representation.getContentHash());
+            }
+        }
+        ContentAddressedBlobStore blobStore = new ContentAddressedBlobStore(mediaFolder, tenantId);
+        List<Path> blobs = new ArrayList<>(contentHashes.size());
+        for (String contentHash : contentHashes) {
+            Path blob = blobStore.getBlobLocation(contentHash);
+            if (blob != null && Files.exists(blob)) {
+                blobs.add(blob);
+            }
+        }
+        return blobs;
+    }
+
+    private String getDerivativeKeyPrefix(int tenantId, String type, String id) {
+
+        return tenantId + "/" + type + "/" + id + "/";
     }
 
     private Path getStorageDirectory(String fileType, int tenantId, String id) {
 
+        Path mediaPath = getMediaDirectory(fileType, tenantId, id);
+        if (mediaPath == null || Files.notExists(mediaPath)) {
+            return null;
+        }
+        return mediaPath;
+    }
+
+    /**
+     * Compute the directory of a media in the configured directory layout without checking for its existence. While
+     * media may still be stored in the other layout, i.e. until a migration to the configured layout is completed,
+     * the media is looked up in the other layout if it is not found in the configured layout. Media are resolved from
+     * their metadata first, so that the directory is only computed for media known to be stored.
+     *
+     * @param fileType The high level content-type of the media.
+     * @param tenantId The tenant id of the media.
+     * @param id       The unique id of the media.
+     * @return the directory of the media or null if the id doesn't resolve to a directory within the storage
+     * location of the tenant.
+     */
+    private Path getMediaDirectory(String fileType, int tenantId, String id) {
+
+        Path tenantPath = getTenantPath(fileType, tenantId);
+        if (tenantPath == null) {
+            return null;
+        }
+        MediaDirectoryLayout layout = getDirectoryLayout();
+        Path mediaPath = layout.getMediaDirectory(tenantPath, id);
+        if (mediaPath != null && isOtherLayoutLookupNeeded(layout) && Files.notExists(mediaPath.resolve(id))) {
+            Path otherMediaPath = layout.getOther().getMediaDirectory(tenantPath, id);
+            if (otherMediaPath != null && Files.exists(otherMediaPath.resolve(id))) {
+                return otherMediaPath;
+            }
+        }
+        return mediaPath;
+    }
+
+    private Path getTenantPath(String fileType, int tenantId) {
+
         Path fileStorageLocation = getFileStorageLocation(fileType);
-        Path mediaPath = null;
-        if (fileStorageLocation != null) {
-            if (Files.notExists(fileStorageLocation)) {
-                return null;
+        if (fileStorageLocation == null) {
+            return null;
+        }
+        return fileStorageLocation.resolve(String.valueOf(tenantId));
+    }
+
+    private MediaDirectoryLayout getDirectoryLayout() {
+
+        MediaDirectoryLayout layout = MediaDirectoryLayout.fromName(StorageSystemUtil.getDirectoryLayout());
+        return layout != null ? layout : MediaDirectoryLayout.NESTED;
+    }
+
+    /**
+     * Checks whether media may be stored in the other layout than the given layout, i.e. whether the given layout
+     * was not recorded in the media folder as the layout of all the stored media when the storage system was created.
+     */
+    private boolean isOtherLayoutLookupNeeded(MediaDirectoryLayout layout) {
+
+        return completedLayout != layout;
+    }
+
+    /**
+     * Read the layout recorded in the media folder by a completed directory layout migration. A media folder without
+     * a recorded layout holds media in the nested layout only, as no migration was started in it, hence no lookup in
+     * the other layout is needed when the nested layout is configured.
+     */
+    private MediaDirectoryLayout readCompletedLayout(MediaDirectoryLayout layout) {
+
+        Path configurableRootFolder = StorageSystemUtil.getMediaMountBaseDirectory();
+        if (configurableRootFolder == null) {
+            // Without a media folder no media are stored in the other layout.
+            return layout;
+        }
+        Path mediaFolder = configurableRootFolder.resolve(PRE_CREATED_MEDIA_FOLDER);
+        try {
+            MediaDirectoryLayout recordedLayout = MediaDirectoryLayout.readCompletedLayout(mediaFolder);
+            if (recordedLayout != layout && isEmptyMediaFolder(mediaFolder)) {
+                // A media folder without media needs no migration, hence media are only stored in the given layout
+                // until the storage system is created again.
+                return layout;
             }
-            mediaPath = fileStorageLocation.resolve(String.valueOf(tenantId));
-            if (Files.notExists(mediaPath)) {
-                return null;
+            return recordedLayout;
+        } catch (IOException e) {
+            LOGGER.warn("Unable to read the directory layout recorded in media folder: " + mediaFolder, e);
+            return layout.getOther();
+        }
+    }
+
+    private boolean isEmptyMediaFolder(Path mediaFolder) throws IOException {
+
+        if (Files.notExists(mediaFolder)) {
+            return false;
+        }
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(mediaFolder)) {
+            for (Path entry : entries) {
+                if (MediaDirectoryLayout.isTypeFolder(entry)) {
+                    return false;
+                }
             }
         }
-        return getUniqueDirectoryStructure(mediaPath, id);
+        return true;
     }
 
     private Path getFileStorageLocation(String fileType) {
 
         Path fileStorageLocation = null;
-        Path configurableRootFolder = getMediaMountBaseDirectory();
+        Path configurableRootFolder = StorageSystemUtil.getMediaMountBaseDirectory();
 
         if (configurableRootFolder != null) {
             fileStorageLocation = configurableRootFolder.resolve(Paths.get(PRE_CREATED_MEDIA_FOLDER, fileType));
@@ -515,7 +953,7 @@ public class FileBasedStorageSystemImpl implements StorageSystem {
     private Path getMediaFolderPreCreatedLocation() throws StorageSystemServerException {
 
         Path fileStorageLocation = null;
-        Path configurableRootFolder = getMediaMountBaseDirectory();
+        Path configurableRootFolder = StorageSystemUtil.getMediaMountBaseDirectory();
 
         if (configurableRootFolder != null) {
             fileStorageLocation = configurableRootFolder.resolve(Paths.get(PRE_CREATED_MEDIA_FOLDER));
@@ -530,35 +968,51 @@ public class FileBasedStorageSystemImpl implements StorageSystem {
         return fileStorageLocation;
     }
 
-    private Path getMediaMountBaseDirectory() {
+    /**
+     * Content attributes of a media file computed while the file is written.
+     */
+    private static class StoredMediaFile {
 
-        Path configurableRootFolder = null;
-        String environmentVariableForRootFolder = System.getenv(CONFIGURABLE_MEDIA_MOUNT_LOCATION);
-        if (StringUtils.isNotBlank(environmentVariableForRootFolder)) {
-            configurableRootFolder = Paths.get(environmentVariableForRootFolder);
+        private final String contentHash;
+        private final long size;
+
+        StoredMediaFile(String contentHash, long size) {
+
+            this.contentHash = contentHash;
+            this.size = size;
         }
 
-        if (configurableRootFolder == null) {
-            configurableRootFolder = Paths.get(System.getProperty(SYSTEM_PROPERTY_CARBON_HOME),
-                    StorageSystemUtil.getMediaMountLocation());
+        String getContentHash() {
+
+            return contentHash;
         }
-        return configurableRootFolder;
-    }
 
-    private Path getUniqueDirectoryStructure(Path path, String uuid) {
+        long getSize() {
 
-        String[] uuidSplit = uuid.split("-");
-        Path uniquePath;
-        if (path != null) {
-            uniquePath = path;
-            for (String pathComponent : uuidSplit) {
-                uniquePath = uniquePath.resolve(pathComponent);
-            }
-            if (Files.exists(uniquePath)) {
-                return uniquePath;
-            }
+            return size;
         }
-        return null;
     }
 
+    /**
+     * Writes a single file of a multiple file upload through the upload executor.
+     */
+    private static class MediaFileWriter implements Callable<StoredMediaFile> {
+
+        private final InputStream inputStream;
+        private final Path targetLocation;
+        private final MessageDigest contentDigest;
+
+        MediaFileWriter(InputStream inputStream, Path targetLocation, MessageDigest contentDigest) {
+
+            this.inputStream = inputStream;
+            this.targetLocation = targetLocation;
+            this.contentDigest = contentDigest;
+        }
+
+        @Override
+        public StoredMediaFile call() throws IOException {
+
+            return writeMediaFile(inputStream, targetLocation, contentDigest);
+        }
+    }
 }
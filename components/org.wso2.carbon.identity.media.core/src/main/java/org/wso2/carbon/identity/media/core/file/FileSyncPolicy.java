@@ -0,0 +1,98 @@
+/*
+ * Copyright (c) 2020, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wso2.carbon.identity.media.core.file;
+
+import org.wso2.carbon.identity.media.core.internal.MediaServiceDataHolder;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Locale;
+
+/**
+ * Policies by which the files of an uploaded media are flushed to the storage device before the upload is completed.
+ * <p>
+ * With no syncing the files are left to be flushed by the operating system, so a media completed shortly before a
+ * power loss may be lost. Syncing per file flushes the files of each upload separately. Group commit syncing flushes
+ * the files of concurrent uploads together, trading a short wait for fewer flushes under load.
+ */
+public enum FileSyncPolicy {
+
+    NONE {
+        @Override
+        void sync(Collection<Path> paths) {
+
+            // The files are flushed by the operating system.
+        }
+    },
+
+    PER_FILE {
+        @Override
+        void sync(Collection<Path> paths) throws IOException {
+
+            for (Path path : paths) {
+                GroupCommitSyncer.force(path);
+            }
+        }
+    },
+
+    GROUP_COMMIT {
+        @Override
+        void sync(Collection<Path> paths) throws IOException {
+
+            GroupCommitSyncer groupCommitSyncer = MediaServiceDataHolder.getInstance().getGroupCommitSyncer();
+            if (groupCommitSyncer == null) {
+                PER_FILE.sync(paths);
+                return;
+            }
+            groupCommitSyncer.sync(paths);
+        }
+    };
+
+    /**
+     * Flush the given files or directories to the storage device according to this policy.
+     *
+     * @param paths The files and directories.
+     * @throws IOException If a file or directory can't be flushed.
+     */
+    abstract void sync(Collection<Path> paths) throws IOException;
+
+    /**
+     * Returns the name of the policy as configured in media.properties file.
+     *
+     * @return policy name.
+     */
+    public String getName() {
+
+        return name().toLowerCase(Locale.ENGLISH).replace('_', '-');
+    }
+
+    /**
+     * Resolve a policy by its name.
+     *
+     * @param name The policy name, i.e. {@code none}, {@code per-file} or {@code group-commit}.
+     * @return the policy or null if there is no policy by the given name.
+     */
+    public static FileSyncPolicy fromName(String name) {
+
+        for (FileSyncPolicy policy : values()) {
+            if (policy.getName().equalsIgnoreCase(name == null ? null : name.trim())) {
+                return policy;
+            }
+        }
+        return null;
+    }
+}
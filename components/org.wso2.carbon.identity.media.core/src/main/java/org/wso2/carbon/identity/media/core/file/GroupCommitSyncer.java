@@ -0,0 +1,166 @@
+/*
+ * Copyright (c) 2020, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wso2.carbon.identity.media.core.file;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Flushes the files of concurrent uploads to the storage device in batches. The first upload to request a flush
+ * leads a batch: it waits for the commit window so that concurrent uploads join the batch, and then flushes the files
+ * of all of them while the others wait for the batch to complete. Files and directories requested by multiple uploads
+ * of a batch, e.g. a shared directory of the hashed layout, are flushed once.
+ */
+public final class GroupCommitSyncer {
+
+    private static final Log LOGGER = LogFactory.getLog(GroupCommitSyncer.class);
+
+    private final long commitWindowNanos;
+    private final Object lock = new Object();
+    private Batch openBatch;
+
+    /**
+     * @param commitWindow The time in milliseconds a batch is kept open for concurrent uploads to join.
+     */
+    public GroupCommitSyncer(long commitWindow) {
+
+        this.commitWindowNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(commitWindow, 0));
+    }
+
+    /**
+     * Flush the given files or directories to the storage device, together with those of concurrent callers.
+     *
+     * @param paths The files and directories.
+     * @throws IOException If one of the given files or directories can't be flushed.
+     */
+    public void sync(Collection<Path> paths) throws IOException {
+
+        if (paths.isEmpty()) {
+            return;
+        }
+        Batch batch;
+        boolean leader = false;
+        synchronized (lock) {
+            if (openBatch == null) {
+                openBatch = new Batch();
+                leader = true;
+            }
+            batch = openBatch;
+            batch.paths.addAll(paths);
+        }
+
+        if (leader) {
+            long deadline = System.nanoTime() + commitWindowNanos;
+            long remaining = commitWindowNanos;
+            while (remaining > 0 && !Thread.currentThread().isInterrupted()) {
+                LockSupport.parkNanos(remaining);
+                remaining = deadline - System.nanoTime();
+            }
+            synchronized (lock) {
+                openBatch = null;
+            }
+            batch.flush();
+        } else {
+            batch.await();
+        }
+        batch.checkFailures(paths);
+    }
+
+    /**
+     * Flush a file or directory to the storage device. Directories are flushed so that the entries renamed into them
+     * are durable, on the platforms where a directory can be opened for that.
+     *
+     * @param path The file or directory.
+     * @throws IOException If the file can't be flushed.
+     */
+    static void force(Path path) throws IOException {
+
+        if (Files.isDirectory(path)) {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                channel.force(true);
+            } catch (IOException e) {
+                // Directories can't be opened on all the platforms, where the renames are made durable otherwise.
+                if (LOGGER.isDebugEnabled()) {
+                    LOGGER.debug("Unable to flush directory: " + path, e);
+                }
+            }
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+    }
+
+    /**
+     * The files and directories flushed together, and the outcome of flushing them.
+     */
+    private static class Batch {
+
+        private final Set<Path> paths = new LinkedHashSet<>();
+        private final Map<Path, IOException> failures = new HashMap<>();
+        private final CountDownLatch flushed = new CountDownLatch(1);
+
+        void flush() {
+
+            try {
+                for (Path path : paths) {
+                    try {
+                        force(path);
+                    } catch (IOException e) {
+                        failures.put(path, e);
+                    }
+                }
+            } finally {
+                flushed.countDown();
+            }
+        }
+
+        void await() throws InterruptedIOException {
+
+            try {
+                flushed.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for the media files to be flushed.");
+            }
+        }
+
+        void checkFailures(Collection<Path> requestedPaths) throws IOException {
+
+            for (Path path : requestedPaths) {
+                IOException failure = failures.get(path);
+                if (failure != null) {
+                    throw new IOException("Unable to flush " + path + " to the storage device.", failure);
+                }
+            }
+        }
+    }
+}
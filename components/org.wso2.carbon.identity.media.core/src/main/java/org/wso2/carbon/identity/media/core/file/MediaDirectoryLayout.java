@@ -0,0 +1,189 @@
+/*
+ * Copyright (c) 2020, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wso2.carbon.identity.media.core.file;
+
+import org.apache.commons.codec.digest.DigestUtils;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Locale;
+
+/**
+ * Layouts of the directories in which the files of media are stored, within the folder of a tenant, i.e.
+ * {@code media/<type>/<tenantId>}.
+ * <p>
+ * The nested layout creates a directory chain from the components of the media id, so that each media has its own
+ * directory. The hashed layout stores the files of media in a fixed two-level fan-out of 256 x 256 directories,
+ * selected by the hash of the media id, so that no directory is created per media.
+ */
+public enum MediaDirectoryLayout {
+
+    NESTED {
+        @Override
+        Path getDirectory(Path tenantPath, String id) {
+
+            Path mediaPath = tenantPath;
+            for (String pathComponent : id.split("-")) {
+                mediaPath = mediaPath.resolve(pathComponent);
+            }
+            return mediaPath;
+        }
+
+        @Override
+        public boolean hasDirectoryPerMedia() {
+
+            return true;
+        }
+    },
+
+    HASHED {
+        @Override
+        Path getDirectory(Path tenantPath, String id) {
+
+            // The hash of a media id must never change, as it locates the media.
+            String hash = DigestUtils.sha256Hex(id);
+            return tenantPath.resolve(hash.substring(0, 2)).resolve(hash.substring(2, 4));
+        }
+
+        @Override
+        public boolean hasDirectoryPerMedia() {
+
+            return false;
+        }
+    };
+
+    /**
+     * Name of the file in the media folder which records the layout of all the stored media, once a migration to
+     * that layout is completed. Media stored before the layouts were introduced are in the nested layout.
+     */
+    static final String LAYOUT_MARKER_FILE = ".layout";
+
+    abstract Path getDirectory(Path tenantPath, String id);
+
+    /**
+     * Checks whether an entry of the media folder is the folder of a media type, i.e. a folder holding stored media
+     * rather than a hidden folder holding media being uploaded or deleted.
+     *
+     * @param entry The entry of the media folder.
+     * @return true if the entry is the folder of a media type.
+     */
+    static boolean isTypeFolder(Path entry) {
+
+        return Files.isDirectory(entry) && !entry.getFileName().toString().startsWith(".");
+    }
+
+    /**
+     * Returns whether each media is stored in a directory of its own.
+     *
+     * @return true if the directory of a media holds only the files of that media.
+     */
+    public abstract boolean hasDirectoryPerMedia();
+
+    /**
+     * Compute the directory in which the files of a media are stored, without checking for its existence.
+     *
+     * @param tenantPath The folder of the tenant of the media.
+     * @param id         The unique id of the media.
+     * @return the directory or null if the id doesn't resolve to a file within the folder of the tenant.
+     */
+    public Path getMediaDirectory(Path tenantPath, String id) {
+
+        Path mediaPath = getDirectory(tenantPath, id).normalize();
+        Path mediaFilePath = mediaPath.resolve(id).normalize();
+        if (!mediaPath.startsWith(tenantPath.normalize()) || !mediaPath.equals(mediaFilePath.getParent())) {
+            return null;
+        }
+        return mediaPath;
+    }
+
+    /**
+     * Returns the layout media are moved from when migrating to this layout.
+     *
+     * @return the other layout.
+     */
+    public MediaDirectoryLayout getOther() {
+
+        return this == NESTED ? HASHED : NESTED;
+    }
+
+    /**
+     * Returns the name of the layout as configured in media.properties file.
+     *
+     * @return layout name.
+     */
+    public String getName() {
+
+        return name().toLowerCase(Locale.ENGLISH);
+    }
+
+    /**
+     * Resolve a layout by its name.
+     *
+     * @param name The layout name, i.e. {@code nested} or {@code hashed}.
+     * @return the layout or null if there is no layout by the given name.
+     */
+    public static MediaDirectoryLayout fromName(String name) {
+
+        for (MediaDirectoryLayout layout : values()) {
+            if (layout.getName().equalsIgnoreCase(name == null ? null : name.trim())) {
+                return layout;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Read the layout recorded in the media folder as the layout of all the stored media.
+     *
+     * @param mediaFolder The media folder.
+     * @return the recorded layout, or the nested layout if no layout is recorded.
+     * @throws IOException If the recorded layout can't be read.
+     */
+    static MediaDirectoryLayout readCompletedLayout(Path mediaFolder) throws IOException {
+
+        byte[] recordedLayout;
+        try {
+            recordedLayout = Files.readAllBytes(mediaFolder.resolve(LAYOUT_MARKER_FILE));
+        } catch (NoSuchFileException e) {
+            return NESTED;
+        }
+        MediaDirectoryLayout layout = fromName(new String(recordedLayout, StandardCharsets.UTF_8));
+        if (layout == null) {
+            throw new IOException("Invalid media directory layout recorded in " +
+                    mediaFolder.resolve(LAYOUT_MARKER_FILE));
+        }
+        return layout;
+    }
+
+    /**
+     * Record the given layout in the media folder as the layout of all the stored media.
+     *
+     * @param mediaFolder The media folder.
+     * @param layout      The layout.
+     * @throws IOException If the layout can't be recorded.
+     */
+    static void recordCompletedLayout(Path mediaFolder, MediaDirectoryLayout layout) throws IOException {
+
+        Path markerFile = mediaFolder.resolve(LAYOUT_MARKER_FILE);
+        Path temporaryFile = markerFile.resolveSibling(LAYOUT_MARKER_FILE + ".tmp");
+        Files.write(temporaryFile, layout.getName().getBytes(StandardCharsets.UTF_8));
+        Files.move(temporaryFile, markerFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+}
@@ -0,0 +1,246 @@
+/*
+ * Copyright (c) 2020, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wso2.carbon.identity.media.core.file;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Removes deleted media from the media folder in the background. A media is deleted by atomically moving its files
+ * to an entry of the trash folder within the media folder, so that the media is missing to readers as soon as the
+ * delete request returns, regardless of the number of its files and the depth of its directory. The reaper then
+ * deletes the files of the trash entries at a limited rate, and prunes the directories of the deleted media which
+ * are left empty, up to the folder of the tenant.
+ * <p>
+ * Each trash entry records the directory the media was deleted from and the blobs the media may share with other
+ * media, relative to the media folder, so that the entries can be reaped by any node sharing the media folder. The
+ * blobs are released once no media links to them. The directory is recorded once all the files are moved,
+ * hence an entry without it is either still being filled or was left by a crash, and is only reaped once it is old.
+ */
+public final class MediaReaper implements Runnable {
+
+    /**
+     * Name of the folder within the media folder which holds the files of deleted media until they are reaped.
+     */
+    static final String TRASH_FOLDER = ".trash";
+
+    private static final Log LOGGER = LogFactory.getLog(MediaReaper.class);
+    private static final String ORIGIN_FILE = ".origin";
+    private static final String TEMPORARY_FILE_EXTENSION = ".tmp";
+    // Age in milliseconds after which a trash entry without a recorded directory is considered left by a crash.
+    private static final long ABANDONED_TRASH_ENTRY_AGE = TimeUnit.MINUTES.toMillis(10);
+    // The number of leading components of the directory of a media which form the folder of its tenant.
+    private static final int TENANT_FOLDER_NAME_COUNT = 2;
+
+    private final Path mediaFolder;
+    private final long nanosPerDelete;
+
+    /**
+     * @param mediaFolder             The media folder.
+     * @param maximumDeletesPerSecond The maximum number of files and directories deleted per second.
+     */
+    public MediaReaper(Path mediaFolder, int maximumDeletesPerSecond) {
+
+        this.mediaFolder = mediaFolder;
+        this.nanosPerDelete = TimeUnit.SECONDS.toNanos(1) / Math.max(maximumDeletesPerSecond, 1);
+    }
+
+    /**
+     * Move the files of a media to the trash, in the given order. The metadata of the media is expected first, so
+     * that the media is missing to readers from the first move onwards.
+     *
+     * @param mediaFolder    The media folder.
+     * @param mediaDirectory The directory of the media.
+     * @param mediaFile      The default representation of the media, which locates the media.
+     * @param mediaFiles     The files of the media, including the default representation, in the order to move them.
+     * @param blobs          The blobs to which the files of the media may be linked in the content addressed mode.
+     * @throws NoSuchFileException If the default representation of the media no longer exists, e.g. due to a
+     *                             concurrent delete.
+     * @throws IOException         If the files can't be moved.
+     */
+    static void moveToTrash(Path mediaFolder, Path mediaDirectory, Path mediaFile, List<Path> mediaFiles,
+                            List<Path> blobs) throws IOException {
+
+        Path trashFolder = Files.createDirectories(mediaFolder.resolve(TRASH_FOLDER));
+        Path trashEntry = Files.createTempDirectory(trashFolder, mediaFile.getFileName() + "-");
+        for (Path file : mediaFiles) {
+            try {
+                Files.move(file, trashEntry.resolve(file.getFileName().toString()), StandardCopyOption.ATOMIC_MOVE);
+            } catch (NoSuchFileException e) {
+                if (file.equals(mediaFile)) {
+                    throw e;
+                }
+                // The file was removed with the media by a concurrent delete.
+            }
+        }
+        Path temporaryOriginFile = trashEntry.resolve(ORIGIN_FILE + TEMPORARY_FILE_EXTENSION);
+        List<String> origin = new ArrayList<>(blobs.size() + 1);
+        origin.add(mediaFolder.relativize(mediaDirectory).toString());
+        for (Path blob : blobs) {
+            origin.add(mediaFolder.relativize(blob).toString());
+        }
+        Files.write(temporaryOriginFile, origin, StandardCharsets.UTF_8);
+        Files.move(temporaryOriginFile, trashEntry.resolve(ORIGIN_FILE), StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    @Override
+    public void run() {
+
+        try {
+            int reapedCount = reap();
+            if (reapedCount > 0 && LOGGER.isDebugEnabled()) {
+                LOGGER.debug(String.format("Reaped %d deleted media from: %s", reapedCount, mediaFolder));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            // The reaper is scheduled periodically, and must not be cancelled by an unexpected error.
+            LOGGER.error("Error while reaping deleted media from: " + mediaFolder, e);
+        }
+    }
+
+    /**
+     * Reap the entries of the trash folder.
+     *
+     * @return the number of entries reaped.
+     * @throws InterruptedException If interrupted while waiting to keep within the rate of deletes.
+     */
+    int reap() throws InterruptedException {
+
+        Path trashFolder = mediaFolder.resolve(TRASH_FOLDER);
+        if (!Files.isDirectory(trashFolder)) {
+            return 0;
+        }
+        RateLimit rateLimit = new RateLimit();
+        int reapedCount = 0;
+        try (DirectoryStream<Path> trashEntries = Files.newDirectoryStream(trashFolder)) {
+            for (Path trashEntry : trashEntries) {
+                try {
+                    if (reapTrashEntry(trashEntry, rateLimit)) {
+                        reapedCount++;
+                    }
+                } catch (IOException e) {
+                    LOGGER.warn("Unable to reap deleted media: " + trashEntry, e);
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.warn("Unable to read the trash folder: " + trashFolder, e);
+        }
+        return reapedCount;
+    }
+
+    private boolean reapTrashEntry(Path trashEntry, RateLimit rateLimit) throws IOException, InterruptedException {
+
+        Path mediaDirectory = null;
+        List<Path> blobs = new ArrayList<>();
+        try {
+            List<String> origin = Files.readAllLines(trashEntry.resolve(ORIGIN_FILE), StandardCharsets.UTF_8);
+            for (int i = 0; i < origin.size(); i++) {
+                Path path = mediaFolder.resolve(origin.get(i)).normalize();
+                if (!path.startsWith(mediaFolder.normalize())) {
+                    continue;
+                }
+                if (i == 0) {
+                    mediaDirectory = path;
+                } else if (path.startsWith(mediaFolder.resolve(ContentAddressedBlobStore.BLOB_FOLDER).normalize())) {
+                    blobs.add(path);
+                }
+            }
+        } catch (NoSuchFileException e) {
+            try {
+                if (Files.getLastModifiedTime(trashEntry).toMillis() >
+                        System.currentTimeMillis() - ABANDONED_TRASH_ENTRY_AGE) {
+                    // The files of a media are being moved to the entry.
+                    return false;
+                }
+            } catch (NoSuchFileException ex) {
+                // The entry was reaped by another node.
+                return false;
+            }
+        }
+
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(trashEntry)) {
+            for (Path file : files) {
+                if (!file.getFileName().toString().equals(ORIGIN_FILE)) {
+                    rateLimit.acquire();
+                    Files.deleteIfExists(file);
+                }
+            }
+        } catch (NoSuchFileException e) {
+            return false;
+        }
+        // The blobs are released once the links of the media to them are deleted.
+        for (Path blob : blobs) {
+            rateLimit.acquire();
+            ContentAddressedBlobStore.release(blob);
+        }
+        Files.deleteIfExists(trashEntry.resolve(ORIGIN_FILE));
+        Files.deleteIfExists(trashEntry);
+
+        if (mediaDirectory != null) {
+            pruneEmptyDirectories(mediaDirectory, rateLimit);
+        }
+        return true;
+    }
+
+    private void pruneEmptyDirectories(Path mediaDirectory, RateLimit rateLimit) throws IOException,
+            InterruptedException {
+
+        Path normalizedMediaFolder = mediaFolder.normalize();
+        Path directory = mediaDirectory;
+        while (directory.startsWith(normalizedMediaFolder) &&
+                normalizedMediaFolder.relativize(directory).getNameCount() > TENANT_FOLDER_NAME_COUNT) {
+            rateLimit.acquire();
+            try {
+                Files.deleteIfExists(directory);
+            } catch (DirectoryNotEmptyException e) {
+                // The directory holds other media.
+                return;
+            }
+            directory = directory.getParent();
+        }
+    }
+
+    /**
+     * Spaces the deletes of a reaper run so that they are kept within the maximum rate.
+     */
+    private class RateLimit {
+
+        private final long startTime = System.nanoTime();
+        private long permits;
+
+        void acquire() throws InterruptedException {
+
+            long waitTime = startTime + permits * nanosPerDelete - System.nanoTime();
+            if (waitTime > 0) {
+                TimeUnit.NANOSECONDS.sleep(waitTime);
+            }
+            permits++;
+        }
+    }
+}
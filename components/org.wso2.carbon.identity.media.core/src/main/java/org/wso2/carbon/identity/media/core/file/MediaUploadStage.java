@@ -0,0 +1,259 @@
+/*
+ * Copyright (c) 2020, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wso2.carbon.identity.media.core.file;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The staging directory of a media being uploaded. The files of the media and its metadata are written to the
+ * staging directory, which is within the media folder and hence on the same file system as the media, and are then
+ * atomically renamed to their locations. A media is located by its default representation and its content is read
+ * through its metadata, so the representations are renamed first and the metadata last: a reader never sees a
+ * partially written file, or metadata referring to a file which isn't in place yet.
+ * <p>
+ * The target locations are recorded in a commit journal in the stage before the files are renamed. A stage left behind
+ * by a crash is removed by the recovery pass run at startup, which also removes the files renamed by a commit that
+ * was interrupted before the metadata was renamed. Such files are never served, as media without metadata are
+ * treated as missing.
+ */
+public final class MediaUploadStage {
+
+    /**
+     * Name of the folder within the media folder which holds the stages of the media being uploaded.
+     */
+    static final String STAGING_FOLDER = ".staging";
+
+    /**
+     * Age in milliseconds after which a stage which is no longer written to is considered orphaned. Stages are only
+     * removed after this age, since other nodes sharing the media folder may be uploading media.
+     */
+    static final long ORPHANED_STAGE_AGE = TimeUnit.MINUTES.toMillis(10);
+
+    /**
+     * Name of the file in a stage which lists the target locations of a commit in progress, relative to the media
+     * folder.
+     */
+    static final String COMMIT_JOURNAL = ".commit";
+
+    private static final Log LOGGER = LogFactory.getLog(MediaUploadStage.class);
+
+    private final Path stageDirectory;
+
+    private MediaUploadStage(Path stageDirectory) {
+
+        this.stageDirectory = stageDirectory;
+    }
+
+    /**
+     * Create the stage of a media being uploaded.
+     *
+     * @param mediaFolder The media folder.
+     * @param uuid        The unique id of the media.
+     * @return the stage.
+     * @throws IOException If the staging directory can't be created.
+     */
+    static MediaUploadStage create(Path mediaFolder, String uuid) throws IOException {
+
+        Path stagingFolder = Files.createDirectories(mediaFolder.resolve(STAGING_FOLDER));
+        return new MediaUploadStage(Files.createTempDirectory(stagingFolder, uuid + "-"));
+    }
+
+    /**
+     * Returns the location in the stage to which a file of the media is written before it is renamed to the given
+     * target location.
+     *
+     * @param targetLocation The location of the file once the upload is completed.
+     * @return the staged location.
+     */
+    Path getStagedLocation(Path targetLocation) {
+
+        return stageDirectory.resolve(targetLocation.getFileName().toString());
+    }
+
+    /**
+     * Rename the staged files to their target locations in the given order, after flushing them according to the
+     * sync policy. If a file can't be renamed, the files already renamed are removed so that no part of the media is
+     * left visible.
+     *
+     * @param targetLocations The target locations, in the order in which the files are made visible.
+     * @param syncPolicy      The policy by which the files and the renames are flushed to the storage device.
+     * @throws IOException If the files can't be flushed or renamed.
+     */
+    void commit(List<Path> targetLocations, FileSyncPolicy syncPolicy) throws IOException {
+
+        Path mediaFolder = stageDirectory.getParent().getParent();
+        List<Path> stagedLocations = new ArrayList<>(targetLocations.size());
+        List<String> journal = new ArrayList<>(targetLocations.size());
+        Set<Path> targetDirectories = new LinkedHashSet<>();
+        for (Path targetLocation : targetLocations) {
+            stagedLocations.add(getStagedLocation(targetLocation));
+            journal.add(mediaFolder.relativize(targetLocation).toString());
+            targetDirectories.add(targetLocation.getParent());
+        }
+        Path journalLocation = stageDirectory.resolve(COMMIT_JOURNAL);
+        Files.write(journalLocation, journal, StandardCharsets.UTF_8);
+        List<Path> flushedLocations = new ArrayList<>(stagedLocations);
+        flushedLocations.add(journalLocation);
+        flushedLocations.add(stageDirectory);
+        syncPolicy.sync(flushedLocations);
+
+        List<Path> renamedLocations = new ArrayList<>(targetLocations.size());
+        try {
+            for (int i = 0; i < targetLocations.size(); i++) {
+                Files.move(stagedLocations.get(i), targetLocations.get(i), StandardCopyOption.ATOMIC_MOVE);
+                renamedLocations.add(targetLocations.get(i));
+            }
+            syncPolicy.sync(targetDirectories);
+        } catch (IOException e) {
+            // The metadata is renamed last, hence it is removed first.
+            for (int i = renamedLocations.size() - 1; i >= 0; i--) {
+                deleteQuietly(renamedLocations.get(i));
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Remove the stage and any file left in it. A stage is discarded once the upload is completed or failed.
+     */
+    void discard() {
+
+        try {
+            deleteStage(stageDirectory);
+        } catch (IOException e) {
+            LOGGER.warn("Unable to delete the stage of an uploaded media: " + stageDirectory, e);
+        }
+    }
+
+    /**
+     * Remove the stages of uploads which were interrupted, e.g. by a crash, and have not been written to for
+     * {@link #ORPHANED_STAGE_AGE}. The files renamed by a commit interrupted before its last file, i.e. the metadata,
+     * was renamed are removed as well.
+     *
+     * @param mediaFolder The media folder.
+     * @return the number of stages removed.
+     */
+    public static int deleteOrphanedStages(Path mediaFolder) {
+
+        Path stagingFolder = mediaFolder.resolve(STAGING_FOLDER);
+        if (!Files.isDirectory(stagingFolder)) {
+            return 0;
+        }
+        long orphanedBefore = System.currentTimeMillis() - ORPHANED_STAGE_AGE;
+        int deletedCount = 0;
+        try (DirectoryStream<Path> stages = Files.newDirectoryStream(stagingFolder)) {
+            for (Path stage : stages) {
+                try {
+                    if (getLastModifiedTime(stage) < orphanedBefore) {
+                        deleteInterruptedCommit(mediaFolder, stage);
+                        deleteStage(stage);
+                        deletedCount++;
+                    }
+                } catch (IOException e) {
+                    LOGGER.warn("Unable to delete the orphaned stage of an uploaded media: " + stage, e);
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.warn("Unable to read the staging folder: " + stagingFolder, e);
+        }
+        return deletedCount;
+    }
+
+    /**
+     * Remove the files renamed to their target locations by a commit which was interrupted. A commit is completed
+     * once its last file is renamed, i.e. once the last file listed in the commit journal is no longer in the stage.
+     */
+    private static void deleteInterruptedCommit(Path mediaFolder, Path stage) throws IOException {
+
+        Path journalLocation = stage.resolve(COMMIT_JOURNAL);
+        if (!Files.exists(journalLocation)) {
+            return;
+        }
+        List<String> journal = Files.readAllLines(journalLocation, StandardCharsets.UTF_8);
+        if (journal.isEmpty() || Files.notExists(stage.resolve(Paths.get(journal.get(journal.size() - 1))
+                .getFileName()))) {
+            return;
+        }
+        for (String entry : journal) {
+            Path targetLocation = mediaFolder.resolve(entry).normalize();
+            if (!targetLocation.startsWith(mediaFolder) ||
+                    Files.exists(stage.resolve(targetLocation.getFileName()))) {
+                // The file was not renamed before the commit was interrupted.
+                continue;
+            }
+            if (Files.deleteIfExists(targetLocation)) {
+                LOGGER.warn("Removed the file of an interrupted media upload: " + targetLocation);
+            }
+            Path targetDirectory = targetLocation.getParent();
+            if (!targetDirectory.equals(mediaFolder)) {
+                try {
+                    Files.deleteIfExists(targetDirectory);
+                } catch (DirectoryNotEmptyException e) {
+                    // The directory holds other media.
+                }
+            }
+        }
+    }
+
+    private static long getLastModifiedTime(Path stage) throws IOException {
+
+        long lastModifiedTime = Files.getLastModifiedTime(stage).toMillis();
+        if (Files.isDirectory(stage)) {
+            try (DirectoryStream<Path> stagedFiles = Files.newDirectoryStream(stage)) {
+                for (Path stagedFile : stagedFiles) {
+                    lastModifiedTime = Math.max(lastModifiedTime, Files.getLastModifiedTime(stagedFile).toMillis());
+                }
+            }
+        }
+        return lastModifiedTime;
+    }
+
+    private static void deleteStage(Path stage) throws IOException {
+
+        if (Files.isDirectory(stage)) {
+            try (DirectoryStream<Path> stagedFiles = Files.newDirectoryStream(stage)) {
+                for (Path stagedFile : stagedFiles) {
+                    Files.deleteIfExists(stagedFile);
+                }
+            }
+        }
+        Files.deleteIfExists(stage);
+    }
+
+    private static void deleteQuietly(Path path) {
+
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            LOGGER.warn("Unable to delete partially uploaded media file: " + path, e);
+        }
+    }
+}
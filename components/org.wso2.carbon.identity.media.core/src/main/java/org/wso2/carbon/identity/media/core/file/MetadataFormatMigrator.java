@@ -0,0 +1,170 @@
+/*
+ * Copyright (c) 2020, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wso2.carbon.identity.media.core.file;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+
+import static org.wso2.carbon.identity.media.core.util.StorageSystemConstants.BINARY_METADATA_FILE_EXTENSION;
+import static org.wso2.carbon.identity.media.core.util.StorageSystemConstants.METADATA_FILE_EXTENSION;
+import static org.wso2.carbon.identity.media.core.util.StorageSystemConstants.METADATA_FILE_SUFFIX;
+
+/**
+ * Converts the JSON metadata files of the media in a media folder to the binary metadata format, in place. Each
+ * binary metadata file is written to a temporary file which is atomically renamed before the JSON metadata file is
+ * deleted, so that the metadata of a media is readable throughout the migration. The migration can be run while the
+ * server is serving the media folder, and can be re-run if interrupted.
+ * <p>
+ * Usage: {@code java -cp <classpath> org.wso2.carbon.identity.media.core.file.MetadataFormatMigrator <media folder>}
+ */
+public final class MetadataFormatMigrator {
+
+    private static final Log LOGGER = LogFactory.getLog(MetadataFormatMigrator.class);
+    private static final String JSON_METADATA_FILE_SUFFIX = METADATA_FILE_SUFFIX + METADATA_FILE_EXTENSION;
+    private static final String TEMPORARY_FILE_EXTENSION = ".tmp";
+
+    private int migratedCount;
+    private int failedCount;
+
+    private MetadataFormatMigrator() {
+
+    }
+
+    public static void main(String[] args) throws IOException {
+
+        if (args.length != 1) {
+            System.err.println("Usage: MetadataFormatMigrator <media folder>");
+            System.exit(1);
+        }
+        MetadataFormatMigrator migrator = migrate(Paths.get(args[0]));
+        System.out.println(String.format("Migrated the metadata of %d media. Failed to migrate the metadata of %d " +
+                "media.", migrator.getMigratedCount(), migrator.getFailedCount()));
+        if (migrator.getFailedCount() > 0) {
+            System.exit(2);
+        }
+    }
+
+    /**
+     * Convert all the JSON metadata files in the given media folder to the binary metadata format. Metadata files
+     * which can't be converted are logged and left in place.
+     *
+     * @param mediaFolder The media folder, i.e. {@code <MediaMountLocation>/media}.
+     * @return the migrator holding the outcome of the migration.
+     * @throws IOException If an error occurs while walking the media folder.
+     */
+    public static MetadataFormatMigrator migrate(Path mediaFolder) throws IOException {
+
+        final MetadataFormatMigrator migrator = new MetadataFormatMigrator();
+        final Path normalizedMediaFolder = mediaFolder.normalize();
+        Files.walkFileTree(normalizedMediaFolder, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path directory, BasicFileAttributes attributes) {
+
+                // The metadata of media being uploaded or deleted is left in the format it is written in.
+                if (normalizedMediaFolder.equals(directory.getParent()) && !MediaDirectoryLayout.isTypeFolder(
+                        directory)) {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+
+                if (attributes.isRegularFile() && file.getFileName().toString().endsWith(JSON_METADATA_FILE_SUFFIX)) {
+                    migrator.migrateMetadataFile(file);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException e) {
+
+                LOGGER.error("Error occurred while reading " + file + " during the metadata migration.", e);
+                migrator.failedCount++;
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        return migrator;
+    }
+
+    /**
+     * Returns the number of metadata files converted to the binary metadata format.
+     *
+     * @return migrated metadata file count.
+     */
+    public int getMigratedCount() {
+
+        return migratedCount;
+    }
+
+    /**
+     * Returns the number of metadata files which couldn't be converted.
+     *
+     * @return failed metadata file count.
+     */
+    public int getFailedCount() {
+
+        return failedCount;
+    }
+
+    private void migrateMetadataFile(Path jsonMetadataFile) {
+
+        String fileName = jsonMetadataFile.getFileName().toString();
+        String mediaFileName = fileName.substring(0, fileName.length() - JSON_METADATA_FILE_SUFFIX.length());
+        Path binaryMetadataFile = jsonMetadataFile.resolveSibling(mediaFileName + METADATA_FILE_SUFFIX +
+                BINARY_METADATA_FILE_EXTENSION);
+        Path temporaryFile = binaryMetadataFile.resolveSibling(binaryMetadataFile.getFileName() +
+                TEMPORARY_FILE_EXTENSION);
+        try {
+            byte[] jsonMetadata = Files.readAllBytes(jsonMetadataFile);
+            JSONObject metadata = (JSONObject) new JSONParser().parse(new String(jsonMetadata,
+                    StandardCharsets.UTF_8));
+            Files.write(temporaryFile, BinaryMetadataCodec.encode(metadata));
+            Files.move(temporaryFile, binaryMetadataFile, StandardCopyOption.ATOMIC_MOVE);
+            Files.delete(jsonMetadataFile);
+            // The media may have been deleted by the server while its metadata was being converted.
+            if (Files.notExists(jsonMetadataFile.resolveSibling(mediaFileName))) {
+                Files.deleteIfExists(binaryMetadataFile);
+            }
+            migratedCount++;
+            if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug("Migrated metadata file " + jsonMetadataFile + " to " + binaryMetadataFile);
+            }
+        } catch (IOException | ParseException | ClassCastException e) {
+            LOGGER.error("Error occurred while migrating metadata file " + jsonMetadataFile, e);
+            failedCount++;
+            try {
+                Files.deleteIfExists(temporaryFile);
+            } catch (IOException ex) {
+                LOGGER.error("Error occurred while deleting temporary file " + temporaryFile, ex);
+            }
+        }
+    }
+}
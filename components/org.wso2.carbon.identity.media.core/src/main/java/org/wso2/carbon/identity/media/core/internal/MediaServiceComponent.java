@@ -30,10 +30,23 @@ import org.osgi.service.component.annotations.ReferencePolicy;
 import org.wso2.carbon.identity.media.core.StorageSystemFactory;
 import org.wso2.carbon.identity.media.core.StorageSystemManager;
 import org.wso2.carbon.identity.media.core.file.FileBasedStorageSystemFactory;
+import org.wso2.carbon.identity.media.core.file.MediaReaper;
+import org.wso2.carbon.identity.media.core.file.MediaUploadStage;
 import org.wso2.carbon.identity.media.core.jdbc.DatabaseBasedStorageSystemFactory;
 import org.wso2.carbon.identity.media.core.util.StorageSystemUtil;
+import org.wso2.carbon.identity.media.core.volume.VolumeBasedStorageSystemFactory;
+import org.wso2.carbon.identity.media.core.volume.VolumeCompactor;
+import org.wso2.carbon.user.core.listener.UserOperationEventListener;
 import org.wso2.carbon.user.core.service.RealmService;
 
+import java.nio.file.Path;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import static org.wso2.carbon.identity.media.core.util.StorageSystemConstants.PRE_CREATED_MEDIA_FOLDER;
+
 /**
  * Service component class responsible for registering media service factories and exporting the osgi service.
  */
@@ -43,18 +56,56 @@ public class MediaServiceComponent {
 
     private static final Log LOGGER = LogFactory.getLog(MediaServiceComponent.class);
 
+    private ScheduledExecutorService reaperExecutorService;
+    private ScheduledExecutorService compactorExecutorService;
+    private VolumeBasedStorageSystemFactory volumeBasedStorageSystemFactory;
+
     @Activate
     protected void activate(ComponentContext componentContext) {
 
         try {
             // Load configurations from media.properties file into memory.
             StorageSystemUtil.loadMediaProperties();
+            MediaServiceDataHolder.getInstance().applyMediaConfiguration();
+
+            Path mediaMountBaseDirectory = StorageSystemUtil.getMediaMountBaseDirectory();
+            if (mediaMountBaseDirectory != null) {
+                // Remove the stages of uploads interrupted by a crash of this or another node.
+                int deletedStageCount = MediaUploadStage.deleteOrphanedStages(
+                        mediaMountBaseDirectory.resolve(PRE_CREATED_MEDIA_FOLDER));
+                if (deletedStageCount > 0) {
+                    LOGGER.info(String.format("Removed %d orphaned stage(s) of interrupted media uploads.",
+                            deletedStageCount));
+                }
+                if (StorageSystemUtil.getReaperInterval() > 0) {
+                    reaperExecutorService = createScheduledExecutorService("media-reaper");
+                    reaperExecutorService.scheduleWithFixedDelay(new MediaReaper(
+                            mediaMountBaseDirectory.resolve(PRE_CREATED_MEDIA_FOLDER),
+                            StorageSystemUtil.getReaperMaximumDeletesPerSecond()), 0,
+                            StorageSystemUtil.getReaperInterval(), TimeUnit.SECONDS);
+                }
+            }
 
             BundleContext bundleContext = componentContext.getBundleContext();
+            // Registered even if the user caches are disabled, as a reload of the media configuration may enable
+            // them. The listener does nothing for disabled caches.
+            bundleContext.registerService(UserOperationEventListener.class.getName(),
+                    new UserCacheInvalidationListener(), null);
             StorageSystemFactory fileBasedStorageSystemFactory = new FileBasedStorageSystemFactory();
             bundleContext.registerService(StorageSystemFactory.class.getName(), fileBasedStorageSystemFactory, null);
             StorageSystemFactory dbBasedStorageSystemFactory = new DatabaseBasedStorageSystemFactory();
             bundleContext.registerService(StorageSystemFactory.class.getName(), dbBasedStorageSystemFactory, null);
+            volumeBasedStorageSystemFactory = new VolumeBasedStorageSystemFactory();
+            bundleContext.registerService(StorageSystemFactory.class.getName(), volumeBasedStorageSystemFactory, null);
+            if (volumeBasedStorageSystemFactory.getStorageType().equals(StorageSystemUtil.getMediaStoreType()) &&
+                    StorageSystemUtil.getVolumeCompactionInterval() > 0) {
+                compactorExecutorService = createScheduledExecutorService("media-volume-compactor");
+                compactorExecutorService.scheduleWithFixedDelay(new VolumeCompactor(
+                        volumeBasedStorageSystemFactory.getStorageSystem(),
+                        StorageSystemUtil.getVolumeCompactionMinimumGarbagePercentage()),
+                        StorageSystemUtil.getVolumeCompactionInterval(),
+                        StorageSystemUtil.getVolumeCompactionInterval(), TimeUnit.SECONDS);
+            }
             bundleContext.registerService(StorageSystemManager.class, new StorageSystemManager(), null);
             if (LOGGER.isDebugEnabled()) {
                 LOGGER.debug("Media service component is activated.");
@@ -67,11 +118,38 @@ public class MediaServiceComponent {
     @Deactivate
     protected void deactivate(ComponentContext componentContext) {
 
+        MediaServiceDataHolder.getInstance().releaseMediaConfiguration();
+        if (reaperExecutorService != null) {
+            reaperExecutorService.shutdownNow();
+            reaperExecutorService = null;
+        }
+        if (compactorExecutorService != null) {
+            compactorExecutorService.shutdownNow();
+            compactorExecutorService = null;
+        }
+        if (volumeBasedStorageSystemFactory != null) {
+            // Release the lock on the volume folder, so that the volumes can be opened again once reactivated.
+            volumeBasedStorageSystemFactory.getStorageSystem().close();
+            volumeBasedStorageSystemFactory = null;
+        }
         if (LOGGER.isDebugEnabled()) {
             LOGGER.debug("Media service bundle deactivated.");
         }
     }
 
+    private ScheduledExecutorService createScheduledExecutorService(final String threadName) {
+
+        return Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+
+                Thread thread = new Thread(runnable, threadName);
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
     @Reference(name = "MediaServiceComponent",
                service = StorageSystemFactory.class,
                cardinality = ReferenceCardinality.MULTIPLE,
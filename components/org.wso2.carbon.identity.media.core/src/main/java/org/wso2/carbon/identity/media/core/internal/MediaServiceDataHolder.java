@@ -18,18 +18,40 @@
 package org.wso2.carbon.identity.media.core.internal;
 
 import org.wso2.carbon.identity.media.core.StorageSystemFactory;
+import org.wso2.carbon.identity.media.core.cache.AuthorizationDecisionCache;
+import org.wso2.carbon.identity.media.core.cache.MediaMetadataCache;
+import org.wso2.carbon.identity.media.core.cache.UserIdCache;
+import org.wso2.carbon.identity.media.core.cache.UserMembershipCache;
+import org.wso2.carbon.identity.media.core.file.FileSyncPolicy;
+import org.wso2.carbon.identity.media.core.file.GroupCommitSyncer;
+import org.wso2.carbon.identity.media.core.transform.DerivativeCache;
+import org.wso2.carbon.identity.media.core.util.StorageSystemUtil;
 import org.wso2.carbon.user.core.service.RealmService;
 
-import java.util.HashMap;
+import java.nio.file.Path;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.wso2.carbon.identity.media.core.util.StorageSystemConstants.DERIVATIVE_CACHE_FOLDER;
 
 /**
  * Data holder class.
  */
 public class MediaServiceDataHolder {
 
-    private Map<String, StorageSystemFactory> storageSystemFactoryMap = new HashMap<>();
+    private final Map<String, StorageSystemFactory> storageSystemFactoryMap = new ConcurrentHashMap<>();
     private RealmService realmService;
+    private volatile MediaMetadataCache mediaMetadataCache;
+    private volatile ExecutorService uploadExecutorService;
+    private volatile GroupCommitSyncer groupCommitSyncer;
+    private volatile DerivativeCache derivativeCache;
+    private volatile UserIdCache userIdCache;
+    private volatile AuthorizationDecisionCache authorizationDecisionCache;
+    private volatile UserMembershipCache userMembershipCache;
 
     private MediaServiceDataHolder() {
 
@@ -45,6 +67,12 @@ public class MediaServiceDataHolder {
         return SingletonHelper.INSTANCE;
     }
 
+    /**
+     * Returns the registered storage system factories keyed by storage type. The map is updated by the OSGi
+     * component while requests are being served, so it is safe to read without locking.
+     *
+     * @return Map of storage system factories.
+     */
     public Map<String, StorageSystemFactory> getStorageSystemFactories() {
 
         return storageSystemFactoryMap;
@@ -60,4 +88,176 @@ public class MediaServiceDataHolder {
         return realmService;
     }
 
+    public void setMediaMetadataCache(MediaMetadataCache mediaMetadataCache) {
+
+        this.mediaMetadataCache = mediaMetadataCache;
+    }
+
+    /**
+     * Returns the media metadata cache, or null if metadata caching is disabled.
+     *
+     * @return MediaMetadataCache
+     */
+    public MediaMetadataCache getMediaMetadataCache() {
+
+        return mediaMetadataCache;
+    }
+
+    public void setUploadExecutorService(ExecutorService uploadExecutorService) {
+
+        this.uploadExecutorService = uploadExecutorService;
+    }
+
+    /**
+     * Returns the executor used to write the files of a multiple file upload concurrently, or null if the files
+     * are written sequentially.
+     *
+     * @return ExecutorService
+     */
+    public ExecutorService getUploadExecutorService() {
+
+        return uploadExecutorService;
+    }
+
+    public void setGroupCommitSyncer(GroupCommitSyncer groupCommitSyncer) {
+
+        this.groupCommitSyncer = groupCommitSyncer;
+    }
+
+    /**
+     * Returns the syncer which flushes the files of concurrent uploads together, or null if the group commit sync
+     * policy is not configured.
+     *
+     * @return GroupCommitSyncer
+     */
+    public GroupCommitSyncer getGroupCommitSyncer() {
+
+        return groupCommitSyncer;
+    }
+
+    public void setDerivativeCache(DerivativeCache derivativeCache) {
+
+        this.derivativeCache = derivativeCache;
+    }
+
+    /**
+     * Returns the cache of the generated derivatives of media, or null if image resizing is disabled.
+     *
+     * @return DerivativeCache
+     */
+    public DerivativeCache getDerivativeCache() {
+
+        return derivativeCache;
+    }
+
+    public void setUserIdCache(UserIdCache userIdCache) {
+
+        this.userIdCache = userIdCache;
+    }
+
+    /**
+     * Returns the cache of the user ids resolved for usernames, or null if user id caching is disabled.
+     *
+     * @return UserIdCache
+     */
+    public UserIdCache getUserIdCache() {
+
+        return userIdCache;
+    }
+
+    public void setAuthorizationDecisionCache(AuthorizationDecisionCache authorizationDecisionCache) {
+
+        this.authorizationDecisionCache = authorizationDecisionCache;
+    }
+
+    /**
+     * Returns the cache of the decisions of permission checks, or null if authorization caching is disabled.
+     *
+     * @return AuthorizationDecisionCache
+     */
+    public AuthorizationDecisionCache getAuthorizationDecisionCache() {
+
+        return authorizationDecisionCache;
+    }
+
+    public void setUserMembershipCache(UserMembershipCache userMembershipCache) {
+
+        this.userMembershipCache = userMembershipCache;
+    }
+
+    /**
+     * Returns the cache of the groups and roles of users, or null if membership caching is disabled.
+     *
+     * @return UserMembershipCache
+     */
+    public UserMembershipCache getUserMembershipCache() {
+
+        return userMembershipCache;
+    }
+
+    /**
+     * Build the caches, the upload executor and the group commit syncer sized from the published media
+     * configuration, replacing the ones built from a previous configuration. The caches are rebuilt empty, and a
+     * replaced upload executor completes the files already submitted to it.
+     */
+    public synchronized void applyMediaConfiguration() {
+
+        setMediaMetadataCache(StorageSystemUtil.isMetadataCacheEnabled() ?
+                new MediaMetadataCache(StorageSystemUtil.getMetadataCacheMaximumSize()) : null);
+        setUserIdCache(StorageSystemUtil.isUserIdCacheEnabled() ? new UserIdCache(
+                StorageSystemUtil.getUserIdCacheTimeToLive(), StorageSystemUtil.getUserIdCacheNegativeTimeToLive(),
+                StorageSystemUtil.getUserIdCacheMaximumEntries()) : null);
+        setAuthorizationDecisionCache(StorageSystemUtil.isAuthorizationCacheEnabled() ?
+                new AuthorizationDecisionCache(StorageSystemUtil.getAuthorizationCacheTimeToLive(),
+                        StorageSystemUtil.getAuthorizationCacheMaximumEntries()) : null);
+        setUserMembershipCache(StorageSystemUtil.isMembershipCacheEnabled() ?
+                new UserMembershipCache(StorageSystemUtil.getMembershipCacheTimeToLive(),
+                        StorageSystemUtil.getMembershipCacheMaximumEntries()) : null);
+        Path mediaMountBaseDirectory = StorageSystemUtil.getMediaMountBaseDirectory();
+        setDerivativeCache(StorageSystemUtil.isImageResizeEnabled() && mediaMountBaseDirectory != null ?
+                new DerivativeCache(mediaMountBaseDirectory.resolve(DERIVATIVE_CACHE_FOLDER),
+                        StorageSystemUtil.getDerivativeCacheMaximumSize()) : null);
+        setGroupCommitSyncer(FileSyncPolicy.fromName(StorageSystemUtil.getUploadSyncPolicy()) ==
+                FileSyncPolicy.GROUP_COMMIT ? new GroupCommitSyncer(StorageSystemUtil.getUploadGroupCommitWindow())
+                : null);
+        replaceUploadExecutorService(StorageSystemUtil.getParallelUploadThreadPoolSize() > 0 ?
+                createUploadExecutorService(StorageSystemUtil.getParallelUploadThreadPoolSize()) : null);
+    }
+
+    /**
+     * Release the caches, the upload executor and the group commit syncer built from the media configuration.
+     */
+    public synchronized void releaseMediaConfiguration() {
+
+        setMediaMetadataCache(null);
+        setUserIdCache(null);
+        setAuthorizationDecisionCache(null);
+        setUserMembershipCache(null);
+        setDerivativeCache(null);
+        setGroupCommitSyncer(null);
+        replaceUploadExecutorService(null);
+    }
+
+    private void replaceUploadExecutorService(ExecutorService executorService) {
+
+        ExecutorService replacedExecutorService = uploadExecutorService;
+        uploadExecutorService = executorService;
+        if (replacedExecutorService != null) {
+            replacedExecutorService.shutdown();
+        }
+    }
+
+    private static ExecutorService createUploadExecutorService(int threadPoolSize) {
+
+        final AtomicInteger threadCount = new AtomicInteger();
+        return Executors.newFixedThreadPool(threadPoolSize, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+
+                Thread thread = new Thread(runnable, "media-upload-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
 }
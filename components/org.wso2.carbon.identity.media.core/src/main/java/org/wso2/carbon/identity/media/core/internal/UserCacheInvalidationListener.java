@@ -0,0 +1,172 @@
+/*
+ * Copyright (c) 2020, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.media.core.internal;
+
+import org.wso2.carbon.identity.media.core.cache.AuthorizationDecisionCache;
+import org.wso2.carbon.identity.media.core.cache.UserIdCache;
+import org.wso2.carbon.identity.media.core.cache.UserMembershipCache;
+import org.wso2.carbon.user.core.UserStoreException;
+import org.wso2.carbon.user.core.UserStoreManager;
+import org.wso2.carbon.user.core.common.AbstractUserOperationEventListener;
+
+import java.util.Map;
+
+/**
+ * User operation event listener which removes added users, which may be cached as unknown, from the user id cache,
+ * removes deleted users from the user id and authorization decision caches, and removes the cached memberships and
+ * authorization decisions of users whose groups or roles change. Changes which can't be attributed to usernames, such
+ * as renaming or deleting a role, remove the cached memberships and authorization decisions of the whole tenant.
+ */
+public class UserCacheInvalidationListener extends AbstractUserOperationEventListener {
+
+    private static final int EXECUTION_ORDER_ID = 150;
+
+    @Override
+    public int getExecutionOrderId() {
+
+        return EXECUTION_ORDER_ID;
+    }
+
+    @Override
+    public boolean doPostAddUser(String userName, Object credential, String[] roleList, Map<String, String> claims,
+                                 String profile, UserStoreManager userStoreManager) throws UserStoreException {
+
+        // The username may be cached as unknown from a lookup made before the user was added.
+        UserIdCache userIdCache = MediaServiceDataHolder.getInstance().getUserIdCache();
+        if (userIdCache != null) {
+            userIdCache.invalidate(userStoreManager.getTenantId(), userName);
+        }
+        return true;
+    }
+
+    @Override
+    public boolean doPostDeleteUser(String userName, UserStoreManager userStoreManager) throws UserStoreException {
+
+        UserIdCache userIdCache = MediaServiceDataHolder.getInstance().getUserIdCache();
+        if (userIdCache != null) {
+            userIdCache.invalidate(userStoreManager.getTenantId(), userName);
+        }
+        AuthorizationDecisionCache authorizationDecisionCache =
+                MediaServiceDataHolder.getInstance().getAuthorizationDecisionCache();
+        if (authorizationDecisionCache != null) {
+            authorizationDecisionCache.invalidateUser(userStoreManager.getTenantId(), userName);
+        }
+        UserMembershipCache userMembershipCache = MediaServiceDataHolder.getInstance().getUserMembershipCache();
+        if (userMembershipCache != null) {
+            userMembershipCache.invalidate(userStoreManager.getTenantId(), userName);
+        }
+        return true;
+    }
+
+    @Override
+    public boolean doPostDeleteUserWithID(String userID, UserStoreManager userStoreManager)
+            throws UserStoreException {
+
+        UserIdCache userIdCache = MediaServiceDataHolder.getInstance().getUserIdCache();
+        if (userIdCache != null) {
+            userIdCache.invalidateUserId(userStoreManager.getTenantId(), userID);
+        }
+        return true;
+    }
+
+    @Override
+    public boolean doPostUpdateRoleListOfUser(String userName, String[] deletedRoles, String[] newRoles,
+                                              UserStoreManager userStoreManager) throws UserStoreException {
+
+        invalidateMemberships(userStoreManager.getTenantId(), new String[]{userName});
+        return true;
+    }
+
+    @Override
+    public boolean doPostUpdateRoleListOfUserWithID(String userID, String[] deletedRoles, String[] newRoles,
+                                                    UserStoreManager userStoreManager) throws UserStoreException {
+
+        invalidateTenantMemberships(userStoreManager);
+        return true;
+    }
+
+    @Override
+    public boolean doPostUpdateUserListOfRole(String roleName, String[] deletedUsers, String[] newUsers,
+                                              UserStoreManager userStoreManager) throws UserStoreException {
+
+        invalidateMemberships(userStoreManager.getTenantId(), deletedUsers);
+        invalidateMemberships(userStoreManager.getTenantId(), newUsers);
+        return true;
+    }
+
+    @Override
+    public boolean doPostUpdateUserListOfRoleWithID(String roleName, String[] deletedUserIDs, String[] newUserIDs,
+                                                    UserStoreManager userStoreManager) throws UserStoreException {
+
+        invalidateTenantMemberships(userStoreManager);
+        return true;
+    }
+
+    @Override
+    public boolean doPostDeleteRole(String roleName, UserStoreManager userStoreManager) throws UserStoreException {
+
+        invalidateTenantMemberships(userStoreManager);
+        return true;
+    }
+
+    @Override
+    public boolean doPostUpdateRoleName(String roleName, String newRoleName, UserStoreManager userStoreManager)
+            throws UserStoreException {
+
+        invalidateTenantMemberships(userStoreManager);
+        return true;
+    }
+
+    /**
+     * Removes the cached memberships and the authorization decisions, which depend on the roles, of the given users.
+     */
+    private void invalidateMemberships(int tenantId, String[] userNames) {
+
+        if (userNames == null) {
+            return;
+        }
+        UserMembershipCache userMembershipCache = MediaServiceDataHolder.getInstance().getUserMembershipCache();
+        AuthorizationDecisionCache authorizationDecisionCache =
+                MediaServiceDataHolder.getInstance().getAuthorizationDecisionCache();
+        for (String userName : userNames) {
+            if (userMembershipCache != null) {
+                userMembershipCache.invalidate(tenantId, userName);
+            }
+            if (authorizationDecisionCache != null) {
+                authorizationDecisionCache.invalidateUser(tenantId, userName);
+            }
+        }
+    }
+
+    /**
+     * Removes the cached memberships and the authorization decisions of the whole tenant.
+     */
+    private void invalidateTenantMemberships(UserStoreManager userStoreManager) throws UserStoreException {
+
+        UserMembershipCache userMembershipCache = MediaServiceDataHolder.getInstance().getUserMembershipCache();
+        if (userMembershipCache != null) {
+            userMembershipCache.invalidateTenant(userStoreManager.getTenantId());
+        }
+        AuthorizationDecisionCache authorizationDecisionCache =
+                MediaServiceDataHolder.getInstance().getAuthorizationDecisionCache();
+        if (authorizationDecisionCache != null) {
+            authorizationDecisionCache.invalidateTenant(userStoreManager.getTenantId());
+        }
+    }
+}
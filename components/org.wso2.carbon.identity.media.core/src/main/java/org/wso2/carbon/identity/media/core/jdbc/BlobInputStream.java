@@ -0,0 +1,61 @@
+/*
+ * Copyright (c) 2019, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wso2.carbon.identity.media.core.jdbc;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Input stream over the content of a media file read from the database. The content is streamed from the result set
+ * it was selected with, hence the result set, the statement and the connection are held open until the stream is
+ * closed.
+ */
+final class BlobInputStream extends FilterInputStream {
+
+    private final Connection connection;
+    private final PreparedStatement statement;
+    private final ResultSet resultSet;
+    private boolean closed;
+
+    BlobInputStream(InputStream content, Connection connection, PreparedStatement statement, ResultSet resultSet) {
+
+        super(content);
+        this.connection = connection;
+        this.statement = statement;
+        this.resultSet = resultSet;
+    }
+
+    @Override
+    public void close() throws IOException {
+
+        if (closed) {
+            return;
+        }
+        closed = true;
+        // The connection is returned to the pool even if the content or the result set can't be closed.
+        try (Connection connection = this.connection; PreparedStatement statement = this.statement;
+             ResultSet resultSet = this.resultSet) {
+            super.close();
+        } catch (SQLException e) {
+            throw new IOException("Error while releasing the database resources of the media content.", e);
+        }
+    }
+}
@@ -25,10 +25,12 @@ public class DatabaseBasedStorageSystemFactory extends StorageSystemFactory {
 
     private static final String JDBC = "org.wso2.carbon.identity.media.jdbc.DatabaseBasedStorageSystemImpl";
 
+    // A single instance serves all the operations, so that state held by the storage system outlives a request.
+    private final StorageSystem dbBasedStorageSystem = new DatabaseBasedStorageSystemImpl();
+
     @Override
     public StorageSystem getStorageSystem() {
 
-        StorageSystem dbBasedStorageSystem = new DatabaseBasedStorageSystemImpl();
         return dbBasedStorageSystem;
     }
 
@@ -15,72 +15,601 @@
  */
 package org.wso2.carbon.identity.media.core.jdbc;
 
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.wso2.carbon.identity.core.util.IdentityDatabaseUtil;
+import org.wso2.carbon.identity.core.util.IdentityTenantUtil;
+import org.wso2.carbon.identity.media.core.AbstractStorageSystem;
 import org.wso2.carbon.identity.media.core.DataContent;
-import org.wso2.carbon.identity.media.core.StorageSystem;
+import org.wso2.carbon.identity.media.core.StreamContentImpl;
+import org.wso2.carbon.identity.media.core.cache.MediaMetadataCacheKey;
+import org.wso2.carbon.identity.media.core.exception.MediaSizeLimitExceededException;
+import org.wso2.carbon.identity.media.core.exception.StorageSystemClientException;
 import org.wso2.carbon.identity.media.core.exception.StorageSystemException;
 import org.wso2.carbon.identity.media.core.exception.StorageSystemServerException;
-import org.wso2.carbon.identity.media.core.model.MediaInformation;
+import org.wso2.carbon.identity.media.core.model.FileSecurity;
 import org.wso2.carbon.identity.media.core.model.MediaMetadata;
+import org.wso2.carbon.identity.media.core.model.MediaRepresentation;
+import org.wso2.carbon.identity.media.core.model.ResolvedMedia;
+import org.wso2.carbon.identity.media.core.model.StoredMediaMetadata;
+import org.wso2.carbon.identity.media.core.util.SizeLimitedInputStream;
+import org.wso2.carbon.identity.media.core.util.StorageSystemUtil;
 
+import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.List;
+import javax.naming.InitialContext;
+import javax.naming.NamingException;
+import javax.sql.DataSource;
+
+import static org.wso2.carbon.identity.media.core.util.StorageSystemConstants.MEDIA_CONTENT_HASH;
+import static org.wso2.carbon.identity.media.core.util.StorageSystemConstants.MEDIA_CONTENT_TYPE;
+import static org.wso2.carbon.identity.media.core.util.StorageSystemConstants.MEDIA_FILES;
+import static org.wso2.carbon.identity.media.core.util.StorageSystemConstants.MEDIA_IDENTIFIER;
+import static org.wso2.carbon.identity.media.core.util.StorageSystemConstants.MEDIA_LAST_MODIFIED;
+import static org.wso2.carbon.identity.media.core.util.StorageSystemConstants.MEDIA_NAME;
+import static org.wso2.carbon.identity.media.core.util.StorageSystemConstants.MEDIA_RESOURCE_OWNER_ID;
+import static org.wso2.carbon.identity.media.core.util.StorageSystemConstants.MEDIA_SECURITY;
+import static org.wso2.carbon.identity.media.core.util.StorageSystemConstants.MEDIA_SECURITY_ALLOWED_ALL;
+import static org.wso2.carbon.identity.media.core.util.StorageSystemConstants.MEDIA_SECURITY_ALLOWED_GROUPS;
+import static org.wso2.carbon.identity.media.core.util.StorageSystemConstants.MEDIA_SECURITY_ALLOWED_ROLES;
+import static org.wso2.carbon.identity.media.core.util.StorageSystemConstants.MEDIA_SECURITY_ALLOWED_USER_IDS;
+import static org.wso2.carbon.identity.media.core.util.StorageSystemConstants.MEDIA_SIZE;
+import static org.wso2.carbon.identity.media.core.util.StorageSystemConstants.MEDIA_TAG;
 
 /**
- * This class implements StorageSystem to store media in a database.
+ * This class implements StorageSystem to store media in a database. The metadata of a media, the content and the
+ * content attributes of its files, and its access control list are stored in separate tables, created with the
+ * scripts in the dbscripts folder. The content of the files is streamed to and from BLOB columns, so that a media is
+ * never held in memory as a whole, and the security evaluations are single indexed queries. As the database is shared
+ * by the nodes of a cluster, media stored in a database don't need a shared file system.
  */
-public class DatabaseBasedStorageSystemImpl implements StorageSystem {
+public class DatabaseBasedStorageSystemImpl extends AbstractStorageSystem {
+
+    private static final Log LOGGER = LogFactory.getLog(DatabaseBasedStorageSystemImpl.class);
+    private static final String PRINCIPAL_TYPE_USER = "U";
+    private static final String PRINCIPAL_TYPE_GROUP = "G";
+    private static final String PRINCIPAL_TYPE_ROLE = "R";
+    // Approximate footprint of an entry of the indexes of the allowed users, groups and roles of cached metadata.
+    private static final long ACL_ENTRY_OVERHEAD = 48;
+
+    private static final String SPOOL_FILE_PREFIX = "media-upload-";
+    private static final String MYSQL_PRODUCT_NAME = "MySQL";
+
+    private volatile DataSource dataSource;
+
+    /**
+     * Creates a database based storage system which stores media in the data source configured with
+     * DatabaseStorage.DataSourceName, or in the identity database if no data source is configured. The data source is
+     * looked up when the storage system is first used.
+     */
+    public DatabaseBasedStorageSystemImpl() {
+
+    }
+
+    /**
+     * Creates a database based storage system which stores media in the given data source. The data source is
+     * expected to pool its connections.
+     *
+     * @param dataSource The data source.
+     */
+    public DatabaseBasedStorageSystemImpl(DataSource dataSource) {
+
+        this.dataSource = dataSource;
+    }
 
     @Override
     public String addMedia(List<InputStream> inputStreams, MediaMetadata mediaMetadata, String uuid,
-                           String tenantDomain) throws StorageSystemServerException {
+                           String tenantDomain) throws StorageSystemException {
 
-        throw new UnsupportedOperationException("Database based add file operation not supported.");
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug(String.format("Uploading media file with unique id: %s and in tenant domain: %s to the " +
+                    "database.", uuid, tenantDomain));
+        }
+        int tenantId = IdentityTenantUtil.getTenantId(tenantDomain);
+        String mediaType = mediaMetadata.getFileContentType().split("/")[0];
+        List<String> fileIdentifiers = StorageSystemUtil.getFileIdentifiers(inputStreams.size(), mediaMetadata);
+        // The files are spooled before a connection is taken, so that a slow upload doesn't hold a connection and a
+        // transaction open, and so that each file is written to the database with its length.
+        List<SpooledMediaFile> spooledMediaFiles = new ArrayList<>(inputStreams.size());
+        try {
+            for (InputStream inputStream : inputStreams) {
+                spooledMediaFiles.add(spoolMediaFile(inputStream));
+            }
+            try (Connection connection = getDataSource().getConnection()) {
+                connection.setAutoCommit(false);
+                try {
+                    insertMedia(connection, spooledMediaFiles, mediaMetadata, fileIdentifiers, uuid, tenantId,
+                            mediaType);
+                    connection.commit();
+                } catch (SQLException | IOException e) {
+                    rollback(connection);
+                    throw e;
+                }
+            }
+        } catch (MediaSizeLimitExceededException e) {
+            throw new StorageSystemClientException(String.format("The uploaded media with unique id: %s exceeds the " +
+                    "maximum allowed file size: %skb", uuid, e.getMaximumSize() / 1000.0), e);
+        } catch (IOException e) {
+            throw new StorageSystemServerException("Error while buffering the uploaded media for the database.", e);
+        } catch (SQLException e) {
+            throw new StorageSystemServerException("Error while uploading media to the database.", e);
+        } finally {
+            for (SpooledMediaFile spooledMediaFile : spooledMediaFiles) {
+                deleteSpoolFile(spooledMediaFile.getLocation());
+            }
+        }
+        invalidateCachedMetadata(tenantId, mediaType, uuid);
+        return uuid;
     }
 
+    /**
+     * Open the content of a resolved media. The content is streamed from the database with a forward only, read only
+     * result set, and the database connection it is read with is held until the returned stream is closed.
+     *
+     * @param resolvedMedia The resolved media.
+     * @return stream content of the media.
+     * @throws StorageSystemException If the content can't be read.
+     */
     @Override
-    public DataContent getFile(String id, String tenantDomain, String type) throws StorageSystemException {
+    public DataContent getFile(ResolvedMedia resolvedMedia) throws StorageSystemException {
 
-        throw new UnsupportedOperationException("Database based get file operation not supported.");
+        int fileIndex = getFileIndex(resolvedMedia);
+        int tenantId = IdentityTenantUtil.getTenantId(resolvedMedia.getTenantDomain());
+        Connection connection = null;
+        PreparedStatement statement = null;
+        ResultSet resultSet = null;
+        try {
+            connection = getDataSource().getConnection();
+            statement = connection.prepareStatement(SQLQueries.GET_MEDIA_FILE_CONTENT, ResultSet.TYPE_FORWARD_ONLY,
+                    ResultSet.CONCUR_READ_ONLY);
+            statement.setFetchSize(getStreamingFetchSize(connection));
+            setMediaKey(statement, resolvedMedia.getId(), tenantId, resolvedMedia.getType());
+            statement.setInt(4, fileIndex);
+            resultSet = statement.executeQuery();
+            InputStream content = resultSet.next() ? resultSet.getBinaryStream(1) : null;
+            if (content == null) {
+                IdentityDatabaseUtil.closeAllConnections(connection, resultSet, statement);
+                throw new StorageSystemClientException(String.format("Requested media of type: %s with id: %s in " +
+                        "tenant domain: %s does not exist in the storage system.", resolvedMedia.getType(),
+                        resolvedMedia.getId(), resolvedMedia.getTenantDomain()));
+            }
+            return new StreamContentImpl(new BlobInputStream(content, connection, statement, resultSet),
+                    resolvedMedia.getContentType(), resolvedMedia.getETag());
+        } catch (SQLException e) {
+            IdentityDatabaseUtil.closeAllConnections(connection, resultSet, statement);
+            throw new StorageSystemServerException("Error while retrieving the stored media from the database.", e);
+        }
     }
 
     @Override
     public boolean isDownloadAllowedForPublicMedia(String id, String type, String tenantDomain) throws
             StorageSystemServerException {
 
-        throw new UnsupportedOperationException("Database based security evaluation not supported.");
+        int tenantId = IdentityTenantUtil.getTenantId(tenantDomain);
+        try (Connection connection = getDataSource().getConnection();
+             PreparedStatement statement = connection.prepareStatement(SQLQueries.IS_MEDIA_PUBLIC)) {
+            setMediaKey(statement, id, tenantId, type);
+            return exists(statement);
+        } catch (SQLException e) {
+            throw new StorageSystemServerException(String.format("Error while evaluating the access to media with " +
+                    "id: %s and of type %s in tenant domain: %s", id, type, tenantDomain), e);
+        }
     }
 
     @Override
     public boolean isDownloadAllowedForProtectedMedia(String mediaId, String type, String tenantDomain, String userId)
             throws StorageSystemServerException {
 
-        throw new UnsupportedOperationException("Database based security evaluation not supported.");
+        int tenantId = IdentityTenantUtil.getTenantId(tenantDomain);
+        try (Connection connection = getDataSource().getConnection();
+             PreparedStatement statement = connection.prepareStatement(SQLQueries.IS_MEDIA_ACCESS_ALLOWED)) {
+            setMediaKey(statement, mediaId, tenantId, type);
+            statement.setString(4, PRINCIPAL_TYPE_USER);
+            statement.setString(5, userId);
+            return exists(statement);
+        } catch (SQLException e) {
+            throw new StorageSystemServerException(String.format("Error while evaluating the access to media with " +
+                    "id: %s and of type %s in tenant domain: %s", mediaId, type, tenantDomain), e);
+        }
     }
 
     @Override
     public boolean isMediaManagementAllowedForEndUser(String mediaId, String type, String tenantDomain, String userId)
             throws StorageSystemServerException {
 
-        throw new UnsupportedOperationException("Database based security evaluation not supported.");
+        if (userId == null) {
+            return false;
+        }
+        int tenantId = IdentityTenantUtil.getTenantId(tenantDomain);
+        try (Connection connection = getDataSource().getConnection();
+             PreparedStatement statement = connection.prepareStatement(SQLQueries.IS_MEDIA_OWNED_BY)) {
+            setMediaKey(statement, mediaId, tenantId, type);
+            statement.setString(4, userId);
+            return exists(statement);
+        } catch (SQLException e) {
+            throw new StorageSystemServerException(String.format("Error while evaluating the ownership of media " +
+                    "with id: %s and of type %s in tenant domain: %s", mediaId, type, tenantDomain), e);
+        }
     }
 
     @Override
     public void deleteMedia(String id, String type, String tenantDomain) throws StorageSystemException {
 
-        throw new UnsupportedOperationException("Database based delete file operation not supported.");
+        int tenantId = IdentityTenantUtil.getTenantId(tenantDomain);
+        int deletedCount;
+        invalidateCachedMetadata(tenantId, type, id);
+        try (Connection connection = getDataSource().getConnection()) {
+            connection.setAutoCommit(false);
+            try {
+                delete(connection, SQLQueries.DELETE_MEDIA_ACL_ENTRIES, id, tenantId, type);
+                delete(connection, SQLQueries.DELETE_MEDIA_FILES, id, tenantId, type);
+                deletedCount = delete(connection, SQLQueries.DELETE_MEDIA, id, tenantId, type);
+                connection.commit();
+            } catch (SQLException e) {
+                rollback(connection);
+                throw e;
+            }
+        } catch (SQLException e) {
+            String errorMsg = String.format("Error while deleting the stored media of type %s from the database.",
+                    type);
+            throw new StorageSystemServerException(errorMsg, e);
+        } finally {
+            // Invalidated again once the rows are deleted, so that metadata read during the delete is not served.
+            invalidateCachedMetadata(tenantId, type, id);
+        }
+        if (deletedCount == 0) {
+            throw new StorageSystemClientException(String.format("Delete request cannot be performed as media with " +
+                    "id: %s of type: %s in tenant domain: %s not found.", id, type, tenantDomain));
+        }
     }
 
-    @Override
-    public MediaInformation getMediaInformation(String id, String type, String tenantDomain) throws
-            StorageSystemException {
+    /**
+     * Insert a media with its spooled files and access control list. The content of each file is streamed to the
+     * database from its spool file with its length, so that drivers don't buffer the content in memory to find it.
+     */
+    private void insertMedia(Connection connection, List<SpooledMediaFile> spooledMediaFiles,
+                             MediaMetadata mediaMetadata, List<String> fileIdentifiers, String uuid, int tenantId,
+                             String mediaType) throws SQLException, IOException {
+
+        FileSecurity fileSecurity = mediaMetadata.getFileSecurity();
+        boolean allowedAll = fileSecurity != null && fileSecurity.isAllowedAll();
+        try (PreparedStatement statement = connection.prepareStatement(SQLQueries.ADD_MEDIA)) {
+            setMediaKey(statement, uuid, tenantId, mediaType);
+            statement.setString(4, StringUtils.trimToNull(mediaMetadata.getFileName()));
+            statement.setString(5, StringUtils.trimToNull(mediaMetadata.getFileContentType()));
+            statement.setString(6, StringUtils.trimToNull(mediaMetadata.getFileTag()));
+            statement.setString(7, StringUtils.trimToNull(mediaMetadata.getResourceOwnerId()));
+            statement.setInt(8, allowedAll ? 1 : 0);
+            statement.setLong(9, System.currentTimeMillis());
+            statement.executeUpdate();
+        }
+
+        // The same statement is executed for each file of a multiple file upload.
+        try (PreparedStatement fileStatement = connection.prepareStatement(SQLQueries.ADD_MEDIA_FILE)) {
+            for (int i = 0; i < spooledMediaFiles.size(); i++) {
+                SpooledMediaFile spooledMediaFile = spooledMediaFiles.get(i);
+                setMediaKey(fileStatement, uuid, tenantId, mediaType);
+                fileStatement.setInt(4, i);
+                fileStatement.setString(5, fileIdentifiers != null ? fileIdentifiers.get(i) : null);
+                fileStatement.setString(6, StringUtils.trimToNull(getListItem(mediaMetadata.getFileNames(), i,
+                        i == 0 ? mediaMetadata.getFileName() : null)));
+                fileStatement.setString(7, StringUtils.trimToNull(getListItem(mediaMetadata.getFileContentTypes(), i,
+                        i == 0 ? mediaMetadata.getFileContentType() : null)));
+                fileStatement.setString(8, spooledMediaFile.getContentHash());
+                fileStatement.setLong(9, spooledMediaFile.getSize());
+                try (InputStream content = Files.newInputStream(spooledMediaFile.getLocation())) {
+                    fileStatement.setBinaryStream(10, content, spooledMediaFile.getSize());
+                    fileStatement.executeUpdate();
+                }
+            }
+        }
 
-        throw new UnsupportedOperationException("Database based media information retrieval not supported.");
+        if (fileSecurity != null && !allowedAll) {
+            try (PreparedStatement statement = connection.prepareStatement(SQLQueries.ADD_MEDIA_ACL_ENTRY)) {
+                int entryCount = addAclEntries(statement, uuid, tenantId, mediaType, PRINCIPAL_TYPE_USER,
+                        fileSecurity.getAllowedUserIds());
+                entryCount += addAclEntries(statement, uuid, tenantId, mediaType, PRINCIPAL_TYPE_GROUP,
+                        fileSecurity.getAllowedGroups());
+                entryCount += addAclEntries(statement, uuid, tenantId, mediaType, PRINCIPAL_TYPE_ROLE,
+                        fileSecurity.getAllowedRoles());
+                if (entryCount > 0) {
+                    statement.executeBatch();
+                }
+            }
+        }
+    }
+
+    private int addAclEntries(PreparedStatement statement, String uuid, int tenantId, String mediaType,
+                              String principalType, List<String> principals) throws SQLException {
+
+        if (principals == null) {
+            return 0;
+        }
+        // Duplicates are dropped, since the principals of a media form the primary key of the entries.
+        LinkedHashSet<String> uniquePrincipals = new LinkedHashSet<>(principals);
+        uniquePrincipals.remove(null);
+        for (String principal : uniquePrincipals) {
+            setMediaKey(statement, uuid, tenantId, mediaType);
+            statement.setString(4, principalType);
+            statement.setString(5, principal);
+            statement.addBatch();
+        }
+        return uniquePrincipals.size();
     }
 
     @Override
-    public InputStream transform(String id, String type, String tenantDomain, InputStream inputStream)
-            throws StorageSystemException {
+    protected StoredMediaMetadata readStoredMediaMetadata(MediaMetadataCacheKey mediaKey, String tenantDomain)
+            throws StorageSystemServerException {
+
+        try (Connection connection = getDataSource().getConnection()) {
+            return readMediaMetadata(connection, mediaKey.getId(), mediaKey.getTenantId(), mediaKey.getType());
+        } catch (SQLException e) {
+            String errorMsg = String.format("Error while retrieving metadata for stored media with id: %s and of " +
+                    "type %s in tenant domain: %s", mediaKey.getId(), mediaKey.getType(), tenantDomain);
+            throw new StorageSystemServerException(errorMsg, e);
+        }
+    }
+
+    /**
+     * Read the metadata of a media from the database, in the form written to the metadata file by the file based
+     * storage system.
+     *
+     * @return the metadata or null if the media does not exist.
+     */
+    private StoredMediaMetadata readMediaMetadata(Connection connection, String uuid, int tenantId, String mediaType)
+            throws SQLException {
+
+        JSONObject metadata = new JSONObject();
+        String contentType;
+        String resourceOwnerId;
+        boolean allowedAll;
+        long lastModified;
+        try (PreparedStatement statement = connection.prepareStatement(SQLQueries.GET_MEDIA)) {
+            setMediaKey(statement, uuid, tenantId, mediaType);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                if (!resultSet.next()) {
+                    return null;
+                }
+                contentType = resultSet.getString(2);
+                resourceOwnerId = resultSet.getString(4);
+                allowedAll = resultSet.getInt(5) == 1;
+                lastModified = resultSet.getLong(6);
+                putIfNotNull(metadata, MEDIA_NAME, resultSet.getString(1));
+                putIfNotNull(metadata, MEDIA_CONTENT_TYPE, contentType);
+                putIfNotNull(metadata, MEDIA_TAG, resultSet.getString(3));
+                putIfNotNull(metadata, MEDIA_RESOURCE_OWNER_ID, resourceOwnerId);
+            }
+        }
+
+        String contentHash = null;
+        long size = -1;
+        List<MediaRepresentation> representations = new ArrayList<>();
+        JSONArray files = new JSONArray();
+        try (PreparedStatement statement = connection.prepareStatement(SQLQueries.GET_MEDIA_FILES)) {
+            setMediaKey(statement, uuid, tenantId, mediaType);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    String identifier = resultSet.getString(2);
+                    String fileContentHash = resultSet.getString(5);
+                    long fileSize = resultSet.getLong(6);
+                    if (resultSet.getInt(1) == 0) {
+                        contentHash = fileContentHash;
+                        size = fileSize;
+                    }
+                    if (identifier != null) {
+                        JSONObject file = new JSONObject();
+                        file.put(MEDIA_IDENTIFIER, identifier);
+                        putIfNotNull(file, MEDIA_NAME, resultSet.getString(3));
+                        putIfNotNull(file, MEDIA_CONTENT_TYPE, resultSet.getString(4));
+                        file.put(MEDIA_CONTENT_HASH, fileContentHash);
+                        file.put(MEDIA_SIZE, fileSize);
+                        files.add(file);
+                        representations.add(new MediaRepresentation(identifier, resultSet.getString(4),
+                                fileContentHash, fileSize));
+                    }
+                }
+            }
+        }
+
+        List<String> allowedUserIds = new ArrayList<>();
+        List<String> allowedGroups = new ArrayList<>();
+        List<String> allowedRoles = new ArrayList<>();
+        if (!allowedAll) {
+            try (PreparedStatement statement = connection.prepareStatement(SQLQueries.GET_MEDIA_ACL_ENTRIES)) {
+                setMediaKey(statement, uuid, tenantId, mediaType);
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    while (resultSet.next()) {
+                        String principalType = resultSet.getString(1);
+                        if (PRINCIPAL_TYPE_USER.equals(principalType)) {
+                            allowedUserIds.add(resultSet.getString(2));
+                        } else if (PRINCIPAL_TYPE_GROUP.equals(principalType)) {
+                            allowedGroups.add(resultSet.getString(2));
+                        } else if (PRINCIPAL_TYPE_ROLE.equals(principalType)) {
+                            allowedRoles.add(resultSet.getString(2));
+                        }
+                    }
+                }
+            }
+        }
+
+        JSONObject security = new JSONObject();
+        security.put(MEDIA_SECURITY_ALLOWED_ALL, allowedAll);
+        putIfNotEmpty(security, MEDIA_SECURITY_ALLOWED_USER_IDS, allowedUserIds);
+        putIfNotEmpty(security, MEDIA_SECURITY_ALLOWED_GROUPS, allowedGroups);
+        putIfNotEmpty(security, MEDIA_SECURITY_ALLOWED_ROLES, allowedRoles);
+        metadata.put(MEDIA_SECURITY, security);
+        putIfNotNull(metadata, MEDIA_CONTENT_HASH, contentHash);
+        metadata.put(MEDIA_SIZE, size);
+        metadata.put(MEDIA_LAST_MODIFIED, lastModified);
+        if (!files.isEmpty()) {
+            metadata.put(MEDIA_FILES, files);
+        }
+
+        FileSecurity fileSecurity = new FileSecurity(allowedAll, Collections.unmodifiableList(allowedUserIds),
+                Collections.unmodifiableList(allowedGroups), Collections.unmodifiableList(allowedRoles));
+        long weight = METADATA_ENTRY_OVERHEAD + 2L * metadata.toJSONString().length() + ACL_ENTRY_OVERHEAD *
+                (allowedUserIds.size() + allowedGroups.size() + allowedRoles.size());
+        return new StoredMediaMetadata(metadata, contentType, resourceOwnerId, fileSecurity, contentHash, size,
+                lastModified, Collections.unmodifiableList(representations), weight);
+    }
+
+    private int delete(Connection connection, String query, String uuid, int tenantId, String mediaType)
+            throws SQLException {
+
+        try (PreparedStatement statement = connection.prepareStatement(query)) {
+            setMediaKey(statement, uuid, tenantId, mediaType);
+            return statement.executeUpdate();
+        }
+    }
+
+    private boolean exists(PreparedStatement statement) throws SQLException {
+
+        try (ResultSet resultSet = statement.executeQuery()) {
+            return resultSet.next();
+        }
+    }
+
+    private void setMediaKey(PreparedStatement statement, String uuid, int tenantId, String mediaType)
+            throws SQLException {
+
+        setMediaKey(statement, uuid, tenantId, mediaType, 1);
+    }
+
+    private void setMediaKey(PreparedStatement statement, String uuid, int tenantId, String mediaType,
+                             int firstParameterIndex) throws SQLException {
+
+        statement.setString(firstParameterIndex, uuid);
+        statement.setInt(firstParameterIndex + 1, tenantId);
+        statement.setString(firstParameterIndex + 2, mediaType);
+    }
+
+    private void rollback(Connection connection) {
+
+        try {
+            connection.rollback();
+        } catch (SQLException e) {
+            LOGGER.error("Error while rolling back the media transaction.", e);
+        }
+    }
+
+    /**
+     * Copy an uploaded file to a temporary spool file, computing its content attributes. Uploads exceeding the
+     * maximum allowed media size are aborted once the limit is crossed, so that a spool file never outgrows it.
+     */
+    private SpooledMediaFile spoolMediaFile(InputStream inputStream) throws IOException,
+            StorageSystemServerException {
+
+        MessageDigest contentDigest = getContentDigest();
+        SizeLimitedInputStream sizeLimitedInputStream = new SizeLimitedInputStream(inputStream,
+                StorageSystemUtil.getAllowedMaximumMediaSize());
+        Path spoolFile = Files.createTempFile(SPOOL_FILE_PREFIX, null);
+        try {
+            Files.copy(new DigestInputStream(sizeLimitedInputStream, contentDigest), spoolFile,
+                    StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            deleteSpoolFile(spoolFile);
+            throw e;
+        }
+        return new SpooledMediaFile(spoolFile, new String(Hex.encodeHex(contentDigest.digest())),
+                sizeLimitedInputStream.getCount());
+    }
+
+    private void deleteSpoolFile(Path spoolFile) {
+
+        try {
+            Files.deleteIfExists(spoolFile);
+        } catch (IOException e) {
+            LOGGER.warn("Error while deleting the media spool file: " + spoolFile, e);
+        }
+    }
+
+    /**
+     * Find the fetch size which streams the rows of a result set. MySQL Connector/J reads a whole result set into
+     * memory unless the fetch size is Integer.MIN_VALUE, while the other drivers stream large objects by locator.
+     */
+    private int getStreamingFetchSize(Connection connection) throws SQLException {
+
+        return MYSQL_PRODUCT_NAME.equals(connection.getMetaData().getDatabaseProductName()) ? Integer.MIN_VALUE : 1;
+    }
+
+    private DataSource getDataSource() throws StorageSystemServerException {
+
+        DataSource resolvedDataSource = dataSource;
+        if (resolvedDataSource == null) {
+            synchronized (this) {
+                if (dataSource == null) {
+                    dataSource = lookupDataSource();
+                }
+                resolvedDataSource = dataSource;
+            }
+        }
+        return resolvedDataSource;
+    }
+
+    private static DataSource lookupDataSource() throws StorageSystemServerException {
+
+        String dataSourceName = StorageSystemUtil.getDatabaseStorageDataSourceName();
+        if (StringUtils.isBlank(dataSourceName)) {
+            DataSource identityDataSource = IdentityDatabaseUtil.getDataSource();
+            if (identityDataSource == null) {
+                throw new StorageSystemServerException("The identity data source is not available to store media.");
+            }
+            return identityDataSource;
+        }
+        try {
+            return (DataSource) new InitialContext().lookup(dataSourceName);
+        } catch (NamingException e) {
+            throw new StorageSystemServerException("Unable to find the data source: " + dataSourceName +
+                    " to store media.", e);
+        }
+    }
+
+    /**
+     * An uploaded file spooled to a temporary file, with its content attributes.
+     */
+    private static final class SpooledMediaFile {
+
+        private final Path location;
+        private final String contentHash;
+        private final long size;
+
+        SpooledMediaFile(Path location, String contentHash, long size) {
+
+            this.location = location;
+            this.contentHash = contentHash;
+            this.size = size;
+        }
+
+        Path getLocation() {
+
+            return location;
+        }
+
+        String getContentHash() {
+
+            return contentHash;
+        }
+
+        long getSize() {
 
-        return inputStream;
+            return size;
+        }
     }
 }
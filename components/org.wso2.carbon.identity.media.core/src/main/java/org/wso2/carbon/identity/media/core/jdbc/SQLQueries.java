@@ -0,0 +1,68 @@
+/*
+ * Copyright (c) 2019, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wso2.carbon.identity.media.core.jdbc;
+
+/**
+ * SQL queries of the database based storage system. Each media is keyed by its unique id, tenant id and high level
+ * content type in all the tables. The queries are kept constant, so that the statement cache of the data source can
+ * reuse the prepared statements across requests.
+ */
+final class SQLQueries {
+
+    static final String ADD_MEDIA = "INSERT INTO IDN_MEDIA (UUID, TENANT_ID, MEDIA_TYPE, NAME, CONTENT_TYPE, TAG, " +
+            "RESOURCE_OWNER_ID, ALLOWED_ALL, LAST_MODIFIED) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    static final String ADD_MEDIA_FILE = "INSERT INTO IDN_MEDIA_FILE (UUID, TENANT_ID, MEDIA_TYPE, FILE_INDEX, " +
+            "IDENTIFIER, NAME, CONTENT_TYPE, CONTENT_HASH, FILE_SIZE, CONTENT) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    static final String ADD_MEDIA_ACL_ENTRY = "INSERT INTO IDN_MEDIA_ACL (UUID, TENANT_ID, MEDIA_TYPE, " +
+            "PRINCIPAL_TYPE, PRINCIPAL) VALUES (?, ?, ?, ?, ?)";
+
+    static final String GET_MEDIA = "SELECT NAME, CONTENT_TYPE, TAG, RESOURCE_OWNER_ID, ALLOWED_ALL, LAST_MODIFIED " +
+            "FROM IDN_MEDIA WHERE UUID = ? AND TENANT_ID = ? AND MEDIA_TYPE = ?";
+
+    static final String GET_MEDIA_FILES = "SELECT FILE_INDEX, IDENTIFIER, NAME, CONTENT_TYPE, CONTENT_HASH, " +
+            "FILE_SIZE FROM IDN_MEDIA_FILE WHERE UUID = ? AND TENANT_ID = ? AND MEDIA_TYPE = ? ORDER BY FILE_INDEX";
+
+    static final String GET_MEDIA_ACL_ENTRIES = "SELECT PRINCIPAL_TYPE, PRINCIPAL FROM IDN_MEDIA_ACL WHERE UUID = ? " +
+            "AND TENANT_ID = ? AND MEDIA_TYPE = ?";
+
+    static final String GET_MEDIA_FILE_CONTENT = "SELECT CONTENT FROM IDN_MEDIA_FILE WHERE UUID = ? AND " +
+            "TENANT_ID = ? AND MEDIA_TYPE = ? AND FILE_INDEX = ?";
+
+    static final String IS_MEDIA_PUBLIC = "SELECT 1 FROM IDN_MEDIA WHERE UUID = ? AND TENANT_ID = ? AND " +
+            "MEDIA_TYPE = ? AND ALLOWED_ALL = 1";
+
+    static final String IS_MEDIA_ACCESS_ALLOWED = "SELECT 1 FROM IDN_MEDIA M WHERE M.UUID = ? AND M.TENANT_ID = ? " +
+            "AND M.MEDIA_TYPE = ? AND (M.ALLOWED_ALL = 1 OR EXISTS (SELECT 1 FROM IDN_MEDIA_ACL A WHERE " +
+            "A.UUID = M.UUID AND A.TENANT_ID = M.TENANT_ID AND A.MEDIA_TYPE = M.MEDIA_TYPE AND " +
+            "A.PRINCIPAL_TYPE = ? AND A.PRINCIPAL = ?))";
+
+    static final String IS_MEDIA_OWNED_BY = "SELECT 1 FROM IDN_MEDIA WHERE UUID = ? AND TENANT_ID = ? AND " +
+            "MEDIA_TYPE = ? AND RESOURCE_OWNER_ID = ?";
+
+    static final String DELETE_MEDIA_ACL_ENTRIES = "DELETE FROM IDN_MEDIA_ACL WHERE UUID = ? AND TENANT_ID = ? AND " +
+            "MEDIA_TYPE = ?";
+
+    static final String DELETE_MEDIA_FILES = "DELETE FROM IDN_MEDIA_FILE WHERE UUID = ? AND TENANT_ID = ? AND " +
+            "MEDIA_TYPE = ?";
+
+    static final String DELETE_MEDIA = "DELETE FROM IDN_MEDIA WHERE UUID = ? AND TENANT_ID = ? AND MEDIA_TYPE = ?";
+
+    private SQLQueries() {
+
+    }
+}
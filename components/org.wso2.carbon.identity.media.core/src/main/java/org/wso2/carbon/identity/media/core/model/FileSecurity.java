@@ -27,6 +27,8 @@ public class FileSecurity {
 
     private boolean allowedAll;
     private List<String> allowedUserIds;
+    private List<String> allowedGroups;
+    private List<String> allowedRoles;
 
     public FileSecurity(boolean allowedAll) {
 
@@ -39,6 +41,15 @@ public class FileSecurity {
         this.allowedUserIds = allowedUserIds;
     }
 
+    public FileSecurity(boolean allowedAll, List<String> allowedUserIds, List<String> allowedGroups,
+                        List<String> allowedRoles) {
+
+        this.allowedAll = allowedAll;
+        this.allowedUserIds = allowedUserIds;
+        this.allowedGroups = allowedGroups;
+        this.allowedRoles = allowedRoles;
+    }
+
     public boolean isAllowedAll() {
 
         return allowedAll;
@@ -58,4 +69,36 @@ public class FileSecurity {
 
         this.allowedUserIds = allowedUserIds;
     }
+
+    /**
+     * Returns the names of the groups whose members are entitled to access the file. Names of groups in secondary
+     * user stores are qualified with the user store domain.
+     *
+     * @return allowed groups.
+     */
+    public List<String> getAllowedGroups() {
+
+        return allowedGroups;
+    }
+
+    public void setAllowedGroups(List<String> allowedGroups) {
+
+        this.allowedGroups = allowedGroups;
+    }
+
+    /**
+     * Returns the names of the roles whose assignees are entitled to access the file. Names without a domain refer to
+     * internal roles.
+     *
+     * @return allowed roles.
+     */
+    public List<String> getAllowedRoles() {
+
+        return allowedRoles;
+    }
+
+    public void setAllowedRoles(List<String> allowedRoles) {
+
+        this.allowedRoles = allowedRoles;
+    }
 }
@@ -27,6 +27,7 @@ public class MediaInformation {
 
     private List<String> links;
     private Object mediaMetadata;
+    private StoredMediaMetadata storedMediaMetadata;
 
     public List<String> getLinks() {
 
@@ -38,13 +39,33 @@ public class MediaInformation {
         this.links = links;
     }
 
+    /**
+     * Returns the media metadata. Metadata set from the stored metadata is rendered on the first call.
+     *
+     * @return media metadata.
+     */
     public Object getMediaMetadata() {
 
+        if (mediaMetadata == null && storedMediaMetadata != null) {
+            mediaMetadata = storedMediaMetadata.getRawMetadata();
+        }
         return mediaMetadata;
     }
 
     public void setMediaMetadata(Object mediaMetadata) {
 
         this.mediaMetadata = mediaMetadata;
+        this.storedMediaMetadata = null;
+    }
+
+    /**
+     * Sets the stored metadata from which the media metadata is rendered, once it is requested.
+     *
+     * @param storedMediaMetadata The stored metadata of the media.
+     */
+    public void setStoredMediaMetadata(StoredMediaMetadata storedMediaMetadata) {
+
+        this.storedMediaMetadata = storedMediaMetadata;
+        this.mediaMetadata = null;
     }
 }
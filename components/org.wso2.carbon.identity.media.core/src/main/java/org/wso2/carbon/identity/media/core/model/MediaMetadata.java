@@ -30,6 +30,8 @@ public class MediaMetadata {
     private String fileContentType;
     private String resourceOwnerId;
     private List<String> fileIdentifiers;
+    private List<String> fileNames;
+    private List<String> fileContentTypes;
     private FileSecurity fileSecurity;
 
     public String getFileTag() {
@@ -72,6 +74,36 @@ public class MediaMetadata {
         this.fileIdentifiers = fileIdentifiers;
     }
 
+    /**
+     * Returns the names of the files in a multiple file upload, in the order in which the files are uploaded.
+     *
+     * @return file names.
+     */
+    public List<String> getFileNames() {
+
+        return fileNames;
+    }
+
+    public void setFileNames(List<String> fileNames) {
+
+        this.fileNames = fileNames;
+    }
+
+    /**
+     * Returns the content types of the files in a multiple file upload, in the order in which the files are uploaded.
+     *
+     * @return file content types.
+     */
+    public List<String> getFileContentTypes() {
+
+        return fileContentTypes;
+    }
+
+    public void setFileContentTypes(List<String> fileContentTypes) {
+
+        this.fileContentTypes = fileContentTypes;
+    }
+
     public String getFileContentType() {
 
         return fileContentType;
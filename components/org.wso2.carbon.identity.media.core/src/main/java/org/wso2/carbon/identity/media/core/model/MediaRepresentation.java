@@ -0,0 +1,69 @@
+/*
+ * Copyright (c) 2020, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.media.core.model;
+
+/**
+ * This class represents one of the files of a media uploaded with multiple representations, as recorded in the
+ * metadata of the media.
+ */
+public class MediaRepresentation {
+
+    private final String identifier;
+    private final String contentType;
+    private final String contentHash;
+    private final long size;
+
+    public MediaRepresentation(String identifier, String contentType, String contentHash, long size) {
+
+        this.identifier = identifier;
+        this.contentType = contentType;
+        this.contentHash = contentHash;
+        this.size = size;
+    }
+
+    public String getIdentifier() {
+
+        return identifier;
+    }
+
+    public String getContentType() {
+
+        return contentType;
+    }
+
+    /**
+     * Returns the hex encoded SHA-256 hash of the content of the representation computed at upload.
+     *
+     * @return content hash.
+     */
+    public String getContentHash() {
+
+        return contentHash;
+    }
+
+    /**
+     * Returns the size of the content of the representation in bytes, or -1 if not recorded.
+     *
+     * @return size of the representation.
+     */
+    public long getSize() {
+
+        return size;
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright (c) 2020, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.media.core.model;
+
+import org.apache.commons.lang.StringUtils;
+
+import java.io.File;
+
+/**
+ * This class represents a stored media which has been located in the storage system together with its metadata.
+ * A resolved media is resolved once per request and is used for security evaluation as well as for serving the
+ * media content, so that the storage system is not consulted repeatedly for the same request.
+ */
+public class ResolvedMedia {
+
+    private final String id;
+    private final String type;
+    private final String tenantDomain;
+    private final String identifier;
+    private final File mediaFile;
+    private final long lastModified;
+    private final long size;
+    private final String eTag;
+    private final String contentType;
+    private final StoredMediaMetadata metadata;
+
+    public ResolvedMedia(String id, String type, String tenantDomain, File mediaFile, long lastModified, long size,
+                         String eTag, StoredMediaMetadata metadata) {
+
+        this(id, type, tenantDomain, null, mediaFile, lastModified, size, eTag,
+                metadata != null ? metadata.getContentType() : null, metadata);
+    }
+
+    public ResolvedMedia(String id, String type, String tenantDomain, String identifier, File mediaFile,
+                         long lastModified, long size, String eTag, String contentType,
+                         StoredMediaMetadata metadata) {
+
+        this.id = id;
+        this.type = type;
+        this.tenantDomain = tenantDomain;
+        this.identifier = identifier;
+        this.mediaFile = mediaFile;
+        this.lastModified = lastModified;
+        this.size = size;
+        this.eTag = eTag;
+        this.contentType = contentType;
+        this.metadata = metadata;
+    }
+
+    public String getId() {
+
+        return id;
+    }
+
+    public String getType() {
+
+        return type;
+    }
+
+    public String getTenantDomain() {
+
+        return tenantDomain;
+    }
+
+    /**
+     * Returns the identifier of the resolved representation of the media, or null if the default representation of
+     * the media was resolved.
+     *
+     * @return identifier of the representation.
+     */
+    public String getIdentifier() {
+
+        return identifier;
+    }
+
+    public File getMediaFile() {
+
+        return mediaFile;
+    }
+
+    public long getLastModified() {
+
+        return lastModified;
+    }
+
+    public long getSize() {
+
+        return size;
+    }
+
+    public String getETag() {
+
+        return eTag;
+    }
+
+    /**
+     * Returns the content type of the resolved representation of the media, or null if not known.
+     *
+     * @return content type.
+     */
+    public String getContentType() {
+
+        return contentType;
+    }
+
+    /**
+     * Returns the metadata of the media, or null if no metadata is stored for the media.
+     *
+     * @return parsed metadata.
+     */
+    public StoredMediaMetadata getMetadata() {
+
+        return metadata;
+    }
+
+    /**
+     * Checks whether this resolved media represents the given media.
+     *
+     * @param id           The unique id of the media.
+     * @param type         The high level content-type of the media.
+     * @param tenantDomain The tenant domain of the media.
+     * @return true if this resolved media represents the given media.
+     */
+    public boolean isFor(String id, String type, String tenantDomain) {
+
+        return StringUtils.equals(this.id, id) && StringUtils.equals(this.type, type) &&
+                StringUtils.equals(this.tenantDomain, tenantDomain);
+    }
+
+    /**
+     * Checks whether this resolved media represents the given representation of the given media.
+     *
+     * @param id           The unique id of the media.
+     * @param type         The high level content-type of the media.
+     * @param tenantDomain The tenant domain of the media.
+     * @param identifier   The identifier of the representation, or null for the default representation.
+     * @return true if this resolved media represents the given representation of the media.
+     */
+    public boolean isFor(String id, String type, String tenantDomain, String identifier) {
+
+        return isFor(id, type, tenantDomain) && StringUtils.equals(this.identifier, identifier);
+    }
+}
@@ -0,0 +1,311 @@
+/*
+ * Copyright (c) 2020, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.media.core.model;
+
+import org.wso2.carbon.identity.media.core.util.MembershipNames;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * This class represents the parsed form of the metadata persisted alongside a stored media file. Instances are
+ * shared through the metadata cache and must be treated as read-only.
+ */
+public class StoredMediaMetadata {
+
+    private final Object rawMetadata;
+    private final String contentType;
+    private final String resourceOwnerId;
+    private final FileSecurity fileSecurity;
+    private final String contentHash;
+    private final long size;
+    private final long lastModified;
+    private final List<MediaRepresentation> representations;
+    private final Set<String> allowedUserIds;
+    private final Set<String> allowedMemberships;
+    private final long weight;
+
+    public StoredMediaMetadata(Object rawMetadata, String contentType, String resourceOwnerId,
+                               FileSecurity fileSecurity, String contentHash, long weight) {
+
+        this(rawMetadata, contentType, resourceOwnerId, fileSecurity, contentHash, -1, -1, weight);
+    }
+
+    public StoredMediaMetadata(Object rawMetadata, String contentType, String resourceOwnerId,
+                               FileSecurity fileSecurity, String contentHash, long size, long lastModified,
+                               long weight) {
+
+        this(rawMetadata, contentType, resourceOwnerId, fileSecurity, contentHash, size, lastModified,
+                Collections.<MediaRepresentation>emptyList(), weight);
+    }
+
+    public StoredMediaMetadata(Object rawMetadata, String contentType, String resourceOwnerId,
+                               FileSecurity fileSecurity, String contentHash, long size, long lastModified,
+                               List<MediaRepresentation> representations, long weight) {
+
+        this.rawMetadata = rawMetadata;
+        this.contentType = contentType;
+        this.resourceOwnerId = resourceOwnerId;
+        this.fileSecurity = fileSecurity;
+        this.contentHash = contentHash;
+        this.size = size;
+        this.lastModified = lastModified;
+        this.representations = representations;
+        this.allowedUserIds = getAllowedUserIdSet(fileSecurity);
+        this.allowedMemberships = fileSecurity != null && !fileSecurity.isAllowedAll() ?
+                getMembershipSet(fileSecurity.getAllowedGroups(), fileSecurity.getAllowedRoles()) :
+                Collections.<String>emptySet();
+        this.weight = weight;
+    }
+
+    /**
+     * Returns the metadata in the form it was read from the storage, which is used when rendering media
+     * information.
+     *
+     * @return raw metadata object.
+     */
+    public Object getRawMetadata() {
+
+        return rawMetadata;
+    }
+
+    public String getContentType() {
+
+        return contentType;
+    }
+
+    public String getResourceOwnerId() {
+
+        return resourceOwnerId;
+    }
+
+    /**
+     * Returns the security applied on the media, or null if no security metadata is stored for the media.
+     *
+     * @return file security.
+     */
+    public FileSecurity getFileSecurity() {
+
+        return fileSecurity;
+    }
+
+    /**
+     * Returns the hex encoded SHA-256 hash of the media content computed while the media was uploaded, or null for
+     * media uploaded before content hashes were recorded.
+     *
+     * @return content hash.
+     */
+    public String getContentHash() {
+
+        return contentHash;
+    }
+
+    /**
+     * Returns the size of the media content in bytes recorded at upload, or -1 if not recorded.
+     *
+     * @return size of the media.
+     */
+    public long getSize() {
+
+        return size;
+    }
+
+    /**
+     * Returns the time the media was uploaded in milliseconds since the epoch, or -1 if not recorded.
+     *
+     * @return last modified time of the media.
+     */
+    public long getLastModified() {
+
+        return lastModified;
+    }
+
+    /**
+     * Checks whether the content hash, size and last modified time of the media were recorded at upload, in which
+     * case the media can be served without reading the attributes of the media file.
+     *
+     * @return true if the content attributes of the media are available in the metadata.
+     */
+    public boolean hasContentAttributes() {
+
+        return contentHash != null && size >= 0 && lastModified >= 0;
+    }
+
+    /**
+     * Returns the representations of a media uploaded with multiple files in the order they were uploaded, or an
+     * empty list for media uploaded as a single file. The first representation is the default representation of the
+     * media.
+     *
+     * @return representations of the media.
+     */
+    public List<MediaRepresentation> getRepresentations() {
+
+        return representations;
+    }
+
+    /**
+     * Returns the representation of the media with the given identifier.
+     *
+     * @param identifier The identifier of the representation.
+     * @return the representation or null if the media has no representation with the given identifier.
+     */
+    public MediaRepresentation getRepresentation(String identifier) {
+
+        for (MediaRepresentation representation : representations) {
+            if (representation.getIdentifier().equals(identifier)) {
+                return representation;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Evaluates whether the media is allowed to be downloaded by anyone.
+     *
+     * @return true if the media is publicly accessible.
+     */
+    public boolean isPubliclyAccessible() {
+
+        return fileSecurity != null && fileSecurity.isAllowedAll();
+    }
+
+    /**
+     * Evaluates whether the given user is allowed to download the media.
+     *
+     * @param userId The unique id of the user.
+     * @return true if the media is publicly accessible or the user is explicitly allowed to access the media.
+     */
+    public boolean isAccessAllowed(String userId) {
+
+        if (fileSecurity == null) {
+            return false;
+        }
+        if (fileSecurity.isAllowedAll()) {
+            return true;
+        }
+        return userId != null && allowedUserIds.contains(userId);
+    }
+
+    /**
+     * Checks whether access to the media is granted to any group or role, in which case the memberships of a user
+     * who is not explicitly allowed to access the media need to be evaluated.
+     *
+     * @return true if groups or roles are allowed to access the media.
+     */
+    public boolean hasMembershipGrants() {
+
+        return !getAllowedMemberships().isEmpty();
+    }
+
+    /**
+     * Evaluates whether a user with the given memberships is allowed to download the media through a group or role
+     * granted access to the media.
+     *
+     * @param memberships The groups and roles of the user, normalized with {@link MembershipNames}.
+     * @return true if any of the memberships is allowed to access the media.
+     */
+    public boolean isAccessAllowedForMemberships(Set<String> memberships) {
+
+        Set<String> allowedMemberships = getAllowedMemberships();
+        if (allowedMemberships.isEmpty() || memberships == null || memberships.isEmpty()) {
+            return false;
+        }
+        // Iterate the smaller of the two sets.
+        Set<String> smaller = allowedMemberships.size() <= memberships.size() ? allowedMemberships : memberships;
+        Set<String> larger = smaller == allowedMemberships ? memberships : allowedMemberships;
+        for (String membership : smaller) {
+            if (larger.contains(membership)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Evaluates whether the given user is the owner of the media.
+     *
+     * @param userId The unique id of the user.
+     * @return true if the user is the resource owner of the media.
+     */
+    public boolean isOwnedBy(String userId) {
+
+        return resourceOwnerId != null && resourceOwnerId.equals(userId);
+    }
+
+    /**
+     * Returns the approximate memory footprint of this metadata in bytes.
+     *
+     * @return weight in bytes.
+     */
+    public long getWeight() {
+
+        return weight;
+    }
+
+    /**
+     * Returns the normalized names of the groups and roles allowed to access the media.
+     *
+     * @return allowed memberships.
+     */
+    protected Set<String> getAllowedMemberships() {
+
+        return allowedMemberships;
+    }
+
+    /**
+     * Normalize the groups and roles allowed to access a media.
+     *
+     * @param allowedGroups The allowed groups, or null.
+     * @param allowedRoles  The allowed roles, or null.
+     * @return the normalized names of the allowed groups and roles.
+     */
+    protected static Set<String> getMembershipSet(List<String> allowedGroups, List<String> allowedRoles) {
+
+        if ((allowedGroups == null || allowedGroups.isEmpty()) && (allowedRoles == null || allowedRoles.isEmpty())) {
+            return Collections.emptySet();
+        }
+        Set<String> memberships = new HashSet<>();
+        if (allowedGroups != null) {
+            for (String allowedGroup : allowedGroups) {
+                memberships.add(MembershipNames.ofGroup(allowedGroup));
+            }
+        }
+        if (allowedRoles != null) {
+            for (String allowedRole : allowedRoles) {
+                memberships.add(MembershipNames.ofRole(allowedRole));
+            }
+        }
+        return Collections.unmodifiableSet(memberships);
+    }
+
+    /**
+     * Index the allowed users of the media once, since the metadata is cached and evaluated on each download of the
+     * media.
+     */
+    private static Set<String> getAllowedUserIdSet(FileSecurity fileSecurity) {
+
+        if (fileSecurity == null || fileSecurity.isAllowedAll() || fileSecurity.getAllowedUserIds() == null ||
+                fileSecurity.getAllowedUserIds().isEmpty()) {
+            return Collections.emptySet();
+        }
+        return Collections.unmodifiableSet(new HashSet<>(fileSecurity.getAllowedUserIds()));
+    }
+}
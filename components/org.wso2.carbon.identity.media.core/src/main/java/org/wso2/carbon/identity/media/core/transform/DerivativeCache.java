@@ -0,0 +1,387 @@
+/*
+ * Copyright (c) 2020, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.media.core.transform;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Size bounded on-disk cache for derivatives of stored media, e.g. resized variants of images. Derivatives are kept
+ * as files within the cache directory and the least recently used derivatives are deleted once the total size of the
+ * cached derivatives exceeds the configured bound. Concurrent requests for the same derivative which is not cached
+ * yet share a single generation.
+ * <p>
+ * Derivatives are addressed with keys made of '/' separated path segments, which are mapped to files relative to the
+ * cache directory. The access order of the derivatives is tracked in memory only and is rebuilt from the modified
+ * time of the files when the cache is first used after a restart.
+ * <p>
+ * The location of a derivative is served after it is returned from the cache, hence evicted derivatives are only
+ * deleted once they are retained for a while, so that a download of a derivative evicted right after it was returned
+ * can still open it. A derivative requested again while it is retained is restored without generating it again.
+ */
+public class DerivativeCache {
+
+    private static final Log LOGGER = LogFactory.getLog(DerivativeCache.class);
+    private static final String KEY_SEPARATOR = "/";
+    private static final String TEMPORARY_FILE_PREFIX = ".";
+    private static final String TEMPORARY_FILE_SUFFIX = ".tmp";
+    private static final long EVICTED_DERIVATIVE_RETENTION = TimeUnit.SECONDS.toMillis(30);
+
+    private final Path directory;
+    private final long maximumSize;
+    private final long evictedDerivativeRetention;
+    private final Object lock = new Object();
+    private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(16, 0.75f, true);
+    // Evicted derivatives which are not deleted yet, in the order of their eviction times.
+    private final LinkedHashMap<String, Long> evictedEntries = new LinkedHashMap<>();
+    private final ConcurrentMap<String, FutureTask<Path>> pendingGenerations = new ConcurrentHashMap<>();
+    private long totalSize;
+    private volatile boolean loaded;
+
+    /**
+     * Generates a derivative of a media.
+     */
+    public interface Generator {
+
+        /**
+         * Writes the derivative to the given location.
+         *
+         * @param target The location to write the derivative to.
+         * @return true if the derivative was written, false if no derivative is applicable.
+         * @throws IOException If an error occurs while generating the derivative.
+         */
+        boolean generate(Path target) throws IOException;
+    }
+
+    /**
+     * Creates a derivative cache.
+     *
+     * @param directory   The directory in which the derivatives are stored.
+     * @param maximumSize The maximum total size of the cached derivatives in bytes.
+     */
+    public DerivativeCache(Path directory, long maximumSize) {
+
+        this(directory, maximumSize, EVICTED_DERIVATIVE_RETENTION);
+    }
+
+    DerivativeCache(Path directory, long maximumSize, long evictedDerivativeRetention) {
+
+        this.directory = directory.normalize();
+        this.maximumSize = maximumSize;
+        this.evictedDerivativeRetention = evictedDerivativeRetention;
+    }
+
+    /**
+     * Retrieve a cached derivative, generating it if it is not cached.
+     *
+     * @param key       The key of the derivative.
+     * @param generator The generator used if the derivative is not cached.
+     * @return the location of the derivative, or null if no derivative is applicable.
+     * @throws IOException If an error occurs while generating the derivative.
+     */
+    public Path get(final String key, final Generator generator) throws IOException {
+
+        final Path location = resolve(key);
+        loadIfRequired();
+        if (lookup(key, location)) {
+            return location;
+        }
+
+        FutureTask<Path> generation = new FutureTask<>(new Callable<Path>() {
+            @Override
+            public Path call() throws IOException {
+
+                return generate(key, location, generator);
+            }
+        });
+        FutureTask<Path> pendingGeneration = pendingGenerations.putIfAbsent(key, generation);
+        if (pendingGeneration == null) {
+            pendingGeneration = generation;
+            try {
+                generation.run();
+            } finally {
+                pendingGenerations.remove(key, generation);
+            }
+        }
+
+        try {
+            return pendingGeneration.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Error while generating the derivative: " + key, e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the derivative: " + key);
+        }
+    }
+
+    /**
+     * Delete all the cached derivatives with keys starting with the given path segments, e.g. all the derivatives of
+     * a deleted media.
+     *
+     * @param keyPrefix The leading path segments of the keys of the derivatives.
+     */
+    public void invalidate(String keyPrefix) {
+
+        String prefix = keyPrefix.endsWith(KEY_SEPARATOR) ? keyPrefix : keyPrefix + KEY_SEPARATOR;
+        List<String> invalidatedKeys = new ArrayList<>();
+        synchronized (lock) {
+            Iterator<Map.Entry<String, Long>> iterator = entries.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<String, Long> entry = iterator.next();
+                if (entry.getKey().startsWith(prefix)) {
+                    totalSize -= entry.getValue();
+                    invalidatedKeys.add(entry.getKey());
+                    iterator.remove();
+                }
+            }
+            Iterator<String> evictedIterator = evictedEntries.keySet().iterator();
+            while (evictedIterator.hasNext()) {
+                String evictedKey = evictedIterator.next();
+                if (evictedKey.startsWith(prefix)) {
+                    invalidatedKeys.add(evictedKey);
+                    evictedIterator.remove();
+                }
+            }
+        }
+        for (String invalidatedKey : invalidatedKeys) {
+            deleteDerivative(resolve(invalidatedKey));
+        }
+        try {
+            Files.deleteIfExists(resolve(prefix));
+        } catch (DirectoryNotEmptyException e) {
+            // A derivative is being generated concurrently, it will be evicted eventually.
+        } catch (IOException e) {
+            LOGGER.warn("Unable to delete the derivative directory: " + prefix, e);
+        }
+    }
+
+    /**
+     * Returns the total size of the cached derivatives in bytes.
+     *
+     * @return total size of the cached derivatives.
+     */
+    public long getTotalSize() {
+
+        synchronized (lock) {
+            return totalSize;
+        }
+    }
+
+    /**
+     * Looks up a cached derivative. A derivative whose file is missing, e.g. deleted outside the cache, is treated
+     * as not cached, so that it is generated again.
+     */
+    private boolean lookup(String key, Path location) {
+
+        synchronized (lock) {
+            if (entries.get(key) == null) {
+                return false;
+            }
+        }
+        if (Files.isRegularFile(location)) {
+            return true;
+        }
+        synchronized (lock) {
+            Long size = entries.remove(key);
+            if (size != null) {
+                totalSize -= size;
+            }
+        }
+        return false;
+    }
+
+    private Path generate(String key, Path location, Generator generator) throws IOException {
+
+        // The derivative may have been added by a generation which completed after the lookup of this request.
+        if (lookup(key, location)) {
+            return location;
+        }
+        // An evicted derivative which is not deleted yet is no longer deleted, since it is either restored or
+        // replaced below.
+        boolean evicted;
+        synchronized (lock) {
+            evicted = evictedEntries.remove(key) != null;
+        }
+        if (evicted && Files.isRegularFile(location)) {
+            add(key, Files.size(location));
+            return location;
+        }
+        Files.createDirectories(location.getParent());
+        Path temporaryFile = Files.createTempFile(location.getParent(), TEMPORARY_FILE_PREFIX,
+                TEMPORARY_FILE_SUFFIX);
+        try {
+            if (!generator.generate(temporaryFile)) {
+                return null;
+            }
+            Files.move(temporaryFile, location, StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temporaryFile);
+        }
+        add(key, Files.size(location));
+        return location;
+    }
+
+    private void add(String key, long size) {
+
+        int evictedCount = 0;
+        long now = System.currentTimeMillis();
+        synchronized (lock) {
+            Long previousSize = entries.put(key, size);
+            totalSize += size - (previousSize != null ? previousSize : 0);
+            Iterator<Map.Entry<String, Long>> iterator = entries.entrySet().iterator();
+            while (totalSize > maximumSize && iterator.hasNext()) {
+                Map.Entry<String, Long> eldest = iterator.next();
+                if (eldest.getKey().equals(key)) {
+                    // The derivative being added is still to be served.
+                    continue;
+                }
+                totalSize -= eldest.getValue();
+                evictedEntries.put(eldest.getKey(), now);
+                iterator.remove();
+                evictedCount++;
+            }
+            deleteExpiredEvictedDerivatives(now);
+        }
+        if (evictedCount > 0 && LOGGER.isDebugEnabled()) {
+            LOGGER.debug(String.format("Evicted %d derivatives from the derivative cache.", evictedCount));
+        }
+    }
+
+    /**
+     * Deletes the evicted derivatives retained for long enough. The derivatives are deleted while holding the lock,
+     * so that a derivative restored or generated again concurrently is not deleted.
+     */
+    private void deleteExpiredEvictedDerivatives(long now) {
+
+        Iterator<Map.Entry<String, Long>> iterator = evictedEntries.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, Long> evictedEntry = iterator.next();
+            if (evictedEntry.getValue() + evictedDerivativeRetention > now) {
+                break;
+            }
+            deleteDerivative(resolve(evictedEntry.getKey()));
+            iterator.remove();
+        }
+    }
+
+    private void loadIfRequired() throws IOException {
+
+        if (loaded) {
+            return;
+        }
+        synchronized (lock) {
+            if (loaded) {
+                return;
+            }
+            Files.createDirectories(directory);
+            final List<Path> derivatives = new ArrayList<>();
+            final Map<Path, BasicFileAttributes> derivativeAttributes = new LinkedHashMap<>();
+            Files.walkFileTree(directory, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) throws IOException {
+
+                    if (file.getFileName().toString().startsWith(TEMPORARY_FILE_PREFIX)) {
+                        // Left behind by a generation which didn't complete.
+                        Files.deleteIfExists(file);
+                    } else if (attributes.isRegularFile()) {
+                        derivatives.add(file);
+                        derivativeAttributes.put(file, attributes);
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+            Collections.sort(derivatives, new Comparator<Path>() {
+                @Override
+                public int compare(Path derivative1, Path derivative2) {
+
+                    return derivativeAttributes.get(derivative1).lastModifiedTime().compareTo(
+                            derivativeAttributes.get(derivative2).lastModifiedTime());
+                }
+            });
+            for (Path derivative : derivatives) {
+                StringBuilder key = new StringBuilder();
+                for (Path segment : directory.relativize(derivative)) {
+                    if (key.length() > 0) {
+                        key.append(KEY_SEPARATOR);
+                    }
+                    key.append(segment.toString());
+                }
+                long size = derivativeAttributes.get(derivative).size();
+                entries.put(key.toString(), size);
+                totalSize += size;
+            }
+            loaded = true;
+        }
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug(String.format("Loaded derivative cache from %s with total size: %d bytes.", directory,
+                    getTotalSize()));
+        }
+    }
+
+    private Path resolve(String key) {
+
+        Path location = directory;
+        for (String segment : key.split(KEY_SEPARATOR)) {
+            if (!segment.isEmpty()) {
+                location = location.resolve(segment);
+            }
+        }
+        location = location.normalize();
+        if (!location.startsWith(directory) || location.equals(directory)) {
+            throw new IllegalArgumentException("Invalid derivative key: " + key);
+        }
+        return location;
+    }
+
+    private void deleteDerivative(Path derivative) {
+
+        try {
+            Files.deleteIfExists(derivative);
+        } catch (IOException e) {
+            LOGGER.warn("Unable to delete the derivative: " + derivative, e);
+        }
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright (c) 2020, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.media.core.transform;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+
+/**
+ * Produces width bounded variants of raster images using ImageIO. The variant is encoded in the format of the
+ * original image and keeps its aspect ratio.
+ */
+public class ImageResizer {
+
+    private static final Log LOGGER = LogFactory.getLog(ImageResizer.class);
+
+    // Images with more pixels than this are not decoded, so that a small compressed image can't exhaust the heap.
+    private static final long MAXIMUM_SOURCE_PIXELS = 25000000L;
+
+    private ImageResizer() {
+
+    }
+
+    /**
+     * Checks whether images of the given content type can be resized.
+     *
+     * @param contentType The content type of the image.
+     * @return true if ImageIO can both decode and encode images of the content type.
+     */
+    public static boolean isResizable(String contentType) {
+
+        return contentType != null && ImageIO.getImageReadersByMIMEType(contentType).hasNext() &&
+                ImageIO.getImageWritersByMIMEType(contentType).hasNext();
+    }
+
+    /**
+     * Writes a variant of the source image scaled down to the given width. No variant is written if the source image
+     * is not wider than the given width, or if it can't be decoded.
+     *
+     * @param source      The source image.
+     * @param target      The location to write the variant to.
+     * @param width       The maximum width of the variant in pixels.
+     * @param contentType The content type of the source image.
+     * @return true if the variant was written.
+     * @throws IOException If an error occurs while reading the source image or writing the variant.
+     */
+    public static boolean resize(Path source, Path target, int width, String contentType) throws IOException {
+
+        BufferedImage sourceImage;
+        try (ImageInputStream imageInputStream = ImageIO.createImageInputStream(source.toFile())) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(imageInputStream);
+            if (!readers.hasNext()) {
+                return false;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(imageInputStream, true, true);
+                // Only the header is read to decide whether the image needs to be decoded.
+                int sourceWidth = reader.getWidth(0);
+                int sourceHeight = reader.getHeight(0);
+                if (sourceWidth <= width || (long) sourceWidth * sourceHeight > MAXIMUM_SOURCE_PIXELS) {
+                    return false;
+                }
+                sourceImage = reader.read(0);
+            } finally {
+                reader.dispose();
+            }
+        }
+
+        int height = Math.max(1, (int) Math.round((double) sourceImage.getHeight() * width / sourceImage.getWidth()));
+        int imageType = sourceImage.getColorModel().hasAlpha() ? BufferedImage.TYPE_INT_ARGB :
+                BufferedImage.TYPE_INT_RGB;
+        BufferedImage resizedImage = new BufferedImage(width, height, imageType);
+        Graphics2D graphics = resizedImage.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            graphics.drawImage(sourceImage, 0, 0, width, height, null);
+        } finally {
+            graphics.dispose();
+        }
+
+        Iterator<ImageWriter> writers = ImageIO.getImageWritersByMIMEType(contentType);
+        if (!writers.hasNext()) {
+            return false;
+        }
+        ImageWriter writer = writers.next();
+        try (OutputStream outputStream = Files.newOutputStream(target);
+             ImageOutputStream imageOutputStream = ImageIO.createImageOutputStream(outputStream)) {
+            writer.setOutput(imageOutputStream);
+            writer.write(resizedImage);
+        } finally {
+            writer.dispose();
+        }
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug(String.format("Resized image %s to width: %d.", source.getFileName(), width));
+        }
+        return true;
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright (c) 2020, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wso2.carbon.identity.media.core.util;
+
+/**
+ * A Bloom filter of strings, used to reject values which are not in a large set before the set itself is searched.
+ * A value which was added is always reported as possibly contained, while a value which was not added is reported as
+ * possibly contained with the configured false positive probability. Values can't be removed.
+ * <p>
+ * Adding values is not thread safe. A filter which is fully built before being published can be queried
+ * concurrently.
+ */
+public final class BloomFilter {
+
+    private static final double LN_2 = Math.log(2);
+
+    private final long[] bits;
+    private final long bitCount;
+    private final int hashCount;
+
+    /**
+     * Creates a Bloom filter sized for the given number of values.
+     *
+     * @param expectedValues           The number of values expected to be added.
+     * @param falsePositiveProbability The acceptable probability of a value which was not added being reported as
+     *                                 possibly contained, once the expected number of values are added.
+     */
+    public BloomFilter(int expectedValues, double falsePositiveProbability) {
+
+        if (falsePositiveProbability <= 0 || falsePositiveProbability >= 1) {
+            throw new IllegalArgumentException("Invalid false positive probability: " + falsePositiveProbability);
+        }
+        int values = Math.max(1, expectedValues);
+        long optimalBitCount = (long) Math.ceil(-values * Math.log(falsePositiveProbability) / (LN_2 * LN_2));
+        int wordCount = (int) Math.max(1, (optimalBitCount + 63) / 64);
+        bits = new long[wordCount];
+        bitCount = 64L * wordCount;
+        hashCount = (int) Math.max(1, Math.round((double) bitCount / values * LN_2));
+    }
+
+    /**
+     * Add a value to the filter.
+     *
+     * @param value The value.
+     */
+    public void add(String value) {
+
+        long hash = hash(value);
+        int hash1 = (int) hash;
+        int hash2 = (int) (hash >>> 32);
+        for (int i = 0; i < hashCount; i++) {
+            long index = getIndex(hash1 + i * hash2);
+            bits[(int) (index >>> 6)] |= 1L << index;
+        }
+    }
+
+    /**
+     * Checks whether the given value may have been added to the filter.
+     *
+     * @param value The value.
+     * @return false if the value was definitely not added, true if it may have been added.
+     */
+    public boolean mightContain(String value) {
+
+        long hash = hash(value);
+        int hash1 = (int) hash;
+        int hash2 = (int) (hash >>> 32);
+        for (int i = 0; i < hashCount; i++) {
+            long index = getIndex(hash1 + i * hash2);
+            if ((bits[(int) (index >>> 6)] & (1L << index)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the approximate memory footprint of the filter in bytes.
+     *
+     * @return size in bytes.
+     */
+    public long getSizeInBytes() {
+
+        return 8L * bits.length + 32;
+    }
+
+    private long getIndex(int combinedHash) {
+
+        // Flip a negative combined hash, as suggested for double hashing.
+        return (combinedHash < 0 ? ~combinedHash : combinedHash) % bitCount;
+    }
+
+    /**
+     * 64-bit FNV-1a hash of the characters of the value, followed by the MurmurHash3 finalizer to spread the bits
+     * over both halves of the hash.
+     */
+    private static long hash(String value) {
+
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            hash ^= value.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
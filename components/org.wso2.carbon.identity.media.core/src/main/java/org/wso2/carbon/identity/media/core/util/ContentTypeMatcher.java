@@ -0,0 +1,136 @@
+/*
+ * Copyright (c) 2020, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wso2.carbon.identity.media.core.util;
+
+import org.apache.commons.lang.StringUtils;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Immutable lookup structure for the allowed media content types, compiled once from the configured high level
+ * content types and their allowed sub types. A sub type of {@code *} allows all the sub types of a content type, and
+ * a content type may also be configured in its full form such as {@code image/*} or {@code image/png}.
+ */
+public class ContentTypeMatcher {
+
+    private static final String WILDCARD = "*";
+    private static final String TYPE_SEPARATOR = "/";
+    private static final ContentTypeMatcher EMPTY = new ContentTypeMatcher(
+            Collections.<String, AllowedSubTypes>emptyMap());
+
+    private final Map<String, AllowedSubTypes> allowedTypes;
+
+    private ContentTypeMatcher(Map<String, AllowedSubTypes> allowedTypes) {
+
+        this.allowedTypes = allowedTypes;
+    }
+
+    /**
+     * Compile a matcher for the given content types.
+     *
+     * @param contentTypes The allowed high level content types mapped to their allowed sub types, which are null if
+     *                     no sub types are allowed.
+     * @return the compiled matcher.
+     */
+    public static ContentTypeMatcher compile(Map<String, List<String>> contentTypes) {
+
+        if (contentTypes == null || contentTypes.isEmpty()) {
+            return EMPTY;
+        }
+        Map<String, Set<String>> subTypesByType = new HashMap<>();
+        for (Map.Entry<String, List<String>> contentType : contentTypes.entrySet()) {
+            String type = StringUtils.trimToNull(contentType.getKey());
+            if (type == null) {
+                continue;
+            }
+            List<String> subTypes = contentType.getValue();
+            if (type.contains(TYPE_SEPARATOR)) {
+                subTypes = Collections.singletonList(StringUtils.substringAfter(type, TYPE_SEPARATOR));
+                type = StringUtils.substringBefore(type, TYPE_SEPARATOR);
+            }
+            Set<String> allowedSubTypes = subTypesByType.get(type);
+            if (allowedSubTypes == null) {
+                allowedSubTypes = new HashSet<>();
+                subTypesByType.put(type, allowedSubTypes);
+            }
+            if (subTypes != null) {
+                for (String subType : subTypes) {
+                    if (StringUtils.isNotBlank(subType)) {
+                        allowedSubTypes.add(subType.trim());
+                    }
+                }
+            }
+        }
+
+        Map<String, AllowedSubTypes> allowedTypes = new HashMap<>();
+        for (Map.Entry<String, Set<String>> subTypes : subTypesByType.entrySet()) {
+            allowedTypes.put(subTypes.getKey(), new AllowedSubTypes(subTypes.getValue()));
+        }
+        return new ContentTypeMatcher(Collections.unmodifiableMap(allowedTypes));
+    }
+
+    /**
+     * Checks whether media of the given high level content type is allowed.
+     *
+     * @param type The high level content type (if media content-type is image/png then type would be image).
+     * @return true if the content type is allowed.
+     */
+    public boolean isTypeAllowed(String type) {
+
+        return type != null && allowedTypes.containsKey(type);
+    }
+
+    /**
+     * Checks whether media of the given content type is allowed.
+     *
+     * @param type    The high level content type (if media content-type is image/png then type would be image).
+     * @param subType The sub type (if media content-type is image/png then sub type would be png).
+     * @return true if the content type is allowed.
+     */
+    public boolean isAllowed(String type, String subType) {
+
+        if (type == null || subType == null) {
+            return false;
+        }
+        AllowedSubTypes allowedSubTypes = allowedTypes.get(type);
+        return allowedSubTypes != null && allowedSubTypes.contains(subType);
+    }
+
+    /**
+     * The allowed sub types of a high level content type.
+     */
+    private static class AllowedSubTypes {
+
+        private final boolean wildcard;
+        private final Set<String> subTypes;
+
+        AllowedSubTypes(Set<String> subTypes) {
+
+            this.wildcard = subTypes.contains(WILDCARD);
+            this.subTypes = Collections.unmodifiableSet(new HashSet<>(subTypes));
+        }
+
+        boolean contains(String subType) {
+
+            return wildcard || subTypes.contains(subType);
+        }
+    }
+}
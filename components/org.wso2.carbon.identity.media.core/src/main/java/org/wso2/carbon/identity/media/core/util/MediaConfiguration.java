@@ -0,0 +1,554 @@
+/*
+ * Copyright (c) 2020, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wso2.carbon.identity.media.core.util;
+
+import org.apache.commons.lang.StringUtils;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+
+import static org.wso2.carbon.identity.media.core.util.StorageSystemConstants.ALLOWED_CONTENT_SUB_TYPES;
+import static org.wso2.carbon.identity.media.core.util.StorageSystemConstants.ALLOWED_CONTENT_TYPES;
+import static org.wso2.carbon.identity.media.core.util.StorageSystemConstants.ALLOWED_MAXIMUM_SIZE_IN_BYTES;
+import static org.wso2.carbon.identity.media.core.util.StorageSystemConstants.AUTHORIZATION_CACHE_ENABLED;
+import static org.wso2.carbon.identity.media.core.util.StorageSystemConstants.AUTHORIZATION_CACHE_MAXIMUM_ENTRIES;
+import static org.wso2.carbon.identity.media.core.util.StorageSystemConstants.AUTHORIZATION_CACHE_TIME_TO_LIVE_IN_SECONDS;
+import static org.wso2.carbon.identity.media.core.util.StorageSystemConstants.CONFIGURABLE_MAXIMUM_MEDIA_SIZE_IN_BYTES;
+import static org.wso2.carbon.identity.media.core.util.StorageSystemConstants.CONFIGURABLE_MEDIA_CONTENT_SUB_TYPES;
+import static org.wso2.carbon.identity.media.core.util.StorageSystemConstants.CONFIGURABLE_MEDIA_CONTENT_TYPES;
+import static org.wso2.carbon.identity.media.core.util.StorageSystemConstants.CONFIGURABLE_MEDIA_MOUNT_LOCATION;
+import static org.wso2.carbon.identity.media.core.util.StorageSystemConstants.CONFIGURABLE_MEDIA_STORE_TYPE;
+import static org.wso2.carbon.identity.media.core.util.StorageSystemConstants.DEFAULT_AUTHORIZATION_CACHE_MAXIMUM_ENTRIES;
+import static org.wso2.carbon.identity.media.core.util.StorageSystemConstants.DEFAULT_AUTHORIZATION_CACHE_TIME_TO_LIVE_IN_SECONDS;
+import static org.wso2.carbon.identity.media.core.util.StorageSystemConstants.DEFAULT_DERIVATIVE_CACHE_MAXIMUM_SIZE_IN_BYTES;
+import static org.wso2.carbon.identity.media.core.util.StorageSystemConstants.DEFAULT_IMAGE_RESIZE_WIDTHS;
+import static org.wso2.carbon.identity.media.core.util.StorageSystemConstants.DATABASE_STORAGE_DATA_SOURCE_NAME;
+import static org.wso2.carbon.identity.media.core.util.StorageSystemConstants.DEFAULT_DIRECTORY_LAYOUT;
+import static org.wso2.carbon.identity.media.core.util.StorageSystemConstants.DEFAULT_MEMBERSHIP_CACHE_MAXIMUM_ENTRIES;
+import static org.wso2.carbon.identity.media.core.util.StorageSystemConstants.DEFAULT_MEMBERSHIP_CACHE_TIME_TO_LIVE_IN_SECONDS;
+import static org.wso2.carbon.identity.media.core.util.StorageSystemConstants.DEFAULT_METADATA_CACHE_MAXIMUM_SIZE_IN_BYTES;
+import static org.wso2.carbon.identity.media.core.util.StorageSystemConstants.DEFAULT_PARALLEL_UPLOAD_THREAD_POOL_SIZE;
+import static org.wso2.carbon.identity.media.core.util.StorageSystemConstants.DEFAULT_USER_ID_CACHE_MAXIMUM_ENTRIES;
+import static org.wso2.carbon.identity.media.core.util.StorageSystemConstants.DEFAULT_USER_ID_CACHE_NEGATIVE_TIME_TO_LIVE_IN_SECONDS;
+import static org.wso2.carbon.identity.media.core.util.StorageSystemConstants.DEFAULT_USER_ID_CACHE_TIME_TO_LIVE_IN_SECONDS;
+import static org.wso2.carbon.identity.media.core.util.StorageSystemConstants.FILE_BASED_STORAGE_BINARY_METADATA_ENABLED;
+import static org.wso2.carbon.identity.media.core.util.StorageSystemConstants.FILE_BASED_STORAGE_DERIVATIVE_CACHE_MAXIMUM_SIZE_IN_BYTES;
+import static org.wso2.carbon.identity.media.core.util.StorageSystemConstants.FILE_BASED_STORAGE_DIRECTORY_LAYOUT;
+import static org.wso2.carbon.identity.media.core.util.StorageSystemConstants.FILE_BASED_STORAGE_UPLOAD_SYNC_POLICY;
+import static org.wso2.carbon.identity.media.core.util.StorageSystemConstants.DEFAULT_UPLOAD_SYNC_POLICY;
+import static org.wso2.carbon.identity.media.core.util.StorageSystemConstants.FILE_BASED_STORAGE_UPLOAD_GROUP_COMMIT_WINDOW_IN_MILLIS;
+import static org.wso2.carbon.identity.media.core.util.StorageSystemConstants.DEFAULT_UPLOAD_GROUP_COMMIT_WINDOW_IN_MILLIS;
+import static org.wso2.carbon.identity.media.core.util.StorageSystemConstants.FILE_BASED_STORAGE_REAPER_INTERVAL_IN_SECONDS;
+import static org.wso2.carbon.identity.media.core.util.StorageSystemConstants.DEFAULT_REAPER_INTERVAL_IN_SECONDS;
+import static org.wso2.carbon.identity.media.core.util.StorageSystemConstants.FILE_BASED_STORAGE_REAPER_MAXIMUM_DELETES_PER_SECOND;
+import static org.wso2.carbon.identity.media.core.util.StorageSystemConstants.DEFAULT_REAPER_MAXIMUM_DELETES_PER_SECOND;
+import static org.wso2.carbon.identity.media.core.util.StorageSystemConstants.FILE_BASED_STORAGE_CONTENT_ADDRESSED_ENABLED;
+import static org.wso2.carbon.identity.media.core.util.StorageSystemConstants.VOLUME_STORAGE_MAXIMUM_VOLUME_SIZE_IN_BYTES;
+import static org.wso2.carbon.identity.media.core.util.StorageSystemConstants.DEFAULT_MAXIMUM_VOLUME_SIZE_IN_BYTES;
+import static org.wso2.carbon.identity.media.core.util.StorageSystemConstants.VOLUME_STORAGE_SYNC_ENABLED;
+import static org.wso2.carbon.identity.media.core.util.StorageSystemConstants.VOLUME_STORAGE_COMPACTION_INTERVAL_IN_SECONDS;
+import static org.wso2.carbon.identity.media.core.util.StorageSystemConstants.DEFAULT_VOLUME_COMPACTION_INTERVAL_IN_SECONDS;
+import static org.wso2.carbon.identity.media.core.util.StorageSystemConstants.VOLUME_STORAGE_COMPACTION_MINIMUM_GARBAGE_PERCENTAGE;
+import static org.wso2.carbon.identity.media.core.util.StorageSystemConstants.DEFAULT_VOLUME_COMPACTION_MINIMUM_GARBAGE_PERCENTAGE;
+import static org.wso2.carbon.identity.media.core.util.StorageSystemConstants.FILE_BASED_STORAGE_IMAGE_RESIZE_ENABLED;
+import static org.wso2.carbon.identity.media.core.util.StorageSystemConstants.FILE_BASED_STORAGE_IMAGE_RESIZE_WIDTHS;
+import static org.wso2.carbon.identity.media.core.util.StorageSystemConstants.FILE_BASED_STORAGE_PARALLEL_UPLOAD_THREAD_POOL_SIZE;
+import static org.wso2.carbon.identity.media.core.util.StorageSystemConstants.FILE_BASED_STORAGE_ZERO_COPY_DOWNLOAD_ENABLED;
+import static org.wso2.carbon.identity.media.core.util.StorageSystemConstants.MEDIA_MOUNT_LOCATION;
+import static org.wso2.carbon.identity.media.core.util.StorageSystemConstants.MEDIA_STORE_TYPE;
+import static org.wso2.carbon.identity.media.core.util.StorageSystemConstants.MEMBERSHIP_CACHE_ENABLED;
+import static org.wso2.carbon.identity.media.core.util.StorageSystemConstants.MEMBERSHIP_CACHE_MAXIMUM_ENTRIES;
+import static org.wso2.carbon.identity.media.core.util.StorageSystemConstants.MEMBERSHIP_CACHE_TIME_TO_LIVE_IN_SECONDS;
+import static org.wso2.carbon.identity.media.core.util.StorageSystemConstants.METADATA_CACHE_ENABLED;
+import static org.wso2.carbon.identity.media.core.util.StorageSystemConstants.METADATA_CACHE_MAXIMUM_SIZE_IN_BYTES;
+import static org.wso2.carbon.identity.media.core.util.StorageSystemConstants.USER_ID_CACHE_ENABLED;
+import static org.wso2.carbon.identity.media.core.util.StorageSystemConstants.USER_ID_CACHE_MAXIMUM_ENTRIES;
+import static org.wso2.carbon.identity.media.core.util.StorageSystemConstants.USER_ID_CACHE_NEGATIVE_TIME_TO_LIVE_IN_SECONDS;
+import static org.wso2.carbon.identity.media.core.util.StorageSystemConstants.USER_ID_CACHE_TIME_TO_LIVE_IN_SECONDS;
+
+/**
+ * Immutable snapshot of the media configuration, resolved from the media.properties file and the environment
+ * variables which override it. A snapshot is resolved once when the configuration is loaded, so that serving a
+ * request doesn't need to consult the environment or parse configuration values.
+ */
+public class MediaConfiguration {
+
+    private final String mediaStoreType;
+    private final String mediaMountLocation;
+    private final Path mediaMountBaseDirectory;
+    private final long maximumMediaSize;
+    private final Map<String, List<String>> contentTypes;
+    private final ContentTypeMatcher contentTypeMatcher;
+    private final boolean metadataCacheEnabled;
+    private final long metadataCacheMaximumSize;
+    private final boolean zeroCopyDownloadEnabled;
+    private final boolean binaryMetadataEnabled;
+    private final int parallelUploadThreadPoolSize;
+    private final boolean imageResizeEnabled;
+    private final List<Integer> imageResizeWidths;
+    private final long derivativeCacheMaximumSize;
+    private final boolean userIdCacheEnabled;
+    private final long userIdCacheTimeToLive;
+    private final long userIdCacheNegativeTimeToLive;
+    private final int userIdCacheMaximumEntries;
+    private final boolean authorizationCacheEnabled;
+    private final long authorizationCacheTimeToLive;
+    private final int authorizationCacheMaximumEntries;
+    private final boolean membershipCacheEnabled;
+    private final long membershipCacheTimeToLive;
+    private final int membershipCacheMaximumEntries;
+    private final String databaseStorageDataSourceName;
+    private final String directoryLayout;
+    private final String uploadSyncPolicy;
+    private final long uploadGroupCommitWindow;
+    private final long reaperInterval;
+    private final int reaperMaximumDeletesPerSecond;
+    private final boolean contentAddressedStorageEnabled;
+    private final long maximumVolumeSize;
+    private final boolean volumeSyncEnabled;
+    private final long volumeCompactionInterval;
+    private final int volumeCompactionMinimumGarbagePercentage;
+
+    private MediaConfiguration(Properties properties, Map<String, String> environment, String carbonHome) {
+
+        String envForMediaStoreType = environment.get(CONFIGURABLE_MEDIA_STORE_TYPE);
+        mediaStoreType = StringUtils.isNotBlank(envForMediaStoreType) ? envForMediaStoreType :
+                properties.getProperty(MEDIA_STORE_TYPE);
+
+        // The media mount location in media.properties is relative to CARBON_HOME.
+        String envForMediaMountLocation = environment.get(CONFIGURABLE_MEDIA_MOUNT_LOCATION);
+        mediaMountLocation = properties.getProperty(MEDIA_MOUNT_LOCATION);
+        if (StringUtils.isNotBlank(envForMediaMountLocation)) {
+            mediaMountBaseDirectory = Paths.get(envForMediaMountLocation);
+        } else if (carbonHome != null && mediaMountLocation != null) {
+            mediaMountBaseDirectory = Paths.get(carbonHome, mediaMountLocation);
+        } else {
+            mediaMountBaseDirectory = null;
+        }
+
+        String envForMediaSize = environment.get(CONFIGURABLE_MAXIMUM_MEDIA_SIZE_IN_BYTES);
+        if (StringUtils.isNotBlank(envForMediaSize)) {
+            maximumMediaSize = Long.parseLong(envForMediaSize.trim());
+        } else {
+            maximumMediaSize = getLongProperty(properties, ALLOWED_MAXIMUM_SIZE_IN_BYTES, 0);
+        }
+
+        contentTypes = Collections.unmodifiableMap(resolveContentTypes(properties, environment));
+        contentTypeMatcher = ContentTypeMatcher.compile(contentTypes);
+
+        metadataCacheEnabled = getBooleanProperty(properties, METADATA_CACHE_ENABLED, true);
+        metadataCacheMaximumSize = getLongProperty(properties, METADATA_CACHE_MAXIMUM_SIZE_IN_BYTES,
+                DEFAULT_METADATA_CACHE_MAXIMUM_SIZE_IN_BYTES);
+        zeroCopyDownloadEnabled = getBooleanProperty(properties, FILE_BASED_STORAGE_ZERO_COPY_DOWNLOAD_ENABLED, true);
+        binaryMetadataEnabled = getBooleanProperty(properties, FILE_BASED_STORAGE_BINARY_METADATA_ENABLED, false);
+        parallelUploadThreadPoolSize = (int) getLongProperty(properties,
+                FILE_BASED_STORAGE_PARALLEL_UPLOAD_THREAD_POOL_SIZE, DEFAULT_PARALLEL_UPLOAD_THREAD_POOL_SIZE);
+        imageResizeEnabled = getBooleanProperty(properties, FILE_BASED_STORAGE_IMAGE_RESIZE_ENABLED, true);
+        imageResizeWidths = parseWidths(properties.getProperty(FILE_BASED_STORAGE_IMAGE_RESIZE_WIDTHS,
+                DEFAULT_IMAGE_RESIZE_WIDTHS));
+        derivativeCacheMaximumSize = getLongProperty(properties,
+                FILE_BASED_STORAGE_DERIVATIVE_CACHE_MAXIMUM_SIZE_IN_BYTES,
+                DEFAULT_DERIVATIVE_CACHE_MAXIMUM_SIZE_IN_BYTES);
+        userIdCacheEnabled = getBooleanProperty(properties, USER_ID_CACHE_ENABLED, true);
+        userIdCacheTimeToLive = getLongProperty(properties, USER_ID_CACHE_TIME_TO_LIVE_IN_SECONDS,
+                DEFAULT_USER_ID_CACHE_TIME_TO_LIVE_IN_SECONDS);
+        userIdCacheNegativeTimeToLive = getLongProperty(properties, USER_ID_CACHE_NEGATIVE_TIME_TO_LIVE_IN_SECONDS,
+                DEFAULT_USER_ID_CACHE_NEGATIVE_TIME_TO_LIVE_IN_SECONDS);
+        userIdCacheMaximumEntries = (int) getLongProperty(properties, USER_ID_CACHE_MAXIMUM_ENTRIES,
+                DEFAULT_USER_ID_CACHE_MAXIMUM_ENTRIES);
+        authorizationCacheEnabled = getBooleanProperty(properties, AUTHORIZATION_CACHE_ENABLED, true);
+        authorizationCacheTimeToLive = getLongProperty(properties, AUTHORIZATION_CACHE_TIME_TO_LIVE_IN_SECONDS,
+                DEFAULT_AUTHORIZATION_CACHE_TIME_TO_LIVE_IN_SECONDS);
+        authorizationCacheMaximumEntries = (int) getLongProperty(properties, AUTHORIZATION_CACHE_MAXIMUM_ENTRIES,
+                DEFAULT_AUTHORIZATION_CACHE_MAXIMUM_ENTRIES);
+        membershipCacheEnabled = getBooleanProperty(properties, MEMBERSHIP_CACHE_ENABLED, true);
+        membershipCacheTimeToLive = getLongProperty(properties, MEMBERSHIP_CACHE_TIME_TO_LIVE_IN_SECONDS,
+                DEFAULT_MEMBERSHIP_CACHE_TIME_TO_LIVE_IN_SECONDS);
+        membershipCacheMaximumEntries = (int) getLongProperty(properties, MEMBERSHIP_CACHE_MAXIMUM_ENTRIES,
+                DEFAULT_MEMBERSHIP_CACHE_MAXIMUM_ENTRIES);
+        databaseStorageDataSourceName = StringUtils.trimToNull(properties.getProperty(
+                DATABASE_STORAGE_DATA_SOURCE_NAME));
+        directoryLayout = properties.getProperty(FILE_BASED_STORAGE_DIRECTORY_LAYOUT, DEFAULT_DIRECTORY_LAYOUT).trim();
+        uploadSyncPolicy = properties.getProperty(FILE_BASED_STORAGE_UPLOAD_SYNC_POLICY, DEFAULT_UPLOAD_SYNC_POLICY)
+                .trim();
+        uploadGroupCommitWindow = getLongProperty(properties, FILE_BASED_STORAGE_UPLOAD_GROUP_COMMIT_WINDOW_IN_MILLIS,
+                DEFAULT_UPLOAD_GROUP_COMMIT_WINDOW_IN_MILLIS);
+        reaperInterval = getLongProperty(properties, FILE_BASED_STORAGE_REAPER_INTERVAL_IN_SECONDS,
+                DEFAULT_REAPER_INTERVAL_IN_SECONDS);
+        reaperMaximumDeletesPerSecond = (int) getLongProperty(properties,
+                FILE_BASED_STORAGE_REAPER_MAXIMUM_DELETES_PER_SECOND, DEFAULT_REAPER_MAXIMUM_DELETES_PER_SECOND);
+        contentAddressedStorageEnabled = getBooleanProperty(properties, FILE_BASED_STORAGE_CONTENT_ADDRESSED_ENABLED,
+                false);
+        maximumVolumeSize = getLongProperty(properties, VOLUME_STORAGE_MAXIMUM_VOLUME_SIZE_IN_BYTES,
+                DEFAULT_MAXIMUM_VOLUME_SIZE_IN_BYTES);
+        volumeSyncEnabled = getBooleanProperty(properties, VOLUME_STORAGE_SYNC_ENABLED, false);
+        volumeCompactionInterval = getLongProperty(properties, VOLUME_STORAGE_COMPACTION_INTERVAL_IN_SECONDS,
+                DEFAULT_VOLUME_COMPACTION_INTERVAL_IN_SECONDS);
+        volumeCompactionMinimumGarbagePercentage = (int) getLongProperty(properties,
+                VOLUME_STORAGE_COMPACTION_MINIMUM_GARBAGE_PERCENTAGE,
+                DEFAULT_VOLUME_COMPACTION_MINIMUM_GARBAGE_PERCENTAGE);
+    }
+
+    /**
+     * Resolve a configuration snapshot.
+     *
+     * @param properties  The properties loaded from the media.properties file.
+     * @param environment The environment variables overriding the properties.
+     * @param carbonHome  The CARBON_HOME directory, or null if not known.
+     * @return the resolved configuration.
+     */
+    public static MediaConfiguration resolve(Properties properties, Map<String, String> environment,
+                                             String carbonHome) {
+
+        return new MediaConfiguration(properties, environment, carbonHome);
+    }
+
+    public String getMediaStoreType() {
+
+        return mediaStoreType;
+    }
+
+    /**
+     * Returns the media mount location configured in media.properties file, which is relative to CARBON_HOME.
+     *
+     * @return media mount location, or null if not configured.
+     */
+    public String getMediaMountLocation() {
+
+        return mediaMountLocation;
+    }
+
+    /**
+     * Returns the base directory in which the media folder is located, or null if it can't be determined.
+     *
+     * @return media mount base directory.
+     */
+    public Path getMediaMountBaseDirectory() {
+
+        return mediaMountBaseDirectory;
+    }
+
+    public long getMaximumMediaSize() {
+
+        return maximumMediaSize;
+    }
+
+    /**
+     * Returns the allowed high level content types mapped to their allowed sub types. The sub types of a content type
+     * are null if none are configured.
+     *
+     * @return allowed content types.
+     */
+    public Map<String, List<String>> getContentTypes() {
+
+        return contentTypes;
+    }
+
+    /**
+     * Returns the allowed content types compiled for lookup.
+     *
+     * @return content type matcher.
+     */
+    public ContentTypeMatcher getContentTypeMatcher() {
+
+        return contentTypeMatcher;
+    }
+
+    public boolean isMetadataCacheEnabled() {
+
+        return metadataCacheEnabled;
+    }
+
+    public long getMetadataCacheMaximumSize() {
+
+        return metadataCacheMaximumSize;
+    }
+
+    public boolean isZeroCopyDownloadEnabled() {
+
+        return zeroCopyDownloadEnabled;
+    }
+
+    public boolean isBinaryMetadataEnabled() {
+
+        return binaryMetadataEnabled;
+    }
+
+    public int getParallelUploadThreadPoolSize() {
+
+        return parallelUploadThreadPoolSize;
+    }
+
+    public boolean isImageResizeEnabled() {
+
+        return imageResizeEnabled;
+    }
+
+    /**
+     * Returns the widths for which resized variants of images are generated in ascending order.
+     *
+     * @return image resize widths.
+     */
+    public List<Integer> getImageResizeWidths() {
+
+        return imageResizeWidths;
+    }
+
+    public long getDerivativeCacheMaximumSize() {
+
+        return derivativeCacheMaximumSize;
+    }
+
+    public boolean isUserIdCacheEnabled() {
+
+        return userIdCacheEnabled;
+    }
+
+    /**
+     * Returns the time in seconds for which the user id resolved for a username is cached.
+     *
+     * @return user id cache time to live.
+     */
+    public long getUserIdCacheTimeToLive() {
+
+        return userIdCacheTimeToLive;
+    }
+
+    /**
+     * Returns the time in seconds for which a username which doesn't belong to a user is cached.
+     *
+     * @return user id cache negative time to live.
+     */
+    public long getUserIdCacheNegativeTimeToLive() {
+
+        return userIdCacheNegativeTimeToLive;
+    }
+
+    public int getUserIdCacheMaximumEntries() {
+
+        return userIdCacheMaximumEntries;
+    }
+
+    public boolean isAuthorizationCacheEnabled() {
+
+        return authorizationCacheEnabled;
+    }
+
+    /**
+     * Returns the time in seconds for which the decision of a permission check is cached.
+     *
+     * @return authorization cache time to live.
+     */
+    public long getAuthorizationCacheTimeToLive() {
+
+        return authorizationCacheTimeToLive;
+    }
+
+    public int getAuthorizationCacheMaximumEntries() {
+
+        return authorizationCacheMaximumEntries;
+    }
+
+    public boolean isMembershipCacheEnabled() {
+
+        return membershipCacheEnabled;
+    }
+
+    /**
+     * Returns the time in seconds for which the groups and roles of a user are cached.
+     *
+     * @return membership cache time to live.
+     */
+    public long getMembershipCacheTimeToLive() {
+
+        return membershipCacheTimeToLive;
+    }
+
+    public int getMembershipCacheMaximumEntries() {
+
+        return membershipCacheMaximumEntries;
+    }
+
+    /**
+     * Returns the JNDI name of the data source in which the database based storage system stores media.
+     *
+     * @return data source name or null if media are stored in the identity database.
+     */
+    public String getDatabaseStorageDataSourceName() {
+
+        return databaseStorageDataSourceName;
+    }
+
+    /**
+     * Returns the name of the directory layout in which the file based storage system stores new media.
+     *
+     * @return directory layout name.
+     */
+    public String getDirectoryLayout() {
+
+        return directoryLayout;
+    }
+
+    /**
+     * Returns the name of the policy by which the files of uploaded media are flushed to the storage device.
+     *
+     * @return sync policy name.
+     */
+    public String getUploadSyncPolicy() {
+
+        return uploadSyncPolicy;
+    }
+
+    /**
+     * Returns the time in milliseconds for which the flushes of concurrent uploads are batched with the group commit
+     * sync policy.
+     *
+     * @return group commit window in milliseconds.
+     */
+    public long getUploadGroupCommitWindow() {
+
+        return uploadGroupCommitWindow;
+    }
+
+    /**
+     * Returns the interval in seconds at which the files of deleted media are reaped, or 0 if they are not reaped by
+     * this node.
+     *
+     * @return reaper interval in seconds.
+     */
+    public long getReaperInterval() {
+
+        return reaperInterval;
+    }
+
+    /**
+     * Returns the maximum number of files and directories of deleted media removed per second.
+     *
+     * @return maximum deletes per second.
+     */
+    public int getReaperMaximumDeletesPerSecond() {
+
+        return reaperMaximumDeletesPerSecond;
+    }
+
+    /**
+     * Returns whether the content of uploaded media files is stored once per tenant and shared through hard links.
+     *
+     * @return true if content addressed storage is enabled.
+     */
+    public boolean isContentAddressedStorageEnabled() {
+
+        return contentAddressedStorageEnabled;
+    }
+
+    /**
+     * Returns the size in bytes after which media are appended to a new volume by the volume based storage system.
+     *
+     * @return maximum volume size in bytes.
+     */
+    public long getMaximumVolumeSize() {
+
+        return maximumVolumeSize;
+    }
+
+    /**
+     * Returns whether each media appended to a volume is forced to the storage device before the upload completes.
+     *
+     * @return true if volume sync is enabled.
+     */
+    public boolean isVolumeSyncEnabled() {
+
+        return volumeSyncEnabled;
+    }
+
+    /**
+     * Returns the interval in seconds at which the volumes are compacted, or 0 if they are not compacted by this node.
+     *
+     * @return volume compaction interval in seconds.
+     */
+    public long getVolumeCompactionInterval() {
+
+        return volumeCompactionInterval;
+    }
+
+    /**
+     * Returns the minimum percentage of a volume taken by deleted media for the volume to be compacted.
+     *
+     * @return minimum garbage percentage.
+     */
+    public int getVolumeCompactionMinimumGarbagePercentage() {
+
+        return volumeCompactionMinimumGarbagePercentage;
+    }
+
+    private static Map<String, List<String>> resolveContentTypes(Properties properties,
+                                                                 Map<String, String> environment) {
+
+        Map<String, List<String>> resolvedContentTypes = new HashMap<>();
+        String envForAllowedContentTypes = environment.get(CONFIGURABLE_MEDIA_CONTENT_TYPES);
+        if (StringUtils.isNotBlank(envForAllowedContentTypes)) {
+            for (String contentType : envForAllowedContentTypes.split(",")) {
+                String envForAllowedContentSubTypes = environment.get(String.format(
+                        CONFIGURABLE_MEDIA_CONTENT_SUB_TYPES, contentType.toUpperCase(Locale.ENGLISH)));
+                resolvedContentTypes.put(contentType, StringUtils.isNotBlank(envForAllowedContentSubTypes) ?
+                        Collections.unmodifiableList(Arrays.asList(envForAllowedContentSubTypes.split(","))) : null);
+            }
+            return resolvedContentTypes;
+        }
+
+        String allowedContentTypes = properties.getProperty(ALLOWED_CONTENT_TYPES);
+        if (StringUtils.isNotBlank(allowedContentTypes)) {
+            for (String contentType : allowedContentTypes.split(",")) {
+                String allowedContentSubTypes = properties.getProperty(contentType + ALLOWED_CONTENT_SUB_TYPES);
+                resolvedContentTypes.put(contentType, allowedContentSubTypes != null ?
+                        Collections.unmodifiableList(Arrays.asList(allowedContentSubTypes.split(","))) : null);
+            }
+        }
+        return resolvedContentTypes;
+    }
+
+    private static boolean getBooleanProperty(Properties properties, String key, boolean defaultValue) {
+
+        String value = properties.getProperty(key);
+        return value != null ? Boolean.parseBoolean(value.trim()) : defaultValue;
+    }
+
+    private static long getLongProperty(Properties properties, String key, long defaultValue) {
+
+        String value = properties.getProperty(key);
+        return value != null ? Long.parseLong(value.trim()) : defaultValue;
+    }
+
+    private static List<Integer> parseWidths(String widthsProperty) {
+
+        List<Integer> widths = new ArrayList<>();
+        for (String width : widthsProperty.split(",")) {
+            if (StringUtils.isNotBlank(width)) {
+                widths.add(Integer.parseInt(width.trim()));
+            }
+        }
+        Collections.sort(widths);
+        return Collections.unmodifiableList(widths);
+    }
+}
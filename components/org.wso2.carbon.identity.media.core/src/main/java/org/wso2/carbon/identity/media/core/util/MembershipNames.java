@@ -0,0 +1,65 @@
+/*
+ * Copyright (c) 2020, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wso2.carbon.identity.media.core.util;
+
+import org.wso2.carbon.user.core.UserCoreConstants;
+
+import java.util.Locale;
+
+/**
+ * Normalizes the names of groups and roles, so that the groups and roles granted access to a media can be matched
+ * against the role list of a user. Normalized names are qualified with their domain and lower cased, since group and
+ * role names are case insensitive in the user stores.
+ */
+public final class MembershipNames {
+
+    private MembershipNames() {
+
+    }
+
+    /**
+     * Normalize the name of a group, or of an entry of the role list of a user. A name without a domain refers to a
+     * group of the primary user store.
+     *
+     * @param groupName The group name.
+     * @return the normalized name.
+     */
+    public static String ofGroup(String groupName) {
+
+        return normalize(groupName, UserCoreConstants.PRIMARY_DEFAULT_DOMAIN_NAME);
+    }
+
+    /**
+     * Normalize the name of a role. A name without a domain refers to an internal role.
+     *
+     * @param roleName The role name.
+     * @return the normalized name.
+     */
+    public static String ofRole(String roleName) {
+
+        return normalize(roleName, UserCoreConstants.INTERNAL_DOMAIN);
+    }
+
+    private static String normalize(String name, String defaultDomain) {
+
+        String trimmedName = name.trim();
+        if (!trimmedName.contains(UserCoreConstants.DOMAIN_SEPARATOR)) {
+            trimmedName = defaultDomain + UserCoreConstants.DOMAIN_SEPARATOR + trimmedName;
+        }
+        return trimmedName.toLowerCase(Locale.ENGLISH);
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2020, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wso2.carbon.identity.media.core.util;
+
+import org.wso2.carbon.identity.media.core.exception.MediaSizeLimitExceededException;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Input stream which counts the bytes read from the underlying stream and aborts reading with a
+ * {@link MediaSizeLimitExceededException} as soon as more than the allowed number of bytes have been read. This
+ * allows the size of an uploaded media to be enforced while it is being written, without buffering the media.
+ */
+public class SizeLimitedInputStream extends FilterInputStream {
+
+    private final long maximumSize;
+    private long count;
+    private long mark = -1;
+
+    /**
+     * Creates a size limited input stream.
+     *
+     * @param inputStream The underlying input stream.
+     * @param maximumSize The maximum number of bytes allowed to be read.
+     */
+    public SizeLimitedInputStream(InputStream inputStream, long maximumSize) {
+
+        super(inputStream);
+        this.maximumSize = maximumSize;
+    }
+
+    /**
+     * Returns the number of bytes read so far.
+     *
+     * @return number of bytes read.
+     */
+    public long getCount() {
+
+        return count;
+    }
+
+    @Override
+    public int read() throws IOException {
+
+        int result = super.read();
+        if (result != -1) {
+            increaseCount(1);
+        }
+        return result;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+
+        int result = super.read(b, off, len);
+        if (result > 0) {
+            increaseCount(result);
+        }
+        return result;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+
+        long result = super.skip(n);
+        increaseCount(result);
+        return result;
+    }
+
+    @Override
+    public synchronized void mark(int readLimit) {
+
+        super.mark(readLimit);
+        mark = count;
+    }
+
+    @Override
+    public synchronized void reset() throws IOException {
+
+        if (!super.markSupported()) {
+            throw new IOException("Mark not supported.");
+        }
+        if (mark == -1) {
+            throw new IOException("Mark not set.");
+        }
+        super.reset();
+        count = mark;
+    }
+
+    private void increaseCount(long bytesRead) throws MediaSizeLimitExceededException {
+
+        count += bytesRead;
+        if (count > maximumSize) {
+            throw new MediaSizeLimitExceededException(String.format("The uploaded media exceeds the maximum allowed " +
+                    "file size: %skb", maximumSize / 1000.0), maximumSize);
+        }
+    }
+}
@@ -26,6 +26,7 @@ public class StorageSystemConstants {
     public static final String PRE_CREATED_MEDIA_FOLDER = "media";
     public static final String METADATA_FILE_SUFFIX = "_meta";
     public static final String METADATA_FILE_EXTENSION = ".json";
+    public static final String BINARY_METADATA_FILE_EXTENSION = ".bin";
     public static final String MEDIA_NAME = "name";
     public static final String MEDIA_CONTENT_TYPE = "contentType";
     public static final String MEDIA_TAG = "tag";
@@ -33,6 +34,19 @@ public class StorageSystemConstants {
     public static final String MEDIA_SECURITY = "security";
     public static final String MEDIA_SECURITY_ALLOWED_ALL = "allowedAll";
     public static final String MEDIA_SECURITY_ALLOWED_USER_IDS = "allowedUserIds";
+    public static final String MEDIA_SECURITY_ALLOWED_GROUPS = "allowedGroups";
+    public static final String MEDIA_SECURITY_ALLOWED_ROLES = "allowedRoles";
+    public static final String MEDIA_CONTENT_HASH = "contentHash";
+    public static final String MEDIA_SIZE = "size";
+    public static final String MEDIA_LAST_MODIFIED = "lastModified";
+    public static final String MEDIA_FILES = "files";
+    public static final String MEDIA_IDENTIFIER = "identifier";
+    public static final String MEDIA_FILE_IDENTIFIER_SEPARATOR = "_";
+    public static final String MEDIA_FILE_IDENTIFIER_REGEX = "^[a-zA-Z0-9_-]{1,64}$";
+    public static final String CONTENT_HASH_ALGORITHM = "SHA-256";
+    public static final String DERIVATIVE_CACHE_FOLDER = "media-derivatives";
+    public static final String VARIANT_WIDTH_SEPARATOR = "-w";
+    public static final String VOLUME_FOLDER = "media-volumes";
     public static final String PUBLIC_DOWNLOAD_ACCESS = "public";
     public static final String PROTECTED_DOWNLOAD_ACCESS = "content";
     static final String MEDIA_PROPERTIES_FILE = "META-INF/media.properties";
@@ -41,11 +55,71 @@ public class StorageSystemConstants {
     static final String ALLOWED_CONTENT_TYPES = "AllowedContentTypes";
     static final String ALLOWED_CONTENT_SUB_TYPES = ".AllowedContentSubTypes";
     static final String MEDIA_MOUNT_LOCATION = "MediaMountLocation";
+    // Names of the in-memory caches, as configured in media.properties file, by which their statistics are reported.
+    public static final String METADATA_CACHE = "MetadataCache";
+    public static final String USER_ID_CACHE = "UserIdCache";
+    public static final String AUTHORIZATION_CACHE = "AuthorizationCache";
+    public static final String MEMBERSHIP_CACHE = "MembershipCache";
+
+    static final String METADATA_CACHE_ENABLED = "MetadataCache.Enabled";
+    static final String METADATA_CACHE_MAXIMUM_SIZE_IN_BYTES = "MetadataCache.MaximumSizeInBytes";
+    static final long DEFAULT_METADATA_CACHE_MAXIMUM_SIZE_IN_BYTES = 10485760;
+    static final String FILE_BASED_STORAGE_ZERO_COPY_DOWNLOAD_ENABLED = "FileBasedStorage.ZeroCopyDownload.Enabled";
+    static final String FILE_BASED_STORAGE_BINARY_METADATA_ENABLED = "FileBasedStorage.BinaryMetadata.Enabled";
+    static final String FILE_BASED_STORAGE_PARALLEL_UPLOAD_THREAD_POOL_SIZE =
+            "FileBasedStorage.ParallelUpload.ThreadPoolSize";
+    static final int DEFAULT_PARALLEL_UPLOAD_THREAD_POOL_SIZE = 4;
+    static final String FILE_BASED_STORAGE_IMAGE_RESIZE_ENABLED = "FileBasedStorage.ImageResize.Enabled";
+    static final String FILE_BASED_STORAGE_IMAGE_RESIZE_WIDTHS = "FileBasedStorage.ImageResize.Widths";
+    static final String DEFAULT_IMAGE_RESIZE_WIDTHS = "32,64,128,256,512,1024";
+    static final String FILE_BASED_STORAGE_DERIVATIVE_CACHE_MAXIMUM_SIZE_IN_BYTES =
+            "FileBasedStorage.DerivativeCache.MaximumSizeInBytes";
+    static final long DEFAULT_DERIVATIVE_CACHE_MAXIMUM_SIZE_IN_BYTES = 104857600;
+    static final String FILE_BASED_STORAGE_DIRECTORY_LAYOUT = "FileBasedStorage.DirectoryLayout";
+    static final String DEFAULT_DIRECTORY_LAYOUT = "nested";
+    static final String FILE_BASED_STORAGE_UPLOAD_SYNC_POLICY = "FileBasedStorage.Upload.SyncPolicy";
+    static final String DEFAULT_UPLOAD_SYNC_POLICY = "none";
+    static final String FILE_BASED_STORAGE_UPLOAD_GROUP_COMMIT_WINDOW_IN_MILLIS =
+            "FileBasedStorage.Upload.GroupCommitWindowInMillis";
+    static final long DEFAULT_UPLOAD_GROUP_COMMIT_WINDOW_IN_MILLIS = 2;
+    static final String FILE_BASED_STORAGE_REAPER_INTERVAL_IN_SECONDS = "FileBasedStorage.Reaper.IntervalInSeconds";
+    static final long DEFAULT_REAPER_INTERVAL_IN_SECONDS = 60;
+    static final String FILE_BASED_STORAGE_REAPER_MAXIMUM_DELETES_PER_SECOND =
+            "FileBasedStorage.Reaper.MaximumDeletesPerSecond";
+    static final int DEFAULT_REAPER_MAXIMUM_DELETES_PER_SECOND = 100;
+    static final String FILE_BASED_STORAGE_CONTENT_ADDRESSED_ENABLED = "FileBasedStorage.ContentAddressed.Enabled";
+    static final String VOLUME_STORAGE_MAXIMUM_VOLUME_SIZE_IN_BYTES = "VolumeStorage.MaximumVolumeSizeInBytes";
+    static final long DEFAULT_MAXIMUM_VOLUME_SIZE_IN_BYTES = 1073741824;
+    static final String VOLUME_STORAGE_SYNC_ENABLED = "VolumeStorage.Sync.Enabled";
+    static final String VOLUME_STORAGE_COMPACTION_INTERVAL_IN_SECONDS = "VolumeStorage.Compaction.IntervalInSeconds";
+    static final long DEFAULT_VOLUME_COMPACTION_INTERVAL_IN_SECONDS = 300;
+    static final String VOLUME_STORAGE_COMPACTION_MINIMUM_GARBAGE_PERCENTAGE =
+            "VolumeStorage.Compaction.MinimumGarbagePercentage";
+    static final int DEFAULT_VOLUME_COMPACTION_MINIMUM_GARBAGE_PERCENTAGE = 50;
+    static final String USER_ID_CACHE_ENABLED = "UserIdCache.Enabled";
+    static final String USER_ID_CACHE_TIME_TO_LIVE_IN_SECONDS = "UserIdCache.TimeToLiveInSeconds";
+    static final long DEFAULT_USER_ID_CACHE_TIME_TO_LIVE_IN_SECONDS = 300;
+    static final String USER_ID_CACHE_NEGATIVE_TIME_TO_LIVE_IN_SECONDS = "UserIdCache.NegativeTimeToLiveInSeconds";
+    static final long DEFAULT_USER_ID_CACHE_NEGATIVE_TIME_TO_LIVE_IN_SECONDS = 30;
+    static final String USER_ID_CACHE_MAXIMUM_ENTRIES = "UserIdCache.MaximumEntries";
+    static final int DEFAULT_USER_ID_CACHE_MAXIMUM_ENTRIES = 10000;
+    static final String AUTHORIZATION_CACHE_ENABLED = "AuthorizationCache.Enabled";
+    static final String AUTHORIZATION_CACHE_TIME_TO_LIVE_IN_SECONDS = "AuthorizationCache.TimeToLiveInSeconds";
+    static final long DEFAULT_AUTHORIZATION_CACHE_TIME_TO_LIVE_IN_SECONDS = 30;
+    static final String AUTHORIZATION_CACHE_MAXIMUM_ENTRIES = "AuthorizationCache.MaximumEntries";
+    static final int DEFAULT_AUTHORIZATION_CACHE_MAXIMUM_ENTRIES = 10000;
+    static final String MEMBERSHIP_CACHE_ENABLED = "MembershipCache.Enabled";
+    static final String MEMBERSHIP_CACHE_TIME_TO_LIVE_IN_SECONDS = "MembershipCache.TimeToLiveInSeconds";
+    static final long DEFAULT_MEMBERSHIP_CACHE_TIME_TO_LIVE_IN_SECONDS = 60;
+    static final String MEMBERSHIP_CACHE_MAXIMUM_ENTRIES = "MembershipCache.MaximumEntries";
+    static final int DEFAULT_MEMBERSHIP_CACHE_MAXIMUM_ENTRIES = 10000;
+    static final String DATABASE_STORAGE_DATA_SOURCE_NAME = "DatabaseStorage.DataSourceName";
 
     // Environment variables to override default values defined in media.properties file.
     public static final String CONFIGURABLE_MEDIA_MOUNT_LOCATION = "MEDIA_MOUNT_LOCATION";
     public static final String CONFIGURABLE_MAXIMUM_MEDIA_SIZE_IN_BYTES = "MEDIA_MAX_BYTE_SIZE";
     public static final String CONFIGURABLE_MEDIA_STORE_TYPE = "MEDIA_STORE_TYPE";
     public static final String CONFIGURABLE_MEDIA_CONTENT_TYPES = "MEDIA_CONTENT_TYPES";
+    public static final String CONFIGURABLE_MEDIA_CONTENT_SUB_TYPES = "MEDIA_%s_CONTENT_SUB_TYPES";
 
 }
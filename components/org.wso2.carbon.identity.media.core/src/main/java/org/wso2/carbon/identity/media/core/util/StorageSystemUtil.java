@@ -15,60 +15,392 @@
  */
 package org.wso2.carbon.identity.media.core.util;
 
+import org.apache.commons.collections.CollectionUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.identity.media.core.exception.StorageSystemClientException;
 import org.wso2.carbon.identity.media.core.exception.StorageSystemException;
+import org.wso2.carbon.identity.media.core.internal.MediaServiceDataHolder;
+import org.wso2.carbon.identity.media.core.model.MediaMetadata;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.Arrays;
+import java.nio.file.Path;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Properties;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.regex.Pattern;
 
-import static org.wso2.carbon.identity.media.core.util.StorageSystemConstants.ALLOWED_CONTENT_SUB_TYPES;
-import static org.wso2.carbon.identity.media.core.util.StorageSystemConstants.ALLOWED_CONTENT_TYPES;
-import static org.wso2.carbon.identity.media.core.util.StorageSystemConstants.ALLOWED_MAXIMUM_SIZE_IN_BYTES;
-import static org.wso2.carbon.identity.media.core.util.StorageSystemConstants.MEDIA_MOUNT_LOCATION;
+import static org.wso2.carbon.identity.media.core.util.StorageSystemConstants.MEDIA_FILE_IDENTIFIER_REGEX;
 import static org.wso2.carbon.identity.media.core.util.StorageSystemConstants.MEDIA_PROPERTIES_FILE;
-import static org.wso2.carbon.identity.media.core.util.StorageSystemConstants.MEDIA_STORE_TYPE;
+import static org.wso2.carbon.identity.media.core.util.StorageSystemConstants.SYSTEM_PROPERTY_CARBON_HOME;
+import static org.wso2.carbon.identity.media.core.util.StorageSystemConstants.VARIANT_WIDTH_SEPARATOR;
 
 /**
  * Util class to provide commonly used methods within the component.
  */
 public class StorageSystemUtil {
 
-    private static String mediaStorageType;
-    private static String mediaMountLocation;
-    private static int mediaMaximumSize;
-    private static HashMap<String, List<String>> contentTypes = new HashMap<>();
+    private static final Log LOGGER = LogFactory.getLog(StorageSystemUtil.class);
+    // Until media.properties file is loaded, only the environment overrides are in effect.
+    private static final AtomicReference<MediaConfiguration> CONFIGURATION = new AtomicReference<>(
+            MediaConfiguration.resolve(new Properties(), System.getenv(),
+                    System.getProperty(SYSTEM_PROPERTY_CARBON_HOME)));
+    private static final Pattern MEDIA_FILE_IDENTIFIER_PATTERN = Pattern.compile(MEDIA_FILE_IDENTIFIER_REGEX);
 
     public static String calculateUUID() {
 
         return UUID.randomUUID().toString();
     }
 
+    /**
+     * Validate the identifiers of the uploaded files. Identifiers are mandatory when multiple representations of a
+     * media are uploaded, since they are used to address each of the files.
+     *
+     * @param fileCount     The number of uploaded files.
+     * @param mediaMetadata The metadata of the uploaded media.
+     * @return the identifiers of the files, or null if a single file without an identifier is uploaded.
+     * @throws StorageSystemClientException If the identifiers are missing, invalid or not unique.
+     */
+    public static List<String> getFileIdentifiers(int fileCount, MediaMetadata mediaMetadata)
+            throws StorageSystemClientException {
+
+        return getFileIdentifiers(fileCount, mediaMetadata.getFileIdentifiers());
+    }
+
+    /**
+     * Validate the given identifiers of the uploaded files.
+     *
+     * @param fileCount       The number of uploaded files.
+     * @param fileIdentifiers The identifiers of the files in the order in which the files are uploaded.
+     * @return the identifiers of the files, or null if a single file without an identifier is uploaded.
+     * @throws StorageSystemClientException If the identifiers are missing, invalid or not unique.
+     */
+    public static List<String> getFileIdentifiers(int fileCount, List<String> fileIdentifiers)
+            throws StorageSystemClientException {
+
+        if (fileCount == 1 && CollectionUtils.isEmpty(fileIdentifiers)) {
+            return null;
+        }
+        if (fileIdentifiers == null || fileIdentifiers.size() != fileCount) {
+            throw new StorageSystemClientException(String.format("Expected %d file identifiers for the uploaded " +
+                    "files.", fileCount));
+        }
+        Set<String> uniqueFileIdentifiers = new HashSet<>();
+        for (String fileIdentifier : fileIdentifiers) {
+            if (!isValidFileIdentifier(fileIdentifier) ||
+                    !uniqueFileIdentifiers.add(fileIdentifier)) {
+                throw new StorageSystemClientException(String.format("Invalid or duplicate file identifier: %s",
+                        fileIdentifier));
+            }
+        }
+        return fileIdentifiers;
+    }
+
+    /**
+     * Check whether the given file identifier is well formed.
+     *
+     * @param fileIdentifier The file identifier.
+     * @return true if the identifier matches the allowed file identifier format.
+     */
+    public static boolean isValidFileIdentifier(String fileIdentifier) {
+
+        return fileIdentifier != null && MEDIA_FILE_IDENTIFIER_PATTERN.matcher(fileIdentifier).matches();
+    }
+
+    /**
+     * Returns the current snapshot of the media configuration.
+     *
+     * @return media configuration.
+     */
+    public static MediaConfiguration getConfiguration() {
+
+        return CONFIGURATION.get();
+    }
+
+    /**
+     * Returns the configured media store type. The value configured through the MEDIA_STORE_TYPE environment
+     * variable takes precedence over the value in media.properties file.
+     *
+     * @return media store type.
+     */
     public static String getMediaStoreType() {
 
-        return mediaStorageType;
+        return CONFIGURATION.get().getMediaStoreType();
     }
 
+    /**
+     * Returns the media mount location configured in media.properties file, which is relative to CARBON_HOME.
+     *
+     * @return media mount location.
+     * @deprecated Use {@link #getMediaMountBaseDirectory()}, which also considers the MEDIA_MOUNT_LOCATION
+     * environment variable.
+     */
+    @Deprecated
     public static String getMediaMountLocation() {
 
-        return mediaMountLocation;
+        return CONFIGURATION.get().getMediaMountLocation();
     }
 
+    /**
+     * Returns the maximum allowed size of an uploaded media in bytes, limited to {@link Integer#MAX_VALUE}.
+     *
+     * @return maximum allowed media size in bytes.
+     * @deprecated Use {@link #getAllowedMaximumMediaSize()}, which isn't limited to the range of an int.
+     */
+    @Deprecated
     public static int getMediaMaximumSize() {
 
-        return mediaMaximumSize;
+        return (int) Math.min(Integer.MAX_VALUE, CONFIGURATION.get().getMaximumMediaSize());
     }
 
+    /**
+     * Returns the maximum allowed size of an uploaded media in bytes. The value configured through the
+     * MEDIA_MAX_BYTE_SIZE environment variable takes precedence over the value in media.properties file.
+     *
+     * @return maximum allowed media size in bytes.
+     */
+    public static long getAllowedMaximumMediaSize() {
+
+        return CONFIGURATION.get().getMaximumMediaSize();
+    }
+
+    /**
+     * Returns the allowed high level content types mapped to their allowed sub types. The content types configured
+     * through the MEDIA_CONTENT_TYPES environment variable take precedence over the ones in media.properties file.
+     *
+     * @return a copy of the allowed content types.
+     * @deprecated Use {@link MediaConfiguration#getContentTypes()} of {@link #getConfiguration()}, or
+     * {@link #getContentTypeMatcher()} to check whether a content type is allowed.
+     */
+    @Deprecated
     public static HashMap<String, List<String>> getContentTypes() {
 
-        return contentTypes;
+        return new HashMap<>(CONFIGURATION.get().getContentTypes());
+    }
+
+    /**
+     * Returns the allowed content types compiled for lookup.
+     *
+     * @return content type matcher.
+     */
+    public static ContentTypeMatcher getContentTypeMatcher() {
+
+        return CONFIGURATION.get().getContentTypeMatcher();
+    }
+
+    public static boolean isMetadataCacheEnabled() {
+
+        return CONFIGURATION.get().isMetadataCacheEnabled();
+    }
+
+    public static long getMetadataCacheMaximumSize() {
+
+        return CONFIGURATION.get().getMetadataCacheMaximumSize();
+    }
+
+    /**
+     * Returns whether media stored in the file based storage is served through file channels, which lets the
+     * operating system transfer the media without copying it through heap buffers.
+     *
+     * @return true if zero-copy download is enabled.
+     */
+    public static boolean isZeroCopyDownloadEnabled() {
+
+        return CONFIGURATION.get().isZeroCopyDownloadEnabled();
+    }
+
+    /**
+     * Returns whether the metadata of media uploaded to the file based storage is written in the binary metadata
+     * format instead of JSON. Metadata in either format is read regardless of this setting.
+     *
+     * @return true if binary metadata is enabled.
+     */
+    public static boolean isBinaryMetadataEnabled() {
+
+        return CONFIGURATION.get().isBinaryMetadataEnabled();
+    }
+
+    /**
+     * Returns the number of threads used to write the files of a multiple file upload concurrently. The files are
+     * written sequentially if the value is zero.
+     *
+     * @return parallel upload thread pool size.
+     */
+    public static int getParallelUploadThreadPoolSize() {
+
+        return CONFIGURATION.get().getParallelUploadThreadPoolSize();
+    }
+
+    public static boolean isImageResizeEnabled() {
+
+        return CONFIGURATION.get().isImageResizeEnabled();
+    }
+
+    /**
+     * Returns the width of the resized variant served for a requested width. The requested width is rounded up to
+     * the nearest configured width, so that the number of variants generated for an image stays bounded.
+     *
+     * @param requestedWidth The width requested by the client in pixels.
+     * @return the width of the variant, or -1 if the requested width is larger than all the configured widths.
+     */
+    public static int getImageResizeWidth(int requestedWidth) {
+
+        for (int width : CONFIGURATION.get().getImageResizeWidths()) {
+            if (width >= requestedWidth) {
+                return width;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the ETag of the variant of a media served for a requested width. The ETag only depends on the ETag of
+     * the media and the configured widths, so that the preconditions of a request can be evaluated before the
+     * variant is generated.
+     *
+     * @param etag           The ETag of the media.
+     * @param requestedWidth The width requested by the client in pixels.
+     * @return the ETag of the variant, or the ETag of the media if the media is served as is for the requested width.
+     */
+    public static String getVariantETag(String etag, int requestedWidth) {
+
+        int width = getImageResizeWidth(requestedWidth);
+        if (etag == null || !isImageResizeEnabled() || width <= 0) {
+            return etag;
+        }
+        return etag + VARIANT_WIDTH_SEPARATOR + width;
+    }
+
+    public static long getDerivativeCacheMaximumSize() {
+
+        return CONFIGURATION.get().getDerivativeCacheMaximumSize();
+    }
+
+    public static boolean isUserIdCacheEnabled() {
+
+        return CONFIGURATION.get().isUserIdCacheEnabled();
+    }
+
+    public static long getUserIdCacheTimeToLive() {
+
+        return CONFIGURATION.get().getUserIdCacheTimeToLive();
+    }
+
+    public static long getUserIdCacheNegativeTimeToLive() {
+
+        return CONFIGURATION.get().getUserIdCacheNegativeTimeToLive();
+    }
+
+    public static int getUserIdCacheMaximumEntries() {
+
+        return CONFIGURATION.get().getUserIdCacheMaximumEntries();
+    }
+
+    public static boolean isAuthorizationCacheEnabled() {
+
+        return CONFIGURATION.get().isAuthorizationCacheEnabled();
+    }
+
+    public static long getAuthorizationCacheTimeToLive() {
+
+        return CONFIGURATION.get().getAuthorizationCacheTimeToLive();
+    }
+
+    public static int getAuthorizationCacheMaximumEntries() {
+
+        return CONFIGURATION.get().getAuthorizationCacheMaximumEntries();
+    }
+
+    public static boolean isMembershipCacheEnabled() {
+
+        return CONFIGURATION.get().isMembershipCacheEnabled();
+    }
+
+    public static long getMembershipCacheTimeToLive() {
+
+        return CONFIGURATION.get().getMembershipCacheTimeToLive();
+    }
+
+    public static int getMembershipCacheMaximumEntries() {
+
+        return CONFIGURATION.get().getMembershipCacheMaximumEntries();
+    }
+
+    public static String getDatabaseStorageDataSourceName() {
+
+        return CONFIGURATION.get().getDatabaseStorageDataSourceName();
+    }
+
+    public static String getDirectoryLayout() {
+
+        return CONFIGURATION.get().getDirectoryLayout();
+    }
+
+    public static String getUploadSyncPolicy() {
+
+        return CONFIGURATION.get().getUploadSyncPolicy();
+    }
+
+    public static long getUploadGroupCommitWindow() {
+
+        return CONFIGURATION.get().getUploadGroupCommitWindow();
+    }
+
+    public static long getReaperInterval() {
+
+        return CONFIGURATION.get().getReaperInterval();
+    }
+
+    public static int getReaperMaximumDeletesPerSecond() {
+
+        return CONFIGURATION.get().getReaperMaximumDeletesPerSecond();
+    }
+
+    public static boolean isContentAddressedStorageEnabled() {
+
+        return CONFIGURATION.get().isContentAddressedStorageEnabled();
+    }
+
+    public static long getMaximumVolumeSize() {
+
+        return CONFIGURATION.get().getMaximumVolumeSize();
+    }
+
+    public static boolean isVolumeSyncEnabled() {
+
+        return CONFIGURATION.get().isVolumeSyncEnabled();
+    }
+
+    public static long getVolumeCompactionInterval() {
+
+        return CONFIGURATION.get().getVolumeCompactionInterval();
+    }
+
+    public static int getVolumeCompactionMinimumGarbagePercentage() {
+
+        return CONFIGURATION.get().getVolumeCompactionMinimumGarbagePercentage();
+    }
+
+    /**
+     * Returns the base directory in which the media folder is located. The location configured through the
+     * MEDIA_MOUNT_LOCATION environment variable takes precedence over the location relative to CARBON_HOME
+     * configured in media.properties file.
+     *
+     * @return media mount base directory, or null if it can't be determined.
+     */
+    public static Path getMediaMountBaseDirectory() {
+
+        return CONFIGURATION.get().getMediaMountBaseDirectory();
     }
 
     /**
-     * Read media properties defined in media.properties file.
+     * Read media properties defined in media.properties file and publish the configuration resolved from them and
+     * the environment variables overriding them.
      *
      * @throws StorageSystemException Exception related to loading configured media properties from file.
      */
@@ -77,31 +409,36 @@ public class StorageSystemUtil {
         Properties properties = new Properties();
         ClassLoader classLoader = StorageSystemUtil.class.getClassLoader();
         if (classLoader != null) {
-            InputStream inputStream = classLoader.getResourceAsStream(MEDIA_PROPERTIES_FILE);
-            if (inputStream == null) {
-                throw new StorageSystemException("Error while loading media.properties file.");
-            }
-            try {
+            try (InputStream inputStream = classLoader.getResourceAsStream(MEDIA_PROPERTIES_FILE)) {
+                if (inputStream == null) {
+                    throw new StorageSystemException("Error while loading media.properties file.");
+                }
                 properties.load(inputStream);
             } catch (IOException e) {
                 throw new StorageSystemException("Error while loading media.properties file.", e);
             }
+            CONFIGURATION.set(MediaConfiguration.resolve(properties, System.getenv(),
+                    System.getProperty(SYSTEM_PROPERTY_CARBON_HOME)));
+        }
+    }
 
-            // Load media store type.
-            mediaStorageType = properties.getProperty(MEDIA_STORE_TYPE);
-
-            // Load media storage location (relative to CARBON_HOME).
-            mediaMountLocation = properties.getProperty(MEDIA_MOUNT_LOCATION);
-
-            // Load allowed maximum size in bytes for the media that can be uploaded.
-            mediaMaximumSize = Integer.parseInt(properties.getProperty(ALLOWED_MAXIMUM_SIZE_IN_BYTES));
+    /**
+     * Reload the media configuration from media.properties file and the environment variables overriding it, e.g.
+     * after the environment overrides have changed. The caches, the upload executor and the group commit syncer
+     * sized from the configuration are rebuilt from the reloaded configuration, hence the caches start empty.
+     * Requests served after the reload use the reloaded configuration.
+     * <p>
+     * The media store type, the media mount location and the schedules of the media reaper and the volume compactor
+     * are read when the media service is activated, and a change to them takes effect once it is reactivated.
+     *
+     * @throws StorageSystemException Exception related to loading configured media properties from file.
+     */
+    public static void reloadMediaProperties() throws StorageSystemException {
 
-            // Load allowed content types.
-            String[] allowedContentTypes = properties.getProperty(ALLOWED_CONTENT_TYPES).split(",");
-            for (String contentType : allowedContentTypes) {
-                contentTypes.put(contentType, Arrays.asList(properties.getProperty(contentType +
-                        ALLOWED_CONTENT_SUB_TYPES).split(",")));
-            }
+        loadMediaProperties();
+        MediaServiceDataHolder.getInstance().applyMediaConfiguration();
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("Media configuration reloaded.");
         }
     }
 }
@@ -0,0 +1,380 @@
+/*
+ * Copyright (c) 2020, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wso2.carbon.identity.media.core.volume;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An append-only volume file holding the records of many media. A volume starts with a fixed header, followed by the
+ * records appended to it, each holding the metadata and the files of a media. The records are only ever written once,
+ * except for the flags of a record which mark it deleted.
+ * <p>
+ * The header holds the flags of the volume, which mark the volume sealed once nothing is appended to it any more,
+ * i.e. once a new volume is started or the volume is the completed output of a compaction. The records of a volume
+ * which is not sealed may end with a record torn by a crash, and are verified when the volume is opened.
+ * <p>
+ * The volume is read with positional reads on a single file channel shared by all the readers. A volume replaced by
+ * compaction is retired: its file is deleted and its channel is closed once the last reader releases it.
+ */
+final class MediaVolume {
+
+    static final int VOLUME_MAGIC = 0x4D564F4C;
+    static final int VOLUME_VERSION = 1;
+    static final int VOLUME_HEADER_SIZE = 12;
+    static final int VOLUME_FLAG_SEALED = 1;
+    static final String VOLUME_FILE_EXTENSION = ".vol";
+
+    private static final Log LOGGER = LogFactory.getLog(MediaVolume.class);
+
+    private final long volumeId;
+    private final AtomicInteger references = new AtomicInteger(1);
+    private volatile Path file;
+    private volatile FileChannel channel;
+    private volatile boolean closed;
+    private volatile boolean sealed;
+    // The offset at which the next record is appended. Appends are serialized by the volume store.
+    private volatile long size;
+    // The bytes of the records which are deleted or superseded, which are reclaimed by compaction.
+    private volatile long garbageSize;
+
+    private MediaVolume(long volumeId, Path file, FileChannel channel, long size, boolean sealed) {
+
+        this.volumeId = volumeId;
+        this.file = file;
+        this.channel = channel;
+        this.size = size;
+        this.sealed = sealed;
+    }
+
+    /**
+     * Create a new empty volume.
+     *
+     * @param volumeId The id of the volume, which orders the volume among the other volumes.
+     * @param file     The volume file, which must not exist.
+     * @return the volume.
+     * @throws IOException If the volume file can't be created.
+     */
+    static MediaVolume create(long volumeId, Path file) throws IOException {
+
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        try {
+            ByteBuffer header = ByteBuffer.allocate(VOLUME_HEADER_SIZE);
+            header.putInt(VOLUME_MAGIC).putInt(VOLUME_VERSION).putInt(0).flip();
+            writeFully(channel, header, 0);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        return new MediaVolume(volumeId, file, channel, VOLUME_HEADER_SIZE, false);
+    }
+
+    /**
+     * Open an existing volume.
+     *
+     * @param volumeId The id of the volume.
+     * @param file     The volume file.
+     * @return the volume.
+     * @throws IOException If the volume file can't be opened or is not a volume.
+     */
+    static MediaVolume open(long volumeId, Path file) throws IOException {
+
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            ByteBuffer header = ByteBuffer.allocate(VOLUME_HEADER_SIZE);
+            readFully(channel, header, 0);
+            header.flip();
+            if (header.getInt() != VOLUME_MAGIC) {
+                throw new IOException("The file is not a media volume: " + file);
+            }
+            int version = header.getInt();
+            if (version != VOLUME_VERSION) {
+                throw new IOException("Unsupported media volume version: " + version + " of volume: " + file);
+            }
+            boolean sealed = (header.getInt() & VOLUME_FLAG_SEALED) != 0;
+            return new MediaVolume(volumeId, file, channel, channel.size(), sealed);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the volume file name of the volume with the given id. The names sort in the order of the ids.
+     *
+     * @param volumeId The id of the volume.
+     * @return the volume file name.
+     */
+    static String getFileName(long volumeId) {
+
+        return String.format("%016d%s", volumeId, VOLUME_FILE_EXTENSION);
+    }
+
+    long getVolumeId() {
+
+        return volumeId;
+    }
+
+    Path getFile() {
+
+        return file;
+    }
+
+    /**
+     * Set the location of the volume file once it is renamed, e.g. when the output of a compaction is put in place.
+     */
+    void setFile(Path file) {
+
+        this.file = file;
+    }
+
+    boolean isSealed() {
+
+        return sealed;
+    }
+
+    /**
+     * Seal the volume once nothing is appended to it any more. The records of the volume are forced to the storage
+     * device before the volume is marked sealed, so that a sealed volume never ends with a torn record.
+     *
+     * @throws IOException If the volume can't be sealed.
+     */
+    void seal() throws IOException {
+
+        force();
+        ByteBuffer flags = ByteBuffer.allocate(4);
+        flags.putInt(0, VOLUME_FLAG_SEALED);
+        write(flags, VOLUME_HEADER_SIZE - 4);
+        force();
+        sealed = true;
+    }
+
+    long getSize() {
+
+        return size;
+    }
+
+    long getGarbageSize() {
+
+        return garbageSize;
+    }
+
+    void addGarbage(long length) {
+
+        garbageSize += length;
+    }
+
+    /**
+     * Append a record to the end of the volume.
+     *
+     * @param record The buffers forming the record.
+     * @return the offset of the record.
+     * @throws IOException If the record can't be written.
+     */
+    long append(ByteBuffer... record) throws IOException {
+
+        long offset = size;
+        long position = offset;
+        try {
+            for (ByteBuffer buffer : record) {
+                position += writeFully(getChannel(), buffer, position);
+            }
+        } catch (IOException e) {
+            // A partially written record is overwritten by the next append, and is discarded when the volume is
+            // reopened otherwise.
+            getChannel().truncate(offset);
+            throw e;
+        }
+        size = position;
+        return offset;
+    }
+
+    /**
+     * Write to the volume at the given position, e.g. the flags of a record.
+     */
+    void write(ByteBuffer buffer, long position) throws IOException {
+
+        writeFully(getChannel(), buffer, position);
+    }
+
+    /**
+     * Read from the volume at the given position until the buffer is full.
+     *
+     * @param buffer   The buffer to read into.
+     * @param position The position to read from.
+     * @throws IOException If the volume can't be read or ends before the buffer is full.
+     */
+    void read(ByteBuffer buffer, long position) throws IOException {
+
+        int bufferPosition = buffer.position();
+        try {
+            readFully(channel, buffer, position);
+        } catch (ClosedChannelException e) {
+            // An interrupted reader closes the channel shared by all the readers, hence it is reopened for them.
+            if (Thread.currentThread().isInterrupted() || closed) {
+                throw e;
+            }
+            buffer.position(bufferPosition);
+            readFully(reopen(), buffer, position);
+        }
+    }
+
+    /**
+     * Copy a range of the volume to the end of another volume.
+     *
+     * @param position The position of the range in this volume.
+     * @param length   The length of the range.
+     * @param target   The volume to copy to.
+     * @return the offset of the copy in the target volume.
+     * @throws IOException If the range can't be copied.
+     */
+    long copyTo(long position, long length, MediaVolume target) throws IOException {
+
+        long offset = target.size;
+        FileChannel targetChannel = target.getChannel();
+        targetChannel.position(offset);
+        long transferred = 0;
+        while (transferred < length) {
+            long count = getChannel().transferTo(position + transferred, length - transferred, targetChannel);
+            if (count <= 0) {
+                throw new EOFException("Unexpected end of media volume: " + file);
+            }
+            transferred += count;
+        }
+        target.size = offset + length;
+        return offset;
+    }
+
+    void truncate(long length) throws IOException {
+
+        getChannel().truncate(length);
+        size = length;
+    }
+
+    void force() throws IOException {
+
+        getChannel().force(false);
+    }
+
+    /**
+     * Acquire the volume for a read.
+     *
+     * @return true if acquired, or false if the volume is retired.
+     */
+    boolean acquire() {
+
+        while (true) {
+            int count = references.get();
+            if (count == 0) {
+                return false;
+            }
+            if (references.compareAndSet(count, count + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Release a read of the volume, or the volume itself once it is retired.
+     */
+    void release() {
+
+        if (references.decrementAndGet() == 0) {
+            close(true);
+        }
+    }
+
+    /**
+     * Retire the volume, deleting it once no reader holds it.
+     */
+    void retire() {
+
+        release();
+    }
+
+    /**
+     * Close the volume without deleting it.
+     */
+    void close() {
+
+        close(false);
+    }
+
+    private void close(boolean delete) {
+
+        closed = true;
+        try {
+            channel.close();
+            if (delete) {
+                Files.deleteIfExists(file);
+            }
+        } catch (IOException e) {
+            LOGGER.warn("Unable to release the media volume: " + file, e);
+        }
+    }
+
+    private FileChannel getChannel() throws IOException {
+
+        FileChannel fileChannel = channel;
+        if (!fileChannel.isOpen() && !closed) {
+            fileChannel = reopen();
+        }
+        return fileChannel;
+    }
+
+    private synchronized FileChannel reopen() throws IOException {
+
+        if (closed) {
+            throw new ClosedChannelException();
+        }
+        if (!channel.isOpen()) {
+            channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        }
+        return channel;
+    }
+
+    private static int writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+
+        int written = 0;
+        while (buffer.hasRemaining()) {
+            written += channel.write(buffer, position + written);
+        }
+        return written;
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+
+        long readPosition = position;
+        while (buffer.hasRemaining()) {
+            int count = channel.read(buffer, readPosition);
+            if (count < 0) {
+                throw new EOFException("Unexpected end of media volume at position: " + readPosition);
+            }
+            readPosition += count;
+        }
+    }
+}
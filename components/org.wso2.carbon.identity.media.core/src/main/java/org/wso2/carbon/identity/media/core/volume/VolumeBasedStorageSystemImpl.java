@@ -0,0 +1,262 @@
+/*
+ * Copyright (c) 2020, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wso2.carbon.identity.media.core.volume;
+
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.identity.core.util.IdentityTenantUtil;
+import org.wso2.carbon.identity.media.core.AbstractStorageSystem;
+import org.wso2.carbon.identity.media.core.DataContent;
+import org.wso2.carbon.identity.media.core.StreamContentImpl;
+import org.wso2.carbon.identity.media.core.cache.MediaMetadataCacheKey;
+import org.wso2.carbon.identity.media.core.exception.MediaSizeLimitExceededException;
+import org.wso2.carbon.identity.media.core.exception.StorageSystemClientException;
+import org.wso2.carbon.identity.media.core.exception.StorageSystemException;
+import org.wso2.carbon.identity.media.core.exception.StorageSystemServerException;
+import org.wso2.carbon.identity.media.core.file.BinaryMetadataCodec;
+import org.wso2.carbon.identity.media.core.model.MediaMetadata;
+import org.wso2.carbon.identity.media.core.model.ResolvedMedia;
+import org.wso2.carbon.identity.media.core.model.StoredMediaMetadata;
+import org.wso2.carbon.identity.media.core.util.SizeLimitedInputStream;
+import org.wso2.carbon.identity.media.core.util.StorageSystemUtil;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.wso2.carbon.identity.media.core.util.StorageSystemConstants.VOLUME_FOLDER;
+
+/**
+ * This class implements StorageSystem to store media in append-only volume files, which suits deployments storing
+ * many small media such as icons and logos. The files and the metadata of a media are appended to a volume as a
+ * single record instead of being stored as files of their own, and the media is located through an in-memory index
+ * of the volumes. See {@link VolumeStore} for the layout of the volumes.
+ * <p>
+ * An uploaded media is read into memory before it is appended, so that an upload never holds the volume being
+ * appended to while the media is received, hence the size of the media is bounded by the allowed maximum size.
+ */
+public class VolumeBasedStorageSystemImpl extends AbstractStorageSystem {
+
+    private static final Log LOGGER = LogFactory.getLog(VolumeBasedStorageSystemImpl.class);
+    private static final int COPY_BUFFER_SIZE = 8192;
+
+    private final Path volumeFolder;
+    private volatile VolumeStore volumeStore;
+
+    /**
+     * Creates a volume based storage system which stores media in the volumes of the 'media-volumes' folder of the
+     * media mount location. The volumes are opened when the storage system is first used.
+     */
+    public VolumeBasedStorageSystemImpl() {
+
+        this(null);
+    }
+
+    /**
+     * Creates a volume based storage system which stores media in the volumes of the given folder.
+     *
+     * @param volumeFolder The folder of the volumes.
+     */
+    public VolumeBasedStorageSystemImpl(Path volumeFolder) {
+
+        this.volumeFolder = volumeFolder;
+    }
+
+    @Override
+    public String addMedia(List<InputStream> inputStreams, MediaMetadata mediaMetadata, String uuid,
+                           String tenantDomain) throws StorageSystemException {
+
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug(String.format("Uploading media file with unique id: %s and in tenant domain: %s to the " +
+                    "media volumes.", uuid, tenantDomain));
+        }
+        int tenantId = IdentityTenantUtil.getTenantId(tenantDomain);
+        String mediaType = mediaMetadata.getFileContentType().split("/")[0];
+        List<String> fileIdentifiers = StorageSystemUtil.getFileIdentifiers(inputStreams.size(), mediaMetadata);
+        try {
+            List<byte[]> files = new ArrayList<>(inputStreams.size());
+            List<String> contentHashes = new ArrayList<>(inputStreams.size());
+            List<Long> sizes = new ArrayList<>(inputStreams.size());
+            for (InputStream inputStream : inputStreams) {
+                MessageDigest contentDigest = getContentDigest();
+                byte[] file = readFile(inputStream, contentDigest);
+                files.add(file);
+                contentHashes.add(new String(Hex.encodeHex(contentDigest.digest())));
+                sizes.add((long) file.length);
+            }
+            byte[] metadata = BinaryMetadataCodec.encode(buildMetadata(mediaMetadata, fileIdentifiers,
+                    contentHashes, sizes, System.currentTimeMillis()));
+            getVolumeStore().put(new MediaMetadataCacheKey(tenantId, mediaType, uuid), metadata, files);
+        } catch (MediaSizeLimitExceededException e) {
+            throw new StorageSystemClientException(String.format("The uploaded media with unique id: %s exceeds the " +
+                    "maximum allowed file size: %skb", uuid, e.getMaximumSize() / 1000.0), e);
+        } catch (IOException e) {
+            throw new StorageSystemServerException("Error while uploading media to the media volumes.", e);
+        }
+        invalidateCachedMetadata(tenantId, mediaType, uuid);
+        return uuid;
+    }
+
+    /**
+     * Open the content of a resolved media. The content is read from the volume holding the media, which is held
+     * until the returned stream is closed.
+     *
+     * @param resolvedMedia The resolved media.
+     * @return stream content of the media.
+     * @throws StorageSystemException If the content can't be read.
+     */
+    @Override
+    public DataContent getFile(ResolvedMedia resolvedMedia) throws StorageSystemException {
+
+        int tenantId = IdentityTenantUtil.getTenantId(resolvedMedia.getTenantDomain());
+        InputStream content = getVolumeStore().openFile(new MediaMetadataCacheKey(tenantId, resolvedMedia.getType(),
+                resolvedMedia.getId()), getFileIndex(resolvedMedia));
+        if (content == null) {
+            throw new StorageSystemClientException(String.format("Requested media of type: %s with id: %s in " +
+                    "tenant domain: %s does not exist in the storage system.", resolvedMedia.getType(),
+                    resolvedMedia.getId(), resolvedMedia.getTenantDomain()));
+        }
+        return new StreamContentImpl(content, resolvedMedia.getContentType(), resolvedMedia.getETag());
+    }
+
+    @Override
+    public void deleteMedia(String id, String type, String tenantDomain) throws StorageSystemException {
+
+        int tenantId = IdentityTenantUtil.getTenantId(tenantDomain);
+        boolean deleted;
+        invalidateCachedMetadata(tenantId, type, id);
+        try {
+            deleted = getVolumeStore().delete(new MediaMetadataCacheKey(tenantId, type, id));
+        } catch (IOException e) {
+            String errorMsg = String.format("Error while deleting the stored media of type %s from the media " +
+                    "volumes.", type);
+            throw new StorageSystemServerException(errorMsg, e);
+        } finally {
+            // Invalidated again once the media is deleted, so that metadata read during the delete is not served.
+            invalidateCachedMetadata(tenantId, type, id);
+        }
+        if (!deleted) {
+            throw new StorageSystemClientException(String.format("Delete request cannot be performed as media with " +
+                    "id: %s of type: %s in tenant domain: %s not found.", id, type, tenantDomain));
+        }
+    }
+
+    /**
+     * Reclaim the space of the deleted media from the volumes in which the deleted media take at least the given
+     * share of the volume.
+     *
+     * @param minimumGarbagePercentage The minimum percentage of the size of a volume taken by deleted media.
+     * @return the number of volumes compacted.
+     * @throws StorageSystemServerException If the volumes can't be opened or compacted.
+     */
+    public int compact(int minimumGarbagePercentage) throws StorageSystemServerException {
+
+        try {
+            return getVolumeStore().compact(minimumGarbagePercentage);
+        } catch (IOException e) {
+            throw new StorageSystemServerException("Error while compacting the media volumes.", e);
+        }
+    }
+
+    /**
+     * Close the volumes, releasing the lock on the volume folder. The volumes are opened again if the storage system
+     * is used afterwards.
+     */
+    public void close() {
+
+        VolumeStore openedVolumeStore;
+        synchronized (this) {
+            openedVolumeStore = volumeStore;
+            volumeStore = null;
+        }
+        if (openedVolumeStore != null) {
+            try {
+                openedVolumeStore.close();
+            } catch (IOException e) {
+                LOGGER.warn("Error while closing the media volumes.", e);
+            }
+        }
+    }
+
+    @Override
+    protected StoredMediaMetadata readStoredMediaMetadata(MediaMetadataCacheKey mediaKey, String tenantDomain)
+            throws StorageSystemServerException {
+
+        try {
+            byte[] record = getVolumeStore().readMetadata(mediaKey);
+            if (record == null) {
+                return null;
+            }
+            return BinaryMetadataCodec.decode(record, METADATA_ENTRY_OVERHEAD);
+        } catch (IOException e) {
+            String errorMsg = String.format("Error while retrieving metadata for stored media with id: %s and of " +
+                    "type %s in tenant domain: %s", mediaKey.getId(), mediaKey.getType(), tenantDomain);
+            throw new StorageSystemServerException(errorMsg, e);
+        }
+    }
+
+    private byte[] readFile(InputStream inputStream, MessageDigest contentDigest) throws IOException {
+
+        InputStream digestInputStream = new DigestInputStream(new SizeLimitedInputStream(inputStream,
+                StorageSystemUtil.getAllowedMaximumMediaSize()), contentDigest);
+        ByteArrayOutputStream content = new ByteArrayOutputStream(COPY_BUFFER_SIZE);
+        byte[] buffer = new byte[COPY_BUFFER_SIZE];
+        int count;
+        while ((count = digestInputStream.read(buffer)) != -1) {
+            content.write(buffer, 0, count);
+        }
+        return content.toByteArray();
+    }
+
+    private VolumeStore getVolumeStore() throws StorageSystemServerException {
+
+        VolumeStore openedVolumeStore = volumeStore;
+        if (openedVolumeStore == null) {
+            synchronized (this) {
+                if (volumeStore == null) {
+                    volumeStore = openVolumeStore();
+                }
+                openedVolumeStore = volumeStore;
+            }
+        }
+        return openedVolumeStore;
+    }
+
+    private VolumeStore openVolumeStore() throws StorageSystemServerException {
+
+        Path folder = volumeFolder;
+        if (folder == null) {
+            Path mediaMountBaseDirectory = StorageSystemUtil.getMediaMountBaseDirectory();
+            if (mediaMountBaseDirectory == null) {
+                throw new StorageSystemServerException("The media mount location is not configured to store media " +
+                        "volumes.");
+            }
+            folder = mediaMountBaseDirectory.resolve(VOLUME_FOLDER);
+        }
+        try {
+            return VolumeStore.open(folder, StorageSystemUtil.getMaximumVolumeSize(),
+                    StorageSystemUtil.isVolumeSyncEnabled());
+        } catch (IOException e) {
+            throw new StorageSystemServerException("Unable to open the media volumes in: " + folder, e);
+        }
+    }
+}
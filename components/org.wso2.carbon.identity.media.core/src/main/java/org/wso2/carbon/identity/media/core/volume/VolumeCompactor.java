@@ -0,0 +1,60 @@
+/*
+ * Copyright (c) 2020, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wso2.carbon.identity.media.core.volume;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.identity.media.core.exception.StorageSystemException;
+
+/**
+ * Reclaims the space of deleted media from the volumes of the volume based storage system in the background. A
+ * delete only marks the record of the media in its volume, and the compactor rewrites the volumes in which deleted
+ * media take at least the configured share of the volume, copying the remaining media to a new volume.
+ */
+public final class VolumeCompactor implements Runnable {
+
+    private static final Log LOGGER = LogFactory.getLog(VolumeCompactor.class);
+
+    private final VolumeBasedStorageSystemImpl storageSystem;
+    private final int minimumGarbagePercentage;
+
+    /**
+     * @param storageSystem            The volume based storage system.
+     * @param minimumGarbagePercentage The minimum percentage of a volume taken by deleted media for the volume to be
+     *                                 compacted.
+     */
+    public VolumeCompactor(VolumeBasedStorageSystemImpl storageSystem, int minimumGarbagePercentage) {
+
+        this.storageSystem = storageSystem;
+        this.minimumGarbagePercentage = minimumGarbagePercentage;
+    }
+
+    @Override
+    public void run() {
+
+        try {
+            int compactedCount = storageSystem.compact(minimumGarbagePercentage);
+            if (compactedCount > 0 && LOGGER.isDebugEnabled()) {
+                LOGGER.debug(String.format("Compacted %d media volumes.", compactedCount));
+            }
+        } catch (StorageSystemException e) {
+            LOGGER.warn("Error while compacting the media volumes.", e);
+        } catch (RuntimeException e) {
+            // The compactor is scheduled periodically, and must not be cancelled by an unexpected error.
+            LOGGER.error("Error while compacting the media volumes.", e);
+        }
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 2020, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wso2.carbon.identity.media.core.volume;
+
+/**
+ * The entry of the in-memory index of the volume store, which locates the record of a media in a volume. The file
+ * sizes are kept in the entry, so that a file of the media is read with a single positional read of its range.
+ */
+final class VolumeEntry {
+
+    private final MediaVolume volume;
+    private final long offset;
+    private final int recordLength;
+    private final int headerLength;
+    private final int metadataLength;
+    private final long[] fileSizes;
+
+    VolumeEntry(MediaVolume volume, long offset, int recordLength, int headerLength, int metadataLength,
+                long[] fileSizes) {
+
+        this.volume = volume;
+        this.offset = offset;
+        this.recordLength = recordLength;
+        this.headerLength = headerLength;
+        this.metadataLength = metadataLength;
+        this.fileSizes = fileSizes;
+    }
+
+    MediaVolume getVolume() {
+
+        return volume;
+    }
+
+    long getOffset() {
+
+        return offset;
+    }
+
+    int getRecordLength() {
+
+        return recordLength;
+    }
+
+    long getMetadataOffset() {
+
+        return offset + headerLength;
+    }
+
+    int getMetadataLength() {
+
+        return metadataLength;
+    }
+
+    int getFileCount() {
+
+        return fileSizes.length;
+    }
+
+    long getFileOffset(int fileIndex) {
+
+        long fileOffset = getMetadataOffset() + metadataLength;
+        for (int i = 0; i < fileIndex; i++) {
+            fileOffset += fileSizes[i];
+        }
+        return fileOffset;
+    }
+
+    long getFileSize(int fileIndex) {
+
+        return fileSizes[fileIndex];
+    }
+
+    /**
+     * Returns the entry of the same record copied to another volume by compaction.
+     */
+    VolumeEntry relocate(MediaVolume targetVolume, long targetOffset) {
+
+        return new VolumeEntry(targetVolume, targetOffset, recordLength, headerLength, metadataLength, fileSizes);
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2020, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wso2.carbon.identity.media.core.volume;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Input stream over the range of a volume holding a media file. The range is read with positional reads on the
+ * channel of the volume, which is shared with the other readers. The volume is held until the stream is closed, so
+ * that it isn't removed by compaction while the file is read.
+ */
+final class VolumeEntryInputStream extends InputStream {
+
+    private final MediaVolume volume;
+    private long position;
+    private long remaining;
+    private boolean closed;
+
+    /**
+     * @param volume   The volume, which is acquired for the stream and released when the stream is closed.
+     * @param position The position of the file in the volume.
+     * @param size     The size of the file.
+     */
+    VolumeEntryInputStream(MediaVolume volume, long position, long size) {
+
+        this.volume = volume;
+        this.position = position;
+        this.remaining = size;
+    }
+
+    @Override
+    public int read() throws IOException {
+
+        byte[] singleByte = new byte[1];
+        return read(singleByte, 0, 1) < 0 ? -1 : singleByte[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+
+        if (closed) {
+            throw new IOException("The media volume stream is closed.");
+        }
+        if (len == 0) {
+            return 0;
+        }
+        if (remaining <= 0) {
+            return -1;
+        }
+        int count = (int) Math.min(len, remaining);
+        volume.read(ByteBuffer.wrap(b, off, count), position);
+        position += count;
+        remaining -= count;
+        return count;
+    }
+
+    @Override
+    public long skip(long n) {
+
+        long skipped = Math.max(0, Math.min(n, remaining));
+        position += skipped;
+        remaining -= skipped;
+        return skipped;
+    }
+
+    @Override
+    public int available() {
+
+        return (int) Math.min(remaining, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public void close() {
+
+        if (closed) {
+            return;
+        }
+        closed = true;
+        volume.release();
+    }
+}
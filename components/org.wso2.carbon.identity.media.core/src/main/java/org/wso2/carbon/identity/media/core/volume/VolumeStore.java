@@ -0,0 +1,616 @@
+/*
+ * Copyright (c) 2020, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wso2.carbon.identity.media.core.volume;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.identity.media.core.cache.MediaMetadataCacheKey;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.zip.CRC32;
+
+/**
+ * Stores media as records appended to large volume files, so that a small media costs a record in a volume instead of
+ * files and directories of its own. The volumes are kept in a single folder, and an in-memory index maps each media to
+ * the location of its record. A media is read with positional reads of its range of a volume, and is deleted by
+ * flagging its record in place. The space of deleted records is reclaimed by compaction, which copies the live
+ * records of a volume to a new volume and then removes the old one.
+ * <p>
+ * A record is laid out as follows (all integers are big endian):
+ * <pre>
+ * magic (int) | flags (1 byte) | record length (int) | header length (int) | checksum (int) | tenant id (int)
+ * | type | id | metadata length (int) | file count (int) | file sizes (long each) | metadata | files
+ * </pre>
+ * Strings are written as their UTF-8 length (short) followed by their UTF-8 bytes, and the metadata is in the binary
+ * metadata format. The checksum is the CRC32 of the record after the checksum, so that a record torn by a crash at
+ * the end of a volume which is not sealed, i.e. the volume being appended to, is detected and discarded when the
+ * volumes are opened. The flags are not covered by the checksum, as they are updated in place.
+ * <p>
+ * The index is rebuilt from the record headers when the store is opened. The volumes are written by a single store,
+ * which holds a lock on the volume folder, as the index of a store doesn't see the records appended by others.
+ */
+final class VolumeStore implements Closeable {
+
+    static final int RECORD_MAGIC = 0x4D564E44;
+    static final byte FLAG_DELETED = 1;
+    // Length of the magic, the flags, the record length, the header length and the checksum.
+    static final int RECORD_FIXED_HEADER_SIZE = 17;
+    static final int FLAGS_OFFSET = 4;
+
+    private static final Log LOGGER = LogFactory.getLog(VolumeStore.class);
+    private static final String LOCK_FILE = ".lock";
+    private static final String COMPACTION_FILE_EXTENSION = ".compacting";
+    private static final int MAXIMUM_HEADER_LENGTH = 65536;
+    private static final int CHECKSUM_BUFFER_SIZE = 65536;
+
+    private final Path volumeFolder;
+    private final long maximumVolumeSize;
+    private final boolean syncEnabled;
+    private final FileChannel lockChannel;
+    private final ConcurrentMap<MediaMetadataCacheKey, VolumeEntry> index = new ConcurrentHashMap<>();
+    // The volumes by their ids, guarded by the store, like the active volume and the next volume id.
+    private final TreeMap<Long, MediaVolume> volumes = new TreeMap<>();
+    private final Object compactionLock = new Object();
+    private MediaVolume activeVolume;
+    private long nextVolumeId = 1;
+
+    private VolumeStore(Path volumeFolder, long maximumVolumeSize, boolean syncEnabled, FileChannel lockChannel) {
+
+        this.volumeFolder = volumeFolder;
+        this.maximumVolumeSize = maximumVolumeSize;
+        this.syncEnabled = syncEnabled;
+        this.lockChannel = lockChannel;
+    }
+
+    /**
+     * Open the store of the volumes in the given folder, rebuilding the index from the volumes.
+     *
+     * @param volumeFolder      The folder of the volumes, which is created if missing.
+     * @param maximumVolumeSize The size in bytes after which a new volume is started.
+     * @param syncEnabled       Whether each write is flushed to the storage device before it completes.
+     * @return the store.
+     * @throws IOException If the volumes can't be read, or are used by another store.
+     */
+    static VolumeStore open(Path volumeFolder, long maximumVolumeSize, boolean syncEnabled) throws IOException {
+
+        Files.createDirectories(volumeFolder);
+        FileChannel lockChannel = FileChannel.open(volumeFolder.resolve(LOCK_FILE), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE);
+        VolumeStore store;
+        try {
+            FileLock lock;
+            try {
+                lock = lockChannel.tryLock();
+            } catch (OverlappingFileLockException e) {
+                lock = null;
+            }
+            if (lock == null) {
+                throw new IOException("The media volumes in: " + volumeFolder + " are used by another process.");
+            }
+            store = new VolumeStore(volumeFolder, maximumVolumeSize, syncEnabled, lockChannel);
+        } catch (IOException e) {
+            lockChannel.close();
+            throw e;
+        }
+        boolean loaded = false;
+        try {
+            store.load();
+            loaded = true;
+        } finally {
+            if (!loaded) {
+                store.close();
+            }
+        }
+        return store;
+    }
+
+    /**
+     * Append the record of a media.
+     *
+     * @param key      The key of the media.
+     * @param metadata The encoded metadata of the media.
+     * @param files    The content of the files of the media.
+     * @throws IOException If the record can't be written.
+     */
+    void put(MediaMetadataCacheKey key, byte[] metadata, List<byte[]> files) throws IOException {
+
+        byte[] type = key.getType().getBytes(StandardCharsets.UTF_8);
+        byte[] id = key.getId().getBytes(StandardCharsets.UTF_8);
+        int headerLength = RECORD_FIXED_HEADER_SIZE + 4 + 2 + type.length + 2 + id.length + 8 + 8 * files.size();
+        if (headerLength > MAXIMUM_HEADER_LENGTH) {
+            throw new IOException("The record header of media: " + key + " exceeds the maximum length.");
+        }
+        long recordLength = headerLength + metadata.length;
+        long[] fileSizes = new long[files.size()];
+        for (int i = 0; i < files.size(); i++) {
+            fileSizes[i] = files.get(i).length;
+            recordLength += fileSizes[i];
+        }
+        if (recordLength > Integer.MAX_VALUE) {
+            throw new IOException("The record of media: " + key + " exceeds the maximum length.");
+        }
+
+        ByteBuffer header = ByteBuffer.allocate(headerLength);
+        header.putInt(RECORD_MAGIC).put((byte) 0).putInt((int) recordLength).putInt(headerLength)
+                .putInt(0).putInt(key.getTenantId()).putShort((short) type.length).put(type)
+                .putShort((short) id.length).put(id).putInt(metadata.length).putInt(files.size());
+        for (long fileSize : fileSizes) {
+            header.putLong(fileSize);
+        }
+        CRC32 checksum = new CRC32();
+        checksum.update(header.array(), RECORD_FIXED_HEADER_SIZE, headerLength - RECORD_FIXED_HEADER_SIZE);
+        checksum.update(metadata);
+        ByteBuffer[] record = new ByteBuffer[files.size() + 2];
+        record[0] = header;
+        record[1] = ByteBuffer.wrap(metadata);
+        for (int i = 0; i < files.size(); i++) {
+            checksum.update(files.get(i));
+            record[i + 2] = ByteBuffer.wrap(files.get(i));
+        }
+        header.putInt(RECORD_FIXED_HEADER_SIZE - 4, (int) checksum.getValue());
+        header.rewind();
+
+        synchronized (this) {
+            MediaVolume volume = getActiveVolume(recordLength);
+            long offset = volume.append(record);
+            if (syncEnabled) {
+                volume.force();
+            }
+            VolumeEntry previous = index.put(key, new VolumeEntry(volume, offset, (int) recordLength, headerLength,
+                    metadata.length, fileSizes));
+            if (previous != null) {
+                markDeleted(previous);
+            }
+        }
+    }
+
+    /**
+     * Delete a media by flagging its record.
+     *
+     * @param key The key of the media.
+     * @return true if the media was deleted, or false if it does not exist.
+     * @throws IOException If the record can't be flagged.
+     */
+    synchronized boolean delete(MediaMetadataCacheKey key) throws IOException {
+
+        VolumeEntry entry = index.get(key);
+        if (entry == null) {
+            return false;
+        }
+        markDeleted(entry);
+        index.remove(key);
+        return true;
+    }
+
+    boolean contains(MediaMetadataCacheKey key) {
+
+        return index.containsKey(key);
+    }
+
+    /**
+     * Read the encoded metadata of a media.
+     *
+     * @param key The key of the media.
+     * @return the encoded metadata, or null if the media does not exist.
+     * @throws IOException If the metadata can't be read.
+     */
+    byte[] readMetadata(MediaMetadataCacheKey key) throws IOException {
+
+        while (true) {
+            VolumeEntry entry = index.get(key);
+            if (entry == null) {
+                return null;
+            }
+            MediaVolume volume = entry.getVolume();
+            // A volume is only retired once the entries of its live records are relocated, hence the entry is
+            // looked up again if the volume was retired meanwhile.
+            if (!volume.acquire()) {
+                continue;
+            }
+            try {
+                ByteBuffer metadata = ByteBuffer.allocate(entry.getMetadataLength());
+                volume.read(metadata, entry.getMetadataOffset());
+                return metadata.array();
+            } finally {
+                volume.release();
+            }
+        }
+    }
+
+    /**
+     * Open a file of a media. The volume holding the file is held until the returned stream is closed.
+     *
+     * @param key       The key of the media.
+     * @param fileIndex The index of the file among the files of the media.
+     * @return the stream of the file, or null if the media or the file does not exist.
+     */
+    InputStream openFile(MediaMetadataCacheKey key, int fileIndex) {
+
+        while (true) {
+            VolumeEntry entry = index.get(key);
+            if (entry == null || fileIndex < 0 || fileIndex >= entry.getFileCount()) {
+                return null;
+            }
+            if (entry.getVolume().acquire()) {
+                return new VolumeEntryInputStream(entry.getVolume(), entry.getFileOffset(fileIndex),
+                        entry.getFileSize(fileIndex));
+            }
+        }
+    }
+
+    /**
+     * Compact the volumes in which the deleted records take at least the given share of the volume. The volume being
+     * appended to is never compacted.
+     *
+     * @param minimumGarbagePercentage The minimum percentage of the size of a volume taken by deleted records.
+     * @return the number of volumes compacted.
+     * @throws IOException If a volume can't be compacted.
+     */
+    int compact(int minimumGarbagePercentage) throws IOException {
+
+        synchronized (compactionLock) {
+            List<MediaVolume> candidates = new ArrayList<>();
+            synchronized (this) {
+                for (MediaVolume volume : volumes.values()) {
+                    long recordsSize = volume.getSize() - MediaVolume.VOLUME_HEADER_SIZE;
+                    if (volume != activeVolume && volume.getGarbageSize() > 0 &&
+                            volume.getGarbageSize() * 100 >= recordsSize * minimumGarbagePercentage) {
+                        candidates.add(volume);
+                    }
+                }
+            }
+            for (MediaVolume volume : candidates) {
+                compact(volume);
+            }
+            return candidates.size();
+        }
+    }
+
+    synchronized int getVolumeCount() {
+
+        return volumes.size();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+
+        for (MediaVolume volume : volumes.values()) {
+            volume.close();
+        }
+        volumes.clear();
+        index.clear();
+        // Closing the channel releases the lock on the volume folder.
+        lockChannel.close();
+    }
+
+    private void load() throws IOException {
+
+        TreeMap<Long, Path> volumeFiles = new TreeMap<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(volumeFolder)) {
+            for (Path file : files) {
+                String fileName = file.getFileName().toString();
+                if (fileName.endsWith(COMPACTION_FILE_EXTENSION)) {
+                    // The output of a compaction interrupted by a crash, whose source volume is intact.
+                    Files.deleteIfExists(file);
+                    continue;
+                }
+                if (!fileName.endsWith(MediaVolume.VOLUME_FILE_EXTENSION)) {
+                    continue;
+                }
+                try {
+                    volumeFiles.put(Long.parseLong(fileName.substring(0, fileName.length() -
+                            MediaVolume.VOLUME_FILE_EXTENSION.length())), file);
+                } catch (NumberFormatException e) {
+                    LOGGER.warn("Ignoring unexpected file in the media volume folder: " + file);
+                }
+            }
+        }
+
+        // Later volumes take precedence, as they hold the copies of the records of the compacted volumes. The output of
+        // a compaction takes a new id, hence the volume being appended to is the last volume which is not sealed.
+        MediaVolume lastUnsealedVolume = null;
+        for (Map.Entry<Long, Path> volumeFile : volumeFiles.entrySet()) {
+            MediaVolume volume;
+            try {
+                volume = MediaVolume.open(volumeFile.getKey(), volumeFile.getValue());
+            } catch (IOException e) {
+                LOGGER.error("Unable to open the media volume: " + volumeFile.getValue(), e);
+                continue;
+            }
+            volumes.put(volume.getVolumeId(), volume);
+            loadVolume(volume);
+            if (!volume.isSealed()) {
+                lastUnsealedVolume = volume;
+            }
+        }
+        if (!volumeFiles.isEmpty()) {
+            nextVolumeId = Math.max(nextVolumeId, volumeFiles.lastKey() + 1);
+        }
+        activeVolume = lastUnsealedVolume != null && lastUnsealedVolume.getSize() < maximumVolumeSize ?
+                lastUnsealedVolume : createVolume();
+        for (MediaVolume volume : volumes.values()) {
+            if (volume != activeVolume && !volume.isSealed()) {
+                volume.seal();
+            }
+        }
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug(String.format("Indexed %d media in %d volume(s) of: %s", index.size(), volumes.size(),
+                    volumeFolder));
+        }
+    }
+
+    /**
+     * Index the records of a volume. The records of a volume which is not sealed are verified against their
+     * checksums, and the volume is truncated at the first record which is incomplete, i.e. was being appended when
+     * the server stopped.
+     */
+    private void loadVolume(MediaVolume volume) throws IOException {
+
+        boolean verified = !volume.isSealed();
+        long position = MediaVolume.VOLUME_HEADER_SIZE;
+        while (position < volume.getSize()) {
+            Record record = readRecord(volume, position);
+            if (record == null || (verified && !isChecksumValid(volume, position, record))) {
+                if (verified) {
+                    LOGGER.warn(String.format("Discarding the incomplete record at position: %d of media volume: %s",
+                            position, volume.getFile()));
+                    volume.truncate(position);
+                } else {
+                    LOGGER.error(String.format("Invalid record at position: %d of media volume: %s. The remaining " +
+                            "records of the volume are not available.", position, volume.getFile()));
+                }
+                return;
+            }
+            VolumeEntry entry = record.entry;
+            VolumeEntry previous;
+            if (!record.deleted) {
+                previous = index.put(record.key, entry);
+            } else if (isIndexedInVolume(record.key, volume)) {
+                // A deleted record supersedes the earlier records of the media in its volume only, as a volume
+                // written by a compaction holds copies of records older than those of the earlier volumes.
+                previous = index.remove(record.key);
+            } else {
+                previous = null;
+            }
+            if (previous != null) {
+                previous.getVolume().addGarbage(previous.getRecordLength());
+            }
+            if (record.deleted) {
+                volume.addGarbage(entry.getRecordLength());
+            }
+            position += entry.getRecordLength();
+        }
+    }
+
+    private boolean isIndexedInVolume(MediaMetadataCacheKey key, MediaVolume volume) {
+
+        VolumeEntry entry = index.get(key);
+        return entry != null && entry.getVolume() == volume;
+    }
+
+    /**
+     * Read the header of the record at the given position.
+     *
+     * @return the record, or null if there is no valid record header at the position.
+     */
+    private Record readRecord(MediaVolume volume, long position) throws IOException {
+
+        long available = volume.getSize() - position;
+        if (available < RECORD_FIXED_HEADER_SIZE) {
+            return null;
+        }
+        ByteBuffer fixedHeader = ByteBuffer.allocate(RECORD_FIXED_HEADER_SIZE);
+        volume.read(fixedHeader, position);
+        fixedHeader.flip();
+        if (fixedHeader.getInt() != RECORD_MAGIC) {
+            return null;
+        }
+        boolean deleted = (fixedHeader.get() & FLAG_DELETED) != 0;
+        int recordLength = fixedHeader.getInt();
+        int headerLength = fixedHeader.getInt();
+        if (headerLength <= RECORD_FIXED_HEADER_SIZE || headerLength > MAXIMUM_HEADER_LENGTH ||
+                recordLength < headerLength || recordLength > available) {
+            return null;
+        }
+        ByteBuffer header = ByteBuffer.allocate(headerLength - RECORD_FIXED_HEADER_SIZE);
+        volume.read(header, position + RECORD_FIXED_HEADER_SIZE);
+        header.flip();
+        try {
+            int tenantId = header.getInt();
+            String type = readString(header);
+            String id = readString(header);
+            int metadataLength = header.getInt();
+            int fileCount = header.getInt();
+            if (metadataLength < 0 || fileCount < 0 || fileCount > header.remaining() / 8) {
+                return null;
+            }
+            long contentLength = (long) headerLength + metadataLength;
+            long[] fileSizes = new long[fileCount];
+            for (int i = 0; i < fileCount; i++) {
+                fileSizes[i] = header.getLong();
+                if (fileSizes[i] < 0) {
+                    return null;
+                }
+                contentLength += fileSizes[i];
+            }
+            if (contentLength != recordLength) {
+                return null;
+            }
+            return new Record(new MediaMetadataCacheKey(tenantId, type, id), deleted,
+                    new VolumeEntry(volume, position, recordLength, headerLength, metadataLength, fileSizes));
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private boolean isChecksumValid(MediaVolume volume, long position, Record record) throws IOException {
+
+        ByteBuffer storedChecksum = ByteBuffer.allocate(4);
+        volume.read(storedChecksum, position + RECORD_FIXED_HEADER_SIZE - 4);
+        CRC32 checksum = new CRC32();
+        ByteBuffer buffer = ByteBuffer.allocate(CHECKSUM_BUFFER_SIZE);
+        long checkedPosition = position + RECORD_FIXED_HEADER_SIZE;
+        long end = position + record.entry.getRecordLength();
+        while (checkedPosition < end) {
+            buffer.clear();
+            buffer.limit((int) Math.min(buffer.capacity(), end - checkedPosition));
+            volume.read(buffer, checkedPosition);
+            checksum.update(buffer.array(), 0, buffer.limit());
+            checkedPosition += buffer.limit();
+        }
+        return storedChecksum.getInt(0) == (int) checksum.getValue();
+    }
+
+    /**
+     * Copy the live records of a volume to a new volume, then replace the volume with the new volume. The records
+     * deleted while they are copied are flagged in the new volume before it replaces the old one. The new volume is
+     * written under a temporary name, so that a compaction interrupted by a crash leaves the old volume in place.
+     */
+    private void compact(MediaVolume volume) throws IOException {
+
+        long targetVolumeId;
+        synchronized (this) {
+            targetVolumeId = nextVolumeId++;
+        }
+        Path targetFile = volumeFolder.resolve(MediaVolume.getFileName(targetVolumeId));
+        Path temporaryFile = volumeFolder.resolve(targetFile.getFileName() + COMPACTION_FILE_EXTENSION);
+        MediaVolume target = MediaVolume.create(targetVolumeId, temporaryFile);
+        boolean replaced = false;
+        try {
+            List<Record> copiedRecords = new ArrayList<>();
+            List<Long> copiedOffsets = new ArrayList<>();
+            long position = MediaVolume.VOLUME_HEADER_SIZE;
+            while (position < volume.getSize()) {
+                Record record = readRecord(volume, position);
+                if (record == null) {
+                    break;
+                }
+                VolumeEntry liveEntry = index.get(record.key);
+                if (liveEntry != null && liveEntry.getVolume() == volume && liveEntry.getOffset() == position) {
+                    copiedOffsets.add(volume.copyTo(position, liveEntry.getRecordLength(), target));
+                    copiedRecords.add(new Record(record.key, false, liveEntry));
+                }
+                position += record.entry.getRecordLength();
+            }
+            target.force();
+
+            synchronized (this) {
+                for (int i = 0; i < copiedRecords.size(); i++) {
+                    Record record = copiedRecords.get(i);
+                    VolumeEntry relocatedEntry = record.entry.relocate(target, copiedOffsets.get(i));
+                    if (index.replace(record.key, record.entry, relocatedEntry)) {
+                        continue;
+                    }
+                    // The media was deleted while its record was copied.
+                    markDeleted(relocatedEntry);
+                }
+                target.seal();
+                if (copiedRecords.isEmpty()) {
+                    target.close();
+                    Files.deleteIfExists(temporaryFile);
+                } else {
+                    Files.move(temporaryFile, targetFile, StandardCopyOption.ATOMIC_MOVE);
+                    target.setFile(targetFile);
+                    volumes.put(targetVolumeId, target);
+                }
+                volumes.remove(volume.getVolumeId());
+                replaced = true;
+            }
+            volume.retire();
+            if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug(String.format("Compacted media volume: %s, keeping %d record(s).", volume.getFile(),
+                        copiedRecords.size()));
+            }
+        } finally {
+            if (!replaced) {
+                target.close();
+                Files.deleteIfExists(temporaryFile);
+            }
+        }
+    }
+
+    private void markDeleted(VolumeEntry entry) throws IOException {
+
+        MediaVolume volume = entry.getVolume();
+        volume.write(ByteBuffer.wrap(new byte[]{FLAG_DELETED}), entry.getOffset() + FLAGS_OFFSET);
+        if (syncEnabled) {
+            volume.force();
+        }
+        volume.addGarbage(entry.getRecordLength());
+    }
+
+    private MediaVolume getActiveVolume(long recordLength) throws IOException {
+
+        if (activeVolume.getSize() > MediaVolume.VOLUME_HEADER_SIZE &&
+                activeVolume.getSize() + recordLength > maximumVolumeSize) {
+            activeVolume.seal();
+            activeVolume = createVolume();
+        }
+        return activeVolume;
+    }
+
+    private MediaVolume createVolume() throws IOException {
+
+        long volumeId = nextVolumeId++;
+        MediaVolume volume = MediaVolume.create(volumeId, volumeFolder.resolve(MediaVolume.getFileName(volumeId)));
+        volumes.put(volumeId, volume);
+        return volume;
+    }
+
+    private static String readString(ByteBuffer buffer) {
+
+        int length = buffer.getShort() & 0xFFFF;
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * A record read from a volume.
+     */
+    private static final class Record {
+
+        private final MediaMetadataCacheKey key;
+        private final boolean deleted;
+        private final VolumeEntry entry;
+
+        Record(MediaMetadataCacheKey key, boolean deleted, VolumeEntry entry) {
+
+            this.key = key;
+            this.deleted = deleted;
+            this.entry = entry;
+        }
+    }
+}
@@ -0,0 +1,39 @@
+-- Tables of the database based media storage system. The access control list of a media is keyed by its
+-- principals, so that the access of a user is evaluated with a single primary key lookup.
+CREATE TABLE IF NOT EXISTS IDN_MEDIA (
+    UUID VARCHAR(45) NOT NULL,
+    TENANT_ID INTEGER NOT NULL,
+    MEDIA_TYPE VARCHAR(45) NOT NULL,
+    NAME VARCHAR(255),
+    CONTENT_TYPE VARCHAR(255),
+    TAG VARCHAR(255),
+    RESOURCE_OWNER_ID VARCHAR(255),
+    ALLOWED_ALL SMALLINT DEFAULT 0 NOT NULL,
+    LAST_MODIFIED BIGINT NOT NULL,
+    PRIMARY KEY (UUID, TENANT_ID, MEDIA_TYPE)
+);
+
+CREATE TABLE IF NOT EXISTS IDN_MEDIA_FILE (
+    UUID VARCHAR(45) NOT NULL,
+    TENANT_ID INTEGER NOT NULL,
+    MEDIA_TYPE VARCHAR(45) NOT NULL,
+    FILE_INDEX INTEGER NOT NULL,
+    IDENTIFIER VARCHAR(255),
+    NAME VARCHAR(255),
+    CONTENT_TYPE VARCHAR(255),
+    CONTENT_HASH VARCHAR(128),
+    FILE_SIZE BIGINT DEFAULT 0 NOT NULL,
+    CONTENT BLOB,
+    PRIMARY KEY (UUID, TENANT_ID, MEDIA_TYPE, FILE_INDEX),
+    FOREIGN KEY (UUID, TENANT_ID, MEDIA_TYPE) REFERENCES IDN_MEDIA (UUID, TENANT_ID, MEDIA_TYPE) ON DELETE CASCADE
+);
+
+CREATE TABLE IF NOT EXISTS IDN_MEDIA_ACL (
+    UUID VARCHAR(45) NOT NULL,
+    TENANT_ID INTEGER NOT NULL,
+    MEDIA_TYPE VARCHAR(45) NOT NULL,
+    PRINCIPAL_TYPE CHAR(1) NOT NULL,
+    PRINCIPAL VARCHAR(255) NOT NULL,
+    PRIMARY KEY (UUID, TENANT_ID, MEDIA_TYPE, PRINCIPAL_TYPE, PRINCIPAL),
+    FOREIGN KEY (UUID, TENANT_ID, MEDIA_TYPE) REFERENCES IDN_MEDIA (UUID, TENANT_ID, MEDIA_TYPE) ON DELETE CASCADE
+);
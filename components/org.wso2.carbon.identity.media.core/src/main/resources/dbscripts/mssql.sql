@@ -0,0 +1,42 @@
+-- Tables of the database based media storage system. The access control list of a media is keyed by its
+-- principals, so that the access of a user is evaluated with a single primary key lookup.
+IF NOT EXISTS (SELECT * FROM SYS.OBJECTS WHERE OBJECT_ID = OBJECT_ID(N'[DBO].[IDN_MEDIA]') AND TYPE IN (N'U'))
+CREATE TABLE IDN_MEDIA (
+    UUID VARCHAR(45) NOT NULL,
+    TENANT_ID INTEGER NOT NULL,
+    MEDIA_TYPE VARCHAR(45) NOT NULL,
+    NAME VARCHAR(255),
+    CONTENT_TYPE VARCHAR(255),
+    TAG VARCHAR(255),
+    RESOURCE_OWNER_ID VARCHAR(255),
+    ALLOWED_ALL SMALLINT DEFAULT 0 NOT NULL,
+    LAST_MODIFIED BIGINT NOT NULL,
+    PRIMARY KEY (UUID, TENANT_ID, MEDIA_TYPE)
+);
+
+IF NOT EXISTS (SELECT * FROM SYS.OBJECTS WHERE OBJECT_ID = OBJECT_ID(N'[DBO].[IDN_MEDIA_FILE]') AND TYPE IN (N'U'))
+CREATE TABLE IDN_MEDIA_FILE (
+    UUID VARCHAR(45) NOT NULL,
+    TENANT_ID INTEGER NOT NULL,
+    MEDIA_TYPE VARCHAR(45) NOT NULL,
+    FILE_INDEX INTEGER NOT NULL,
+    IDENTIFIER VARCHAR(255),
+    NAME VARCHAR(255),
+    CONTENT_TYPE VARCHAR(255),
+    CONTENT_HASH VARCHAR(128),
+    FILE_SIZE BIGINT DEFAULT 0 NOT NULL,
+    CONTENT VARBINARY(MAX),
+    PRIMARY KEY (UUID, TENANT_ID, MEDIA_TYPE, FILE_INDEX),
+    FOREIGN KEY (UUID, TENANT_ID, MEDIA_TYPE) REFERENCES IDN_MEDIA (UUID, TENANT_ID, MEDIA_TYPE) ON DELETE CASCADE
+);
+
+IF NOT EXISTS (SELECT * FROM SYS.OBJECTS WHERE OBJECT_ID = OBJECT_ID(N'[DBO].[IDN_MEDIA_ACL]') AND TYPE IN (N'U'))
+CREATE TABLE IDN_MEDIA_ACL (
+    UUID VARCHAR(45) NOT NULL,
+    TENANT_ID INTEGER NOT NULL,
+    MEDIA_TYPE VARCHAR(45) NOT NULL,
+    PRINCIPAL_TYPE CHAR(1) NOT NULL,
+    PRINCIPAL VARCHAR(255) NOT NULL,
+    PRIMARY KEY (UUID, TENANT_ID, MEDIA_TYPE, PRINCIPAL_TYPE, PRINCIPAL),
+    FOREIGN KEY (UUID, TENANT_ID, MEDIA_TYPE) REFERENCES IDN_MEDIA (UUID, TENANT_ID, MEDIA_TYPE) ON DELETE CASCADE
+);
@@ -0,0 +1,42 @@
+-- Tables of the database based media storage system. The access control list of a media is keyed by its
+-- principals, so that the access of a user is evaluated with a single primary key lookup.
+CREATE TABLE IDN_MEDIA (
+    UUID VARCHAR2(45) NOT NULL,
+    TENANT_ID INTEGER NOT NULL,
+    MEDIA_TYPE VARCHAR2(45) NOT NULL,
+    NAME VARCHAR2(255),
+    CONTENT_TYPE VARCHAR2(255),
+    TAG VARCHAR2(255),
+    RESOURCE_OWNER_ID VARCHAR2(255),
+    ALLOWED_ALL SMALLINT DEFAULT 0 NOT NULL,
+    LAST_MODIFIED NUMBER(19) NOT NULL,
+    PRIMARY KEY (UUID, TENANT_ID, MEDIA_TYPE)
+)
+/
+
+CREATE TABLE IDN_MEDIA_FILE (
+    UUID VARCHAR2(45) NOT NULL,
+    TENANT_ID INTEGER NOT NULL,
+    MEDIA_TYPE VARCHAR2(45) NOT NULL,
+    FILE_INDEX INTEGER NOT NULL,
+    IDENTIFIER VARCHAR2(255),
+    NAME VARCHAR2(255),
+    CONTENT_TYPE VARCHAR2(255),
+    CONTENT_HASH VARCHAR2(128),
+    FILE_SIZE NUMBER(19) DEFAULT 0 NOT NULL,
+    CONTENT BLOB,
+    PRIMARY KEY (UUID, TENANT_ID, MEDIA_TYPE, FILE_INDEX),
+    FOREIGN KEY (UUID, TENANT_ID, MEDIA_TYPE) REFERENCES IDN_MEDIA (UUID, TENANT_ID, MEDIA_TYPE) ON DELETE CASCADE
+)
+/
+
+CREATE TABLE IDN_MEDIA_ACL (
+    UUID VARCHAR2(45) NOT NULL,
+    TENANT_ID INTEGER NOT NULL,
+    MEDIA_TYPE VARCHAR2(45) NOT NULL,
+    PRINCIPAL_TYPE CHAR(1) NOT NULL,
+    PRINCIPAL VARCHAR2(255) NOT NULL,
+    PRIMARY KEY (UUID, TENANT_ID, MEDIA_TYPE, PRINCIPAL_TYPE, PRINCIPAL),
+    FOREIGN KEY (UUID, TENANT_ID, MEDIA_TYPE) REFERENCES IDN_MEDIA (UUID, TENANT_ID, MEDIA_TYPE) ON DELETE CASCADE
+)
+/
@@ -0,0 +1,250 @@
+/*
+ * Copyright (c) 2020, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wso2.carbon.identity.media.core;
+
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.io.IOUtils;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.testng.PowerMockTestCase;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import org.wso2.carbon.identity.core.util.IdentityTenantUtil;
+import org.wso2.carbon.identity.media.core.cache.MediaMetadataCache;
+import org.wso2.carbon.identity.media.core.exception.StorageSystemClientException;
+import org.wso2.carbon.identity.media.core.internal.MediaServiceDataHolder;
+import org.wso2.carbon.identity.media.core.model.FileSecurity;
+import org.wso2.carbon.identity.media.core.model.MediaMetadata;
+import org.wso2.carbon.identity.media.core.model.ResolvedMedia;
+import org.wso2.carbon.identity.media.core.util.StorageSystemUtil;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+import static org.mockito.Matchers.anyString;
+import static org.powermock.api.mockito.PowerMockito.mockStatic;
+import static org.powermock.api.mockito.PowerMockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+/**
+ * Tests the behaviour shared by the storage systems built on {@link AbstractStorageSystem}, i.e. storing, resolving,
+ * downloading and deleting media and evaluating the access to them. A test of a storage system creates the storage
+ * system and adds the tests specific to it.
+ *
+ * @param <T> The type of the storage system.
+ */
+@PrepareForTest({IdentityTenantUtil.class})
+public abstract class AbstractStorageSystemTest<T extends StorageSystem> extends PowerMockTestCase {
+
+    protected static final String TENANT_DOMAIN = "carbon.super";
+
+    protected T storageSystem;
+
+    @BeforeClass
+    public void setUp() throws Exception {
+
+        StorageSystemUtil.loadMediaProperties();
+        storageSystem = createStorageSystem();
+        MediaServiceDataHolder.getInstance().setMediaMetadataCache(new MediaMetadataCache(1024 * 1024));
+    }
+
+    @BeforeMethod
+    public void mockTenant() {
+
+        mockStatic(IdentityTenantUtil.class);
+        when(IdentityTenantUtil.getTenantId(anyString())).thenReturn(-1234);
+    }
+
+    @AfterClass
+    public void tearDown() throws Exception {
+
+        MediaServiceDataHolder.getInstance().setMediaMetadataCache(null);
+        closeStorageSystem();
+    }
+
+    /**
+     * Create the storage system under test, once for the test class.
+     */
+    protected abstract T createStorageSystem() throws Exception;
+
+    /**
+     * Release the storage system under test once the tests of the class are completed.
+     */
+    protected abstract void closeStorageSystem() throws Exception;
+
+    /**
+     * Verify that the storage system holds no resource, e.g. a database connection, once a download is completed or
+     * an upload is rejected.
+     */
+    protected void assertResourcesReleased() {
+
+    }
+
+    @Test
+    public void testAddAndDownloadProtectedMedia() throws Exception {
+
+        byte[] content = createContent(400 * 1024);
+        String uuid = addMedia(storageSystem, Collections.singletonList(content), null,
+                new FileSecurity(false, Arrays.asList("user-1", "user-2", "user-1")));
+
+        ResolvedMedia resolvedMedia = storageSystem.resolveMedia(uuid, "image", TENANT_DOMAIN);
+        assertNotNull(resolvedMedia);
+        assertEquals(resolvedMedia.getSize(), content.length);
+        assertEquals(resolvedMedia.getETag(), sha256(content));
+        assertEquals(resolvedMedia.getMetadata().getFileSecurity().getAllowedUserIds(),
+                Arrays.asList("user-1", "user-2"));
+        assertTrue(resolvedMedia.getMetadata().isOwnedBy("owner-id"));
+        assertEquals(readContent(storageSystem.getFile(resolvedMedia)), content);
+        assertResourcesReleased();
+
+        assertTrue(storageSystem.isDownloadAllowedForProtectedMedia(uuid, "image", TENANT_DOMAIN, "user-1"));
+        assertTrue(storageSystem.isDownloadAllowedForProtectedMedia(uuid, "image", TENANT_DOMAIN, "user-2"));
+        assertFalse(storageSystem.isDownloadAllowedForProtectedMedia(uuid, "image", TENANT_DOMAIN, "user-3"));
+        assertFalse(storageSystem.isDownloadAllowedForProtectedMedia(uuid, "image", TENANT_DOMAIN, null));
+        assertFalse(storageSystem.isDownloadAllowedForPublicMedia(uuid, "image", TENANT_DOMAIN));
+        assertTrue(storageSystem.isMediaManagementAllowedForEndUser(uuid, "image", TENANT_DOMAIN, "owner-id"));
+        assertFalse(storageSystem.isMediaManagementAllowedForEndUser(uuid, "image", TENANT_DOMAIN, "user-1"));
+        assertEquals(storageSystem.getMediaInformation(uuid, "image", TENANT_DOMAIN).getLinks(),
+                Collections.singletonList("/content/image/" + uuid));
+    }
+
+    @Test
+    public void testPublicMedia() throws Exception {
+
+        String uuid = addMedia(storageSystem, Collections.singletonList(createContent(16)), null,
+                new FileSecurity(true, Collections.<String>emptyList()));
+
+        assertTrue(storageSystem.isDownloadAllowedForPublicMedia(uuid, "image", TENANT_DOMAIN));
+        assertTrue(storageSystem.isDownloadAllowedForProtectedMedia(uuid, "image", TENANT_DOMAIN, "user-1"));
+        assertFalse(storageSystem.isDownloadAllowedForPublicMedia(uuid, "video", TENANT_DOMAIN));
+        assertTrue(storageSystem.resolveMedia(uuid, "image", TENANT_DOMAIN).getMetadata().isPubliclyAccessible());
+    }
+
+    @Test
+    public void testMultipleRepresentations() throws Exception {
+
+        byte[] large = createContent(2048);
+        byte[] small = createContent(128);
+        String uuid = addMedia(storageSystem, Arrays.asList(large, small), Arrays.asList("large", "small"),
+                new FileSecurity(false, Collections.singletonList("user-1"), Collections.singletonList("Marketing"),
+                        Collections.<String>emptyList()));
+
+        ResolvedMedia resolvedMedia = storageSystem.resolveMedia(uuid, "image", TENANT_DOMAIN, "small");
+        assertEquals(resolvedMedia.getSize(), small.length);
+        assertEquals(resolvedMedia.getETag(), sha256(small));
+        assertEquals(readContent(storageSystem.getFile(resolvedMedia)), small);
+        assertEquals(readContent(storageSystem.getFile(uuid, TENANT_DOMAIN, "image")), large);
+        assertNull(storageSystem.resolveMedia(uuid, "image", TENANT_DOMAIN, "medium"));
+        assertEquals(resolvedMedia.getMetadata().getFileSecurity().getAllowedGroups(),
+                Collections.singletonList("Marketing"));
+        assertTrue(resolvedMedia.getMetadata().hasMembershipGrants());
+    }
+
+    @Test
+    public void testMediaExceedingMaximumSizeIsRejected() throws Exception {
+
+        String uuid = UUID.randomUUID().toString();
+        try {
+            storageSystem.addMedia(Collections.<InputStream>singletonList(new ByteArrayInputStream(
+                    createContent((int) StorageSystemUtil.getAllowedMaximumMediaSize() + 1))),
+                    createMetadata(null, new FileSecurity(true, Collections.<String>emptyList())), uuid,
+                    TENANT_DOMAIN);
+            fail("Media exceeding the maximum size was stored.");
+        } catch (StorageSystemClientException e) {
+            // Expected.
+        }
+        assertNull(storageSystem.resolveMedia(uuid, "image", TENANT_DOMAIN));
+        assertResourcesReleased();
+    }
+
+    @Test
+    public void testDeleteMedia() throws Exception {
+
+        String uuid = addMedia(storageSystem, Collections.singletonList(createContent(64)), null,
+                new FileSecurity(false, Collections.singletonList("user-1")));
+        assertNotNull(storageSystem.resolveMedia(uuid, "image", TENANT_DOMAIN));
+
+        storageSystem.deleteMedia(uuid, "image", TENANT_DOMAIN);
+
+        assertNull(storageSystem.resolveMedia(uuid, "image", TENANT_DOMAIN));
+        assertFalse(storageSystem.isDownloadAllowedForProtectedMedia(uuid, "image", TENANT_DOMAIN, "user-1"));
+        try {
+            storageSystem.deleteMedia(uuid, "image", TENANT_DOMAIN);
+            fail("Deleted media was deleted again.");
+        } catch (StorageSystemClientException e) {
+            // Expected.
+        }
+    }
+
+    protected static String addMedia(StorageSystem storageSystem, List<byte[]> contents, List<String> identifiers,
+                                     FileSecurity fileSecurity) throws Exception {
+
+        InputStream[] inputStreams = new InputStream[contents.size()];
+        for (int i = 0; i < contents.size(); i++) {
+            inputStreams[i] = new ByteArrayInputStream(contents.get(i));
+        }
+        return storageSystem.addMedia(Arrays.asList(inputStreams), createMetadata(identifiers, fileSecurity),
+                UUID.randomUUID().toString(), TENANT_DOMAIN);
+    }
+
+    protected static MediaMetadata createMetadata(List<String> identifiers, FileSecurity fileSecurity) {
+
+        MediaMetadata mediaMetadata = new MediaMetadata();
+        mediaMetadata.setFileName("photo.png");
+        mediaMetadata.setFileContentType("image/png");
+        mediaMetadata.setFileTag("profile");
+        mediaMetadata.setResourceOwnerId("owner-id");
+        mediaMetadata.setFileIdentifiers(identifiers);
+        mediaMetadata.setFileSecurity(fileSecurity);
+        return mediaMetadata;
+    }
+
+    protected static byte[] createContent(int size) {
+
+        byte[] content = new byte[size];
+        new Random(size).nextBytes(content);
+        return content;
+    }
+
+    protected static byte[] readContent(DataContent dataContent) throws Exception {
+
+        if (dataContent instanceof FileContent) {
+            return Files.readAllBytes(((FileContent) dataContent).getFile().toPath());
+        }
+        try (InputStream inputStream = ((StreamContent) dataContent).getInputStream()) {
+            return IOUtils.toByteArray(inputStream);
+        }
+    }
+
+    protected static String sha256(byte[] content) throws Exception {
+
+        return new String(Hex.encodeHex(MessageDigest.getInstance("SHA-256").digest(content)));
+    }
+}
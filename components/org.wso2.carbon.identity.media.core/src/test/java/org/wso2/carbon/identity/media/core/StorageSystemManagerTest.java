@@ -25,6 +25,12 @@ import org.wso2.carbon.base.CarbonBaseConstants;
 import org.wso2.carbon.context.PrivilegedCarbonContext;
 import org.wso2.carbon.identity.core.util.IdentityTenantUtil;
 import org.wso2.carbon.identity.core.util.IdentityUtil;
+import org.wso2.carbon.identity.media.core.cache.AuthorizationDecisionCache;
+import org.wso2.carbon.identity.media.core.cache.CacheStatistics;
+import org.wso2.carbon.identity.media.core.cache.MediaMetadataCache;
+import org.wso2.carbon.identity.media.core.cache.MediaMetadataCacheKey;
+import org.wso2.carbon.identity.media.core.cache.UserIdCache;
+import org.wso2.carbon.identity.media.core.cache.UserMembershipCache;
 import org.wso2.carbon.identity.media.core.exception.StorageSystemClientException;
 import org.wso2.carbon.identity.media.core.exception.StorageSystemException;
 import org.wso2.carbon.identity.media.core.exception.StorageSystemServerException;
@@ -35,16 +41,29 @@ import org.wso2.carbon.identity.media.core.jdbc.DatabaseBasedStorageSystemFactor
 import org.wso2.carbon.identity.media.core.model.FileSecurity;
 import org.wso2.carbon.identity.media.core.model.MediaInformation;
 import org.wso2.carbon.identity.media.core.model.MediaMetadata;
+import org.wso2.carbon.identity.media.core.model.ResolvedMedia;
+import org.wso2.carbon.identity.media.core.model.StoredMediaMetadata;
+import org.wso2.carbon.identity.media.core.util.ContentTypeMatcher;
+import org.wso2.carbon.identity.media.core.util.MembershipNames;
+import org.wso2.carbon.identity.media.core.util.StorageSystemConstants;
 import org.wso2.carbon.identity.media.core.util.StorageSystemUtil;
 import org.wso2.carbon.user.core.service.RealmService;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
 
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyList;
@@ -194,6 +213,57 @@ public class StorageSystemManagerTest extends PowerMockTestCase {
                 TestConstants.TENANT_DOMAIN);
     }
 
+    @Test
+    public void testResolveMediaRepresentationUsingFileBasedStorage() throws Exception {
+
+        String carbonHome = System.getProperty(CarbonBaseConstants.CARBON_HOME);
+        Path mediaCarbonHome = Files.createTempDirectory("media-carbon-home");
+        Files.createDirectories(mediaCarbonHome.resolve("repository").resolve("media"));
+        System.setProperty(CarbonBaseConstants.CARBON_HOME, mediaCarbonHome.toString());
+        try {
+            // The media is stored in the pre-created media folder of the temporary CARBON_HOME.
+            StorageSystemUtil.loadMediaProperties();
+            mockStatic(IdentityTenantUtil.class);
+            when(IdentityTenantUtil.getTenantId(anyString())).thenReturn(TestConstants.TENANT_ID);
+            when(fileBasedStorageSystemFactory.getStorageSystem()).thenReturn(new FileBasedStorageSystemImpl());
+
+            List<String> identifiers = Arrays.asList("large", "medium", "small");
+            List<byte[]> contents = Arrays.asList(createContent(4096), createContent(1024), createContent(256));
+            List<InputStream> inputStreams = new ArrayList<>();
+            for (byte[] content : contents) {
+                inputStreams.add(new ByteArrayInputStream(content));
+            }
+            MediaMetadata mediaMetadata = new MediaMetadata();
+            mediaMetadata.setFileContentType(TestConstants.FILE_CONTENT_TYPE);
+            mediaMetadata.setFileName(TestConstants.FILE_NAME);
+            mediaMetadata.setFileTag("user");
+            mediaMetadata.setFileIdentifiers(identifiers);
+            mediaMetadata.setFileSecurity(new FileSecurity(true, new ArrayList<String>()));
+            String id = storageSystemManager.addFile(inputStreams, mediaMetadata, TestConstants.TENANT_DOMAIN);
+
+            for (int i = 0; i < identifiers.size(); i++) {
+                ResolvedMedia resolvedRepresentation = storageSystemManager.resolveMedia(id,
+                        TestConstants.MEDIA_TYPE, TestConstants.TENANT_DOMAIN, identifiers.get(i));
+                Assert.assertNotNull(resolvedRepresentation);
+                Assert.assertTrue(resolvedRepresentation.isFor(id, TestConstants.MEDIA_TYPE,
+                        TestConstants.TENANT_DOMAIN, identifiers.get(i)));
+                Assert.assertEquals(resolvedRepresentation.getSize(), contents.get(i).length);
+                Assert.assertEquals(Files.readAllBytes(resolvedRepresentation.getMediaFile().toPath()),
+                        contents.get(i));
+            }
+            // An unknown representation is not resolved, which the media endpoint serves as not found.
+            Assert.assertNull(storageSystemManager.resolveMedia(id, TestConstants.MEDIA_TYPE,
+                    TestConstants.TENANT_DOMAIN, "unknown"));
+        } finally {
+            if (carbonHome != null) {
+                System.setProperty(CarbonBaseConstants.CARBON_HOME, carbonHome);
+            } else {
+                System.clearProperty(CarbonBaseConstants.CARBON_HOME);
+            }
+            StorageSystemUtil.loadMediaProperties();
+        }
+    }
+
     @Test
     public void testRetrieveMediaInformationUsingFileBasedStorage() throws Exception {
 
@@ -269,6 +339,43 @@ public class StorageSystemManagerTest extends PowerMockTestCase {
         }
     }
 
+    @Test
+    public void testIsDownloadAllowedForProtectedMediaSharedWithGroup() throws Exception {
+
+        mockStatic(StorageSystemUtil.class);
+        when(StorageSystemUtil.getMediaStoreType()).thenReturn(TestConstants.FILE_BASED_MEDIA_STORE);
+
+        FileBasedStorageSystemImpl fileBasedStorageSystem = mock(FileBasedStorageSystemImpl.class);
+        when(fileBasedStorageSystemFactory.getStorageSystem()).thenReturn(fileBasedStorageSystem);
+        when(fileBasedStorageSystem.isDownloadAllowedForProtectedMedia(anyString(), anyString(), anyString(),
+                anyString())).thenReturn(false);
+        when(fileBasedStorageSystem.resolveMedia(anyString(), anyString(), anyString())).thenReturn(
+                buildResolvedMedia(new FileSecurity(false, Collections.<String>emptyList(),
+                        Collections.singletonList("Marketing"), Collections.<String>emptyList())));
+
+        UserMembershipCache userMembershipCache = mediaServiceDataHolder.getUserMembershipCache();
+        try {
+            startTenantFlow();
+            mediaServiceDataHolder.setUserMembershipCache(new UserMembershipCache(60, 100));
+            mediaServiceDataHolder.getUserMembershipCache().get(TestConstants.TENANT_ID, "member",
+                    new UserMembershipCache.Loader() {
+                        @Override
+                        public Set<String> load(String username) {
+
+                            return Collections.singleton(MembershipNames.ofGroup("Marketing"));
+                        }
+                    });
+
+            Assert.assertTrue(storageSystemManager.isDownloadAllowedForProtectedMedia(TestConstants.MEDIA_UUID,
+                    TestConstants.MEDIA_TYPE, TestConstants.TENANT_DOMAIN, "member"));
+            Assert.assertFalse(storageSystemManager.isDownloadAllowedForProtectedMedia(TestConstants.MEDIA_UUID,
+                    TestConstants.MEDIA_TYPE, TestConstants.TENANT_DOMAIN, TestConstants.USER_ID));
+        } finally {
+            mediaServiceDataHolder.setUserMembershipCache(userMembershipCache);
+            PrivilegedCarbonContext.endTenantFlow();
+        }
+    }
+
     @Test(expectedExceptions = StorageSystemServerException.class)
     public void testIsDownloadAllowedForProtectedMediaWithIncorrectStorageSystemFactory() throws Exception {
 
@@ -309,13 +416,39 @@ public class StorageSystemManagerTest extends PowerMockTestCase {
                 TestConstants.TENANT_DOMAIN, TestConstants.USER_ID);
     }
 
+    @Test
+    public void testIsDownloadAllowedForResolvedPublicMedia() {
+
+        Assert.assertTrue(storageSystemManager.isDownloadAllowedForPublicMedia(
+                buildResolvedMedia(new FileSecurity(true))));
+        Assert.assertFalse(storageSystemManager.isDownloadAllowedForPublicMedia(
+                buildResolvedMedia(new FileSecurity(false))));
+        Assert.assertFalse(storageSystemManager.isDownloadAllowedForPublicMedia(null));
+    }
+
+    @Test
+    public void testIsDownloadAllowedForResolvedProtectedMedia() throws Exception {
+
+        try {
+            startTenantFlow();
+            Assert.assertTrue(storageSystemManager.isDownloadAllowedForProtectedMedia(
+                    buildResolvedMedia(new FileSecurity(true)), TestConstants.USER_ID));
+            Assert.assertFalse(storageSystemManager.isDownloadAllowedForProtectedMedia(
+                    buildResolvedMedia(new FileSecurity(false)), TestConstants.USER_ID));
+            Assert.assertFalse(storageSystemManager.isDownloadAllowedForProtectedMedia(null,
+                    TestConstants.USER_ID));
+        } finally {
+            PrivilegedCarbonContext.endTenantFlow();
+        }
+    }
+
     @Test
     public void testValidateMediaTypePathParam() throws Exception {
 
         mockStatic(StorageSystemUtil.class);
         HashMap<String, List<String>> contentTypes = new HashMap<>();
         contentTypes.put(TestConstants.MEDIA_TYPE, null);
-        when(StorageSystemUtil.getContentTypes()).thenReturn(contentTypes);
+        when(StorageSystemUtil.getContentTypeMatcher()).thenReturn(ContentTypeMatcher.compile(contentTypes));
 
         storageSystemManager.validateMediaTypePathParam(TestConstants.MEDIA_TYPE);
     }
@@ -325,7 +458,7 @@ public class StorageSystemManagerTest extends PowerMockTestCase {
 
         mockStatic(StorageSystemUtil.class);
         HashMap<String, List<String>> contentTypes = new HashMap<>();
-        when(StorageSystemUtil.getContentTypes()).thenReturn(contentTypes);
+        when(StorageSystemUtil.getContentTypeMatcher()).thenReturn(ContentTypeMatcher.compile(contentTypes));
 
         storageSystemManager.validateMediaTypePathParam(TestConstants.MEDIA_TYPE);
     }
@@ -336,7 +469,7 @@ public class StorageSystemManagerTest extends PowerMockTestCase {
         mockStatic(StorageSystemUtil.class);
         HashMap<String, List<String>> contentTypes = new HashMap<>();
         contentTypes.put(TestConstants.MEDIA_TYPE, null);
-        when(StorageSystemUtil.getContentTypes()).thenReturn(contentTypes);
+        when(StorageSystemUtil.getContentTypeMatcher()).thenReturn(ContentTypeMatcher.compile(contentTypes));
 
         storageSystemManager.validateMediaTypePathParam(TestConstants.INVALID_MEDIA_TYPE_PATH_PARAM);
     }
@@ -349,7 +482,7 @@ public class StorageSystemManagerTest extends PowerMockTestCase {
         List<String> contentSubTypes = new ArrayList<>();
         contentSubTypes.add(TestConstants.CONTENT_SUB_TYPE);
         contentTypes.put(TestConstants.MEDIA_TYPE, contentSubTypes);
-        when(StorageSystemUtil.getContentTypes()).thenReturn(contentTypes);
+        when(StorageSystemUtil.getContentTypeMatcher()).thenReturn(ContentTypeMatcher.compile(contentTypes));
 
         storageSystemManager.validateFileUploadMediaTypes(TestConstants.MEDIA_TYPE, TestConstants.CONTENT_SUB_TYPE);
     }
@@ -362,7 +495,7 @@ public class StorageSystemManagerTest extends PowerMockTestCase {
         List<String> contentSubTypes = new ArrayList<>();
         contentSubTypes.add(TestConstants.CONTENT_SUB_TYPE);
         contentTypes.put(TestConstants.MEDIA_TYPE, contentSubTypes);
-        when(StorageSystemUtil.getContentTypes()).thenReturn(contentTypes);
+        when(StorageSystemUtil.getContentTypeMatcher()).thenReturn(ContentTypeMatcher.compile(contentTypes));
 
         storageSystemManager.validateFileUploadMediaTypes(TestConstants.INVALID_MEDIA_TYPE,
                 TestConstants.CONTENT_SUB_TYPE);
@@ -372,7 +505,7 @@ public class StorageSystemManagerTest extends PowerMockTestCase {
     public void testValidateFileUploadMediaTypesForNoConfiguredContentTypes() throws Exception {
 
         mockStatic(StorageSystemUtil.class);
-        when(StorageSystemUtil.getContentTypes()).thenReturn(null);
+        when(StorageSystemUtil.getContentTypeMatcher()).thenReturn(ContentTypeMatcher.compile(null));
 
         storageSystemManager.validateFileUploadMediaTypes(TestConstants.MEDIA_TYPE, TestConstants.CONTENT_SUB_TYPE);
     }
@@ -385,7 +518,7 @@ public class StorageSystemManagerTest extends PowerMockTestCase {
         List<String> contentSubTypes = new ArrayList<>();
         contentSubTypes.add(TestConstants.CONTENT_SUB_TYPE);
         contentTypes.put(TestConstants.MEDIA_TYPE, contentSubTypes);
-        when(StorageSystemUtil.getContentTypes()).thenReturn(contentTypes);
+        when(StorageSystemUtil.getContentTypeMatcher()).thenReturn(ContentTypeMatcher.compile(contentTypes));
 
         storageSystemManager.validateFileUploadMediaTypes(TestConstants.MEDIA_TYPE,
                 TestConstants.INVALID_CONTENT_SUB_TYPE);
@@ -397,7 +530,7 @@ public class StorageSystemManagerTest extends PowerMockTestCase {
         mockStatic(StorageSystemUtil.class);
         HashMap<String, List<String>> contentTypes = new HashMap<>();
         contentTypes.put(TestConstants.MEDIA_TYPE, null);
-        when(StorageSystemUtil.getContentTypes()).thenReturn(contentTypes);
+        when(StorageSystemUtil.getContentTypeMatcher()).thenReturn(ContentTypeMatcher.compile(contentTypes));
 
         storageSystemManager.validateFileUploadMediaTypes(TestConstants.MEDIA_TYPE, TestConstants.CONTENT_SUB_TYPE);
     }
@@ -409,11 +542,55 @@ public class StorageSystemManagerTest extends PowerMockTestCase {
         File mediaFile = new File(classLoader.getResource(TestConstants.FILE_NAME).getFile());
         InputStream fileInputStream = new FileInputStream(mediaFile);
         mockStatic(StorageSystemUtil.class);
-        when(StorageSystemUtil.getMediaMaximumSize()).thenReturn(100);
+        when(StorageSystemUtil.getAllowedMaximumMediaSize()).thenReturn(100L);
 
         storageSystemManager.validateMediaSize(fileInputStream);
     }
 
+    @Test
+    public void testValidateMediaSize() throws Exception {
+
+        byte[] content = createContent(100);
+        InputStream inputStream = new ByteArrayInputStream(content);
+        mockStatic(StorageSystemUtil.class);
+        when(StorageSystemUtil.getAllowedMaximumMediaSize()).thenReturn(100L);
+
+        storageSystemManager.validateMediaSize(inputStream);
+        // The media is read again from its start when it is stored.
+        Assert.assertEquals(inputStream.read(), content[0] & 0xff);
+        Assert.assertEquals(inputStream.available(), content.length - 1);
+    }
+
+    @Test
+    public void testGetCacheStatistics() throws Exception {
+
+        MediaMetadataCache mediaMetadataCache = mediaServiceDataHolder.getMediaMetadataCache();
+        UserIdCache userIdCache = mediaServiceDataHolder.getUserIdCache();
+        AuthorizationDecisionCache authorizationDecisionCache = mediaServiceDataHolder.getAuthorizationDecisionCache();
+        UserMembershipCache userMembershipCache = mediaServiceDataHolder.getUserMembershipCache();
+        try {
+            mediaServiceDataHolder.setMediaMetadataCache(new MediaMetadataCache(1024));
+            mediaServiceDataHolder.setUserIdCache(new UserIdCache(60, 10, 100));
+            mediaServiceDataHolder.setAuthorizationDecisionCache(null);
+            mediaServiceDataHolder.setUserMembershipCache(null);
+            mediaServiceDataHolder.getMediaMetadataCache().get(new MediaMetadataCacheKey(TestConstants.TENANT_ID,
+                    TestConstants.MEDIA_TYPE, TestConstants.MEDIA_UUID));
+
+            Map<String, CacheStatistics> cacheStatistics = storageSystemManager.getCacheStatistics();
+
+            // Disabled caches are left out.
+            Assert.assertEquals(new ArrayList<>(cacheStatistics.keySet()),
+                    Arrays.asList(StorageSystemConstants.METADATA_CACHE, StorageSystemConstants.USER_ID_CACHE));
+            Assert.assertEquals(cacheStatistics.get(StorageSystemConstants.METADATA_CACHE).getMissCount(), 1);
+            Assert.assertEquals(cacheStatistics.get(StorageSystemConstants.USER_ID_CACHE).getSize(), 0);
+        } finally {
+            mediaServiceDataHolder.setMediaMetadataCache(mediaMetadataCache);
+            mediaServiceDataHolder.setUserIdCache(userIdCache);
+            mediaServiceDataHolder.setAuthorizationDecisionCache(authorizationDecisionCache);
+            mediaServiceDataHolder.setUserMembershipCache(userMembershipCache);
+        }
+    }
+
     @Test
     public void testIsMediaDeletedUsingFileBasedStorage() throws Exception {
 
@@ -437,6 +614,21 @@ public class StorageSystemManagerTest extends PowerMockTestCase {
                 .TENANT_DOMAIN);
     }
 
+    private static ResolvedMedia buildResolvedMedia(FileSecurity fileSecurity) {
+
+        StoredMediaMetadata metadata = new StoredMediaMetadata(null, TestConstants.MEDIA_TYPE + "/" +
+                TestConstants.CONTENT_SUB_TYPE, TestConstants.USER_ID, fileSecurity, null, 0);
+        return new ResolvedMedia(TestConstants.MEDIA_UUID, TestConstants.MEDIA_TYPE, TestConstants.TENANT_DOMAIN,
+                null, 0, 0, null, metadata);
+    }
+
+    private static byte[] createContent(int size) {
+
+        byte[] content = new byte[size];
+        new Random().nextBytes(content);
+        return content;
+    }
+
     private static void mockRealmService() {
 
         RealmService mockRealmService = mock(RealmService.class);
@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2020, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wso2.carbon.identity.media.core.cache;
+
+import org.testng.annotations.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+public class AuthorizationDecisionCacheTest {
+
+    private static final int TENANT_ID = -1234;
+    private static final String VIEW_PERMISSION = "permission/admin/manage/identity/media/view";
+    private static final String ACTION = "ui.execute";
+
+    @Test
+    public void testDecisionsAreCachedPerUserAndPermission() throws Exception {
+
+        AuthorizationDecisionCache cache = new AuthorizationDecisionCache(30, 100);
+        CountingLoader loader = new CountingLoader("admin");
+
+        assertTrue(cache.isAuthorized(TENANT_ID, "admin", VIEW_PERMISSION, ACTION, loader));
+        assertTrue(cache.isAuthorized(TENANT_ID, "admin", VIEW_PERMISSION, ACTION, loader));
+        assertFalse(cache.isAuthorized(TENANT_ID, "alice", VIEW_PERMISSION, ACTION, loader));
+        assertFalse(cache.isAuthorized(TENANT_ID, "alice", VIEW_PERMISSION, ACTION, loader));
+        assertTrue(cache.isAuthorized(TENANT_ID, "admin", VIEW_PERMISSION, "ui.other", loader));
+        assertEquals(loader.count.get(), 3);
+
+        CacheStatistics statistics = cache.getStatistics();
+        assertEquals(statistics.getHitCount(), 2);
+        assertEquals(statistics.getMissCount(), 3);
+    }
+
+    @Test
+    public void testInvalidateUser() throws Exception {
+
+        AuthorizationDecisionCache cache = new AuthorizationDecisionCache(30, 100);
+        CountingLoader loader = new CountingLoader("admin");
+        cache.isAuthorized(TENANT_ID, "admin", VIEW_PERMISSION, ACTION, loader);
+        cache.isAuthorized(TENANT_ID, "alice", VIEW_PERMISSION, ACTION, loader);
+
+        cache.invalidateUser(TENANT_ID, "admin");
+        cache.isAuthorized(TENANT_ID, "admin", VIEW_PERMISSION, ACTION, loader);
+        cache.isAuthorized(TENANT_ID, "alice", VIEW_PERMISSION, ACTION, loader);
+        assertEquals(loader.count.get(), 3);
+    }
+
+    @Test
+    public void testExpiredDecisionsAreReevaluated() throws Exception {
+
+        AuthorizationDecisionCache cache = new AuthorizationDecisionCache(1, 100);
+        CountingLoader loader = new CountingLoader("admin");
+        cache.isAuthorized(TENANT_ID, "admin", VIEW_PERMISSION, ACTION, loader);
+        Thread.sleep(1100);
+        cache.isAuthorized(TENANT_ID, "admin", VIEW_PERMISSION, ACTION, loader);
+
+        assertEquals(loader.count.get(), 2);
+        assertEquals(cache.getStatistics().getExpirationCount(), 1);
+    }
+
+    private static class CountingLoader implements AuthorizationDecisionCache.Loader {
+
+        private final String authorizedUsername;
+        private final AtomicInteger count = new AtomicInteger();
+
+        CountingLoader(String authorizedUsername) {
+
+            this.authorizedUsername = authorizedUsername;
+        }
+
+        @Override
+        public boolean isAuthorized(String username, String permission, String action) {
+
+            count.incrementAndGet();
+            return authorizedUsername.equals(username);
+        }
+    }
+}
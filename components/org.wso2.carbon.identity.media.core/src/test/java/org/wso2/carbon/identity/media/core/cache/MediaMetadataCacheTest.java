@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) 2020, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wso2.carbon.identity.media.core.cache;
+
+import org.testng.annotations.Test;
+import org.wso2.carbon.identity.media.core.model.StoredMediaMetadata;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+public class MediaMetadataCacheTest {
+
+    private static final int TENANT_ID = -1234;
+    private static final String TYPE = "image";
+
+    @Test
+    public void testGetAndInvalidate() {
+
+        MediaMetadataCache cache = new MediaMetadataCache(16 * 1024);
+        MediaMetadataCacheKey key = new MediaMetadataCacheKey(TENANT_ID, TYPE, "20200101-id");
+        StoredMediaMetadata metadata = createMetadata(100);
+
+        assertNull(cache.get(key));
+        cache.put(key, metadata, cache.getGeneration(key));
+        assertSame(cache.get(new MediaMetadataCacheKey(TENANT_ID, TYPE, "20200101-id")), metadata);
+
+        cache.invalidate(key);
+        assertNull(cache.get(key));
+
+        CacheStatistics statistics = cache.getStatistics();
+        assertEquals(statistics.getHitCount(), 1);
+        assertEquals(statistics.getMissCount(), 2);
+        assertEquals(statistics.getSize(), 0);
+    }
+
+    @Test
+    public void testWeightBoundIsEnforced() {
+
+        // Each of the 16 segments can hold 100 units of weight.
+        MediaMetadataCache cache = new MediaMetadataCache(1600);
+        for (int i = 0; i < 200; i++) {
+            MediaMetadataCacheKey key = new MediaMetadataCacheKey(TENANT_ID, TYPE, "id-" + i);
+            cache.put(key, createMetadata(60), cache.getGeneration(key));
+        }
+
+        CacheStatistics statistics = cache.getStatistics();
+        assertTrue(statistics.getWeight() <= 1600);
+        assertTrue(statistics.getEvictionCount() > 0);
+        assertEquals(statistics.getSize() + statistics.getEvictionCount(), 200);
+    }
+
+    @Test
+    public void testOversizedMetadataIsNotCached() {
+
+        MediaMetadataCache cache = new MediaMetadataCache(1600);
+        MediaMetadataCacheKey key = new MediaMetadataCacheKey(TENANT_ID, TYPE, "20200101-large");
+        cache.put(key, createMetadata(1000), cache.getGeneration(key));
+
+        assertNull(cache.get(key));
+    }
+
+    @Test
+    public void testMetadataReadBeforeInvalidationIsNotCached() {
+
+        MediaMetadataCache cache = new MediaMetadataCache(16 * 1024);
+        MediaMetadataCacheKey key = new MediaMetadataCacheKey(TENANT_ID, TYPE, "20200101-id");
+
+        // A read that started before the media was deleted must not cache the metadata it read.
+        long generation = cache.getGeneration(key);
+        cache.invalidate(key);
+        cache.put(key, createMetadata(100), generation);
+        assertNull(cache.get(key));
+
+        StoredMediaMetadata metadata = createMetadata(100);
+        cache.put(key, metadata, cache.getGeneration(key));
+        assertSame(cache.get(key), metadata);
+    }
+
+    private StoredMediaMetadata createMetadata(long weight) {
+
+        return new StoredMediaMetadata(new Object(), "image/png", "owner", null, null, weight);
+    }
+}
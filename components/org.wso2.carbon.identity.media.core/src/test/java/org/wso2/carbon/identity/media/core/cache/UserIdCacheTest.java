@@ -0,0 +1,212 @@
+/*
+ * Copyright (c) 2020, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wso2.carbon.identity.media.core.cache;
+
+import org.testng.annotations.Test;
+import org.wso2.carbon.identity.media.core.exception.StorageSystemServerException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+public class UserIdCacheTest {
+
+    private static final int TENANT_ID = -1234;
+    private static final int OTHER_TENANT_ID = 1;
+
+    @Test
+    public void testUserIdIsCachedPerTenant() throws Exception {
+
+        UserIdCache cache = new UserIdCache(300, 30, 100);
+        CountingLoader loader = new CountingLoader("user-id");
+
+        assertEquals(cache.get(TENANT_ID, "alice", loader), "user-id");
+        assertEquals(cache.get(TENANT_ID, "alice", loader), "user-id");
+        assertEquals(loader.count.get(), 1);
+
+        assertEquals(cache.get(OTHER_TENANT_ID, "alice", loader), "user-id");
+        assertEquals(loader.count.get(), 2);
+
+        CacheStatistics statistics = cache.getStatistics();
+        assertEquals(statistics.getHitCount(), 1);
+        assertEquals(statistics.getMissCount(), 2);
+        assertEquals(statistics.getSize(), 2);
+    }
+
+    @Test
+    public void testUnknownUsernameIsCachedForNegativeTimeToLive() throws Exception {
+
+        UserIdCache cache = new UserIdCache(300, 30, 100);
+        CountingLoader loader = new CountingLoader(null);
+        assertNull(cache.get(TENANT_ID, "nobody", loader));
+        assertNull(cache.get(TENANT_ID, "nobody", loader));
+        assertEquals(loader.count.get(), 1);
+
+        UserIdCache noNegativeCache = new UserIdCache(300, 0, 100);
+        CountingLoader uncachedLoader = new CountingLoader(null);
+        noNegativeCache.get(TENANT_ID, "nobody", uncachedLoader);
+        noNegativeCache.get(TENANT_ID, "nobody", uncachedLoader);
+        assertEquals(uncachedLoader.count.get(), 2);
+    }
+
+    @Test
+    public void testInvalidation() throws Exception {
+
+        UserIdCache cache = new UserIdCache(300, 30, 100);
+        CountingLoader loader = new CountingLoader("user-id");
+        cache.get(TENANT_ID, "alice", loader);
+        cache.get(OTHER_TENANT_ID, "alice", loader);
+
+        cache.invalidate(TENANT_ID, "alice");
+        cache.get(TENANT_ID, "alice", loader);
+        assertEquals(loader.count.get(), 3);
+
+        cache.invalidateUserId(TENANT_ID, "user-id");
+        cache.get(TENANT_ID, "alice", loader);
+        cache.get(OTHER_TENANT_ID, "alice", loader);
+        assertEquals(loader.count.get(), 4);
+
+        cache.invalidateTenant(OTHER_TENANT_ID);
+        cache.get(OTHER_TENANT_ID, "alice", loader);
+        assertEquals(loader.count.get(), 5);
+    }
+
+    @Test(expectedExceptions = StorageSystemServerException.class)
+    public void testFailedLoadIsNotCached() throws Exception {
+
+        UserIdCache cache = new UserIdCache(300, 30, 100);
+        final AtomicInteger count = new AtomicInteger();
+        UserIdCache.Loader loader = new UserIdCache.Loader() {
+            @Override
+            public String load(String username) throws StorageSystemServerException {
+
+                count.incrementAndGet();
+                throw new StorageSystemServerException("User store unavailable.");
+            }
+        };
+        try {
+            cache.get(TENANT_ID, "alice", loader);
+        } catch (StorageSystemServerException e) {
+            assertEquals(cache.getStatistics().getSize(), 0);
+        }
+        cache.get(TENANT_ID, "alice", loader);
+    }
+
+    @Test
+    public void testMaximumEntriesIsEnforced() throws Exception {
+
+        UserIdCache cache = new UserIdCache(300, 30, 10);
+        CountingLoader loader = new CountingLoader("user-id");
+        for (int i = 0; i < 50; i++) {
+            cache.get(TENANT_ID, "user-" + i, loader);
+        }
+
+        CacheStatistics statistics = cache.getStatistics();
+        assertTrue(statistics.getSize() <= 10);
+        assertEquals(statistics.getSize() + statistics.getEvictionCount(), 50);
+    }
+
+    @Test
+    public void testEntriesAreEvictedInBatches() throws Exception {
+
+        UserIdCache cache = new UserIdCache(300, 30, 100);
+        CountingLoader loader = new CountingLoader("user-id");
+        for (int i = 0; i <= 100; i++) {
+            cache.get(TENANT_ID, "user-" + i, loader);
+        }
+        assertEquals(cache.getStatistics().getSize(), 90);
+        assertEquals(cache.getStatistics().getEvictionCount(), 11);
+
+        // The cache is below the maximum after a batch eviction, so the following puts don't evict.
+        for (int i = 101; i < 111; i++) {
+            cache.get(TENANT_ID, "user-" + i, loader);
+        }
+        assertEquals(cache.getStatistics().getSize(), 100);
+        assertEquals(cache.getStatistics().getEvictionCount(), 11);
+    }
+
+    @Test
+    public void testConcurrentMissesAreCoalesced() throws Exception {
+
+        final UserIdCache cache = new UserIdCache(300, 30, 100);
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger count = new AtomicInteger();
+        final UserIdCache.Loader loader = new UserIdCache.Loader() {
+            @Override
+            public String load(String username) throws StorageSystemServerException {
+
+                count.incrementAndGet();
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return "user-id";
+            }
+        };
+
+        ExecutorService executorService = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                results.add(executorService.submit(new Callable<String>() {
+                    @Override
+                    public String call() throws Exception {
+
+                        return cache.get(TENANT_ID, "alice", loader);
+                    }
+                }));
+            }
+            Thread.sleep(200);
+            release.countDown();
+            for (Future<String> result : results) {
+                assertEquals(result.get(5, TimeUnit.SECONDS), "user-id");
+            }
+        } finally {
+            executorService.shutdownNow();
+        }
+        assertEquals(count.get(), 1);
+    }
+
+    private static class CountingLoader implements UserIdCache.Loader {
+
+        private final String userId;
+        private final AtomicInteger count = new AtomicInteger();
+
+        CountingLoader(String userId) {
+
+            this.userId = userId;
+        }
+
+        @Override
+        public String load(String username) {
+
+            count.incrementAndGet();
+            return userId;
+        }
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) 2020, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wso2.carbon.identity.media.core.cache;
+
+import org.testng.annotations.Test;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.testng.Assert.assertEquals;
+
+public class UserMembershipCacheTest {
+
+    private static final int TENANT_ID = -1234;
+    private static final int OTHER_TENANT_ID = 1;
+
+    @Test
+    public void testMembershipsAreCachedPerTenant() throws Exception {
+
+        UserMembershipCache cache = new UserMembershipCache(300, 100);
+        CountingLoader loader = new CountingLoader(Collections.singleton("primary/marketing"));
+
+        assertEquals(cache.get(TENANT_ID, "alice", loader), Collections.singleton("primary/marketing"));
+        assertEquals(cache.get(TENANT_ID, "alice", loader), Collections.singleton("primary/marketing"));
+        assertEquals(loader.count.get(), 1);
+
+        cache.get(OTHER_TENANT_ID, "alice", loader);
+        assertEquals(loader.count.get(), 2);
+        assertEquals(cache.getStatistics().getHitCount(), 1);
+        assertEquals(cache.getStatistics().getSize(), 2);
+    }
+
+    @Test
+    public void testInvalidation() throws Exception {
+
+        UserMembershipCache cache = new UserMembershipCache(300, 100);
+        CountingLoader loader = new CountingLoader(Collections.<String>emptySet());
+        cache.get(TENANT_ID, "alice", loader);
+        cache.get(TENANT_ID, "bob", loader);
+        cache.get(OTHER_TENANT_ID, "alice", loader);
+
+        cache.invalidate(TENANT_ID, "alice");
+        cache.get(TENANT_ID, "alice", loader);
+        cache.get(TENANT_ID, "bob", loader);
+        assertEquals(loader.count.get(), 4);
+
+        cache.invalidateTenant(TENANT_ID);
+        cache.get(TENANT_ID, "alice", loader);
+        cache.get(TENANT_ID, "bob", loader);
+        cache.get(OTHER_TENANT_ID, "alice", loader);
+        assertEquals(loader.count.get(), 6);
+
+        cache.invalidateAll();
+        assertEquals(cache.getStatistics().getSize(), 0);
+    }
+
+    private static class CountingLoader implements UserMembershipCache.Loader {
+
+        private final Set<String> memberships;
+        private final AtomicInteger count = new AtomicInteger();
+
+        CountingLoader(Set<String> memberships) {
+
+            this.memberships = memberships;
+        }
+
+        @Override
+        public Set<String> load(String username) {
+
+            count.incrementAndGet();
+            return memberships;
+        }
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2020, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wso2.carbon.identity.media.core.file;
+
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.testng.Reporter;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+import org.wso2.carbon.identity.media.core.model.FileSecurity;
+import org.wso2.carbon.identity.media.core.model.StoredMediaMetadata;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * Evaluates the access of allowed and other users for allowed user lists of increasing size, for both the JSON and
+ * the binary metadata. The lookup times are recorded in the test report.
+ */
+public class AccessControlEvaluationTest {
+
+    private static final int LOOKUPS = 20000;
+
+    @DataProvider(name = "aclSizes")
+    public Object[][] aclSizes() {
+
+        return new Object[][]{{10}, {100}, {1000}, {10000}, {100000}};
+    }
+
+    @Test(dataProvider = "aclSizes")
+    public void testAccessEvaluation(int aclSize) throws Exception {
+
+        List<String> allowedUserIds = new ArrayList<>(aclSize);
+        List<String> otherUserIds = new ArrayList<>(aclSize);
+        for (int i = 0; i < aclSize; i++) {
+            allowedUserIds.add(UUID.randomUUID().toString());
+            otherUserIds.add(UUID.randomUUID().toString());
+        }
+
+        StoredMediaMetadata jsonMetadata = new StoredMediaMetadata(null, "image/png", "owner-id",
+                new FileSecurity(false, Collections.unmodifiableList(allowedUserIds)), null, 0);
+        JSONObject security = new JSONObject();
+        security.put("allowedAll", false);
+        JSONArray allowedUserIdArray = new JSONArray();
+        allowedUserIdArray.addAll(allowedUserIds);
+        security.put("allowedUserIds", allowedUserIdArray);
+        JSONObject metadata = new JSONObject();
+        metadata.put("resourceOwnerId", "owner-id");
+        metadata.put("security", security);
+        StoredMediaMetadata binaryMetadata = BinaryMetadataCodec.decode(BinaryMetadataCodec.encode(metadata), 0);
+
+        for (StoredMediaMetadata storedMediaMetadata : new StoredMediaMetadata[]{jsonMetadata, binaryMetadata}) {
+            for (int i = 0; i < aclSize; i++) {
+                assertTrue(storedMediaMetadata.isAccessAllowed(allowedUserIds.get(i)), allowedUserIds.get(i));
+                assertFalse(storedMediaMetadata.isAccessAllowed(otherUserIds.get(i)), otherUserIds.get(i));
+            }
+        }
+
+        // Warm up before measuring.
+        measure(jsonMetadata, allowedUserIds, otherUserIds);
+        measure(binaryMetadata, allowedUserIds, otherUserIds);
+        Reporter.log(String.format("ACL size %d: JSON metadata %d ns/lookup, binary metadata %d ns/lookup", aclSize,
+                measure(jsonMetadata, allowedUserIds, otherUserIds),
+                measure(binaryMetadata, allowedUserIds, otherUserIds)));
+    }
+
+    private static long measure(StoredMediaMetadata metadata, List<String> allowedUserIds,
+                                List<String> otherUserIds) {
+
+        int allowed = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < LOOKUPS; i++) {
+            List<String> userIds = i % 2 == 0 ? allowedUserIds : otherUserIds;
+            if (metadata.isAccessAllowed(userIds.get(i % userIds.size()))) {
+                allowed++;
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        assertTrue(allowed == LOOKUPS / 2);
+        return elapsed / LOOKUPS;
+    }
+}
@@ -0,0 +1,245 @@
+/*
+ * Copyright (c) 2020, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wso2.carbon.identity.media.core.file;
+
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.testng.annotations.Test;
+import org.wso2.carbon.identity.media.core.model.FileSecurity;
+import org.wso2.carbon.identity.media.core.model.StoredMediaMetadata;
+import org.wso2.carbon.identity.media.core.util.MembershipNames;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+public class BinaryMetadataCodecTest {
+
+    @Test
+    public void testRoundTrip() throws Exception {
+
+        JSONObject metadata = createMetadata(false, "user-3", "user-1", "\u00e9l\u00e8ve", "user-2", "user-1");
+
+        StoredMediaMetadata decoded = BinaryMetadataCodec.decode(BinaryMetadataCodec.encode(metadata), 0);
+
+        assertEquals(decoded.getContentType(), "image/png");
+        assertEquals(decoded.getContentHash(), "abc123");
+        assertEquals(decoded.getSize(), 1024L);
+        assertEquals(decoded.getLastModified(), 1577836800000L);
+        assertEquals(decoded.getResourceOwnerId(), "owner-id");
+        assertEquals(decoded.getRepresentations().size(), 2);
+        assertEquals(decoded.getRepresentation("small").getSize(), 128L);
+        assertEquals(decoded.getRepresentation("small").getContentType(), "image/jpeg");
+        assertFalse(decoded.getFileSecurity().isAllowedAll());
+        assertEquals(decoded.getFileSecurity().getAllowedUserIds(),
+                Arrays.asList("user-1", "user-2", "user-3", "\u00e9l\u00e8ve"));
+
+        JSONObject rendered = (JSONObject) decoded.getRawMetadata();
+        assertEquals(rendered.get("name"), "photo.png");
+        assertEquals(rendered.get("tag"), "profile");
+        assertEquals(((JSONArray) rendered.get("files")).size(), 2);
+        assertEquals(((JSONObject) rendered.get("security")).get("allowedAll"), false);
+    }
+
+    @Test
+    public void testSecurityEvaluationOnRecord() throws Exception {
+
+        StoredMediaMetadata decoded = BinaryMetadataCodec.decode(BinaryMetadataCodec.encode(
+                createMetadata(false, "user-3", "user-1", "\u00e9l\u00e8ve", "user-10", "\uD83D\uDE00")), 0);
+
+        assertTrue(decoded.isOwnedBy("owner-id"));
+        assertFalse(decoded.isOwnedBy("owner-i"));
+        assertFalse(decoded.isOwnedBy("owner-idx"));
+        assertFalse(decoded.isOwnedBy(null));
+        assertFalse(decoded.isPubliclyAccessible());
+        for (String userId : Arrays.asList("user-3", "user-1", "\u00e9l\u00e8ve", "user-10", "\uD83D\uDE00")) {
+            assertTrue(decoded.isAccessAllowed(userId), userId);
+        }
+        for (String userId : Arrays.asList("user-2", "user-", "user-100", "eleve", "", null)) {
+            assertFalse(decoded.isAccessAllowed(userId), String.valueOf(userId));
+        }
+
+        StoredMediaMetadata publicMedia = BinaryMetadataCodec.decode(BinaryMetadataCodec.encode(
+                createMetadata(true)), 0);
+        assertTrue(publicMedia.isPubliclyAccessible());
+        assertTrue(publicMedia.isAccessAllowed("anyone"));
+
+        JSONObject unsecured = createMetadata(false);
+        unsecured.remove("security");
+        unsecured.remove("resourceOwnerId");
+        StoredMediaMetadata unsecuredMedia = BinaryMetadataCodec.decode(BinaryMetadataCodec.encode(unsecured), 0);
+        assertFalse(unsecuredMedia.isAccessAllowed("user-1"));
+        assertFalse(unsecuredMedia.isOwnedBy("owner-id"));
+        assertNull(unsecuredMedia.getFileSecurity());
+        assertNull(unsecuredMedia.getResourceOwnerId());
+    }
+
+    @Test
+    public void testGroupAndRoleGrants() throws Exception {
+
+        JSONObject metadata = createMetadata(false, "user-1");
+        JSONObject security = (JSONObject) metadata.get("security");
+        security.put("allowedGroups", createArray("Marketing", "SECONDARY/sales"));
+        security.put("allowedRoles", createArray("brand-managers", "Application/console"));
+        StoredMediaMetadata jsonMetadata = new StoredMediaMetadata(metadata, "image/png", "owner-id",
+                new FileSecurity(false, Collections.singletonList("user-1"), Arrays.asList("Marketing",
+                        "SECONDARY/sales"), Arrays.asList("brand-managers", "Application/console")), "abc123", 0);
+        StoredMediaMetadata decoded = BinaryMetadataCodec.decode(BinaryMetadataCodec.encode(metadata), 0);
+
+        assertEquals(decoded.getFileSecurity().getAllowedGroups(), Arrays.asList("Marketing", "SECONDARY/sales"));
+        assertEquals(decoded.getFileSecurity().getAllowedRoles(),
+                Arrays.asList("brand-managers", "Application/console"));
+        JSONObject rendered = (JSONObject) ((JSONObject) decoded.getRawMetadata()).get("security");
+        assertEquals(rendered.get("allowedGroups"), createArray("Marketing", "SECONDARY/sales"));
+
+        for (StoredMediaMetadata storedMetadata : Arrays.asList(jsonMetadata, decoded)) {
+            assertTrue(storedMetadata.hasMembershipGrants());
+            assertTrue(storedMetadata.isAccessAllowedForMemberships(memberships("marketing")));
+            assertTrue(storedMetadata.isAccessAllowedForMemberships(memberships("Internal/everyone",
+                    "SECONDARY/Sales")));
+            assertTrue(storedMetadata.isAccessAllowedForMemberships(memberships("Internal/brand-managers")));
+            assertTrue(storedMetadata.isAccessAllowedForMemberships(memberships("Application/console")));
+            // Names resolve to different domains for groups and roles.
+            assertFalse(storedMetadata.isAccessAllowedForMemberships(memberships("brand-managers")));
+            assertFalse(storedMetadata.isAccessAllowedForMemberships(memberships("Internal/marketing")));
+            assertFalse(storedMetadata.isAccessAllowedForMemberships(Collections.<String>emptySet()));
+        }
+
+        StoredMediaMetadata usersOnly = BinaryMetadataCodec.decode(BinaryMetadataCodec.encode(
+                createMetadata(false, "user-1")), 0);
+        assertFalse(usersOnly.hasMembershipGrants());
+        assertFalse(usersOnly.isAccessAllowedForMemberships(memberships("marketing")));
+    }
+
+    @Test
+    public void testInvalidRecordsAreRejected() throws Exception {
+
+        byte[] record = BinaryMetadataCodec.encode(createMetadata(false, "user-1"));
+        assertDecodeFails("{\"name\":\"photo.png\"}".getBytes(StandardCharsets.UTF_8));
+        assertDecodeFails(Arrays.copyOf(record, record.length - 1));
+
+        byte[] unsupportedVersion = record.clone();
+        unsupportedVersion[4] = BinaryMetadataCodec.VERSION + 1;
+        assertDecodeFails(unsupportedVersion);
+
+        // The offset of the only allowed user points past the end of the record. The allowed user is followed by
+        // the empty group and role lists.
+        byte[] invalidOffset = record.clone();
+        int offsetPosition = record.length - 8 - 4 - "user-1".length() - 4;
+        invalidOffset[offsetPosition] = 0x7F;
+        assertDecodeFails(invalidOffset);
+    }
+
+    @Test
+    public void testMigration() throws Exception {
+
+        Path mediaFolder = Files.createTempDirectory("media");
+        Path mediaDirectory = Files.createDirectories(mediaFolder.resolve("image/-1234/ab/cd/ef/gh/id"));
+        Files.write(mediaDirectory.resolve("id"), new byte[]{1, 2, 3});
+        Files.write(mediaDirectory.resolve("id_meta.json"), createMetadata(false, "user-1").toJSONString()
+                .getBytes(StandardCharsets.UTF_8));
+        Files.write(mediaDirectory.resolve("invalid_meta.json"), "{".getBytes(StandardCharsets.UTF_8));
+
+        MetadataFormatMigrator migrator = MetadataFormatMigrator.migrate(mediaFolder);
+
+        assertEquals(migrator.getMigratedCount(), 1);
+        assertEquals(migrator.getFailedCount(), 1);
+        assertFalse(Files.exists(mediaDirectory.resolve("id_meta.json")));
+        assertFalse(Files.exists(mediaDirectory.resolve("id_meta.bin.tmp")));
+        assertTrue(Files.exists(mediaDirectory.resolve("invalid_meta.json")));
+        StoredMediaMetadata migrated = BinaryMetadataCodec.decode(
+                Files.readAllBytes(mediaDirectory.resolve("id_meta.bin")), 0);
+        assertTrue(migrated.isAccessAllowed("user-1"));
+        assertEquals(migrated.getContentHash(), "abc123");
+
+        // A re-run finds nothing left to migrate.
+        assertEquals(MetadataFormatMigrator.migrate(mediaFolder).getMigratedCount(), 0);
+    }
+
+    private static void assertDecodeFails(byte[] record) {
+
+        try {
+            BinaryMetadataCodec.decode(record, 0);
+        } catch (IOException e) {
+            return;
+        }
+        throw new AssertionError("Invalid binary metadata was decoded.");
+    }
+
+    private static Set<String> memberships(String... roleListOfUser) {
+
+        Set<String> memberships = new HashSet<>();
+        for (String role : roleListOfUser) {
+            memberships.add(MembershipNames.ofGroup(role));
+        }
+        return memberships;
+    }
+
+    private static JSONArray createArray(String... values) {
+
+        JSONArray array = new JSONArray();
+        array.addAll(Arrays.asList(values));
+        return array;
+    }
+
+    private static JSONObject createMetadata(boolean allowedAll, String... allowedUserIds) {
+
+        JSONObject metadata = new JSONObject();
+        metadata.put("name", "photo.png");
+        metadata.put("contentType", "image/png");
+        metadata.put("tag", "profile");
+        metadata.put("resourceOwnerId", "owner-id");
+        metadata.put("contentHash", "abc123");
+        metadata.put("size", 1024L);
+        metadata.put("lastModified", 1577836800000L);
+
+        JSONObject security = new JSONObject();
+        security.put("allowedAll", allowedAll);
+        if (allowedUserIds.length > 0) {
+            JSONArray allowedUserIdArray = new JSONArray();
+            allowedUserIdArray.addAll(Arrays.asList(allowedUserIds));
+            security.put("allowedUserIds", allowedUserIdArray);
+        }
+        metadata.put("security", security);
+
+        JSONArray files = new JSONArray();
+        files.add(createFile("large", "image/png", 1024L));
+        files.add(createFile("small", "image/jpeg", 128L));
+        metadata.put("files", files);
+        return metadata;
+    }
+
+    private static JSONObject createFile(String identifier, String contentType, long size) {
+
+        JSONObject file = new JSONObject();
+        file.put("identifier", identifier);
+        file.put("contentType", contentType);
+        file.put("contentHash", identifier + "-hash");
+        file.put("size", size);
+        return file;
+    }
+}
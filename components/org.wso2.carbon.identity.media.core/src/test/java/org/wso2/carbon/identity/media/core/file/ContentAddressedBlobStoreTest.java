@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2020, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wso2.carbon.identity.media.core.file;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.testng.annotations.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+public class ContentAddressedBlobStoreTest {
+
+    private static final String MEDIA_ID = "20200101-deae7042-bc7b-4e47-9923-34b70c93140f";
+    private static final String OTHER_MEDIA_ID = "20200101-5c0fd4a4-0d4e-4a52-a1ac-1b0bd8cf8b3c";
+    private static final byte[] CONTENT = new byte[]{1, 2, 3};
+
+    @Test
+    public void testShareAndRelease() throws Exception {
+
+        Path mediaFolder = Files.createTempDirectory("media");
+        Path tenantPath = Files.createDirectories(mediaFolder.resolve("image/-1234"));
+        ContentAddressedBlobStore blobStore = new ContentAddressedBlobStore(mediaFolder, -1234);
+        String contentHash = DigestUtils.sha256Hex(CONTENT);
+
+        Path mediaFile = uploadMedia(mediaFolder, tenantPath, blobStore, MEDIA_ID, contentHash);
+        Path otherMediaFile = uploadMedia(mediaFolder, tenantPath, blobStore, OTHER_MEDIA_ID, contentHash);
+
+        Path blob = blobStore.getBlobLocation(contentHash);
+        assertTrue(Files.isSameFile(mediaFile, blob));
+        assertTrue(Files.isSameFile(otherMediaFile, blob));
+        assertEquals(Files.getAttribute(blob, "unix:nlink"), 3);
+        // A blob is kept as long as a media links to it.
+        assertFalse(ContentAddressedBlobStore.release(blob));
+
+        MediaReaper.moveToTrash(mediaFolder, mediaFile.getParent(), mediaFile, Collections.singletonList(mediaFile),
+                Collections.singletonList(blob));
+        assertEquals(new MediaReaper(mediaFolder, 1000).reap(), 1);
+        assertTrue(Files.exists(blob));
+        assertEquals(Files.readAllBytes(otherMediaFile), CONTENT);
+
+        MediaReaper.moveToTrash(mediaFolder, otherMediaFile.getParent(), otherMediaFile,
+                Collections.singletonList(otherMediaFile), Collections.singletonList(blob));
+        assertEquals(new MediaReaper(mediaFolder, 1000).reap(), 1);
+        assertFalse(Files.exists(blob));
+    }
+
+    @Test
+    public void testShareWithMismatchedHash() throws Exception {
+
+        Path mediaFolder = Files.createTempDirectory("media");
+        ContentAddressedBlobStore blobStore = new ContentAddressedBlobStore(mediaFolder, -1234);
+        Path stagedFile = Files.write(mediaFolder.resolve(MEDIA_ID), CONTENT);
+
+        assertNull(blobStore.share(stagedFile, "not-a-hash", CONTENT.length));
+        assertNull(blobStore.getBlobLocation("../../" + DigestUtils.sha256Hex(CONTENT).substring(6)));
+
+        // A blob of a different size is never shared, e.g. if it was truncated.
+        String contentHash = DigestUtils.sha256Hex(CONTENT);
+        Files.write(Files.createDirectories(blobStore.getBlobLocation(contentHash).getParent())
+                .resolve(contentHash), new byte[]{1});
+        assertNull(blobStore.share(stagedFile, contentHash, CONTENT.length));
+        assertEquals(Files.readAllBytes(stagedFile), CONTENT);
+    }
+
+    private static Path uploadMedia(Path mediaFolder, Path tenantPath, ContentAddressedBlobStore blobStore, String id,
+                                    String contentHash) throws Exception {
+
+        Path mediaDirectory = Files.createDirectories(MediaDirectoryLayout.NESTED.getMediaDirectory(tenantPath, id));
+        Path mediaFile = mediaDirectory.resolve(id);
+        MediaUploadStage stage = MediaUploadStage.create(mediaFolder, id);
+        try {
+            Path stagedFile = Files.write(stage.getStagedLocation(mediaFile), CONTENT);
+            assertEquals(blobStore.share(stagedFile, contentHash, CONTENT.length),
+                    blobStore.getBlobLocation(contentHash));
+            stage.commit(Collections.singletonList(mediaFile), FileSyncPolicy.NONE);
+        } finally {
+            stage.discard();
+        }
+        return mediaFile;
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 2020, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wso2.carbon.identity.media.core.file;
+
+import org.testng.annotations.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+public class DirectoryLayoutMigratorTest {
+
+    private static final String MEDIA_ID = "20200101-deae7042-bc7b-4e47-9923-34b70c93140f";
+
+    @Test
+    public void testMediaDirectories() {
+
+        Path tenantPath = Paths.get("/media/image/-1234");
+
+        assertEquals(MediaDirectoryLayout.NESTED.getMediaDirectory(tenantPath, MEDIA_ID),
+                tenantPath.resolve("20200101/deae7042/bc7b/4e47/9923/34b70c93140f"));
+        Path hashedDirectory = MediaDirectoryLayout.HASHED.getMediaDirectory(tenantPath, MEDIA_ID);
+        assertEquals(hashedDirectory.getParent().getParent(), tenantPath);
+        assertEquals(hashedDirectory.getFileName().toString().length(), 2);
+        assertEquals(MediaDirectoryLayout.HASHED.getMediaDirectory(tenantPath, MEDIA_ID), hashedDirectory);
+
+        assertNull(MediaDirectoryLayout.NESTED.getMediaDirectory(tenantPath, "..-..-.."));
+        for (MediaDirectoryLayout layout : MediaDirectoryLayout.values()) {
+            assertNull(layout.getMediaDirectory(tenantPath, ".."), layout.getName());
+            assertNull(layout.getMediaDirectory(tenantPath, "../../x"), layout.getName());
+            assertEquals(MediaDirectoryLayout.fromName(layout.getName().toUpperCase()), layout);
+        }
+        assertNull(MediaDirectoryLayout.fromName("flat"));
+    }
+
+    @Test
+    public void testMigration() throws Exception {
+
+        Path mediaFolder = Files.createTempDirectory("media");
+        Path tenantPath = Files.createDirectories(mediaFolder.resolve("image/-1234"));
+        Path nestedDirectory = Files.createDirectories(MediaDirectoryLayout.NESTED.getMediaDirectory(tenantPath,
+                MEDIA_ID));
+        Files.write(nestedDirectory.resolve(MEDIA_ID), new byte[]{1, 2, 3});
+        Files.write(nestedDirectory.resolve(MEDIA_ID + "_small"), new byte[]{4});
+        Files.write(nestedDirectory.resolve(MEDIA_ID + "_meta.json"), "{}".getBytes(StandardCharsets.UTF_8));
+        // An interrupted migration linked the metadata of the media into the hashed layout.
+        Path hashedDirectory = Files.createDirectories(MediaDirectoryLayout.HASHED.getMediaDirectory(tenantPath,
+                MEDIA_ID));
+        Files.createLink(hashedDirectory.resolve(MEDIA_ID + "_meta.json"), nestedDirectory.resolve(MEDIA_ID +
+                "_meta.json"));
+
+        DirectoryLayoutMigrator migrator = DirectoryLayoutMigrator.migrate(mediaFolder, MediaDirectoryLayout.HASHED);
+
+        assertEquals(migrator.getMigratedCount(), 1);
+        assertEquals(migrator.getFailedCount(), 0);
+        assertTrue(Files.exists(hashedDirectory.resolve(MEDIA_ID)));
+        assertTrue(Files.exists(hashedDirectory.resolve(MEDIA_ID + "_small")));
+        assertTrue(Files.exists(hashedDirectory.resolve(MEDIA_ID + "_meta.json")));
+        // The empty directories of the nested layout are removed.
+        assertFalse(Files.exists(tenantPath.resolve("20200101")));
+        assertEquals(MediaDirectoryLayout.readCompletedLayout(mediaFolder), MediaDirectoryLayout.HASHED);
+
+        // A re-run finds nothing left to move.
+        assertEquals(DirectoryLayoutMigrator.migrate(mediaFolder, MediaDirectoryLayout.HASHED).getMigratedCount(), 0);
+
+        // Media can be moved back to the nested layout.
+        assertEquals(DirectoryLayoutMigrator.migrate(mediaFolder, MediaDirectoryLayout.NESTED).getMigratedCount(), 1);
+        assertEquals(Files.readAllBytes(nestedDirectory.resolve(MEDIA_ID)), new byte[]{1, 2, 3});
+        assertTrue(Files.exists(nestedDirectory.resolve(MEDIA_ID + "_small")));
+        assertFalse(Files.exists(hashedDirectory));
+        assertEquals(MediaDirectoryLayout.readCompletedLayout(mediaFolder), MediaDirectoryLayout.NESTED);
+    }
+}
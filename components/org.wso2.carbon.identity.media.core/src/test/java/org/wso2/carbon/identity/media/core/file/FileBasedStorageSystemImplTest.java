@@ -0,0 +1,258 @@
+/*
+ * Copyright (c) 2020, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wso2.carbon.identity.media.core.file;
+
+import org.powermock.reflect.Whitebox;
+import org.testng.annotations.Test;
+import org.wso2.carbon.base.CarbonBaseConstants;
+import org.wso2.carbon.identity.media.core.AbstractStorageSystemTest;
+import org.wso2.carbon.identity.media.core.exception.StorageSystemClientException;
+import org.wso2.carbon.identity.media.core.model.FileSecurity;
+import org.wso2.carbon.identity.media.core.model.ResolvedMedia;
+import org.wso2.carbon.identity.media.core.util.MediaConfiguration;
+import org.wso2.carbon.identity.media.core.util.StorageSystemUtil;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+/**
+ * Tests the file based storage system against a media folder in a temporary CARBON_HOME, i.e. the staged commit of
+ * uploads, the removal of deleted media through the trash, the content addressed storage and the lookup of media
+ * stored in the other directory layout.
+ */
+public class FileBasedStorageSystemImplTest extends AbstractStorageSystemTest<FileBasedStorageSystemImpl> {
+
+    private String carbonHome;
+    private Path mediaFolder;
+
+    @Override
+    protected FileBasedStorageSystemImpl createStorageSystem() throws Exception {
+
+        carbonHome = System.getProperty(CarbonBaseConstants.CARBON_HOME);
+        Path mediaCarbonHome = Files.createTempDirectory("media-carbon-home");
+        mediaFolder = Files.createDirectories(mediaCarbonHome.resolve("repository").resolve("media"));
+        System.setProperty(CarbonBaseConstants.CARBON_HOME, mediaCarbonHome.toString());
+        StorageSystemUtil.loadMediaProperties();
+        return new FileBasedStorageSystemImpl();
+    }
+
+    @Override
+    protected void closeStorageSystem() throws Exception {
+
+        if (carbonHome != null) {
+            System.setProperty(CarbonBaseConstants.CARBON_HOME, carbonHome);
+        } else {
+            System.clearProperty(CarbonBaseConstants.CARBON_HOME);
+        }
+        StorageSystemUtil.loadMediaProperties();
+    }
+
+    @Test
+    public void testInterruptedCommitIsRecovered() throws Exception {
+
+        String uuid = addMedia(storageSystem, Collections.singletonList(createContent(32)), null,
+                new FileSecurity(true, Collections.<String>emptyList()));
+        Path mediaFile = MediaDirectoryLayout.NESTED.getMediaDirectory(mediaFolder.resolve("image/-1234"), uuid)
+                .resolve(uuid);
+        Path metadataFile = mediaFile.resolveSibling(uuid + "_meta.json");
+        assertTrue(Files.exists(mediaFile));
+
+        // A crash after the media file was renamed into place, but before the metadata was.
+        MediaUploadStage stage = MediaUploadStage.create(mediaFolder, uuid);
+        Path stagedMetadata = stage.getStagedLocation(metadataFile);
+        Files.move(metadataFile, stagedMetadata);
+        Path journalLocation = stagedMetadata.resolveSibling(MediaUploadStage.COMMIT_JOURNAL);
+        Files.write(journalLocation, Arrays.asList(mediaFolder.relativize(mediaFile).toString(),
+                mediaFolder.relativize(metadataFile).toString()), StandardCharsets.UTF_8);
+
+        // A media without metadata is missing to readers.
+        assertNull(storageSystem.resolveMedia(uuid, "image", TENANT_DOMAIN));
+        // An upload which was committed recently may still be in progress.
+        assertEquals(MediaUploadStage.deleteOrphanedStages(mediaFolder), 0);
+
+        FileTime orphanedTime = FileTime.fromMillis(System.currentTimeMillis() -
+                MediaUploadStage.ORPHANED_STAGE_AGE - 1000);
+        Files.setLastModifiedTime(stagedMetadata, orphanedTime);
+        Files.setLastModifiedTime(journalLocation, orphanedTime);
+        Files.setLastModifiedTime(stagedMetadata.getParent(), orphanedTime);
+
+        assertEquals(MediaUploadStage.deleteOrphanedStages(mediaFolder), 1);
+        assertFalse(Files.exists(mediaFile));
+        assertFalse(Files.exists(stagedMetadata.getParent()));
+        assertNull(storageSystem.resolveMedia(uuid, "image", TENANT_DOMAIN));
+    }
+
+    @Test
+    public void testMediaExceedingMaximumSizeLeavesNoFiles() throws Exception {
+
+        String uuid = UUID.randomUUID().toString();
+        try {
+            storageSystem.addMedia(Arrays.<InputStream>asList(new ByteArrayInputStream(createContent(16)),
+                    new ByteArrayInputStream(createContent((int) StorageSystemUtil.getAllowedMaximumMediaSize()
+                            + 1))), createMetadata(Arrays.asList("small", "large"),
+                    new FileSecurity(true, Collections.<String>emptyList())), uuid, TENANT_DOMAIN);
+            fail("Media exceeding the maximum size was stored.");
+        } catch (StorageSystemClientException e) {
+            // Expected.
+        }
+
+        assertTrue(listFiles(mediaFolder, uuid).isEmpty());
+        assertTrue(listFiles(mediaFolder.resolve(MediaUploadStage.STAGING_FOLDER), "").isEmpty());
+    }
+
+    @Test
+    public void testDeletedMediaIsMovedToTrash() throws Exception {
+
+        byte[] content = createContent(48);
+        String uuid = addMedia(storageSystem, Arrays.asList(content, createContent(8)),
+                Arrays.asList("large", "small"), new FileSecurity(true, Collections.<String>emptyList()));
+        // The metadata of the media is cached once resolved.
+        ResolvedMedia resolvedMedia = storageSystem.resolveMedia(uuid, "image", TENANT_DOMAIN);
+        assertNotNull(resolvedMedia);
+        Path mediaFile = resolvedMedia.getMediaFile().toPath();
+
+        storageSystem.deleteMedia(uuid, "image", TENANT_DOMAIN);
+
+        assertNull(storageSystem.resolveMedia(uuid, "image", TENANT_DOMAIN));
+        assertNull(storageSystem.resolveMedia(uuid, "image", TENANT_DOMAIN, "small"));
+        assertFalse(Files.exists(mediaFile));
+        List<Path> trashedFiles = listFiles(mediaFolder.resolve(MediaReaper.TRASH_FOLDER), uuid);
+        assertEquals(trashedFiles.size(), 3);
+
+        new MediaReaper(mediaFolder, 1000).reap();
+        assertTrue(listFiles(mediaFolder.resolve(MediaReaper.TRASH_FOLDER), uuid).isEmpty());
+        assertFalse(Files.exists(mediaFile.getParent()));
+    }
+
+    @Test
+    public void testContentAddressedMediaShareBlobs() throws Exception {
+
+        byte[] content = createContent(256);
+        configure("FileBasedStorage.ContentAddressed.Enabled", "true");
+        String uuid;
+        String otherUuid;
+        try {
+            uuid = addMedia(storageSystem, Collections.singletonList(content), null,
+                    new FileSecurity(true, Collections.<String>emptyList()));
+            otherUuid = addMedia(storageSystem, Collections.singletonList(content), null,
+                    new FileSecurity(true, Collections.<String>emptyList()));
+        } finally {
+            StorageSystemUtil.loadMediaProperties();
+        }
+
+        Path blob = new ContentAddressedBlobStore(mediaFolder, -1234).getBlobLocation(sha256(content));
+        Path mediaFile = storageSystem.resolveMedia(uuid, "image", TENANT_DOMAIN).getMediaFile().toPath();
+        Path otherMediaFile = storageSystem.resolveMedia(otherUuid, "image", TENANT_DOMAIN).getMediaFile().toPath();
+        assertTrue(Files.isSameFile(mediaFile, blob));
+        assertTrue(Files.isSameFile(otherMediaFile, blob));
+
+        // A blob is kept as long as a media links to it.
+        storageSystem.deleteMedia(uuid, "image", TENANT_DOMAIN);
+        new MediaReaper(mediaFolder, 1000).reap();
+        assertTrue(Files.exists(blob));
+        assertEquals(readContent(storageSystem.getFile(otherUuid, TENANT_DOMAIN, "image")), content);
+
+        storageSystem.deleteMedia(otherUuid, "image", TENANT_DOMAIN);
+        new MediaReaper(mediaFolder, 1000).reap();
+        assertFalse(Files.exists(blob));
+    }
+
+    @Test
+    public void testMediaInOtherLayoutIsResolved() throws Exception {
+
+        byte[] content = createContent(96);
+        String nestedUuid = addMedia(storageSystem, Collections.singletonList(content), null,
+                new FileSecurity(true, Collections.<String>emptyList()));
+
+        // Media stored in the nested layout are resolved once the hashed layout is configured, as no migration to
+        // the hashed layout was completed.
+        configure("FileBasedStorage.DirectoryLayout", "hashed");
+        try {
+            FileBasedStorageSystemImpl hashedStorageSystem = new FileBasedStorageSystemImpl();
+            ResolvedMedia nestedMedia = hashedStorageSystem.resolveMedia(nestedUuid, "image", TENANT_DOMAIN);
+            assertNotNull(nestedMedia);
+            assertEquals(readContent(hashedStorageSystem.getFile(nestedMedia)), content);
+
+            String hashedUuid = addMedia(hashedStorageSystem, Collections.singletonList(content), null,
+                    new FileSecurity(true, Collections.<String>emptyList()));
+            ResolvedMedia hashedMedia = hashedStorageSystem.resolveMedia(hashedUuid, "image", TENANT_DOMAIN);
+            assertEquals(hashedMedia.getMediaFile().toPath().getParent(), MediaDirectoryLayout.HASHED
+                    .getMediaDirectory(mediaFolder.resolve("image/-1234"), hashedUuid));
+            assertEquals(readContent(hashedStorageSystem.getFile(hashedMedia)), content);
+            assertNull(hashedStorageSystem.resolveMedia(UUID.randomUUID().toString(), "image", TENANT_DOMAIN));
+        } finally {
+            StorageSystemUtil.loadMediaProperties();
+        }
+    }
+
+    /**
+     * Publish the configuration read from media.properties file with the given property overridden.
+     */
+    private static void configure(String property, String value) throws Exception {
+
+        Properties properties = new Properties();
+        try (InputStream inputStream = FileBasedStorageSystemImplTest.class.getClassLoader()
+                .getResourceAsStream("META-INF/media.properties")) {
+            properties.load(inputStream);
+        }
+        properties.setProperty(property, value);
+        AtomicReference<MediaConfiguration> configuration = Whitebox.getInternalState(StorageSystemUtil.class,
+                "CONFIGURATION");
+        configuration.set(MediaConfiguration.resolve(properties, System.getenv(),
+                System.getProperty(CarbonBaseConstants.CARBON_HOME)));
+    }
+
+    private static List<Path> listFiles(Path folder, final String prefix) throws IOException {
+
+        final List<Path> files = new ArrayList<>();
+        if (Files.notExists(folder)) {
+            return files;
+        }
+        Files.walkFileTree(folder, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+
+                if (file.getFileName().toString().startsWith(prefix)) {
+                    files.add(file);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        return files;
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) 2020, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wso2.carbon.identity.media.core.file;
+
+import org.testng.annotations.Test;
+
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+public class MediaReaperTest {
+
+    private static final String MEDIA_ID = "20200101-deae7042-bc7b-4e47-9923-34b70c93140f";
+    private static final String OTHER_MEDIA_ID = "20200101-5c0fd4a4-0d4e-4a52-a1ac-1b0bd8cf8b3c";
+
+    @Test
+    public void testMoveToTrashAndReap() throws Exception {
+
+        Path mediaFolder = Files.createTempDirectory("media");
+        Path tenantPath = Files.createDirectories(mediaFolder.resolve("image/-1234"));
+        Path mediaDirectory = Files.createDirectories(MediaDirectoryLayout.NESTED.getMediaDirectory(tenantPath,
+                MEDIA_ID));
+        Path otherMediaDirectory = Files.createDirectories(MediaDirectoryLayout.NESTED.getMediaDirectory(tenantPath,
+                OTHER_MEDIA_ID));
+        Path mediaFile = Files.write(mediaDirectory.resolve(MEDIA_ID), new byte[]{1, 2, 3});
+        Path metadataFile = Files.write(mediaDirectory.resolve(MEDIA_ID + "_meta.json"), new byte[]{4});
+        Path representationFile = Files.write(mediaDirectory.resolve(MEDIA_ID + "_small"), new byte[]{5});
+        Files.write(otherMediaDirectory.resolve(OTHER_MEDIA_ID), new byte[]{6});
+
+        MediaReaper.moveToTrash(mediaFolder, mediaDirectory, mediaFile, Arrays.asList(metadataFile, mediaFile,
+                representationFile), Collections.<Path>emptyList());
+
+        // The media is missing as soon as it is moved to the trash, while its directory is left to the reaper.
+        assertFalse(Files.exists(mediaFile));
+        assertFalse(Files.exists(metadataFile));
+        assertFalse(Files.exists(representationFile));
+        assertTrue(Files.exists(mediaDirectory));
+
+        assertEquals(new MediaReaper(mediaFolder, 1000).reap(), 1);
+
+        assertFalse(Files.exists(tenantPath.resolve("20200101/deae7042")));
+        // The directories shared with other media are kept, as is the folder of the tenant.
+        assertTrue(Files.exists(otherMediaDirectory.resolve(OTHER_MEDIA_ID)));
+        assertTrue(Files.exists(tenantPath.resolve("20200101")));
+        assertFalse(Files.newDirectoryStream(mediaFolder.resolve(MediaReaper.TRASH_FOLDER)).iterator().hasNext());
+
+        try {
+            MediaReaper.moveToTrash(mediaFolder, mediaDirectory, mediaFile, Arrays.asList(metadataFile, mediaFile),
+                    Collections.<Path>emptyList());
+            fail("A deleted media was moved to the trash.");
+        } catch (NoSuchFileException e) {
+            // Expected.
+        }
+        // The entry of the failed delete is not reaped until it is abandoned, as it may be still being filled.
+        assertEquals(new MediaReaper(mediaFolder, 1000).reap(), 0);
+    }
+
+    @Test
+    public void testHashedLayoutReap() throws Exception {
+
+        Path mediaFolder = Files.createTempDirectory("media");
+        Path tenantPath = Files.createDirectories(mediaFolder.resolve("image/-1234"));
+        Path mediaDirectory = Files.createDirectories(MediaDirectoryLayout.HASHED.getMediaDirectory(tenantPath,
+                MEDIA_ID));
+        Path mediaFile = Files.write(mediaDirectory.resolve(MEDIA_ID), new byte[]{1, 2, 3});
+
+        MediaReaper.moveToTrash(mediaFolder, mediaDirectory, mediaFile, Arrays.asList(mediaFile),
+                Collections.<Path>emptyList());
+
+        assertEquals(new MediaReaper(mediaFolder, 1000).reap(), 1);
+        assertFalse(Files.exists(mediaDirectory.getParent()));
+        assertTrue(Files.exists(tenantPath));
+    }
+}
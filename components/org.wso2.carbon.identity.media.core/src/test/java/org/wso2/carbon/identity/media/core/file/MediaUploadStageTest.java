@@ -0,0 +1,206 @@
+/*
+ * Copyright (c) 2020, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wso2.carbon.identity.media.core.file;
+
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+public class MediaUploadStageTest {
+
+    private static final String MEDIA_ID = "20200101-deae7042-bc7b-4e47-9923-34b70c93140f";
+
+    @Test
+    public void testCommit() throws Exception {
+
+        Path mediaFolder = Files.createTempDirectory("media");
+        Path mediaDirectory = Files.createDirectories(mediaFolder.resolve("image/-1234/ab/cd"));
+        List<Path> targetLocations = Arrays.asList(mediaDirectory.resolve(MEDIA_ID + "_small"),
+                mediaDirectory.resolve(MEDIA_ID), mediaDirectory.resolve(MEDIA_ID + "_meta.json"));
+
+        MediaUploadStage stage = MediaUploadStage.create(mediaFolder, MEDIA_ID);
+        for (int i = 0; i < targetLocations.size(); i++) {
+            Files.write(stage.getStagedLocation(targetLocations.get(i)), new byte[]{(byte) i});
+        }
+        assertFalse(Files.exists(mediaDirectory.resolve(MEDIA_ID)));
+
+        stage.commit(targetLocations, FileSyncPolicy.PER_FILE);
+        stage.discard();
+
+        for (int i = 0; i < targetLocations.size(); i++) {
+            assertEquals(Files.readAllBytes(targetLocations.get(i)), new byte[]{(byte) i});
+        }
+        assertEquals(listFiles(mediaFolder.resolve(MediaUploadStage.STAGING_FOLDER)).size(), 0);
+    }
+
+    @Test
+    public void testFailedCommitLeavesNoMedia() throws Exception {
+
+        Path mediaFolder = Files.createTempDirectory("media");
+        Path mediaDirectory = Files.createDirectories(mediaFolder.resolve("image/-1234/ab/cd"));
+        List<Path> targetLocations = Arrays.asList(mediaDirectory.resolve(MEDIA_ID),
+                mediaDirectory.resolve(MEDIA_ID + "_meta.json"));
+
+        MediaUploadStage stage = MediaUploadStage.create(mediaFolder, MEDIA_ID);
+        // The metadata was never written, e.g. due to a full disk.
+        Files.write(stage.getStagedLocation(targetLocations.get(0)), new byte[]{1, 2, 3});
+        try {
+            stage.commit(targetLocations, FileSyncPolicy.NONE);
+            fail("A stage with a missing file was committed.");
+        } catch (IOException e) {
+            // Expected.
+        } finally {
+            stage.discard();
+        }
+
+        assertEquals(listFiles(mediaDirectory).size(), 0);
+        assertEquals(listFiles(mediaFolder.resolve(MediaUploadStage.STAGING_FOLDER)).size(), 0);
+    }
+
+    @Test
+    public void testDeleteOrphanedStages() throws Exception {
+
+        Path mediaFolder = Files.createTempDirectory("media");
+        Path mediaDirectory = Files.createDirectories(mediaFolder.resolve("image/-1234/ab/cd"));
+        assertEquals(MediaUploadStage.deleteOrphanedStages(mediaFolder), 0);
+
+        MediaUploadStage orphanedStage = MediaUploadStage.create(mediaFolder, MEDIA_ID);
+        Path orphanedFile = orphanedStage.getStagedLocation(mediaDirectory.resolve(MEDIA_ID));
+        Files.write(orphanedFile, new byte[]{1, 2, 3});
+        FileTime orphanedTime = FileTime.fromMillis(System.currentTimeMillis() -
+                MediaUploadStage.ORPHANED_STAGE_AGE - 1000);
+        Files.setLastModifiedTime(orphanedFile, orphanedTime);
+        Files.setLastModifiedTime(orphanedFile.getParent(), orphanedTime);
+        // A stage written to recently may belong to an upload in progress on another node.
+        MediaUploadStage activeStage = MediaUploadStage.create(mediaFolder, MEDIA_ID);
+        Path activeFile = activeStage.getStagedLocation(mediaDirectory.resolve(MEDIA_ID));
+        Files.write(activeFile, new byte[]{1, 2, 3});
+        Files.setLastModifiedTime(activeFile.getParent(), orphanedTime);
+
+        assertEquals(MediaUploadStage.deleteOrphanedStages(mediaFolder), 1);
+        assertFalse(Files.exists(orphanedFile.getParent()));
+        assertTrue(Files.exists(activeFile));
+    }
+
+    @Test
+    public void testDeleteInterruptedCommit() throws Exception {
+
+        Path mediaFolder = Files.createTempDirectory("media");
+        Path mediaDirectory = Files.createDirectories(mediaFolder.resolve("image/-1234/ab/cd"));
+        List<Path> targetLocations = Arrays.asList(mediaDirectory.resolve(MEDIA_ID + "_small"),
+                mediaDirectory.resolve(MEDIA_ID), mediaDirectory.resolve(MEDIA_ID + "_meta.json"));
+        List<String> journal = new ArrayList<>();
+        for (Path targetLocation : targetLocations) {
+            journal.add(mediaFolder.relativize(targetLocation).toString());
+        }
+
+        // A crash after the representation and the default file were renamed, but before the metadata was.
+        MediaUploadStage stage = MediaUploadStage.create(mediaFolder, MEDIA_ID);
+        Path stagedMetadata = stage.getStagedLocation(targetLocations.get(2));
+        Files.write(stagedMetadata, new byte[]{2});
+        Path journalLocation = stagedMetadata.resolveSibling(MediaUploadStage.COMMIT_JOURNAL);
+        Files.write(journalLocation, journal, StandardCharsets.UTF_8);
+        Files.write(targetLocations.get(0), new byte[]{0});
+        Files.write(targetLocations.get(1), new byte[]{1});
+        FileTime orphanedTime = FileTime.fromMillis(System.currentTimeMillis() -
+                MediaUploadStage.ORPHANED_STAGE_AGE - 1000);
+        Files.setLastModifiedTime(stagedMetadata, orphanedTime);
+        Files.setLastModifiedTime(journalLocation, orphanedTime);
+        Files.setLastModifiedTime(stagedMetadata.getParent(), orphanedTime);
+
+        assertEquals(MediaUploadStage.deleteOrphanedStages(mediaFolder), 1);
+        assertFalse(Files.exists(mediaDirectory));
+        assertTrue(Files.exists(mediaFolder.resolve("image/-1234/ab")));
+
+        // A crash after the metadata was renamed leaves a complete media.
+        Files.createDirectories(mediaDirectory);
+        stage = MediaUploadStage.create(mediaFolder, MEDIA_ID);
+        journalLocation = stage.getStagedLocation(mediaDirectory.resolve(MediaUploadStage.COMMIT_JOURNAL));
+        Files.write(journalLocation, journal, StandardCharsets.UTF_8);
+        for (int i = 0; i < targetLocations.size(); i++) {
+            Files.write(targetLocations.get(i), new byte[]{(byte) i});
+        }
+        Files.setLastModifiedTime(journalLocation, orphanedTime);
+        Files.setLastModifiedTime(journalLocation.getParent(), orphanedTime);
+
+        assertEquals(MediaUploadStage.deleteOrphanedStages(mediaFolder), 1);
+        for (int i = 0; i < targetLocations.size(); i++) {
+            assertEquals(Files.readAllBytes(targetLocations.get(i)), new byte[]{(byte) i});
+        }
+    }
+
+    @Test
+    public void testGroupCommit() throws Exception {
+
+        final Path folder = Files.createTempDirectory("media");
+        final GroupCommitSyncer groupCommitSyncer = new GroupCommitSyncer(50);
+        ExecutorService executorService = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Void>> futures = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                final Path file = Files.write(folder.resolve("file-" + i), new byte[]{(byte) i});
+                futures.add(executorService.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws IOException {
+
+                        groupCommitSyncer.sync(Arrays.asList(file, folder));
+                        return null;
+                    }
+                }));
+            }
+            for (Future<Void> future : futures) {
+                future.get();
+            }
+        } finally {
+            executorService.shutdownNow();
+        }
+
+        try {
+            groupCommitSyncer.sync(Collections.singletonList(folder.resolve("missing")));
+            fail("A missing file was flushed.");
+        } catch (IOException e) {
+            // Expected.
+        }
+        assertEquals(FileSyncPolicy.fromName("Group-Commit"), FileSyncPolicy.GROUP_COMMIT);
+        assertEquals(FileSyncPolicy.fromName(" per-file "), FileSyncPolicy.PER_FILE);
+    }
+
+    private static List<Path> listFiles(Path folder) throws IOException {
+
+        List<Path> files = new ArrayList<>();
+        for (Path file : Files.newDirectoryStream(folder)) {
+            files.add(file);
+        }
+        return files;
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright (c) 2020, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wso2.carbon.identity.media.core.internal;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import org.wso2.carbon.identity.media.core.cache.AuthorizationDecisionCache;
+import org.wso2.carbon.identity.media.core.cache.UserIdCache;
+import org.wso2.carbon.identity.media.core.cache.UserMembershipCache;
+import org.wso2.carbon.user.core.UserStoreManager;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+
+public class UserCacheInvalidationListenerTest {
+
+    private static final int TENANT_ID = -1234;
+    private static final String VIEW_PERMISSION = "permission/admin/manage/identity/media/view";
+    private static final String ACTION = "ui.execute";
+
+    private final UserCacheInvalidationListener listener = new UserCacheInvalidationListener();
+    private UserStoreManager userStoreManager;
+    private AuthorizationDecisionCache authorizationDecisionCache;
+    private CountingLoader loader;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+
+        userStoreManager = mock(UserStoreManager.class);
+        when(userStoreManager.getTenantId()).thenReturn(TENANT_ID);
+        authorizationDecisionCache = new AuthorizationDecisionCache(300, 100);
+        loader = new CountingLoader();
+        MediaServiceDataHolder.getInstance().setAuthorizationDecisionCache(authorizationDecisionCache);
+        MediaServiceDataHolder.getInstance().setUserMembershipCache(new UserMembershipCache(300, 100));
+    }
+
+    @AfterMethod
+    public void tearDown() {
+
+        MediaServiceDataHolder.getInstance().setAuthorizationDecisionCache(null);
+        MediaServiceDataHolder.getInstance().setUserMembershipCache(null);
+        MediaServiceDataHolder.getInstance().setUserIdCache(null);
+    }
+
+    @Test
+    public void testAddedUserIsNoLongerCachedAsUnknown() throws Exception {
+
+        UserIdCache userIdCache = new UserIdCache(300, 300, 100);
+        MediaServiceDataHolder.getInstance().setUserIdCache(userIdCache);
+        final AtomicInteger count = new AtomicInteger();
+        UserIdCache.Loader userIdLoader = new UserIdCache.Loader() {
+            @Override
+            public String load(String username) {
+
+                return count.incrementAndGet() == 1 ? null : "user-id";
+            }
+        };
+        assertNull(userIdCache.get(TENANT_ID, "alice", userIdLoader));
+
+        listener.doPostAddUser("alice", null, null, null, null, userStoreManager);
+
+        assertEquals(userIdCache.get(TENANT_ID, "alice", userIdLoader), "user-id");
+    }
+
+    @Test
+    public void testRoleListUpdateInvalidatesDecisionsOfUser() throws Exception {
+
+        authorize("alice");
+        authorize("bob");
+
+        listener.doPostUpdateRoleListOfUser("alice", new String[]{"viewer"}, new String[0], userStoreManager);
+        authorize("alice");
+        authorize("bob");
+
+        assertEquals(loader.count.get(), 3);
+    }
+
+    @Test
+    public void testUserListUpdateInvalidatesDecisionsOfUsers() throws Exception {
+
+        authorize("alice");
+        authorize("bob");
+        authorize("carol");
+
+        listener.doPostUpdateUserListOfRole("viewer", new String[]{"alice"}, new String[]{"bob"}, userStoreManager);
+        authorize("alice");
+        authorize("bob");
+        authorize("carol");
+
+        assertEquals(loader.count.get(), 5);
+    }
+
+    @Test
+    public void testRoleDeletionInvalidatesDecisionsOfTenant() throws Exception {
+
+        authorize("alice");
+        authorize("bob");
+
+        listener.doPostDeleteRole("viewer", userStoreManager);
+        authorize("alice");
+        authorize("bob");
+
+        assertEquals(loader.count.get(), 4);
+    }
+
+    private void authorize(String username) throws Exception {
+
+        authorizationDecisionCache.isAuthorized(TENANT_ID, username, VIEW_PERMISSION, ACTION, loader);
+    }
+
+    private static class CountingLoader implements AuthorizationDecisionCache.Loader {
+
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public boolean isAuthorized(String username, String permission, String action) {
+
+            count.incrementAndGet();
+            return true;
+        }
+    }
+}
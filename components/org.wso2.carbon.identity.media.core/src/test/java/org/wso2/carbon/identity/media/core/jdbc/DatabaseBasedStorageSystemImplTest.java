@@ -0,0 +1,115 @@
+/*
+ * Copyright (c) 2020, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wso2.carbon.identity.media.core.jdbc;
+
+import org.apache.commons.codec.binary.Hex;
+import org.h2.jdbcx.JdbcConnectionPool;
+import org.testng.annotations.Test;
+import org.wso2.carbon.identity.media.core.AbstractStorageSystemTest;
+import org.wso2.carbon.identity.media.core.StreamContent;
+import org.wso2.carbon.identity.media.core.model.FileSecurity;
+import org.wso2.carbon.identity.media.core.model.ResolvedMedia;
+import org.wso2.carbon.identity.media.core.util.StorageSystemUtil;
+
+import java.io.InputStream;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.Collections;
+import java.util.UUID;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+
+/**
+ * Tests the database based storage system against an embedded H2 database created with the bundled script.
+ */
+public class DatabaseBasedStorageSystemImplTest extends AbstractStorageSystemTest<DatabaseBasedStorageSystemImpl> {
+
+    private JdbcConnectionPool dataSource;
+
+    @Override
+    protected DatabaseBasedStorageSystemImpl createStorageSystem() throws Exception {
+
+        dataSource = JdbcConnectionPool.create("jdbc:h2:mem:media;DB_CLOSE_DELAY=-1", "sa", "");
+        try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+            statement.execute("RUNSCRIPT FROM 'classpath:dbscripts/h2.sql'");
+        }
+        return new DatabaseBasedStorageSystemImpl(dataSource);
+    }
+
+    @Override
+    protected void closeStorageSystem() throws Exception {
+
+        try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+            statement.execute("SHUTDOWN");
+        }
+        dataSource.dispose();
+    }
+
+    @Test
+    public void testLargeMediaIsStreamed() throws Exception {
+
+        // The content is generated while it is uploaded and digested while it is downloaded, so that neither side of
+        // the round trip holds more than a small buffer of it.
+        final long size = StorageSystemUtil.getAllowedMaximumMediaSize();
+        MessageDigest uploadDigest = MessageDigest.getInstance("SHA-256");
+        InputStream generatedContent = new InputStream() {
+
+            private long position;
+
+            @Override
+            public int read() {
+
+                return position < size ? (int) (position++ * 31 % 251) : -1;
+            }
+        };
+        String uuid = storageSystem.addMedia(Collections.singletonList(
+                (InputStream) new DigestInputStream(generatedContent, uploadDigest)),
+                createMetadata(null, new FileSecurity(true, Collections.<String>emptyList())),
+                UUID.randomUUID().toString(), TENANT_DOMAIN);
+        String uploadHash = new String(Hex.encodeHex(uploadDigest.digest()));
+
+        ResolvedMedia resolvedMedia = storageSystem.resolveMedia(uuid, "image", TENANT_DOMAIN);
+        assertNotNull(resolvedMedia);
+        assertEquals(resolvedMedia.getETag(), uploadHash);
+
+        MessageDigest downloadDigest = MessageDigest.getInstance("SHA-256");
+        long downloadedSize = 0;
+        byte[] buffer = new byte[4096];
+        try (InputStream inputStream = ((StreamContent) storageSystem.getFile(resolvedMedia)).getInputStream()) {
+            int read;
+            while ((read = inputStream.read(buffer)) != -1) {
+                downloadDigest.update(buffer, 0, read);
+                downloadedSize += read;
+            }
+        }
+        assertEquals(downloadedSize, size);
+        assertEquals(new String(Hex.encodeHex(downloadDigest.digest())), uploadHash);
+        assertResourcesReleased();
+    }
+
+    /**
+     * The connection the content was streamed with is released once the stream is closed.
+     */
+    @Override
+    protected void assertResourcesReleased() {
+
+        assertEquals(dataSource.getActiveConnections(), 0);
+    }
+}
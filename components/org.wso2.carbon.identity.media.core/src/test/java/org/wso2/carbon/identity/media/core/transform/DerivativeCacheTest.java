@@ -0,0 +1,229 @@
+/*
+ * Copyright (c) 2020, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wso2.carbon.identity.media.core.transform;
+
+import org.apache.commons.io.FileUtils;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.imageio.ImageIO;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+public class DerivativeCacheTest {
+
+    private Path directory;
+
+    @BeforeMethod
+    public void setUp() throws IOException {
+
+        directory = Files.createTempDirectory("derivative-cache-test");
+    }
+
+    @AfterMethod
+    public void tearDown() throws IOException {
+
+        FileUtils.deleteDirectory(directory.toFile());
+    }
+
+    @Test
+    public void testConcurrentRequestsShareGeneration() throws Exception {
+
+        final DerivativeCache derivativeCache = new DerivativeCache(directory, 1000);
+        final AtomicInteger generationCount = new AtomicInteger();
+        final CountDownLatch generationStarted = new CountDownLatch(1);
+        final CountDownLatch releaseGeneration = new CountDownLatch(1);
+        final DerivativeCache.Generator generator = new DerivativeCache.Generator() {
+            @Override
+            public boolean generate(Path target) throws IOException {
+
+                generationCount.incrementAndGet();
+                generationStarted.countDown();
+                try {
+                    releaseGeneration.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                Files.write(target, new byte[10]);
+                return true;
+            }
+        };
+
+        ExecutorService executorService = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Path>> futures = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                futures.add(executorService.submit(new Callable<Path>() {
+                    @Override
+                    public Path call() throws IOException {
+
+                        return derivativeCache.get("0/image/media/default-w64", generator);
+                    }
+                }));
+            }
+            generationStarted.await();
+            Thread.sleep(100);
+            releaseGeneration.countDown();
+            for (Future<Path> future : futures) {
+                assertEquals(Files.size(future.get()), 10);
+            }
+        } finally {
+            executorService.shutdownNow();
+        }
+        assertEquals(generationCount.get(), 1);
+        assertEquals(derivativeCache.getTotalSize(), 10);
+    }
+
+    @Test
+    public void testLeastRecentlyUsedDerivativeIsEvicted() throws IOException {
+
+        // Evicted derivatives are deleted right away.
+        DerivativeCache derivativeCache = new DerivativeCache(directory, 25, 0);
+        Path first = derivativeCache.get("0/image/first/default-w64", writing(10));
+        Path second = derivativeCache.get("0/image/second/default-w64", writing(10));
+        // Access the first derivative so that the second is the least recently used.
+        derivativeCache.get("0/image/first/default-w64", writing(10));
+        Path third = derivativeCache.get("0/image/third/default-w64", writing(10));
+
+        assertTrue(Files.exists(first));
+        assertFalse(Files.exists(second));
+        assertTrue(Files.exists(third));
+        assertEquals(derivativeCache.getTotalSize(), 20);
+    }
+
+    @Test
+    public void testEvictedDerivativeIsRetained() throws IOException {
+
+        DerivativeCache derivativeCache = new DerivativeCache(directory, 15);
+        Path first = derivativeCache.get("0/image/first/default-w64", writing(10));
+        derivativeCache.get("0/image/second/default-w64", writing(10));
+
+        // The evicted derivative can still be served by a download which resolved it before the eviction.
+        assertTrue(Files.exists(first));
+        assertEquals(derivativeCache.getTotalSize(), 10);
+
+        // It is restored without being generated again, while evicting the other derivative.
+        assertEquals(derivativeCache.get("0/image/first/default-w64", failing()), first);
+        assertEquals(derivativeCache.getTotalSize(), 10);
+    }
+
+    @Test
+    public void testMissingDerivativeIsGeneratedAgain() throws IOException {
+
+        DerivativeCache derivativeCache = new DerivativeCache(directory, 1000);
+        Path derivative = derivativeCache.get("0/image/media/default-w64", writing(10));
+        Files.delete(derivative);
+
+        assertEquals(derivativeCache.get("0/image/media/default-w64", writing(20)), derivative);
+        assertEquals(Files.size(derivative), 20);
+        assertEquals(derivativeCache.getTotalSize(), 20);
+    }
+
+    @Test
+    public void testInvalidateAndReload() throws IOException {
+
+        DerivativeCache derivativeCache = new DerivativeCache(directory, 1000);
+        Path kept = derivativeCache.get("0/image/kept/default-w64", writing(10));
+        Path invalidated = derivativeCache.get("0/image/invalidated/default-w64", writing(10));
+        derivativeCache.get("0/image/invalidated/small-w32", writing(5));
+        derivativeCache.invalidate("0/image/invalidated/");
+
+        assertTrue(Files.exists(kept));
+        assertFalse(Files.exists(invalidated.getParent()));
+        assertEquals(derivativeCache.getTotalSize(), 10);
+
+        // A new cache over the same directory picks up the existing derivatives without generating them again.
+        DerivativeCache reloadedCache = new DerivativeCache(directory, 1000);
+        assertEquals(reloadedCache.get("0/image/kept/default-w64", writing(20)), kept);
+        assertEquals(reloadedCache.getTotalSize(), 10);
+    }
+
+    @Test
+    public void testNotApplicableDerivativeIsNotCached() throws IOException {
+
+        DerivativeCache derivativeCache = new DerivativeCache(directory, 1000);
+        assertNull(derivativeCache.get("0/image/media/default-w64", new DerivativeCache.Generator() {
+            @Override
+            public boolean generate(Path target) {
+
+                return false;
+            }
+        }));
+        assertEquals(derivativeCache.getTotalSize(), 0);
+    }
+
+    @Test
+    public void testImageResize() throws IOException {
+
+        Path source = directory.resolve("source.png");
+        ImageIO.write(new BufferedImage(400, 200, BufferedImage.TYPE_INT_ARGB), "png", source.toFile());
+        Path target = directory.resolve("target.png");
+
+        assertTrue(ImageResizer.isResizable("image/png"));
+        assertFalse(ImageResizer.isResizable("image/svg+xml"));
+        assertFalse(ImageResizer.resize(source, target, 512, "image/png"));
+        assertTrue(ImageResizer.resize(source, target, 100, "image/png"));
+        BufferedImage resizedImage = ImageIO.read(target.toFile());
+        assertEquals(resizedImage.getWidth(), 100);
+        assertEquals(resizedImage.getHeight(), 50);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testKeyOutsideCacheDirectory() throws IOException {
+
+        new DerivativeCache(directory, 1000).get("0/../../outside", writing(1));
+    }
+
+    private DerivativeCache.Generator failing() {
+
+        return new DerivativeCache.Generator() {
+            @Override
+            public boolean generate(Path target) throws IOException {
+
+                throw new IOException("The derivative is not expected to be generated.");
+            }
+        };
+    }
+
+    private DerivativeCache.Generator writing(final int size) {
+
+        return new DerivativeCache.Generator() {
+            @Override
+            public boolean generate(Path target) throws IOException {
+
+                Files.write(target, new byte[size]);
+                return true;
+            }
+        };
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright (c) 2020, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wso2.carbon.identity.media.core.util;
+
+import org.testng.annotations.Test;
+
+import java.util.UUID;
+
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+public class BloomFilterTest {
+
+    @Test
+    public void testAddedValuesAreAlwaysContained() {
+
+        BloomFilter filter = new BloomFilter(10000, 0.01);
+        String[] values = new String[10000];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = UUID.randomUUID().toString();
+            filter.add(values[i]);
+        }
+        for (String value : values) {
+            assertTrue(filter.mightContain(value), value);
+        }
+    }
+
+    @Test
+    public void testFalsePositiveProbability() {
+
+        BloomFilter filter = new BloomFilter(10000, 0.01);
+        for (int i = 0; i < 10000; i++) {
+            filter.add("user-" + i);
+        }
+        int falsePositives = 0;
+        int lookups = 100000;
+        for (int i = 0; i < lookups; i++) {
+            if (filter.mightContain("other-user-" + i)) {
+                falsePositives++;
+            }
+        }
+        assertTrue(falsePositives < lookups * 0.02, "False positives: " + falsePositives);
+    }
+
+    @Test
+    public void testEmptyFilter() {
+
+        BloomFilter filter = new BloomFilter(0, 0.01);
+        assertFalse(filter.mightContain("user"));
+        assertFalse(filter.mightContain(""));
+        filter.add("");
+        assertTrue(filter.mightContain(""));
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testInvalidFalsePositiveProbability() {
+
+        new BloomFilter(10, 1);
+    }
+}
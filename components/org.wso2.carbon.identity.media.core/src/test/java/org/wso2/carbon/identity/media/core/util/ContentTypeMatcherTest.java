@@ -0,0 +1,75 @@
+/*
+ * Copyright (c) 2020, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wso2.carbon.identity.media.core.util;
+
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+public class ContentTypeMatcherTest {
+
+    @Test
+    public void testConfiguredSubTypes() {
+
+        Map<String, List<String>> contentTypes = new HashMap<>();
+        contentTypes.put("image", Arrays.asList("png", " jpeg"));
+        contentTypes.put("text", null);
+        ContentTypeMatcher contentTypeMatcher = ContentTypeMatcher.compile(contentTypes);
+
+        assertTrue(contentTypeMatcher.isTypeAllowed("image"));
+        assertTrue(contentTypeMatcher.isTypeAllowed("text"));
+        assertFalse(contentTypeMatcher.isTypeAllowed("video"));
+        assertTrue(contentTypeMatcher.isAllowed("image", "png"));
+        assertTrue(contentTypeMatcher.isAllowed("image", "jpeg"));
+        assertFalse(contentTypeMatcher.isAllowed("image", "gif"));
+        // A content type without configured sub types doesn't allow any sub type.
+        assertFalse(contentTypeMatcher.isAllowed("text", "css"));
+        assertFalse(contentTypeMatcher.isAllowed(null, "png"));
+    }
+
+    @Test
+    public void testWildcardSubTypes() {
+
+        Map<String, List<String>> contentTypes = new HashMap<>();
+        contentTypes.put("image", Collections.singletonList("*"));
+        contentTypes.put("text/css", null);
+        contentTypes.put("font/*", null);
+        ContentTypeMatcher contentTypeMatcher = ContentTypeMatcher.compile(contentTypes);
+
+        assertTrue(contentTypeMatcher.isAllowed("image", "webp"));
+        assertTrue(contentTypeMatcher.isAllowed("text", "css"));
+        assertFalse(contentTypeMatcher.isAllowed("text", "html"));
+        assertTrue(contentTypeMatcher.isTypeAllowed("font"));
+        assertTrue(contentTypeMatcher.isAllowed("font", "woff2"));
+    }
+
+    @Test
+    public void testNoConfiguredContentTypes() {
+
+        ContentTypeMatcher contentTypeMatcher = ContentTypeMatcher.compile(null);
+
+        assertFalse(contentTypeMatcher.isTypeAllowed("image"));
+        assertFalse(contentTypeMatcher.isAllowed("image", "png"));
+    }
+}
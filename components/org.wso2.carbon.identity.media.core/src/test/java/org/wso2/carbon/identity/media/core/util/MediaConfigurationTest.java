@@ -0,0 +1,134 @@
+/*
+ * Copyright (c) 2020, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wso2.carbon.identity.media.core.util;
+
+import org.testng.annotations.Test;
+import org.wso2.carbon.identity.media.core.cache.MediaMetadataCache;
+import org.wso2.carbon.identity.media.core.cache.UserIdCache;
+import org.wso2.carbon.identity.media.core.internal.MediaServiceDataHolder;
+
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+public class MediaConfigurationTest {
+
+    @Test
+    public void testResolveFromProperties() {
+
+        MediaConfiguration configuration = MediaConfiguration.resolve(getProperties(),
+                Collections.<String, String>emptyMap(), "/carbon");
+
+        assertEquals(configuration.getMediaStoreType(), "file");
+        assertEquals(configuration.getMediaMountBaseDirectory(), Paths.get("/carbon", "repository/"));
+        assertEquals(configuration.getMaximumMediaSize(), 512000);
+        assertEquals(configuration.getContentTypes().get("image"), Arrays.asList("png", "jpeg"));
+        assertNull(configuration.getContentTypes().get("text"));
+        assertFalse(configuration.isMetadataCacheEnabled());
+        assertTrue(configuration.isZeroCopyDownloadEnabled());
+        assertEquals(configuration.getImageResizeWidths(), Arrays.asList(64, 128, 256));
+    }
+
+    @Test
+    public void testEnvironmentOverridesProperties() {
+
+        Map<String, String> environment = new HashMap<>();
+        environment.put(StorageSystemConstants.CONFIGURABLE_MEDIA_STORE_TYPE, "database");
+        environment.put(StorageSystemConstants.CONFIGURABLE_MEDIA_MOUNT_LOCATION, "/mnt/media");
+        environment.put(StorageSystemConstants.CONFIGURABLE_MAXIMUM_MEDIA_SIZE_IN_BYTES, "1024");
+        environment.put(StorageSystemConstants.CONFIGURABLE_MEDIA_CONTENT_TYPES, "image,video");
+        environment.put("MEDIA_IMAGE_CONTENT_SUB_TYPES", "webp");
+        MediaConfiguration configuration = MediaConfiguration.resolve(getProperties(), environment, "/carbon");
+
+        assertEquals(configuration.getMediaStoreType(), "database");
+        assertEquals(configuration.getMediaMountBaseDirectory(), Paths.get("/mnt/media"));
+        assertEquals(configuration.getMaximumMediaSize(), 1024);
+        assertEquals(configuration.getContentTypes().keySet().size(), 2);
+        assertEquals(configuration.getContentTypes().get("image"), Collections.singletonList("webp"));
+        assertNull(configuration.getContentTypes().get("video"));
+    }
+
+    @Test
+    public void testResolveWithoutProperties() {
+
+        MediaConfiguration configuration = MediaConfiguration.resolve(new Properties(),
+                Collections.<String, String>emptyMap(), null);
+
+        assertNull(configuration.getMediaStoreType());
+        assertNull(configuration.getMediaMountBaseDirectory());
+        assertTrue(configuration.getContentTypes().isEmpty());
+        assertTrue(configuration.isMetadataCacheEnabled());
+    }
+
+    @Test
+    public void testReloadRebuildsConfiguredServices() throws Exception {
+
+        MediaServiceDataHolder dataHolder = MediaServiceDataHolder.getInstance();
+        MediaMetadataCache metadataCache = new MediaMetadataCache(1);
+        UserIdCache userIdCache = new UserIdCache(1, 1, 1);
+        ExecutorService uploadExecutorService = Executors.newSingleThreadExecutor();
+        dataHolder.setMediaMetadataCache(metadataCache);
+        dataHolder.setUserIdCache(userIdCache);
+        dataHolder.setUploadExecutorService(uploadExecutorService);
+        try {
+            StorageSystemUtil.reloadMediaProperties();
+
+            assertNotNull(dataHolder.getMediaMetadataCache());
+            assertNotSame(dataHolder.getMediaMetadataCache(), metadataCache);
+            assertNotNull(dataHolder.getUserIdCache());
+            assertNotSame(dataHolder.getUserIdCache(), userIdCache);
+            assertNotNull(dataHolder.getAuthorizationDecisionCache());
+            assertNotNull(dataHolder.getUserMembershipCache());
+            assertNotNull(dataHolder.getUploadExecutorService());
+            assertNotSame(dataHolder.getUploadExecutorService(), uploadExecutorService);
+            // The replaced executor completes the files submitted to it, but accepts no more.
+            assertTrue(uploadExecutorService.isShutdown());
+            // The configured sync policy doesn't flush the files of concurrent uploads together.
+            assertNull(dataHolder.getGroupCommitSyncer());
+        } finally {
+            dataHolder.releaseMediaConfiguration();
+            uploadExecutorService.shutdownNow();
+        }
+        assertNull(dataHolder.getMediaMetadataCache());
+        assertNull(dataHolder.getUploadExecutorService());
+    }
+
+    private Properties getProperties() {
+
+        Properties properties = new Properties();
+        properties.setProperty("MediaStoreType", "file");
+        properties.setProperty("MediaMountLocation", "repository/");
+        properties.setProperty("AllowedMaximumSizeInBytes", "512000");
+        properties.setProperty("AllowedContentTypes", "image,text");
+        properties.setProperty("image.AllowedContentSubTypes", "png,jpeg");
+        properties.setProperty("MetadataCache.Enabled", "false");
+        properties.setProperty("FileBasedStorage.ImageResize.Widths", "256, 64,128");
+        return properties;
+    }
+}
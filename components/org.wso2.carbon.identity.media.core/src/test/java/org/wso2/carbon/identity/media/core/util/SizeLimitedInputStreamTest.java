@@ -0,0 +1,66 @@
+/*
+ * Copyright (c) 2020, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wso2.carbon.identity.media.core.util;
+
+import org.testng.annotations.Test;
+import org.wso2.carbon.identity.media.core.exception.MediaSizeLimitExceededException;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import static org.testng.Assert.assertEquals;
+
+public class SizeLimitedInputStreamTest {
+
+    @Test
+    public void testReadWithinLimit() throws IOException {
+
+        SizeLimitedInputStream inputStream = new SizeLimitedInputStream(new ByteArrayInputStream(new byte[100]),
+                100);
+        assertEquals(drain(inputStream), 100);
+        assertEquals(inputStream.getCount(), 100);
+    }
+
+    @Test(expectedExceptions = MediaSizeLimitExceededException.class)
+    public void testReadBeyondLimit() throws IOException {
+
+        drain(new SizeLimitedInputStream(new ByteArrayInputStream(new byte[101]), 100));
+    }
+
+    @Test
+    public void testResetRestoresCount() throws IOException {
+
+        SizeLimitedInputStream inputStream = new SizeLimitedInputStream(new ByteArrayInputStream(new byte[80]), 100);
+        inputStream.mark(Integer.MAX_VALUE);
+        drain(inputStream);
+        inputStream.reset();
+        assertEquals(inputStream.getCount(), 0);
+        assertEquals(drain(inputStream), 80);
+    }
+
+    private long drain(InputStream inputStream) throws IOException {
+
+        long total = 0;
+        byte[] buffer = new byte[16];
+        int read;
+        while ((read = inputStream.read(buffer)) != -1) {
+            total += read;
+        }
+        return total;
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2020, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wso2.carbon.identity.media.core.volume;
+
+import org.testng.annotations.Test;
+import org.wso2.carbon.identity.media.core.AbstractStorageSystemTest;
+import org.wso2.carbon.identity.media.core.exception.StorageSystemServerException;
+import org.wso2.carbon.identity.media.core.model.FileSecurity;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.fail;
+
+/**
+ * Tests the volume based storage system. The volumes backing it are tested by {@link VolumeStoreTest}.
+ */
+public class VolumeBasedStorageSystemImplTest extends AbstractStorageSystemTest<VolumeBasedStorageSystemImpl> {
+
+    @Override
+    protected VolumeBasedStorageSystemImpl createStorageSystem() throws Exception {
+
+        return new VolumeBasedStorageSystemImpl(Files.createTempDirectory("media-volumes"));
+    }
+
+    @Override
+    protected void closeStorageSystem() {
+
+        storageSystem.close();
+    }
+
+    @Test
+    public void testIndexIsRebuiltWhenReopened() throws Exception {
+
+        Path volumeFolder = Files.createTempDirectory("media-volumes");
+        VolumeBasedStorageSystemImpl volumeStorageSystem = new VolumeBasedStorageSystemImpl(volumeFolder);
+        byte[] content = createContent(1000);
+        String keptUuid = addMedia(volumeStorageSystem, Collections.singletonList(content), null,
+                new FileSecurity(true, Collections.<String>emptyList()));
+        String deletedUuid = addMedia(volumeStorageSystem, Collections.singletonList(createContent(10)), null,
+                new FileSecurity(true, Collections.<String>emptyList()));
+        volumeStorageSystem.deleteMedia(deletedUuid, "image", TENANT_DOMAIN);
+        volumeStorageSystem.close();
+
+        volumeStorageSystem = new VolumeBasedStorageSystemImpl(volumeFolder);
+        try {
+            assertEquals(readContent(volumeStorageSystem.getFile(keptUuid, TENANT_DOMAIN, "image")), content);
+            assertNull(volumeStorageSystem.resolveMedia(deletedUuid, "image", TENANT_DOMAIN));
+            String addedUuid = addMedia(volumeStorageSystem, Collections.singletonList(content), null,
+                    new FileSecurity(true, Collections.<String>emptyList()));
+            assertEquals(readContent(volumeStorageSystem.getFile(addedUuid, TENANT_DOMAIN, "image")), content);
+        } finally {
+            volumeStorageSystem.close();
+        }
+    }
+
+    @Test
+    public void testVolumesInUseAreNotOpened() throws Exception {
+
+        Path volumeFolder = Files.createTempDirectory("media-volumes");
+        try (VolumeStore ignored = VolumeStore.open(volumeFolder, 1024 * 1024, false)) {
+            try {
+                new VolumeBasedStorageSystemImpl(volumeFolder).resolveMedia("id", "image", TENANT_DOMAIN);
+                fail("The volumes were opened by two storage systems.");
+            } catch (StorageSystemServerException e) {
+                // Expected.
+            }
+        }
+    }
+}
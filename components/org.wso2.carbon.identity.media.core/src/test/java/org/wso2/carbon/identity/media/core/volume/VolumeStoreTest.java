@@ -0,0 +1,252 @@
+/*
+ * Copyright (c) 2020, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wso2.carbon.identity.media.core.volume;
+
+import org.apache.commons.io.IOUtils;
+import org.testng.annotations.Test;
+import org.wso2.carbon.identity.media.core.cache.MediaMetadataCacheKey;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+/**
+ * Tests the volume store backing the volume based storage system, i.e. the rollover, the recovery and the compaction
+ * of the volumes.
+ */
+public class VolumeStoreTest {
+
+    private static final long MAXIMUM_VOLUME_SIZE = 8 * 1024;
+
+    @Test
+    public void testTornRecordIsDiscarded() throws Exception {
+
+        Path volumeFolder = Files.createTempDirectory("media-volumes");
+        MediaMetadataCacheKey keptKey = createKey();
+        MediaMetadataCacheKey deletedKey = createKey();
+        byte[] content = createContent(1000);
+        try (VolumeStore store = VolumeStore.open(volumeFolder, MAXIMUM_VOLUME_SIZE, false)) {
+            store.put(keptKey, new byte[]{1}, Collections.singletonList(content));
+            store.put(deletedKey, new byte[]{2}, Collections.singletonList(createContent(10)));
+            assertTrue(store.delete(deletedKey));
+        }
+
+        // Simulate a record torn by a crash at the end of the volume.
+        Path volumeFile = volumeFolder.resolve(MediaVolume.getFileName(1));
+        long volumeSize = Files.size(volumeFile);
+        appendTornRecord(volumeFile);
+
+        try (VolumeStore store = VolumeStore.open(volumeFolder, MAXIMUM_VOLUME_SIZE, false)) {
+            assertEquals(Files.size(volumeFile), volumeSize);
+            assertTrue(store.contains(keptKey));
+            assertFalse(store.contains(deletedKey));
+            try (InputStream inputStream = store.openFile(keptKey, 0)) {
+                assertEquals(IOUtils.toByteArray(inputStream), content);
+            }
+            // The next record is appended where the torn record was.
+            MediaMetadataCacheKey addedKey = createKey();
+            store.put(addedKey, new byte[]{3}, Collections.singletonList(content));
+            assertEquals(store.readMetadata(addedKey), new byte[]{3});
+        }
+    }
+
+    @Test
+    public void testRolloverSealsTheFullVolume() throws Exception {
+
+        Path volumeFolder = Files.createTempDirectory("media-volumes");
+        List<MediaMetadataCacheKey> keys = new ArrayList<>();
+        try (VolumeStore store = VolumeStore.open(volumeFolder, MAXIMUM_VOLUME_SIZE, false)) {
+            for (int i = 0; i < 2; i++) {
+                keys.add(createKey());
+                store.put(keys.get(i), new byte[]{(byte) i}, Collections.singletonList(createContent(5000)));
+            }
+            assertEquals(store.getVolumeCount(), 2);
+            // A media larger than a volume is stored in a volume of its own.
+            keys.add(createKey());
+            store.put(keys.get(2), new byte[]{2}, Collections.singletonList(createContent(20000)));
+            keys.add(createKey());
+            store.put(keys.get(3), new byte[]{3}, Collections.singletonList(createContent(100)));
+            assertEquals(store.getVolumeCount(), 4);
+        }
+        assertTrue(isSealed(volumeFolder, 1));
+        assertTrue(isSealed(volumeFolder, 2));
+        assertTrue(isSealed(volumeFolder, 3));
+        assertFalse(isSealed(volumeFolder, 4));
+
+        Path activeVolumeFile = volumeFolder.resolve(MediaVolume.getFileName(4));
+        long activeVolumeSize = Files.size(activeVolumeFile);
+        try (VolumeStore store = VolumeStore.open(volumeFolder, MAXIMUM_VOLUME_SIZE, false)) {
+            for (int i = 0; i < keys.size(); i++) {
+                assertEquals(store.readMetadata(keys.get(i)), new byte[]{(byte) i});
+            }
+            store.put(createKey(), new byte[]{4}, Collections.singletonList(createContent(100)));
+            assertEquals(store.getVolumeCount(), 4);
+            assertTrue(Files.size(activeVolumeFile) > activeVolumeSize);
+        }
+    }
+
+    @Test
+    public void testCompactionReclaimsDeletedMedia() throws Exception {
+
+        Path volumeFolder = Files.createTempDirectory("media-volumes");
+        List<MediaMetadataCacheKey> keys = new ArrayList<>();
+        List<byte[]> contents = new ArrayList<>();
+        try (VolumeStore store = VolumeStore.open(volumeFolder, MAXIMUM_VOLUME_SIZE, false)) {
+            for (int i = 0; i < 10; i++) {
+                MediaMetadataCacheKey key = createKey();
+                byte[] content = createContent(1000 + i);
+                store.put(key, new byte[]{(byte) i}, Collections.singletonList(content));
+                keys.add(key);
+                contents.add(content);
+            }
+            assertEquals(store.getVolumeCount(), 2);
+            Path firstVolumeFile = volumeFolder.resolve(MediaVolume.getFileName(1));
+            for (int i = 0; i < 6; i++) {
+                assertTrue(store.delete(keys.get(i)));
+            }
+            // A download in progress keeps reading the replaced volume until it completes.
+            InputStream inProgress = store.openFile(keys.get(6), 0);
+
+            assertEquals(store.compact(50), 1);
+
+            assertEquals(store.getVolumeCount(), 2);
+            assertEquals(IOUtils.toByteArray(inProgress), contents.get(6));
+            assertTrue(Files.exists(firstVolumeFile));
+            inProgress.close();
+            assertFalse(Files.exists(firstVolumeFile));
+            for (int i = 0; i < keys.size(); i++) {
+                if (i < 6) {
+                    assertNull(store.openFile(keys.get(i), 0));
+                } else {
+                    assertEquals(store.readMetadata(keys.get(i)), new byte[]{(byte) i});
+                    try (InputStream inputStream = store.openFile(keys.get(i), 0)) {
+                        assertEquals(IOUtils.toByteArray(inputStream), contents.get(i));
+                    }
+                }
+            }
+            assertEquals(store.compact(50), 0);
+        }
+        assertTrue(isSealed(volumeFolder, 3));
+
+        // The compacted volume replaces the original one when reopened.
+        try (VolumeStore store = VolumeStore.open(volumeFolder, MAXIMUM_VOLUME_SIZE, false)) {
+            assertNull(store.readMetadata(keys.get(0)));
+            for (int i = 6; i < keys.size(); i++) {
+                try (InputStream inputStream = store.openFile(keys.get(i), 0)) {
+                    assertEquals(IOUtils.toByteArray(inputStream), contents.get(i));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testTornRecordIsDiscardedAfterCompaction() throws Exception {
+
+        Path volumeFolder = Files.createTempDirectory("media-volumes");
+        List<MediaMetadataCacheKey> keys = new ArrayList<>();
+        try (VolumeStore store = VolumeStore.open(volumeFolder, MAXIMUM_VOLUME_SIZE, false)) {
+            for (int i = 0; i < 10; i++) {
+                MediaMetadataCacheKey key = createKey();
+                store.put(key, new byte[]{(byte) i}, Collections.singletonList(createContent(1000 + i)));
+                keys.add(key);
+            }
+            for (int i = 0; i < 6; i++) {
+                assertTrue(store.delete(keys.get(i)));
+            }
+            assertEquals(store.compact(50), 1);
+            // The media copied by the compaction is replaced in the volume being appended to.
+            store.put(keys.get(6), new byte[]{16}, Collections.singletonList(createContent(16)));
+        }
+
+        // The output of the compaction takes the highest id, but the second volume is still the one appended to.
+        Path activeVolumeFile = volumeFolder.resolve(MediaVolume.getFileName(2));
+        Path compactedVolumeFile = volumeFolder.resolve(MediaVolume.getFileName(3));
+        long activeVolumeSize = Files.size(activeVolumeFile);
+        long compactedVolumeSize = Files.size(compactedVolumeFile);
+        appendTornRecord(activeVolumeFile);
+
+        try (VolumeStore store = VolumeStore.open(volumeFolder, MAXIMUM_VOLUME_SIZE, false)) {
+            assertEquals(Files.size(activeVolumeFile), activeVolumeSize);
+            assertEquals(store.readMetadata(keys.get(6)), new byte[]{16});
+            for (int i = 7; i < keys.size(); i++) {
+                assertEquals(store.readMetadata(keys.get(i)), new byte[]{(byte) i});
+            }
+            store.put(keys.get(0), new byte[]{0}, Collections.singletonList(createContent(16)));
+            assertEquals(Files.size(compactedVolumeFile), compactedVolumeSize);
+            assertTrue(Files.size(activeVolumeFile) > activeVolumeSize);
+        }
+    }
+
+    @Test
+    public void testVolumesAreLockedByOneStore() throws Exception {
+
+        Path volumeFolder = Files.createTempDirectory("media-volumes");
+        try (VolumeStore ignored = VolumeStore.open(volumeFolder, MAXIMUM_VOLUME_SIZE, false)) {
+            try {
+                VolumeStore.open(volumeFolder, MAXIMUM_VOLUME_SIZE, false);
+                fail("The volumes were opened by two stores.");
+            } catch (IOException e) {
+                // Expected.
+            }
+        }
+    }
+
+    private static boolean isSealed(Path volumeFolder, long volumeId) throws IOException {
+
+        MediaVolume volume = MediaVolume.open(volumeId, volumeFolder.resolve(MediaVolume.getFileName(volumeId)));
+        try {
+            return volume.isSealed();
+        } finally {
+            volume.close();
+        }
+    }
+
+    private static void appendTornRecord(Path volumeFile) throws IOException {
+
+        try (FileChannel channel = FileChannel.open(volumeFile, StandardOpenOption.APPEND)) {
+            ByteBuffer tornRecord = ByteBuffer.allocate(32);
+            tornRecord.putInt(VolumeStore.RECORD_MAGIC).put((byte) 0).putInt(4096).rewind();
+            channel.write(tornRecord);
+        }
+    }
+
+    private static MediaMetadataCacheKey createKey() {
+
+        return new MediaMetadataCacheKey(-1234, "image", UUID.randomUUID().toString());
+    }
+
+    private static byte[] createContent(int size) {
+
+        byte[] content = new byte[size];
+        new Random(size).nextBytes(content);
+        return content;
+    }
+}
@@ -29,5 +29,5 @@ import javax.ws.rs.core.Response;
 
 public interface ContentApiService {
 
-      public Response downloadMedia(String type, String id, String identifier, String ifNoneMatch);
+      public Response downloadMedia(String type, String id, String identifier, Integer width, String ifNoneMatch, String ifModifiedSince, String range, String ifRange);
 }
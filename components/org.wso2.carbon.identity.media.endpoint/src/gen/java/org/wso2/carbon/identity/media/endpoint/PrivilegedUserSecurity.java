@@ -36,6 +36,8 @@ public class PrivilegedUserSecurity  {
   
     private Boolean allowedAll;
     private List<String> allowedUserIds = null;
+    private List<String> allowedGroups = null;
+    private List<String> allowedRoles = null;
 
 
     /**
@@ -84,6 +86,60 @@ public class PrivilegedUserSecurity  {
         return this;
     }
 
+    /**
+    * The groups whose members are entitled to access the file. A group name without a user store domain refers to a group of the primary user store.
+    **/
+    public PrivilegedUserSecurity allowedGroups(List<String> allowedGroups) {
+
+        this.allowedGroups = allowedGroups;
+        return this;
+    }
+    
+    @ApiModelProperty(example = "[\"marketing\",\"SECONDARY/sales\"]", value = "The groups whose members are entitled to access the file. A group name without a user store domain refers to a group of the primary user store.")
+    @JsonProperty("allowedGroups")
+    @Valid
+    public List<String> getAllowedGroups() {
+        return allowedGroups;
+    }
+    public void setAllowedGroups(List<String> allowedGroups) {
+        this.allowedGroups = allowedGroups;
+    }
+
+    public PrivilegedUserSecurity addAllowedGroupsItem(String allowedGroupsItem) {
+        if (this.allowedGroups == null) {
+            this.allowedGroups = new ArrayList<>();
+        }
+        this.allowedGroups.add(allowedGroupsItem);
+        return this;
+    }
+
+    /**
+    * The roles whose members are entitled to access the file. A role name without a domain refers to an internal role.
+    **/
+    public PrivilegedUserSecurity allowedRoles(List<String> allowedRoles) {
+
+        this.allowedRoles = allowedRoles;
+        return this;
+    }
+    
+    @ApiModelProperty(example = "[\"brand-managers\",\"Application/console\"]", value = "The roles whose members are entitled to access the file. A role name without a domain refers to an internal role.")
+    @JsonProperty("allowedRoles")
+    @Valid
+    public List<String> getAllowedRoles() {
+        return allowedRoles;
+    }
+    public void setAllowedRoles(List<String> allowedRoles) {
+        this.allowedRoles = allowedRoles;
+    }
+
+    public PrivilegedUserSecurity addAllowedRolesItem(String allowedRolesItem) {
+        if (this.allowedRoles == null) {
+            this.allowedRoles = new ArrayList<>();
+        }
+        this.allowedRoles.add(allowedRolesItem);
+        return this;
+    }
+
     
 
     @Override
@@ -97,12 +153,14 @@ public class PrivilegedUserSecurity  {
         }
         PrivilegedUserSecurity privilegedUserSecurity = (PrivilegedUserSecurity) o;
         return Objects.equals(this.allowedAll, privilegedUserSecurity.allowedAll) &&
-            Objects.equals(this.allowedUserIds, privilegedUserSecurity.allowedUserIds);
+            Objects.equals(this.allowedUserIds, privilegedUserSecurity.allowedUserIds) &&
+            Objects.equals(this.allowedGroups, privilegedUserSecurity.allowedGroups) &&
+            Objects.equals(this.allowedRoles, privilegedUserSecurity.allowedRoles);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(allowedAll, allowedUserIds);
+        return Objects.hash(allowedAll, allowedUserIds, allowedGroups, allowedRoles);
     }
 
     @Override
@@ -113,6 +171,8 @@ public class PrivilegedUserSecurity  {
         
         sb.append("    allowedAll: ").append(toIndentedString(allowedAll)).append("\n");
         sb.append("    allowedUserIds: ").append(toIndentedString(allowedUserIds)).append("\n");
+        sb.append("    allowedGroups: ").append(toIndentedString(allowedGroups)).append("\n");
+        sb.append("    allowedRoles: ").append(toIndentedString(allowedRoles)).append("\n");
         sb.append("}");
         return sb.toString();
     }
@@ -33,6 +33,8 @@ import javax.xml.bind.annotation.*;
 public class PrivilegedUserSecurityAllOf  {
   
     private List<String> allowedUserIds = null;
+    private List<String> allowedGroups = null;
+    private List<String> allowedRoles = null;
 
 
     /**
@@ -62,6 +64,60 @@ public class PrivilegedUserSecurityAllOf  {
         return this;
     }
 
+    /**
+    * The groups whose members are entitled to access the file. A group name without a user store domain refers to a group of the primary user store.
+    **/
+    public PrivilegedUserSecurityAllOf allowedGroups(List<String> allowedGroups) {
+
+        this.allowedGroups = allowedGroups;
+        return this;
+    }
+    
+    @ApiModelProperty(example = "[\"marketing\",\"SECONDARY/sales\"]", value = "The groups whose members are entitled to access the file. A group name without a user store domain refers to a group of the primary user store.")
+    @JsonProperty("allowedGroups")
+    @Valid
+    public List<String> getAllowedGroups() {
+        return allowedGroups;
+    }
+    public void setAllowedGroups(List<String> allowedGroups) {
+        this.allowedGroups = allowedGroups;
+    }
+
+    public PrivilegedUserSecurityAllOf addAllowedGroupsItem(String allowedGroupsItem) {
+        if (this.allowedGroups == null) {
+            this.allowedGroups = new ArrayList<>();
+        }
+        this.allowedGroups.add(allowedGroupsItem);
+        return this;
+    }
+
+    /**
+    * The roles whose members are entitled to access the file. A role name without a domain refers to an internal role.
+    **/
+    public PrivilegedUserSecurityAllOf allowedRoles(List<String> allowedRoles) {
+
+        this.allowedRoles = allowedRoles;
+        return this;
+    }
+    
+    @ApiModelProperty(example = "[\"brand-managers\",\"Application/console\"]", value = "The roles whose members are entitled to access the file. A role name without a domain refers to an internal role.")
+    @JsonProperty("allowedRoles")
+    @Valid
+    public List<String> getAllowedRoles() {
+        return allowedRoles;
+    }
+    public void setAllowedRoles(List<String> allowedRoles) {
+        this.allowedRoles = allowedRoles;
+    }
+
+    public PrivilegedUserSecurityAllOf addAllowedRolesItem(String allowedRolesItem) {
+        if (this.allowedRoles == null) {
+            this.allowedRoles = new ArrayList<>();
+        }
+        this.allowedRoles.add(allowedRolesItem);
+        return this;
+    }
+
     
 
     @Override
@@ -74,12 +130,14 @@ public class PrivilegedUserSecurityAllOf  {
             return false;
         }
         PrivilegedUserSecurityAllOf privilegedUserSecurityAllOf = (PrivilegedUserSecurityAllOf) o;
-        return Objects.equals(this.allowedUserIds, privilegedUserSecurityAllOf.allowedUserIds);
+        return Objects.equals(this.allowedUserIds, privilegedUserSecurityAllOf.allowedUserIds) &&
+            Objects.equals(this.allowedGroups, privilegedUserSecurityAllOf.allowedGroups) &&
+            Objects.equals(this.allowedRoles, privilegedUserSecurityAllOf.allowedRoles);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(allowedUserIds);
+        return Objects.hash(allowedUserIds, allowedGroups, allowedRoles);
     }
 
     @Override
@@ -89,6 +147,8 @@ public class PrivilegedUserSecurityAllOf  {
         sb.append("class PrivilegedUserSecurityAllOf {\n");
         
         sb.append("    allowedUserIds: ").append(toIndentedString(allowedUserIds)).append("\n");
+        sb.append("    allowedGroups: ").append(toIndentedString(allowedGroups)).append("\n");
+        sb.append("    allowedRoles: ").append(toIndentedString(allowedRoles)).append("\n");
         sb.append("}");
         return sb.toString();
     }
@@ -49,15 +49,17 @@ public class PublicApi  {
     @ApiOperation(value = "Download a publicly available file.", notes = "", response = File.class, tags={ "Download Media" })
     @ApiResponses(value = { 
         @ApiResponse(code = 200, message = "File downloaded successfully.", response = File.class),
+        @ApiResponse(code = 206, message = "Partial content. The requested ranges of the file are returned, as multipart/byteranges if more than one range is requested.", response = File.class),
         @ApiResponse(code = 304, message = "Not Modified. Empty body because the client has already the latest version of the requested resource.", response = Void.class),
         @ApiResponse(code = 400, message = "Invalid input in the request.", response = Error.class),
         @ApiResponse(code = 404, message = "Requested resource is not found.", response = Error.class),
+        @ApiResponse(code = 416, message = "None of the requested ranges can be satisfied.", response = Void.class),
         @ApiResponse(code = 500, message = "Internal server error.", response = Error.class),
         @ApiResponse(code = 501, message = "Not implemented.", response = Error.class)
     })
-    public Response downloadPublicMedia(@ApiParam(value = "The media type.",required=true) @PathParam("type") String type, @ApiParam(value = "Unique identifier for the file.",required=true) @PathParam("id") String id,     @Valid@ApiParam(value = "")  @QueryParam("identifier") String identifier,     @Valid @ApiParam(value = "Validator for conditional requests; based on the ETag of the formerly retrieved variant of the resource." )@HeaderParam("If-None-Match") String ifNoneMatch) {
+    public Response downloadPublicMedia(@ApiParam(value = "The media type.",required=true) @PathParam("type") String type, @ApiParam(value = "Unique identifier for the file.",required=true) @PathParam("id") String id,     @Valid@ApiParam(value = "")  @QueryParam("identifier") String identifier,     @Valid@ApiParam(value = "Maximum width in pixels of the image to be retrieved. The width is rounded up to the nearest width for which resized variants are generated.")  @QueryParam("width") Integer width,     @Valid @ApiParam(value = "Validator for conditional requests; based on the ETag of the formerly retrieved variant of the resource." )@HeaderParam("If-None-Match") String ifNoneMatch,     @Valid @ApiParam(value = "Validator for conditional requests; based on the Last-Modified time of the formerly retrieved variant of the resource. Ignored if If-None-Match is present." )@HeaderParam("If-Modified-Since") String ifModifiedSince,     @Valid @ApiParam(value = "Byte ranges of the file to be retrieved." )@HeaderParam("Range") String range,     @Valid @ApiParam(value = "Validator for range requests; based on the ETag or the Last-Modified time of the formerly retrieved variant of the resource." )@HeaderParam("If-Range") String ifRange) {
 
-        return delegate.downloadPublicMedia(type,  id,  identifier,  ifNoneMatch );
+        return delegate.downloadPublicMedia(type,  id,  identifier,  width,  ifNoneMatch,  ifModifiedSince,  range,  ifRange );
     }
 
 }
@@ -0,0 +1,170 @@
+/*
+ * Copyright (c) 2020, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wso2.carbon.identity.media.endpoint.common;
+
+import org.apache.commons.lang.StringUtils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import static org.wso2.carbon.identity.media.endpoint.common.MediaServiceConstants.BYTES_RANGE_UNIT;
+
+/**
+ * An inclusive byte range of a media file requested through the HTTP Range header.
+ */
+public class ByteRange {
+
+    // Requests with more ranges than this are served with the full content instead.
+    private static final int MAX_RANGES = 16;
+
+    private final long start;
+    private final long end;
+
+    public ByteRange(long start, long end) {
+
+        this.start = start;
+        this.end = end;
+    }
+
+    public long getStart() {
+
+        return start;
+    }
+
+    public long getEnd() {
+
+        return end;
+    }
+
+    public long getLength() {
+
+        return end - start + 1;
+    }
+
+    /**
+     * Builds the value of the Content-Range header for this range.
+     *
+     * @param size The full size of the media file.
+     * @return Content-Range header value.
+     */
+    public String toContentRange(long size) {
+
+        return BYTES_RANGE_UNIT + " " + start + "-" + end + "/" + size;
+    }
+
+    /**
+     * Parses the value of a Range header against a media file of the given size. Satisfiable ranges are returned
+     * sorted and with overlapping or adjacent ranges merged.
+     *
+     * @param rangeHeader The value of the Range header.
+     * @param size        The full size of the media file.
+     * @return the satisfiable ranges, an empty list if none of the ranges can be satisfied, or null if the header
+     * can't be honoured and the full content should be served instead.
+     */
+    public static List<ByteRange> parse(String rangeHeader, long size) {
+
+        if (StringUtils.isBlank(rangeHeader)) {
+            return null;
+        }
+        String rangeSpecifier = rangeHeader.trim();
+        String prefix = BYTES_RANGE_UNIT + "=";
+        if (!rangeSpecifier.startsWith(prefix)) {
+            return null;
+        }
+        String[] rangeSpecs = rangeSpecifier.substring(prefix.length()).split(",");
+        if (rangeSpecs.length > MAX_RANGES) {
+            return null;
+        }
+
+        List<ByteRange> ranges = new ArrayList<>();
+        for (String rangeSpec : rangeSpecs) {
+            String spec = rangeSpec.trim();
+            int separatorIndex = spec.indexOf('-');
+            if (separatorIndex < 0) {
+                return null;
+            }
+            String firstBytePos = spec.substring(0, separatorIndex).trim();
+            String lastBytePos = spec.substring(separatorIndex + 1).trim();
+            if (!isValidBytePosition(firstBytePos) || !isValidBytePosition(lastBytePos) ||
+                    (firstBytePos.isEmpty() && lastBytePos.isEmpty())) {
+                return null;
+            }
+            try {
+                if (firstBytePos.isEmpty()) {
+                    // Suffix range, i.e. the last N bytes of the file.
+                    long suffixLength = Long.parseLong(lastBytePos);
+                    if (suffixLength > 0 && size > 0) {
+                        ranges.add(new ByteRange(Math.max(0, size - suffixLength), size - 1));
+                    }
+                    continue;
+                }
+                long start = Long.parseLong(firstBytePos);
+                long end = lastBytePos.isEmpty() ? Long.MAX_VALUE : Long.parseLong(lastBytePos);
+                if (end < start) {
+                    return null;
+                }
+                if (start < size) {
+                    ranges.add(new ByteRange(start, Math.min(end, size - 1)));
+                }
+            } catch (NumberFormatException e) {
+                // Positions too large to be represented can't be honoured.
+                return null;
+            }
+        }
+        return coalesce(ranges);
+    }
+
+    private static boolean isValidBytePosition(String bytePosition) {
+
+        for (int i = 0; i < bytePosition.length(); i++) {
+            char character = bytePosition.charAt(i);
+            if (character < '0' || character > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static List<ByteRange> coalesce(List<ByteRange> ranges) {
+
+        if (ranges.size() < 2) {
+            return ranges;
+        }
+        Collections.sort(ranges, new Comparator<ByteRange>() {
+            @Override
+            public int compare(ByteRange range1, ByteRange range2) {
+
+                return Long.compare(range1.getStart(), range2.getStart());
+            }
+        });
+        List<ByteRange> coalesced = new ArrayList<>();
+        ByteRange current = ranges.get(0);
+        for (int i = 1; i < ranges.size(); i++) {
+            ByteRange next = ranges.get(i);
+            if (next.getStart() <= current.getEnd() + 1) {
+                current = new ByteRange(current.getStart(), Math.max(current.getEnd(), next.getEnd()));
+            } else {
+                coalesced.add(current);
+                current = next;
+            }
+        }
+        coalesced.add(current);
+        return coalesced;
+    }
+}
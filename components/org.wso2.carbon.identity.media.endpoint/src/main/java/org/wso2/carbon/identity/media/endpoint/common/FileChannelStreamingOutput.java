@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) 2020, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wso2.carbon.identity.media.endpoint.common;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.identity.media.core.ChannelContent;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import javax.servlet.http.HttpServletRequest;
+import javax.ws.rs.core.StreamingOutput;
+
+/**
+ * Writes a media to the response from a file channel.
+ * <p>
+ * When the servlet container supports sendfile (e.g. Tomcat NIO connector), the container is asked to transfer the
+ * file to the socket itself and nothing is written to the response output stream. Otherwise the file is transferred
+ * with {@link FileChannel#transferTo(long, long, WritableByteChannel)}, which avoids reading the file into heap
+ * buffers.
+ */
+public class FileChannelStreamingOutput implements StreamingOutput {
+
+    private static final Log LOG = LogFactory.getLog(FileChannelStreamingOutput.class);
+
+    private static final String SENDFILE_SUPPORT_ATTRIBUTE = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME_ATTRIBUTE = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START_ATTRIBUTE = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END_ATTRIBUTE = "org.apache.tomcat.sendfile.end";
+
+    private final ChannelContent channelContent;
+    private final HttpServletRequest request;
+    private final ByteRange byteRange;
+
+    /**
+     * Creates a streaming output for the given channel content.
+     *
+     * @param channelContent The content to be written.
+     * @param request        The servlet request being served, or null if not available.
+     */
+    public FileChannelStreamingOutput(ChannelContent channelContent, HttpServletRequest request) {
+
+        this(channelContent, request, null);
+    }
+
+    /**
+     * Creates a streaming output for a range of the given channel content.
+     *
+     * @param channelContent The content to be written.
+     * @param request        The servlet request being served, or null if not available.
+     * @param byteRange      The range of the content to be written, or null to write the full content.
+     */
+    public FileChannelStreamingOutput(ChannelContent channelContent, HttpServletRequest request,
+                                      ByteRange byteRange) {
+
+        this.channelContent = channelContent;
+        this.request = request;
+        this.byteRange = byteRange;
+    }
+
+    @Override
+    public void write(OutputStream outputStream) throws IOException {
+
+        long start = byteRange != null ? byteRange.getStart() : 0L;
+        long end = byteRange != null ? byteRange.getEnd() + 1 : channelContent.getSize();
+        if (isSendfileSupported()) {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Delegating the transfer of the media file to the servlet container using sendfile.");
+            }
+            request.setAttribute(SENDFILE_FILENAME_ATTRIBUTE, channelContent.getFile().getAbsolutePath());
+            request.setAttribute(SENDFILE_START_ATTRIBUTE, start);
+            request.setAttribute(SENDFILE_END_ATTRIBUTE, end);
+            return;
+        }
+
+        try (FileChannel fileChannel = channelContent.openChannel()) {
+            transfer(fileChannel, start, Math.min(end, fileChannel.size()), Channels.newChannel(outputStream));
+        }
+    }
+
+    /**
+     * Transfers the given region of a file channel to the target channel, starting directly at the given offset.
+     *
+     * @param fileChannel   The source file channel.
+     * @param start         The offset of the first byte to be transferred.
+     * @param end           The offset after the last byte to be transferred.
+     * @param targetChannel The target channel.
+     * @throws IOException If an error occurs while transferring the content.
+     */
+    static void transfer(FileChannel fileChannel, long start, long end, WritableByteChannel targetChannel)
+            throws IOException {
+
+        long position = start;
+        while (position < end) {
+            long transferred = fileChannel.transferTo(position, end - position, targetChannel);
+            if (transferred <= 0) {
+                break;
+            }
+            position += transferred;
+        }
+    }
+
+    private boolean isSendfileSupported() {
+
+        return request != null && Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT_ATTRIBUTE));
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright (c) 2020, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wso2.carbon.identity.media.endpoint.common;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.cxf.jaxrs.utils.HttpUtils;
+
+import java.util.Date;
+
+/**
+ * Evaluates the preconditions of conditional media download requests against the ETag and the last modified time
+ * of the requested media.
+ */
+public class HttpPreconditions {
+
+    private HttpPreconditions() {
+
+    }
+
+    /**
+     * Evaluates the If-None-Match and If-Modified-Since preconditions of a download request. If-Modified-Since is
+     * only considered when If-None-Match is not present.
+     *
+     * @param ifNoneMatch     The value of If-None-Match request header.
+     * @param ifModifiedSince The value of If-Modified-Since request header.
+     * @param etag            The ETag of the media.
+     * @param lastModified    The last modified time of the media, or null if not known.
+     * @return true if the client already has the current representation of the media.
+     */
+    public static boolean isNotModified(String ifNoneMatch, String ifModifiedSince, String etag, Date lastModified) {
+
+        if (StringUtils.isNotBlank(ifNoneMatch)) {
+            return matchesAnyEntityTag(ifNoneMatch, etag);
+        }
+        if (StringUtils.isNotBlank(ifModifiedSince) && lastModified != null) {
+            Date modifiedSince = HttpUtils.getHttpDate(ifModifiedSince.trim());
+            // HTTP dates have a precision of a second.
+            return modifiedSince != null && lastModified.getTime() / 1000 <= modifiedSince.getTime() / 1000;
+        }
+        return false;
+    }
+
+    /**
+     * Compares the entity tags of an If-None-Match header with the ETag of the media, using the weak comparison.
+     *
+     * @param ifNoneMatch The value of If-None-Match request header.
+     * @param etag        The ETag of the media.
+     * @return true if any of the entity tags matches the ETag of the media.
+     */
+    public static boolean matchesAnyEntityTag(String ifNoneMatch, String etag) {
+
+        if (StringUtils.isBlank(etag)) {
+            return false;
+        }
+        for (String entityTag : ifNoneMatch.split(",")) {
+            String tag = entityTag.trim();
+            if ("*".equals(tag)) {
+                return true;
+            }
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.length() > 1 && tag.startsWith("\"") && tag.endsWith("\"") &&
+                    StringUtils.equals(tag.substring(1, tag.length() - 1), etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Checks whether the If-Range precondition allows the requested ranges to be served. The validator is either a
+     * strong entity tag or an HTTP date which must exactly match the last modified time of the media.
+     *
+     * @param ifRange      The value of If-Range request header.
+     * @param etag         The ETag of the media.
+     * @param lastModified The last modified time of the media, or null if not known.
+     * @return true if the requested ranges can be served.
+     */
+    public static boolean isIfRangeSatisfied(String ifRange, String etag, Date lastModified) {
+
+        if (StringUtils.isBlank(ifRange)) {
+            return true;
+        }
+        String validator = ifRange.trim();
+        if (validator.startsWith("\"") || validator.startsWith("W/")) {
+            return validator.length() > 1 && validator.startsWith("\"") && validator.endsWith("\"") &&
+                    StringUtils.equals(validator.substring(1, validator.length() - 1), etag);
+        }
+        Date validatorDate = HttpUtils.getHttpDate(validator);
+        return validatorDate != null && lastModified != null &&
+                validatorDate.getTime() / 1000 == lastModified.getTime() / 1000;
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) 2020, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wso2.carbon.identity.media.endpoint.common;
+
+import org.wso2.carbon.identity.media.core.StreamContent;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import javax.ws.rs.core.StreamingOutput;
+
+/**
+ * Writes a range of a media served as a stream, e.g. from a database or a media volume, to the response. Unlike a
+ * file channel the stream can't be positioned, hence the bytes preceding the range are skipped.
+ */
+public class InputStreamStreamingOutput implements StreamingOutput {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private final StreamContent streamContent;
+    private final ByteRange byteRange;
+
+    /**
+     * Creates a streaming output for a range of the given stream content.
+     *
+     * @param streamContent The content to be written.
+     * @param byteRange     The range of the content to be written.
+     */
+    public InputStreamStreamingOutput(StreamContent streamContent, ByteRange byteRange) {
+
+        this.streamContent = streamContent;
+        this.byteRange = byteRange;
+    }
+
+    @Override
+    public void write(OutputStream outputStream) throws IOException {
+
+        try (InputStream inputStream = streamContent.getInputStream()) {
+            transfer(inputStream, 0L, byteRange, outputStream);
+        }
+    }
+
+    /**
+     * Transfers a range of an input stream to the output stream. The ranges of a stream must be transferred in
+     * ascending order, as the stream can only be skipped forward.
+     *
+     * @param inputStream  The source input stream.
+     * @param position     The offset of the next byte of the input stream.
+     * @param byteRange    The range to be transferred, which must not start before the given position.
+     * @param outputStream The target output stream.
+     * @return the offset of the next byte of the input stream after the range is transferred.
+     * @throws IOException If the stream ends before the range or an error occurs while transferring the range.
+     */
+    static long transfer(InputStream inputStream, long position, ByteRange byteRange, OutputStream outputStream)
+            throws IOException {
+
+        long toSkip = byteRange.getStart() - position;
+        while (toSkip > 0) {
+            long skipped = inputStream.skip(toSkip);
+            if (skipped <= 0) {
+                // Skip may return 0 before the end of the stream, hence a byte is read to detect the end.
+                if (inputStream.read() == -1) {
+                    throw new EOFException("The media stream ended before the requested range.");
+                }
+                skipped = 1;
+            }
+            toSkip -= skipped;
+        }
+
+        byte[] buffer = new byte[BUFFER_SIZE];
+        long remaining = byteRange.getLength();
+        while (remaining > 0) {
+            int read = inputStream.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+            if (read == -1) {
+                throw new EOFException("The media stream ended before the end of the requested range.");
+            }
+            outputStream.write(buffer, 0, read);
+            remaining -= read;
+        }
+        return byteRange.getEnd() + 1;
+    }
+}
@@ -16,6 +16,15 @@
 
 package org.wso2.carbon.identity.media.endpoint.common;
 
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.FrameworkUtil;
+import org.osgi.framework.ServiceReference;
+import org.osgi.util.tracker.ServiceTracker;
+import org.osgi.util.tracker.ServiceTrackerCustomizer;
+import org.wso2.carbon.identity.media.core.StorageSystemManager;
 import org.wso2.carbon.user.core.service.RealmService;
 
 /**
@@ -23,8 +32,12 @@ import org.wso2.carbon.user.core.service.RealmService;
  */
 public class MediaEndpointDataHolder {
 
+    private static final Log LOG = LogFactory.getLog(MediaEndpointDataHolder.class);
+
     private static MediaEndpointDataHolder instance = new MediaEndpointDataHolder();
     private RealmService realmService;
+    private volatile StorageSystemManager storageSystemManager;
+    private ServiceTracker<StorageSystemManager, StorageSystemManager> storageSystemManagerTracker;
 
     private MediaEndpointDataHolder() {
 
@@ -54,4 +67,83 @@ public class MediaEndpointDataHolder {
 
         MediaEndpointDataHolder.getInstance().realmService = realmService;
     }
+
+    /**
+     * Get StorageSystemManager osgi service tracked since the endpoint was initialized, so that it is not looked up
+     * from the service registry for each request.
+     *
+     * @return StorageSystemManager, or null if the service is not tracked.
+     */
+    public StorageSystemManager getStorageSystemManager() {
+
+        return MediaEndpointDataHolder.getInstance().storageSystemManager;
+    }
+
+    /**
+     * Start tracking the StorageSystemManager osgi service. Invoked once when the endpoint is initialized.
+     */
+    public void openStorageSystemManagerTracker() {
+
+        MediaEndpointDataHolder.getInstance().openTracker();
+    }
+
+    /**
+     * Stop tracking the StorageSystemManager osgi service.
+     */
+    public void closeStorageSystemManagerTracker() {
+
+        MediaEndpointDataHolder.getInstance().closeTracker();
+    }
+
+    private synchronized void openTracker() {
+
+        if (storageSystemManagerTracker != null) {
+            return;
+        }
+        Bundle bundle = FrameworkUtil.getBundle(StorageSystemManager.class);
+        final BundleContext bundleContext = bundle != null ? bundle.getBundleContext() : null;
+        if (bundleContext == null) {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Bundle context is not available to track the StorageSystemManager service.");
+            }
+            return;
+        }
+        storageSystemManagerTracker = new ServiceTracker<>(bundleContext, StorageSystemManager.class,
+                new ServiceTrackerCustomizer<StorageSystemManager, StorageSystemManager>() {
+
+                    @Override
+                    public StorageSystemManager addingService(ServiceReference<StorageSystemManager> reference) {
+
+                        StorageSystemManager manager = bundleContext.getService(reference);
+                        storageSystemManager = manager;
+                        return manager;
+                    }
+
+                    @Override
+                    public void modifiedService(ServiceReference<StorageSystemManager> reference,
+                                                StorageSystemManager manager) {
+
+                    }
+
+                    @Override
+                    public void removedService(ServiceReference<StorageSystemManager> reference,
+                                               StorageSystemManager manager) {
+
+                        if (storageSystemManager == manager) {
+                            storageSystemManager = null;
+                        }
+                        bundleContext.ungetService(reference);
+                    }
+                });
+        storageSystemManagerTracker.open();
+    }
+
+    private synchronized void closeTracker() {
+
+        if (storageSystemManagerTracker != null) {
+            storageSystemManagerTracker.close();
+            storageSystemManagerTracker = null;
+        }
+        storageSystemManager = null;
+    }
 }
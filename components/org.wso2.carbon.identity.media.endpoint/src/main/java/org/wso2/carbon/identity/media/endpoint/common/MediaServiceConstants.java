@@ -32,6 +32,13 @@ public class MediaServiceConstants {
     public static final String CONTENT_PATH_COMPONENT = "content";
     public static final String PUBLIC_PATH_COMPONENT = "public";
     public static final String ME_PATH_COMPONENT = "me";
+    public static final String IDENTIFIER_QUERY_PARAM = "identifier";
+    // Request property used to share the media resolved during security evaluation with the media service.
+    public static final String RESOLVED_MEDIA_PROPERTY = "media-resolved-media";
+    public static final String HEADER_ACCEPT_RANGES = "Accept-Ranges";
+    public static final String HEADER_CONTENT_RANGE = "Content-Range";
+    public static final String BYTES_RANGE_UNIT = "bytes";
+    public static final String MULTIPART_BYTERANGES = "multipart/byteranges";
     private static final String MEDIA_SERVICE = "MED-";
 
     /**
@@ -56,6 +63,11 @@ public class MediaServiceConstants {
                 " operation.", "Unsupported file content type available as a path parameter in the request."),
         ERROR_CODE_INVALID_MEDIA_SIZE("60008", "Unable to upload the provided media.",
                 "Media size exceeds the maximum allowed size."),
+        ERROR_CODE_INVALID_FILE_IDENTIFIERS("60009", "Unable to upload the provided media.",
+                "An identifier is required for each of the uploaded files. Identifiers should be unique and " +
+                        "contain only alphanumeric characters, hyphens and underscores."),
+        ERROR_CODE_INVALID_WIDTH_QUERY_PARAM("60010", "Unable to download the requested media.",
+                "The width query parameter should be a positive integer."),
 
         // Server errors.
         ERROR_CODE_ERROR_UPLOADING_MEDIA("65001", "Unable to upload the provided media.",
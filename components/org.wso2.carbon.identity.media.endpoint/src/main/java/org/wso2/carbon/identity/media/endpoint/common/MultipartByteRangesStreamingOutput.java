@@ -0,0 +1,149 @@
+/*
+ * Copyright (c) 2020, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wso2.carbon.identity.media.endpoint.common;
+
+import org.apache.commons.lang.StringUtils;
+import org.wso2.carbon.identity.media.core.ChannelContent;
+import org.wso2.carbon.identity.media.core.StreamContent;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import javax.ws.rs.core.StreamingOutput;
+
+import static org.wso2.carbon.identity.media.endpoint.common.MediaServiceConstants.HEADER_CONTENT_RANGE;
+import static org.wso2.carbon.identity.media.endpoint.common.MediaServiceConstants.MULTIPART_BYTERANGES;
+
+/**
+ * Writes several ranges of a media to the response as a multipart/byteranges body. Each range is transferred
+ * straight from the file channel at its offset, or read from the stream of a media served as a stream.
+ */
+public class MultipartByteRangesStreamingOutput implements StreamingOutput {
+
+    private static final String CRLF = "\r\n";
+    private static final String BOUNDARY_DELIMITER = "--";
+
+    private final ChannelContent channelContent;
+    private final StreamContent streamContent;
+    private final List<ByteRange> byteRanges;
+    private final String boundary;
+    private final List<byte[]> partHeaders;
+    private final byte[] closeDelimiter;
+
+    /**
+     * Creates a multipart/byteranges streaming output for the given ranges of the channel content.
+     *
+     * @param channelContent The content to be written.
+     * @param byteRanges     The ranges of the content to be written.
+     */
+    public MultipartByteRangesStreamingOutput(ChannelContent channelContent, List<ByteRange> byteRanges) {
+
+        this(channelContent, null, channelContent.getResponseContentType(), channelContent.getSize(), byteRanges);
+    }
+
+    /**
+     * Creates a multipart/byteranges streaming output for the given ranges of the stream content.
+     *
+     * @param streamContent The content to be written.
+     * @param size          The full size of the media.
+     * @param byteRanges    The ranges of the content to be written, sorted in ascending order.
+     */
+    public MultipartByteRangesStreamingOutput(StreamContent streamContent, long size, List<ByteRange> byteRanges) {
+
+        this(null, streamContent, streamContent.getResponseContentType(), size, byteRanges);
+    }
+
+    private MultipartByteRangesStreamingOutput(ChannelContent channelContent, StreamContent streamContent,
+                                               String contentType, long size, List<ByteRange> byteRanges) {
+
+        this.channelContent = channelContent;
+        this.streamContent = streamContent;
+        this.byteRanges = byteRanges;
+        this.boundary = UUID.randomUUID().toString().replace("-", StringUtils.EMPTY);
+        this.partHeaders = new ArrayList<>(byteRanges.size());
+        for (ByteRange byteRange : byteRanges) {
+            StringBuilder partHeader = new StringBuilder();
+            partHeader.append(CRLF).append(BOUNDARY_DELIMITER).append(boundary).append(CRLF);
+            if (StringUtils.isNotBlank(contentType)) {
+                partHeader.append("Content-Type: ").append(contentType).append(CRLF);
+            }
+            partHeader.append(HEADER_CONTENT_RANGE).append(": ")
+                    .append(byteRange.toContentRange(size)).append(CRLF).append(CRLF);
+            partHeaders.add(partHeader.toString().getBytes(StandardCharsets.US_ASCII));
+        }
+        this.closeDelimiter = (CRLF + BOUNDARY_DELIMITER + boundary + BOUNDARY_DELIMITER + CRLF)
+                .getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Returns the content type of the multipart body including its boundary.
+     *
+     * @return content type of the response.
+     */
+    public String getContentType() {
+
+        return MULTIPART_BYTERANGES + "; boundary=" + boundary;
+    }
+
+    /**
+     * Returns the exact number of bytes written by this streaming output.
+     *
+     * @return content length of the response.
+     */
+    public long getContentLength() {
+
+        long contentLength = closeDelimiter.length;
+        for (int i = 0; i < byteRanges.size(); i++) {
+            contentLength += partHeaders.get(i).length + byteRanges.get(i).getLength();
+        }
+        return contentLength;
+    }
+
+    @Override
+    public void write(OutputStream outputStream) throws IOException {
+
+        if (streamContent != null) {
+            try (InputStream inputStream = streamContent.getInputStream()) {
+                long position = 0L;
+                for (int i = 0; i < byteRanges.size(); i++) {
+                    outputStream.write(partHeaders.get(i));
+                    position = InputStreamStreamingOutput.transfer(inputStream, position, byteRanges.get(i),
+                            outputStream);
+                }
+                outputStream.write(closeDelimiter);
+            }
+            return;
+        }
+        try (FileChannel fileChannel = channelContent.openChannel()) {
+            WritableByteChannel targetChannel = Channels.newChannel(outputStream);
+            for (int i = 0; i < byteRanges.size(); i++) {
+                ByteRange byteRange = byteRanges.get(i);
+                outputStream.write(partHeaders.get(i));
+                FileChannelStreamingOutput.transfer(fileChannel, byteRange.getStart(), byteRange.getEnd() + 1,
+                        targetChannel);
+            }
+            outputStream.write(closeDelimiter);
+        }
+    }
+}
@@ -20,21 +20,32 @@ import org.apache.commons.lang.ArrayUtils;
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.apache.cxf.jaxrs.impl.PropertyHolderFactory;
+import org.apache.cxf.jaxrs.utils.JAXRSUtils;
+import org.apache.cxf.message.Message;
+import org.apache.cxf.transport.http.AbstractHTTPDestination;
 import org.apache.log4j.MDC;
 import org.wso2.carbon.context.PrivilegedCarbonContext;
 import org.wso2.carbon.identity.core.ServiceURLBuilder;
 import org.wso2.carbon.identity.core.URLBuilderException;
 import org.wso2.carbon.identity.core.util.IdentityTenantUtil;
 import org.wso2.carbon.identity.media.core.StorageSystemManager;
+import org.wso2.carbon.identity.media.core.model.ResolvedMedia;
 import org.wso2.carbon.identity.media.endpoint.Error;
+import org.wso2.carbon.identity.media.endpoint.MultipleFilesUploadResponse;
+import org.wso2.carbon.identity.media.endpoint.MultipleFilesUploadResponseLinks;
 import org.wso2.carbon.identity.media.endpoint.exception.MediaEndpointException;
 
 import java.net.URI;
+import java.util.List;
 import java.util.UUID;
+import javax.servlet.http.HttpServletRequest;
 import javax.ws.rs.core.Response;
 
 import static org.wso2.carbon.identity.media.endpoint.common.MediaServiceConstants.CORRELATION_ID_MDC;
+import static org.wso2.carbon.identity.media.endpoint.common.MediaServiceConstants.IDENTIFIER_QUERY_PARAM;
 import static org.wso2.carbon.identity.media.endpoint.common.MediaServiceConstants.MEDIA_API_PATH_COMPONENT;
+import static org.wso2.carbon.identity.media.endpoint.common.MediaServiceConstants.RESOLVED_MEDIA_PROPERTY;
 import static org.wso2.carbon.identity.media.endpoint.common.MediaServiceConstants.TENANT_CONTEXT_PATH_COMPONENT;
 import static org.wso2.carbon.identity.media.endpoint.common.MediaServiceConstants.V1_API_PATH_COMPONENT;
 
@@ -50,13 +61,20 @@ public class Util {
     }
 
     /**
-     * Get the storage system manager.
+     * Get the storage system manager. The manager tracked by {@link MediaEndpointDataHolder} is used, and the
+     * service registry is only looked up when the manager is not tracked, e.g. when the bundle context was not
+     * available to open the tracker with. The tracker is not opened again here.
      *
      * @return StorageSystemManager
      */
     public static StorageSystemManager getStorageSystemManager() {
 
         try {
+            StorageSystemManager storageSystemManager =
+                    MediaEndpointDataHolder.getInstance().getStorageSystemManager();
+            if (storageSystemManager != null) {
+                return storageSystemManager;
+            }
             return (StorageSystemManager) PrivilegedCarbonContext.getThreadLocalCarbonContext()
                     .getOSGiService(StorageSystemManager.class, null);
         } catch (Throwable e) {
@@ -68,6 +86,38 @@ public class Util {
         }
     }
 
+    /**
+     * Retrieves the media resolved for the current request while evaluating its access security.
+     *
+     * @return the resolved media or null if no media is resolved for the current request.
+     */
+    public static ResolvedMedia getResolvedMediaFromRequest() {
+
+        Message message = JAXRSUtils.getCurrentMessage();
+        if (message == null) {
+            return null;
+        }
+        Object resolvedMedia = PropertyHolderFactory.getPropertyHolder(message).getProperty(RESOLVED_MEDIA_PROPERTY);
+        if (resolvedMedia instanceof ResolvedMedia) {
+            return (ResolvedMedia) resolvedMedia;
+        }
+        return null;
+    }
+
+    /**
+     * Retrieves the servlet request of the current request.
+     *
+     * @return the servlet request or null if the current request is not served through the servlet transport.
+     */
+    public static HttpServletRequest getHttpServletRequest() {
+
+        Message message = JAXRSUtils.getCurrentMessage();
+        if (message == null) {
+            return null;
+        }
+        return (HttpServletRequest) message.get(AbstractHTTPDestination.HTTP_REQUEST);
+    }
+
     /**
      * Handle exceptions generated in the media endpoint.
      *
@@ -202,6 +252,24 @@ public class Util {
                 accessLevel, type, id));
     }
 
+    /**
+     * Builds the response of a multiple file upload, which links each of the uploaded files by its identifier.
+     *
+     * @param location        The location of the uploaded media.
+     * @param fileIdentifiers The identifiers of the uploaded files.
+     * @return multiple files upload response.
+     */
+    public static MultipleFilesUploadResponse getMultipleFilesUploadResponse(URI location,
+                                                                             List<String> fileIdentifiers) {
+
+        MultipleFilesUploadResponse multipleFilesUploadResponse = new MultipleFilesUploadResponse();
+        for (String fileIdentifier : fileIdentifiers) {
+            multipleFilesUploadResponse.addLinksItem(new MultipleFilesUploadResponseLinks().rel(fileIdentifier)
+                    .href(location.toString() + "?" + IDENTIFIER_QUERY_PARAM + "=" + fileIdentifier));
+        }
+        return multipleFilesUploadResponse;
+    }
+
     private static URI buildURIForHeader(String endpoint) {
 
         URI loc;
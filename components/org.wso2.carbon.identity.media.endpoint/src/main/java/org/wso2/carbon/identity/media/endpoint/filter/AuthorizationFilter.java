@@ -22,16 +22,12 @@ import org.apache.commons.logging.LogFactory;
 import org.wso2.carbon.CarbonConstants;
 import org.wso2.carbon.identity.application.common.model.User;
 import org.wso2.carbon.identity.auth.service.AuthenticationContext;
-import org.wso2.carbon.identity.core.util.IdentityTenantUtil;
 import org.wso2.carbon.identity.media.core.StorageSystemManager;
-import org.wso2.carbon.identity.media.core.exception.StorageSystemServerException;
-import org.wso2.carbon.identity.media.endpoint.common.MediaEndpointDataHolder;
+import org.wso2.carbon.identity.media.core.exception.StorageSystemClientException;
+import org.wso2.carbon.identity.media.core.exception.StorageSystemException;
+import org.wso2.carbon.identity.media.core.model.ResolvedMedia;
 import org.wso2.carbon.identity.media.endpoint.common.MediaServiceConstants;
 import org.wso2.carbon.identity.media.endpoint.common.Util;
-import org.wso2.carbon.user.api.AuthorizationManager;
-import org.wso2.carbon.user.api.UserRealm;
-import org.wso2.carbon.user.api.UserStoreException;
-import org.wso2.carbon.user.core.service.RealmService;
 import org.wso2.carbon.user.core.util.UserCoreUtil;
 
 import java.io.IOException;
@@ -45,6 +41,7 @@ import javax.ws.rs.core.Response;
 import static org.wso2.carbon.identity.media.endpoint.common.MediaServiceConstants.CONTENT_PATH_COMPONENT;
 import static org.wso2.carbon.identity.media.endpoint.common.MediaServiceConstants.ME_PATH_COMPONENT;
 import static org.wso2.carbon.identity.media.endpoint.common.MediaServiceConstants.PUBLIC_PATH_COMPONENT;
+import static org.wso2.carbon.identity.media.endpoint.common.MediaServiceConstants.RESOLVED_MEDIA_PROPERTY;
 import static org.wso2.carbon.identity.media.endpoint.common.Util.getStorageSystemManager;
 import static org.wso2.carbon.identity.media.endpoint.common.Util.getTenantDomainFromContext;
 import static org.wso2.carbon.identity.media.endpoint.common.Util.handleException;
@@ -61,123 +58,159 @@ public class AuthorizationFilter implements ContainerRequestFilter {
     @Override
     public void filter(ContainerRequestContext containerRequestContext) throws IOException {
 
-        evaluateDownloadSecurityForMedia(containerRequestContext);
-        evaluateMediaManagementSecurityForEndUser(containerRequestContext);
-    }
+        String httpMethod = containerRequestContext.getMethod();
+        if (!httpMethod.equals(HTTPConstants.HTTP_METHOD_GET) && !httpMethod.equals(HTTPConstants.HEADER_DELETE)) {
+            return;
+        }
 
-    private void evaluateDownloadSecurityForMedia(ContainerRequestContext containerRequestContext) {
+        List<PathSegment> pathSegments = containerRequestContext.getUriInfo().getPathSegments();
+        if (pathSegments.size() < 3) {
+            return;
+        }
+        String accessLevel = pathSegments.get(0).getPath();
+        String type = pathSegments.get(1).getPath();
+        String uuid = pathSegments.get(2).getPath();
 
-        if (containerRequestContext.getMethod().equals(HTTPConstants.HTTP_METHOD_GET)) {
+        if (httpMethod.equals(HTTPConstants.HTTP_METHOD_GET)) {
+            evaluateDownloadSecurityForMedia(containerRequestContext, accessLevel, type, uuid);
+        }
+        evaluateMediaManagementSecurityForEndUser(containerRequestContext, accessLevel, type, uuid);
+    }
 
-            List<PathSegment> pathSegments = containerRequestContext.getUriInfo().getPathSegments();
-            String accessLevel = pathSegments.get(0).getPath();
-            String type = pathSegments.get(1).getPath();
-            String uuid = pathSegments.get(2).getPath();
+    private void evaluateDownloadSecurityForMedia(ContainerRequestContext containerRequestContext,
+                                                  String accessLevel, String type, String uuid) {
 
-            AuthorizationManager authorizationManager = null;
-            StorageSystemManager storageSystemManager = getStorageSystemManager();
-            String tenantDomain = getTenantDomainFromContext();
-            boolean isUserAuthorized = false;
-            try {
-                if (accessLevel.equals(PUBLIC_PATH_COMPONENT)) {
-                    if (LOG.isDebugEnabled()) {
-                        LOG.debug("Evaluating whether media download is publicly allowed.");
-                    }
-                    isUserAuthorized = storageSystemManager.isDownloadAllowedForPublicMedia(uuid, type, tenantDomain);
-                    if (!isUserAuthorized) {
-                        if (LOG.isDebugEnabled()) {
-                            LOG.debug(String.format("Authorization failed for public media download request as " +
-                                    "there is no publicly available media with id: %s in tenant domain: %s", uuid,
-                                    tenantDomain));
-                        }
-                        Response response = Response.status(HttpServletResponse.SC_UNAUTHORIZED).build();
-                        containerRequestContext.abortWith(response);
-                    }
-                } else if (accessLevel.equals(CONTENT_PATH_COMPONENT)) {
+        StorageSystemManager storageSystemManager = getStorageSystemManager();
+        String tenantDomain = getTenantDomainFromContext();
+        boolean isUserAuthorized = false;
+        try {
+            if (accessLevel.equals(PUBLIC_PATH_COMPONENT)) {
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("Evaluating whether media download is publicly allowed.");
+                }
+                ResolvedMedia resolvedMedia = resolveMedia(containerRequestContext, storageSystemManager, type, uuid,
+                        tenantDomain);
+                isUserAuthorized = storageSystemManager.isDownloadAllowedForPublicMedia(resolvedMedia);
+                if (!isUserAuthorized) {
                     if (LOG.isDebugEnabled()) {
-                        LOG.debug("Evaluating access based security for protected media download request.");
-                    }
-                    AuthenticationContext authenticationContext = (AuthenticationContext) containerRequestContext
-                            .getProperty(AUTH_CONTEXT);
-                    User user = null;
-                    if (authenticationContext != null) {
-                        user = ((AuthenticationContext) containerRequestContext.getProperty(AUTH_CONTEXT)).getUser();
-                    }
-                    if (user != null) {
-                        RealmService realmService = MediaEndpointDataHolder.getInstance().getRealmService();
-                        int tenantId = IdentityTenantUtil.getTenantId(tenantDomain);
-                        UserRealm tenantUserRealm = realmService.getTenantUserRealm(tenantId);
-                        if (tenantUserRealm != null) {
-                            authorizationManager = tenantUserRealm.getAuthorizationManager();
-                        }
-                        if (authorizationManager != null) {
-                            isUserAuthorized = authorizationManager.isUserAuthorized(UserCoreUtil.addDomainToName(
-                                    user.getUserName(), user.getUserStoreDomain()), VIEW_PERMISSION,
-                                    CarbonConstants.UI_PERMISSION_ACTION);
-                        }
+                        LOG.debug(String.format("Authorization failed for public media download request as " +
+                                "there is no publicly available media with id: %s in tenant domain: %s", uuid,
+                                tenantDomain));
                     }
+                    Response response = Response.status(HttpServletResponse.SC_UNAUTHORIZED).build();
+                    containerRequestContext.abortWith(response);
+                }
+            } else if (accessLevel.equals(CONTENT_PATH_COMPONENT)) {
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("Evaluating access based security for protected media download request.");
+                }
+                AuthenticationContext authenticationContext = (AuthenticationContext) containerRequestContext
+                        .getProperty(AUTH_CONTEXT);
+                User user = null;
+                if (authenticationContext != null) {
+                    user = authenticationContext.getUser();
+                }
+                if (user != null) {
+                    isUserAuthorized = storageSystemManager.isUserAuthorized(UserCoreUtil.addDomainToName(
+                            user.getUserName(), user.getUserStoreDomain()), VIEW_PERMISSION,
+                            CarbonConstants.UI_PERMISSION_ACTION, tenantDomain);
+                }
 
-                    if (!isUserAuthorized) {
-                        isUserAuthorized = storageSystemManager.isDownloadAllowedForProtectedMedia(uuid, type,
-                                tenantDomain, Util.getUsernameFromContext());
-                    }
+                if (!isUserAuthorized) {
+                    ResolvedMedia resolvedMedia = resolveMedia(containerRequestContext, storageSystemManager, type,
+                            uuid, tenantDomain);
+                    isUserAuthorized = storageSystemManager.isDownloadAllowedForProtectedMedia(resolvedMedia,
+                            Util.getUsernameFromContext());
+                }
 
-                    if (!isUserAuthorized) {
-                        if (LOG.isDebugEnabled()) {
-                            LOG.debug(String.format("Unauthorized download request for protected media by user: %s " +
-                                    "in tenant domain: %s", Util.getUsernameFromContext(), tenantDomain));
-                        }
-                        Response response = Response.status(HttpServletResponse.SC_UNAUTHORIZED).build();
-                        containerRequestContext.abortWith(response);
+                if (!isUserAuthorized) {
+                    if (LOG.isDebugEnabled()) {
+                        LOG.debug(String.format("Unauthorized download request for protected media by user: %s " +
+                                "in tenant domain: %s", Util.getUsernameFromContext(), tenantDomain));
                     }
+                    Response response = Response.status(HttpServletResponse.SC_UNAUTHORIZED).build();
+                    containerRequestContext.abortWith(response);
                 }
-            } catch (UserStoreException | StorageSystemServerException e) {
-                MediaServiceConstants.ErrorMessage errorMessage = MediaServiceConstants.ErrorMessage.
-                        ERROR_CODE_ERROR_EVALUATING_ACCESS_SECURITY;
-                Response.Status status = Response.Status.INTERNAL_SERVER_ERROR;
-                throw handleException(e, errorMessage, LOG, status, uuid);
             }
+        } catch (StorageSystemClientException e) {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Media download request can't be performed.", e);
+            }
+            throw handleException(Response.Status.NOT_FOUND,
+                    MediaServiceConstants.ErrorMessage.ERROR_CODE_ERROR_DOWNLOADING_MEDIA_FILE_NOT_FOUND, uuid);
+        } catch (StorageSystemException e) {
+            MediaServiceConstants.ErrorMessage errorMessage = MediaServiceConstants.ErrorMessage.
+                    ERROR_CODE_ERROR_EVALUATING_ACCESS_SECURITY;
+            Response.Status status = Response.Status.INTERNAL_SERVER_ERROR;
+            throw handleException(e, errorMessage, LOG, status, uuid);
         }
     }
 
-    private void evaluateMediaManagementSecurityForEndUser(ContainerRequestContext containerRequestContext) {
+    private void evaluateMediaManagementSecurityForEndUser(ContainerRequestContext containerRequestContext,
+                                                           String accessLevel, String type, String uuid) {
+
+        if (!accessLevel.equals(ME_PATH_COMPONENT)) {
+            return;
+        }
 
         String httpMethod = containerRequestContext.getMethod();
-        if (httpMethod.equals(HTTPConstants.HEADER_DELETE) || httpMethod.equals(HTTPConstants.HEADER_GET)) {
-
-            List<PathSegment> pathSegments = containerRequestContext.getUriInfo().getPathSegments();
-            String accessLevel = pathSegments.get(0).getPath();
-            String type = pathSegments.get(1).getPath();
-            String uuid = pathSegments.get(2).getPath();
-            String tenantDomain = getTenantDomainFromContext();
-
-            StorageSystemManager storageSystemManager = getStorageSystemManager();
-            boolean isUserAuthorized;
-            try {
-                if (accessLevel.equals(ME_PATH_COMPONENT)) {
-                    if (LOG.isDebugEnabled()) {
-                        LOG.debug(String.format("Evaluating media management security of an end-user for %s request.",
-                                httpMethod));
-                    }
-                    isUserAuthorized = storageSystemManager.isMediaManagementAllowedForEndUser(uuid, type,
-                            tenantDomain, Util.getUsernameFromContext());
-                    if (!isUserAuthorized) {
-                        if (LOG.isDebugEnabled()) {
-                            LOG.debug(String.format("Unauthorized media management %s request by user: %s in " +
-                                            "tenant domain: %s", httpMethod, Util.getUsernameFromContext(),
-                                    tenantDomain));
-                        }
-                        Response response = Response.status(HttpServletResponse.SC_UNAUTHORIZED).build();
-                        containerRequestContext.abortWith(response);
-                    }
+        String tenantDomain = getTenantDomainFromContext();
+        StorageSystemManager storageSystemManager = getStorageSystemManager();
+        boolean isUserAuthorized;
+        try {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug(String.format("Evaluating media management security of an end-user for %s request.",
+                        httpMethod));
+            }
+            ResolvedMedia resolvedMedia = resolveMedia(containerRequestContext, storageSystemManager, type, uuid,
+                    tenantDomain);
+            isUserAuthorized = storageSystemManager.isMediaManagementAllowedForEndUser(resolvedMedia,
+                    Util.getUsernameFromContext());
+            if (!isUserAuthorized) {
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug(String.format("Unauthorized media management %s request by user: %s in " +
+                                    "tenant domain: %s", httpMethod, Util.getUsernameFromContext(),
+                            tenantDomain));
                 }
-            } catch (StorageSystemServerException e) {
-                MediaServiceConstants.ErrorMessage errorMessage = MediaServiceConstants.ErrorMessage.
-                        ERROR_CODE_ERROR_EVALUATING_MEDIA_MANAGEMENT_SECURITY;
-                Response.Status status = Response.Status.INTERNAL_SERVER_ERROR;
-                throw handleException(e, errorMessage, LOG, status, uuid);
+                Response response = Response.status(HttpServletResponse.SC_UNAUTHORIZED).build();
+                containerRequestContext.abortWith(response);
+            }
+        } catch (StorageSystemClientException e) {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug(String.format("Media management %s request can't be performed.", httpMethod), e);
+            }
+            if (httpMethod.equals(HTTPConstants.HEADER_DELETE)) {
+                throw handleException(Response.Status.NOT_FOUND,
+                        MediaServiceConstants.ErrorMessage.ERROR_CODE_ERROR_DELETING_MEDIA_FILE_NOT_FOUND, uuid, type);
             }
+            throw handleException(Response.Status.NOT_FOUND,
+                    MediaServiceConstants.ErrorMessage.ERROR_CODE_ERROR_RETRIEVING_MEDIA_INFORMATION_FILE_NOT_FOUND,
+                    uuid);
+        } catch (StorageSystemException e) {
+            MediaServiceConstants.ErrorMessage errorMessage = MediaServiceConstants.ErrorMessage.
+                    ERROR_CODE_ERROR_EVALUATING_MEDIA_MANAGEMENT_SECURITY;
+            Response.Status status = Response.Status.INTERNAL_SERVER_ERROR;
+            throw handleException(e, errorMessage, LOG, status, uuid);
+        }
+    }
+
+    /**
+     * Resolve the requested media once per request. The resolved media is kept as a request property so that it is
+     * reused by the media service when serving the request.
+     */
+    private ResolvedMedia resolveMedia(ContainerRequestContext containerRequestContext,
+                                       StorageSystemManager storageSystemManager, String type, String uuid,
+                                       String tenantDomain) throws StorageSystemException {
+
+        Object resolvedMedia = containerRequestContext.getProperty(RESOLVED_MEDIA_PROPERTY);
+        if (resolvedMedia instanceof ResolvedMedia) {
+            return (ResolvedMedia) resolvedMedia;
+        }
+        ResolvedMedia media = storageSystemManager.resolveMedia(uuid, type, tenantDomain);
+        if (media != null) {
+            containerRequestContext.setProperty(RESOLVED_MEDIA_PROPERTY, media);
         }
+        return media;
     }
 
 }
@@ -31,8 +31,10 @@ public class ContentApiServiceImpl implements ContentApiService {
     private MediaService mediaService;
 
     @Override
-    public Response downloadMedia(String type, String id, String identifier, String ifNoneMatch) {
+    public Response downloadMedia(String type, String id, String identifier, Integer width,
+                                  String ifNoneMatch, String ifModifiedSince, String range, String ifRange) {
 
-        return mediaService.downloadMediaFile(type, id, identifier, ifNoneMatch);
+        return mediaService.downloadMediaFile(type, id, identifier, width, ifNoneMatch, ifModifiedSince, range,
+                ifRange);
     }
 }
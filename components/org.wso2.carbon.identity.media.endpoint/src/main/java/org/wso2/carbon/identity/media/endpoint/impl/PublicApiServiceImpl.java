@@ -31,8 +31,10 @@ public class PublicApiServiceImpl implements PublicApiService {
     private MediaService mediaService;
 
     @Override
-    public Response downloadPublicMedia(String type, String id, String identifier, String ifNoneMatch) {
+    public Response downloadPublicMedia(String type, String id, String identifier, Integer width,
+                                        String ifNoneMatch, String ifModifiedSince, String range, String ifRange) {
 
-        return mediaService.downloadMediaFile(type, id, identifier, ifNoneMatch);
+        return mediaService.downloadMediaFile(type, id, identifier, width, ifNoneMatch, ifModifiedSince, range,
+                ifRange);
     }
 }
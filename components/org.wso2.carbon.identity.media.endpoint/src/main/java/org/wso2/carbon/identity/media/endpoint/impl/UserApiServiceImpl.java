@@ -24,11 +24,13 @@ import org.wso2.carbon.identity.media.endpoint.UserApiService;
 import org.wso2.carbon.identity.media.endpoint.service.MediaService;
 
 import java.io.InputStream;
+import java.net.URI;
 import java.util.List;
 import javax.ws.rs.core.Response;
 
 import static org.wso2.carbon.identity.media.endpoint.common.MediaServiceConstants.CONTENT_PATH_COMPONENT;
 import static org.wso2.carbon.identity.media.endpoint.common.MediaServiceConstants.PUBLIC_PATH_COMPONENT;
+import static org.wso2.carbon.identity.media.endpoint.common.Util.getMultipleFilesUploadResponse;
 import static org.wso2.carbon.identity.media.endpoint.common.Util.getResourceLocation;
 
 /**
@@ -50,24 +52,29 @@ public class UserApiServiceImpl implements UserApiService {
     public Response privilegedUserUploadMedia(String type, List<InputStream> filesInputStream,
                                               List<Attachment> filesDetail, PrivilegedUserMetadata metadata) {
 
-        // Only single file upload will be supported in the first phase of the implementation.
-        if (filesInputStream.size() > 1) {
-            return Response.status(Response.Status.NOT_IMPLEMENTED).build();
-        } else {
-            mediaService.validateFileUploadMediaTypes(type, filesDetail.get(0).getContentType());
-            mediaService.validateFileSize(filesInputStream.get(0));
-
-            String uuid = mediaService.uploadPrivilegedUserMedia(filesInputStream, filesDetail, metadata);
+        List<String> fileIdentifiers = null;
+        if (metadata != null) {
+            fileIdentifiers = metadata.getIdentifiers();
+        }
+        mediaService.validateFileIdentifiers(filesInputStream.size(), fileIdentifiers);
+        for (Attachment fileDetail : filesDetail) {
+            mediaService.validateFileUploadMediaTypes(type, fileDetail.getContentType());
+        }
 
-            String mediaAccessLevel;
-            if (metadata != null && metadata.getSecurity() != null && metadata.getSecurity().getAllowedAll()) {
-                mediaAccessLevel = PUBLIC_PATH_COMPONENT;
-            } else {
-                mediaAccessLevel = CONTENT_PATH_COMPONENT;
-            }
+        String uuid = mediaService.uploadPrivilegedUserMedia(filesInputStream, filesDetail, metadata);
 
-            return Response.created(getResourceLocation(uuid, type, mediaAccessLevel)).build();
+        String mediaAccessLevel;
+        if (metadata != null && metadata.getSecurity() != null && metadata.getSecurity().getAllowedAll()) {
+            mediaAccessLevel = PUBLIC_PATH_COMPONENT;
+        } else {
+            mediaAccessLevel = CONTENT_PATH_COMPONENT;
+        }
+        URI location = getResourceLocation(uuid, type, mediaAccessLevel);
+        if (filesInputStream.size() > 1) {
+            return Response.created(location).entity(getMultipleFilesUploadResponse(location, fileIdentifiers))
+                    .build();
         }
+        return Response.created(location).build();
     }
 
     @Override
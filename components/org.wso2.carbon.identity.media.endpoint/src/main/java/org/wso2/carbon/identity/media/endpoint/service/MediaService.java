@@ -22,29 +22,47 @@ import org.apache.commons.lang.StringUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.cxf.jaxrs.ext.multipart.Attachment;
+import org.apache.cxf.jaxrs.ext.multipart.ContentDisposition;
+import org.wso2.carbon.identity.media.core.ChannelContent;
+import org.wso2.carbon.identity.media.core.ChannelContentImpl;
 import org.wso2.carbon.identity.media.core.DataContent;
 import org.wso2.carbon.identity.media.core.FileContent;
 import org.wso2.carbon.identity.media.core.StorageSystemManager;
 import org.wso2.carbon.identity.media.core.StreamContent;
+import org.wso2.carbon.identity.media.core.exception.MediaSizeLimitExceededException;
 import org.wso2.carbon.identity.media.core.exception.StorageSystemClientException;
 import org.wso2.carbon.identity.media.core.exception.StorageSystemException;
 import org.wso2.carbon.identity.media.core.exception.StorageSystemServerException;
 import org.wso2.carbon.identity.media.core.model.FileSecurity;
 import org.wso2.carbon.identity.media.core.model.MediaInformation;
 import org.wso2.carbon.identity.media.core.model.MediaMetadata;
+import org.wso2.carbon.identity.media.core.model.ResolvedMedia;
+import org.wso2.carbon.identity.media.core.util.StorageSystemUtil;
 import org.wso2.carbon.identity.media.endpoint.Metadata;
 import org.wso2.carbon.identity.media.endpoint.PrivilegedUserMetadata;
 import org.wso2.carbon.identity.media.endpoint.PrivilegedUserSecurity;
 import org.wso2.carbon.identity.media.endpoint.Security;
+import org.wso2.carbon.identity.media.endpoint.common.ByteRange;
+import org.wso2.carbon.identity.media.endpoint.common.FileChannelStreamingOutput;
+import org.wso2.carbon.identity.media.endpoint.common.InputStreamStreamingOutput;
 import org.wso2.carbon.identity.media.endpoint.common.MediaServiceConstants;
+import org.wso2.carbon.identity.media.endpoint.common.MultipartByteRangesStreamingOutput;
 
+import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.Date;
 import java.util.List;
 import javax.ws.rs.core.CacheControl;
+import javax.ws.rs.core.EntityTag;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
 
+import static org.wso2.carbon.identity.media.endpoint.common.HttpPreconditions.isIfRangeSatisfied;
+import static org.wso2.carbon.identity.media.endpoint.common.HttpPreconditions.isNotModified;
+import static org.wso2.carbon.identity.media.endpoint.common.Util.getHttpServletRequest;
+import static org.wso2.carbon.identity.media.endpoint.common.Util.getResolvedMediaFromRequest;
 import static org.wso2.carbon.identity.media.endpoint.common.Util.getStorageSystemManager;
 import static org.wso2.carbon.identity.media.endpoint.common.Util.getTenantDomainFromContext;
 import static org.wso2.carbon.identity.media.endpoint.common.Util.getUsernameFromContext;
@@ -74,12 +92,12 @@ public class MediaService {
         String resourceOwnerId = getResourceOwnerIdFromUsername(storageSystemManager);
         mediaMetadata.setResourceOwnerId(resourceOwnerId);
 
-        mediaMetadata.setFileName(filesDetail.get(0).getContentDisposition().getFilename());
-        mediaMetadata.setFileContentType(filesDetail.get(0).getContentType().toString());
-
+        List<String> fileIdentifiers = null;
         if (privilegedUserMetadata != null) {
             mediaMetadata.setFileTag(privilegedUserMetadata.getTag());
+            fileIdentifiers = privilegedUserMetadata.getIdentifiers();
         }
+        setFileDetails(filesDetail, fileIdentifiers, mediaMetadata);
 
         setSecurityForPrivilegedUserUploadedMedia(privilegedUserMetadata, mediaMetadata);
 
@@ -102,18 +120,59 @@ public class MediaService {
         String resourceOwnerId = getResourceOwnerIdFromUsername(storageSystemManager);
         mediaMetadata.setResourceOwnerId(resourceOwnerId);
 
-        mediaMetadata.setFileName(filesDetail.get(0).getContentDisposition().getFilename());
-        mediaMetadata.setFileContentType(filesDetail.get(0).getContentType().toString());
-
+        List<String> fileIdentifiers = null;
         if (metadata != null) {
             mediaMetadata.setFileTag(metadata.getTag());
+            fileIdentifiers = metadata.getIdentifiers();
         }
+        setFileDetails(filesDetail, fileIdentifiers, mediaMetadata);
 
         setSecurityForEndUserUploadedMedia(metadata, mediaMetadata, resourceOwnerId);
 
         return addFile(filesInputStream, mediaMetadata, storageSystemManager);
     }
 
+    /**
+     * Validate the identifiers of the uploaded files. An identifier is required for each file when multiple files
+     * are uploaded, and is optional for a single file upload.
+     *
+     * @param fileCount       The number of uploaded files.
+     * @param fileIdentifiers The identifiers of the uploaded files in the order in which the files are uploaded.
+     */
+    public void validateFileIdentifiers(int fileCount, List<String> fileIdentifiers) {
+
+        try {
+            StorageSystemUtil.getFileIdentifiers(fileCount, fileIdentifiers);
+        } catch (StorageSystemClientException e) {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug(String.format("Unable to upload the provided %d media file(s) due to invalid file " +
+                        "identifiers: %s", fileCount, fileIdentifiers), e);
+            }
+            throw handleException(Response.Status.BAD_REQUEST,
+                    MediaServiceConstants.ErrorMessage.ERROR_CODE_INVALID_FILE_IDENTIFIERS);
+        }
+    }
+
+    private void setFileDetails(List<Attachment> filesDetail, List<String> fileIdentifiers,
+                                MediaMetadata mediaMetadata) {
+
+        mediaMetadata.setFileName(filesDetail.get(0).getContentDisposition().getFilename());
+        mediaMetadata.setFileContentType(filesDetail.get(0).getContentType().toString());
+        if (CollectionUtils.isEmpty(fileIdentifiers)) {
+            return;
+        }
+        List<String> fileNames = new ArrayList<>(filesDetail.size());
+        List<String> fileContentTypes = new ArrayList<>(filesDetail.size());
+        for (Attachment fileDetail : filesDetail) {
+            ContentDisposition contentDisposition = fileDetail.getContentDisposition();
+            fileNames.add(contentDisposition != null ? contentDisposition.getFilename() : null);
+            fileContentTypes.add(fileDetail.getContentType().toString());
+        }
+        mediaMetadata.setFileIdentifiers(fileIdentifiers);
+        mediaMetadata.setFileNames(fileNames);
+        mediaMetadata.setFileContentTypes(fileContentTypes);
+    }
+
     private String addFile(List<InputStream> filesInputStream, MediaMetadata mediaMetadata, StorageSystemManager
             storageSystemManager) {
 
@@ -125,7 +184,18 @@ public class MediaService {
             }
             throw handleException(Response.Status.INTERNAL_SERVER_ERROR,
                     MediaServiceConstants.ErrorMessage.ERROR_CODE_ERROR_UPLOADING_MEDIA);
-        } catch (StorageSystemServerException e) {
+        } catch (StorageSystemException e) {
+            if (e instanceof StorageSystemClientException) {
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("Unable to upload the provided media.", e);
+                }
+                if (e.getCause() instanceof MediaSizeLimitExceededException) {
+                    throw handleException(Response.Status.BAD_REQUEST,
+                            MediaServiceConstants.ErrorMessage.ERROR_CODE_INVALID_MEDIA_SIZE);
+                }
+                throw handleException(Response.Status.BAD_REQUEST,
+                        MediaServiceConstants.ErrorMessage.ERROR_CODE_INVALID_REQUEST_BODY);
+            }
             MediaServiceConstants.ErrorMessage errorMessage = MediaServiceConstants.ErrorMessage.
                     ERROR_CODE_ERROR_UPLOADING_MEDIA;
             Response.Status status = Response.Status.INTERNAL_SERVER_ERROR;
@@ -175,10 +245,16 @@ public class MediaService {
             fileSecurity = new FileSecurity(true);
         } else {
             List<String> allowedUserIds = null;
+            List<String> allowedGroups = null;
+            List<String> allowedRoles = null;
             if (fileSecurityMeta != null) {
                 allowedUserIds = fileSecurityMeta.getAllowedUserIds();
+                allowedGroups = fileSecurityMeta.getAllowedGroups();
+                allowedRoles = fileSecurityMeta.getAllowedRoles();
             }
-            if (CollectionUtils.isNotEmpty(allowedUserIds)) {
+            if (CollectionUtils.isNotEmpty(allowedGroups) || CollectionUtils.isNotEmpty(allowedRoles)) {
+                fileSecurity = new FileSecurity(false, allowedUserIds, allowedGroups, allowedRoles);
+            } else if (CollectionUtils.isNotEmpty(allowedUserIds)) {
                 fileSecurity = new FileSecurity(false, allowedUserIds);
             } else {
                 fileSecurity = new FileSecurity(false);
@@ -220,73 +296,61 @@ public class MediaService {
         }
     }
 
-    /**
-     * Validates whether the media to be uploaded is not exceeding the configured maximum file size allowed.
-     *
-     * @param inputStream The media to be uploaded as an input stream.
-     */
-    public void validateFileSize(InputStream inputStream) {
-
-        StorageSystemManager storageSystemManager = getStorageSystemManager();
-        try {
-            storageSystemManager.validateMediaSize(inputStream);
-        } catch (StorageSystemException e) {
-            if (e instanceof StorageSystemClientException) {
-                if (LOG.isDebugEnabled()) {
-                    LOG.debug("Unable to upload the provided media.", e);
-                }
-                throw handleException(Response.Status.BAD_REQUEST,
-                        MediaServiceConstants.ErrorMessage.ERROR_CODE_INVALID_MEDIA_SIZE);
-            }
-            MediaServiceConstants.ErrorMessage errorMessage = MediaServiceConstants.ErrorMessage.
-                    ERROR_CODE_ERROR_CALCULATING_MEDIA_SIZE;
-            Response.Status status = Response.Status.INTERNAL_SERVER_ERROR;
-            throw handleException(e, errorMessage, LOG, status);
-        }
-    }
-
     /**
      * Download requested media file.
      *
      * @param type        The high level content-type of the resource (if media content-type is image/png then
      *                    type would be image).
      * @param id          Unique identifier for the requested media.
-     * @param identifier  File identifier.
-     * @param ifNoneMatch The ETag value of If-None-Match request header.
+     * @param identifier  Identifier of the requested representation of a media uploaded with multiple files, or null
+     *                    to download the default representation.
+     * @param width       Maximum width of the requested image in pixels, or null to download the media as uploaded.
+     * @param ifNoneMatch     The value of If-None-Match request header.
+     * @param ifModifiedSince The value of If-Modified-Since request header.
+     * @param range           The value of Range request header.
+     * @param ifRange         The value of If-Range request header.
      * @return requested media file.
      */
-    public Response downloadMediaFile(String type, String id, String identifier, String ifNoneMatch) {
-
-        // Retrieving a sub-representation of a media is not supported during the first phase of the implementation.
-        if (StringUtils.isNotBlank(identifier)) {
-            return Response.status(Response.Status.NOT_IMPLEMENTED).build();
-        }
+    public Response downloadMediaFile(String type, String id, String identifier, Integer width, String ifNoneMatch,
+                                      String ifModifiedSince, String range, String ifRange) {
 
         validateAllowedMediaTypes(type);
+        if (width != null && width < 1) {
+            throw handleException(Response.Status.BAD_REQUEST,
+                    MediaServiceConstants.ErrorMessage.ERROR_CODE_INVALID_WIDTH_QUERY_PARAM);
+        }
 
-        DataContent resource = downloadMedia(type, id);
         CacheControl cacheControl = new CacheControl();
         cacheControl.setMaxAge(86400);
         cacheControl.setPrivate(true);
 
-        if (resource instanceof FileContent) {
+        // Conditional requests are evaluated against the resolved media before its content is accessed. The ETag of
+        // a variant is derived from the ETag of the media, hence the variant is only generated if it is served.
+        ResolvedMedia resolvedMedia = resolveRequestedMedia(type, id, StringUtils.trimToNull(identifier));
+        String etag = width != null ? StorageSystemUtil.getVariantETag(resolvedMedia.getETag(), width) :
+                resolvedMedia.getETag();
+        Date lastModified = getLastModifiedDate(resolvedMedia);
+        if (isNotModified(ifNoneMatch, ifModifiedSince, etag, lastModified)) {
+            return Response.notModified(new EntityTag(etag)).lastModified(lastModified).cacheControl(cacheControl)
+                    .build();
+        }
+        if (width != null) {
+            resolvedMedia = transformMedia(resolvedMedia, width);
+        }
+
+        DataContent resource = readMediaContent(resolvedMedia);
+        if (resource instanceof ChannelContent) {
+            return buildChannelContentResponse((ChannelContent) resource, etag, lastModified, range, ifRange,
+                    cacheControl);
+        } else if (resource instanceof FileContent) {
+            // A file is served through a file channel as well, so that the requested ranges of it can be served.
             FileContent fileContent = (FileContent) resource;
-            String etag = fileContent.getETag();
-            if (StringUtils.isNotBlank(ifNoneMatch) && ifNoneMatch.startsWith("\"") && ifNoneMatch.endsWith("\"") &&
-                    StringUtils.equals(ifNoneMatch.replace("\"", ""), etag)) {
-                return Response.notModified(ifNoneMatch).build();
-            }
-            return Response.ok(fileContent.getFile()).header(HTTPConstants.HEADER_CONTENT_TYPE,
-                    fileContent.getResponseContentType()).tag(etag).cacheControl(cacheControl).build();
+            ChannelContent channelContent = new ChannelContentImpl(fileContent.getFile(),
+                    fileContent.getFile().length(), fileContent.getResponseContentType(), fileContent.getETag());
+            return buildChannelContentResponse(channelContent, etag, lastModified, range, ifRange, cacheControl);
         } else if (resource instanceof StreamContent) {
-            StreamContent streamContent = (StreamContent) resource;
-            String etag = streamContent.getETag();
-            if (StringUtils.isNotBlank(ifNoneMatch) && ifNoneMatch.startsWith("\"") && ifNoneMatch.endsWith("\"") &&
-                    StringUtils.equals(ifNoneMatch.replace("\"", ""), etag)) {
-                return Response.notModified(ifNoneMatch).build();
-            }
-            return Response.ok().entity(streamContent.getInputStream()).header(HTTPConstants.HEADER_CONTENT_TYPE,
-                    streamContent.getResponseContentType()).cacheControl(cacheControl).build();
+            return buildStreamContentResponse((StreamContent) resource, resolvedMedia.getSize(), etag, lastModified,
+                    range, ifRange, cacheControl);
         }
         MediaServiceConstants.ErrorMessage errorMessage = MediaServiceConstants.ErrorMessage
                 .ERROR_CODE_ERROR_DOWNLOADING_MEDIA;
@@ -294,12 +358,168 @@ public class MediaService {
         throw handleException(status, errorMessage, id);
     }
 
-    private DataContent downloadMedia(String type, String id) {
+    private Date getLastModifiedDate(ResolvedMedia resolvedMedia) {
+
+        if (resolvedMedia.getLastModified() > 0) {
+            return new Date(resolvedMedia.getLastModified());
+        }
+        return null;
+    }
+
+    /**
+     * Build the download response of a media served through a file channel. The requested ranges are served with a
+     * 206 response, as multipart/byteranges if more than one range is requested, while the full media is served if
+     * no range is requested or the Range header can't be honoured.
+     */
+    private Response buildChannelContentResponse(ChannelContent channelContent, String etag, Date lastModified,
+                                                 String range, String ifRange, CacheControl cacheControl) {
+
+        long size = channelContent.getSize();
+        List<ByteRange> byteRanges = null;
+        if (StringUtils.isNotBlank(range) && isIfRangeSatisfied(ifRange, etag, lastModified)) {
+            byteRanges = ByteRange.parse(range, size);
+        }
+
+        if (byteRanges == null) {
+            StreamingOutput entity = new FileChannelStreamingOutput(channelContent, getHttpServletRequest());
+            return Response.ok(entity).header(HTTPConstants.HEADER_CONTENT_TYPE,
+                    channelContent.getResponseContentType()).header(HTTPConstants.HEADER_CONTENT_LENGTH, size)
+                    .header(MediaServiceConstants.HEADER_ACCEPT_RANGES, MediaServiceConstants.BYTES_RANGE_UNIT)
+                    .tag(etag).lastModified(lastModified).cacheControl(cacheControl).build();
+        }
+        if (byteRanges.isEmpty()) {
+            return Response.status(Response.Status.REQUESTED_RANGE_NOT_SATISFIABLE)
+                    .header(MediaServiceConstants.HEADER_CONTENT_RANGE,
+                            MediaServiceConstants.BYTES_RANGE_UNIT + " */" + size).build();
+        }
+        if (byteRanges.size() == 1) {
+            ByteRange byteRange = byteRanges.get(0);
+            StreamingOutput entity = new FileChannelStreamingOutput(channelContent, getHttpServletRequest(),
+                    byteRange);
+            return Response.status(Response.Status.PARTIAL_CONTENT).entity(entity)
+                    .header(HTTPConstants.HEADER_CONTENT_TYPE, channelContent.getResponseContentType())
+                    .header(HTTPConstants.HEADER_CONTENT_LENGTH, byteRange.getLength())
+                    .header(MediaServiceConstants.HEADER_CONTENT_RANGE, byteRange.toContentRange(size))
+                    .header(MediaServiceConstants.HEADER_ACCEPT_RANGES, MediaServiceConstants.BYTES_RANGE_UNIT)
+                    .tag(etag).lastModified(lastModified).cacheControl(cacheControl).build();
+        }
+        MultipartByteRangesStreamingOutput entity = new MultipartByteRangesStreamingOutput(channelContent,
+                byteRanges);
+        return Response.status(Response.Status.PARTIAL_CONTENT).entity(entity)
+                .header(HTTPConstants.HEADER_CONTENT_TYPE, entity.getContentType())
+                .header(HTTPConstants.HEADER_CONTENT_LENGTH, entity.getContentLength())
+                .header(MediaServiceConstants.HEADER_ACCEPT_RANGES, MediaServiceConstants.BYTES_RANGE_UNIT)
+                .tag(etag).lastModified(lastModified).cacheControl(cacheControl).build();
+    }
+
+    /**
+     * Build the download response of a media served as a stream. The requested ranges are served the same way as
+     * for a media served through a file channel, by skipping the stream to each of the ranges in ascending order.
+     */
+    private Response buildStreamContentResponse(StreamContent streamContent, long size, String etag,
+                                                Date lastModified, String range, String ifRange,
+                                                CacheControl cacheControl) {
+
+        List<ByteRange> byteRanges = null;
+        if (StringUtils.isNotBlank(range) && isIfRangeSatisfied(ifRange, etag, lastModified)) {
+            byteRanges = ByteRange.parse(range, size);
+        }
+
+        if (byteRanges == null) {
+            return Response.ok().entity(streamContent.getInputStream()).header(HTTPConstants.HEADER_CONTENT_TYPE,
+                    streamContent.getResponseContentType())
+                    .header(MediaServiceConstants.HEADER_ACCEPT_RANGES, MediaServiceConstants.BYTES_RANGE_UNIT)
+                    .tag(etag).lastModified(lastModified).cacheControl(cacheControl).build();
+        }
+        if (byteRanges.isEmpty()) {
+            closeStreamContent(streamContent);
+            return Response.status(Response.Status.REQUESTED_RANGE_NOT_SATISFIABLE)
+                    .header(MediaServiceConstants.HEADER_CONTENT_RANGE,
+                            MediaServiceConstants.BYTES_RANGE_UNIT + " */" + size).build();
+        }
+        if (byteRanges.size() == 1) {
+            ByteRange byteRange = byteRanges.get(0);
+            StreamingOutput entity = new InputStreamStreamingOutput(streamContent, byteRange);
+            return Response.status(Response.Status.PARTIAL_CONTENT).entity(entity)
+                    .header(HTTPConstants.HEADER_CONTENT_TYPE, streamContent.getResponseContentType())
+                    .header(HTTPConstants.HEADER_CONTENT_LENGTH, byteRange.getLength())
+                    .header(MediaServiceConstants.HEADER_CONTENT_RANGE, byteRange.toContentRange(size))
+                    .header(MediaServiceConstants.HEADER_ACCEPT_RANGES, MediaServiceConstants.BYTES_RANGE_UNIT)
+                    .tag(etag).lastModified(lastModified).cacheControl(cacheControl).build();
+        }
+        MultipartByteRangesStreamingOutput entity = new MultipartByteRangesStreamingOutput(streamContent, size,
+                byteRanges);
+        return Response.status(Response.Status.PARTIAL_CONTENT).entity(entity)
+                .header(HTTPConstants.HEADER_CONTENT_TYPE, entity.getContentType())
+                .header(HTTPConstants.HEADER_CONTENT_LENGTH, entity.getContentLength())
+                .header(MediaServiceConstants.HEADER_ACCEPT_RANGES, MediaServiceConstants.BYTES_RANGE_UNIT)
+                .tag(etag).lastModified(lastModified).cacheControl(cacheControl).build();
+    }
+
+    /**
+     * Closes the stream of a media which is not written to the response, which releases the resources held by the
+     * stream such as the database connection of a media stored in the database.
+     */
+    private void closeStreamContent(StreamContent streamContent) {
+
+        try {
+            streamContent.getInputStream().close();
+        } catch (IOException e) {
+            LOG.warn("Error while closing the stream of the requested media.", e);
+        }
+    }
+
+    private ResolvedMedia resolveRequestedMedia(String type, String id, String identifier) {
 
-        StorageSystemManager storageSystemManager = getStorageSystemManager();
         String tenantDomain = getTenantDomainFromContext();
+        // Reuse the media resolved while evaluating the access security of the request, if available.
+        ResolvedMedia resolvedMedia = getResolvedMediaFromRequest();
+        if (resolvedMedia != null && resolvedMedia.isFor(id, type, tenantDomain, identifier)) {
+            return resolvedMedia;
+        }
+        try {
+            if (identifier != null) {
+                // Representations are resolved from the metadata of the media, which is cached once the access
+                // security of the request has been evaluated.
+                resolvedMedia = getStorageSystemManager().resolveMedia(id, type, tenantDomain, identifier);
+            } else {
+                resolvedMedia = getStorageSystemManager().resolveMedia(id, type, tenantDomain);
+            }
+        } catch (StorageSystemException e) {
+            MediaServiceConstants.ErrorMessage errorMessage = MediaServiceConstants.ErrorMessage.
+                    ERROR_CODE_ERROR_DOWNLOADING_MEDIA;
+            Response.Status status = Response.Status.INTERNAL_SERVER_ERROR;
+            throw handleException(e, errorMessage, LOG, status, id);
+        }
+        if (resolvedMedia == null) {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug(String.format("Media download request can't be performed as media with id: %s of " +
+                        "type: %s and representation: %s in tenant domain: %s is not existing.", id, type,
+                        StringUtils.defaultString(identifier, "default"), tenantDomain));
+            }
+            throw handleException(Response.Status.NOT_FOUND,
+                    MediaServiceConstants.ErrorMessage.ERROR_CODE_ERROR_DOWNLOADING_MEDIA_FILE_NOT_FOUND, id);
+        }
+        return resolvedMedia;
+    }
+
+    private ResolvedMedia transformMedia(ResolvedMedia resolvedMedia, int width) {
+
+        try {
+            return getStorageSystemManager().transform(resolvedMedia, width);
+        } catch (StorageSystemException e) {
+            MediaServiceConstants.ErrorMessage errorMessage = MediaServiceConstants.ErrorMessage.
+                    ERROR_CODE_ERROR_DOWNLOADING_MEDIA;
+            Response.Status status = Response.Status.INTERNAL_SERVER_ERROR;
+            throw handleException(e, errorMessage, LOG, status, resolvedMedia.getId());
+        }
+    }
+
+    private DataContent readMediaContent(ResolvedMedia resolvedMedia) {
+
+        String id = resolvedMedia.getId();
         try {
-            return storageSystemManager.readContent(id, tenantDomain, type);
+            return getStorageSystemManager().readContent(resolvedMedia);
         } catch (StorageSystemException e) {
             if (e instanceof StorageSystemClientException) {
                 if (LOG.isDebugEnabled()) {
@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2020, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wso2.carbon.identity.media.endpoint.common;
+
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.util.List;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+public class ByteRangeTest {
+
+    private static final long SIZE = 1000;
+
+    @Test
+    public void testParseSingleRange() {
+
+        List<ByteRange> ranges = ByteRange.parse("bytes=0-499", SIZE);
+
+        assertEquals(ranges.size(), 1);
+        assertRange(ranges.get(0), 0, 499);
+        assertEquals(ranges.get(0).getLength(), 500);
+        assertEquals(ranges.get(0).toContentRange(SIZE), "bytes 0-499/1000");
+    }
+
+    @Test
+    public void testParseSuffixRange() {
+
+        assertRange(ByteRange.parse("bytes=-200", SIZE).get(0), 800, 999);
+        // A suffix longer than the media selects the full media.
+        assertRange(ByteRange.parse("bytes=-5000", SIZE).get(0), 0, 999);
+    }
+
+    @Test
+    public void testParseOpenEndedRange() {
+
+        assertRange(ByteRange.parse("bytes=900-", SIZE).get(0), 900, 999);
+        // A last byte position beyond the media is truncated to the end of the media.
+        assertRange(ByteRange.parse("bytes=900-5000", SIZE).get(0), 900, 999);
+    }
+
+    @Test
+    public void testParseUnsatisfiableRanges() {
+
+        assertTrue(ByteRange.parse("bytes=1000-1100", SIZE).isEmpty());
+        assertTrue(ByteRange.parse("bytes=-0", SIZE).isEmpty());
+        assertTrue(ByteRange.parse("bytes=0-10", 0).isEmpty());
+    }
+
+    @Test
+    public void testParseMultipleRanges() {
+
+        List<ByteRange> ranges = ByteRange.parse("bytes=500-599, 0-99, -100", SIZE);
+
+        assertEquals(ranges.size(), 3);
+        assertRange(ranges.get(0), 0, 99);
+        assertRange(ranges.get(1), 500, 599);
+        assertRange(ranges.get(2), 900, 999);
+    }
+
+    @Test
+    public void testParseCoalescesOverlappingAndAdjacentRanges() {
+
+        List<ByteRange> ranges = ByteRange.parse("bytes=0-99,100-199,150-299,2000-3000", SIZE);
+
+        assertEquals(ranges.size(), 1);
+        assertRange(ranges.get(0), 0, 299);
+    }
+
+    @DataProvider(name = "invalidRanges")
+    public Object[][] invalidRanges() {
+
+        return new Object[][]{
+                {null},
+                {""},
+                {"items=0-99"},
+                {"bytes=100-0"},
+                {"bytes=-"},
+                {"bytes=abc-def"},
+                {"bytes=0-99;1"},
+                {"bytes=99999999999999999999-"},
+                {"bytes=0-0,1-1,2-2,3-3,4-4,5-5,6-6,7-7,8-8,9-9,10-10,11-11,12-12,13-13,14-14,15-15,16-16"}
+        };
+    }
+
+    @Test(dataProvider = "invalidRanges")
+    public void testParseRangesNotHonoured(String rangeHeader) {
+
+        assertNull(ByteRange.parse(rangeHeader, SIZE));
+    }
+
+    private void assertRange(ByteRange range, long start, long end) {
+
+        assertEquals(range.getStart(), start);
+        assertEquals(range.getEnd(), end);
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright (c) 2020, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wso2.carbon.identity.media.endpoint.common;
+
+import org.testng.annotations.Test;
+
+import java.util.Date;
+
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+public class HttpPreconditionsTest {
+
+    private static final String ETAG = "c2f6d1a0";
+    // Sun, 01 Mar 2020 10:00:00 GMT with a sub second part, which HTTP dates can't represent.
+    private static final Date LAST_MODIFIED = new Date(1583056800000L + 250);
+    private static final String LAST_MODIFIED_HTTP_DATE = "Sun, 01 Mar 2020 10:00:00 GMT";
+    private static final String EARLIER_HTTP_DATE = "Sun, 01 Mar 2020 09:59:59 GMT";
+
+    @Test
+    public void testMatchesAnyEntityTag() {
+
+        assertTrue(HttpPreconditions.matchesAnyEntityTag("\"" + ETAG + "\"", ETAG));
+        assertTrue(HttpPreconditions.matchesAnyEntityTag("\"other\", W/\"" + ETAG + "\"", ETAG));
+        assertTrue(HttpPreconditions.matchesAnyEntityTag("*", ETAG));
+        assertFalse(HttpPreconditions.matchesAnyEntityTag("\"other\"", ETAG));
+        assertFalse(HttpPreconditions.matchesAnyEntityTag(ETAG, ETAG));
+        assertFalse(HttpPreconditions.matchesAnyEntityTag("*", null));
+    }
+
+    @Test
+    public void testIsNotModified() {
+
+        assertTrue(HttpPreconditions.isNotModified("\"" + ETAG + "\"", null, ETAG, LAST_MODIFIED));
+        assertTrue(HttpPreconditions.isNotModified(null, LAST_MODIFIED_HTTP_DATE, ETAG, LAST_MODIFIED));
+        assertFalse(HttpPreconditions.isNotModified(null, EARLIER_HTTP_DATE, ETAG, LAST_MODIFIED));
+        assertFalse(HttpPreconditions.isNotModified(null, "not a date", ETAG, LAST_MODIFIED));
+        assertFalse(HttpPreconditions.isNotModified(null, LAST_MODIFIED_HTTP_DATE, ETAG, null));
+        assertFalse(HttpPreconditions.isNotModified(null, null, ETAG, LAST_MODIFIED));
+        // If-Modified-Since is ignored when If-None-Match is present.
+        assertFalse(HttpPreconditions.isNotModified("\"other\"", LAST_MODIFIED_HTTP_DATE, ETAG, LAST_MODIFIED));
+    }
+
+    @Test
+    public void testIsIfRangeSatisfied() {
+
+        assertTrue(HttpPreconditions.isIfRangeSatisfied(null, ETAG, LAST_MODIFIED));
+        assertTrue(HttpPreconditions.isIfRangeSatisfied("\"" + ETAG + "\"", ETAG, LAST_MODIFIED));
+        assertTrue(HttpPreconditions.isIfRangeSatisfied(LAST_MODIFIED_HTTP_DATE, ETAG, LAST_MODIFIED));
+        assertFalse(HttpPreconditions.isIfRangeSatisfied("\"other\"", ETAG, LAST_MODIFIED));
+        // Weak entity tags can't be used as If-Range validators.
+        assertFalse(HttpPreconditions.isIfRangeSatisfied("W/\"" + ETAG + "\"", ETAG, LAST_MODIFIED));
+        assertFalse(HttpPreconditions.isIfRangeSatisfied(EARLIER_HTTP_DATE, ETAG, LAST_MODIFIED));
+        assertFalse(HttpPreconditions.isIfRangeSatisfied(LAST_MODIFIED_HTTP_DATE, ETAG, null));
+    }
+}
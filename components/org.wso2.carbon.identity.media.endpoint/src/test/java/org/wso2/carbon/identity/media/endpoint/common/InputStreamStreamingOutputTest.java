@@ -0,0 +1,67 @@
+/*
+ * Copyright (c) 2020, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wso2.carbon.identity.media.endpoint.common;
+
+import org.testng.annotations.Test;
+import org.wso2.carbon.identity.media.core.StreamContentImpl;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+public class InputStreamStreamingOutputTest {
+
+    private static final byte[] CONTENT = "0123456789abcdefghij".getBytes(StandardCharsets.US_ASCII);
+
+    @Test
+    public void testWriteRange() throws Exception {
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        new InputStreamStreamingOutput(new StreamContentImpl(new ByteArrayInputStream(CONTENT), "text/plain",
+                "etag"), new ByteRange(5, 9)).write(outputStream);
+
+        assertEquals(outputStream.toString("US-ASCII"), "56789");
+    }
+
+    @Test
+    public void testWriteMultipleRanges() throws Exception {
+
+        StreamContentImpl streamContent = new StreamContentImpl(new ByteArrayInputStream(CONTENT), "text/plain",
+                "etag");
+        MultipartByteRangesStreamingOutput output = new MultipartByteRangesStreamingOutput(streamContent,
+                CONTENT.length, Arrays.asList(new ByteRange(0, 1), new ByteRange(18, 19)));
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        output.write(outputStream);
+
+        String body = outputStream.toString("US-ASCII");
+        assertEquals(outputStream.size(), output.getContentLength());
+        assertTrue(body.contains("Content-Range: bytes 0-1/20\r\n\r\n01\r\n"));
+        assertTrue(body.contains("Content-Range: bytes 18-19/20\r\n\r\nij\r\n"));
+    }
+
+    @Test(expectedExceptions = EOFException.class)
+    public void testWriteRangeBeyondEndOfStream() throws Exception {
+
+        new InputStreamStreamingOutput(new StreamContentImpl(new ByteArrayInputStream(CONTENT), "text/plain",
+                "etag"), new ByteRange(15, 24)).write(new ByteArrayOutputStream());
+    }
+}